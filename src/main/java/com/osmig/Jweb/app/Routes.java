@@ -5,10 +5,12 @@ import com.osmig.Jweb.framework.JWebRoutes;
 import com.osmig.Jweb.framework.openapi.OpenApi;
 import com.osmig.Jweb.framework.routing.RouteHandler;
 import com.osmig.Jweb.framework.server.Response;
+import com.osmig.Jweb.framework.styles.CriticalCss;
 import com.osmig.Jweb.app.api.AdminApi;
 import com.osmig.Jweb.app.api.ContactApi;
 import com.osmig.Jweb.app.api.ExampleApi;
 import com.osmig.Jweb.app.forms.ContactStatus;
+import com.osmig.Jweb.app.layout.Head;
 import com.osmig.Jweb.app.layout.Layout;
 import com.osmig.Jweb.app.pages.HomePage;
 import com.osmig.Jweb.app.pages.AboutPage;
@@ -44,6 +46,9 @@ public class Routes implements JWebRoutes {
         // Production baseline: security headers, request ids, compression
         app.use(com.osmig.Jweb.framework.middleware.Middlewares.recommended());
 
+        // Lets any instance serve /jweb/css/<hash>.css before it renders a page
+        CriticalCss.register(Head.STYLES);
+
         // Page routes
         app.layout(Layout.class)
            .pages(
@@ -43,7 +43,7 @@ public final class PerformanceSection {
                  + "a content-hash version, so browsers cache them across every navigation "
                  + "and only the page HTML travels on each request."),
             codeBlock("""
-                    <script src="/jweb/runtime.js?v=67f7c91e"></script>
+                    <script src="/jweb/runtime.js?v=3f9a1c7e5b2d8046"></script>
                     Cache-Control: max-age=31536000, public, immutable"""),
 
             docSubtitle("Streaming & Prefetch"),
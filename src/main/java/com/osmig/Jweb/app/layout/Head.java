@@ -1,6 +1,7 @@
 package com.osmig.Jweb.app.layout;
 
 import com.osmig.Jweb.framework.core.Element;
+import com.osmig.Jweb.framework.styles.CriticalCss;
 import com.osmig.Jweb.framework.template.Template;
 
 import static com.osmig.Jweb.framework.elements.El.*;
@@ -16,6 +17,9 @@ import static com.osmig.Jweb.app.layout.Theme.*;
  * Document head with meta tags and global styles.
  */
 public class Head implements Template {
+    /** The global stylesheet; registered at startup in {@code Routes}. */
+    public static final String STYLES = globalStyles();
+
     private final String pageTitle;
 
     public Head(String pageTitle) {
@@ -32,11 +36,12 @@ public class Head implements Template {
                     + "type-safe components, fluent DSL, zero frontend tooling.")
                 .siteName("JWeb")
                 .render(),
-            style(globalStyles())
+            // Inlines only the rules this page uses; the rest loads as a cached file
+            CriticalCss.style(STYLES)
         );
     }
 
-    private String globalStyles() {
+    private static String globalStyles() {
         return stylesheet()
             .rule("*, *::before, *::after", style()
                 .boxSizing(borderBox)
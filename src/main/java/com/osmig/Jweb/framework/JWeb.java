@@ -160,12 +160,14 @@ public class JWeb {
 
     /** GET with a typed no-param route. */
     public JWeb get(com.osmig.Jweb.framework.routing.TypedRoute.Path0 route, RouteHandler handler) {
-        router.get(route.pattern(), handler);
+        router.addRoute(route.route("GET", handler));
         return this;
     }
 
     /**
      * GET with a one-param typed route — the handler receives the parsed value.
+     * The value is converted when the route matches, so a path that doesn't
+     * convert falls through to other routes (or a 400 when none match).
      *
      * <pre>
      * static final TypedRoute.Path1&lt;Long&gt; USER = TypedRoute.path("/users/:id", Long.class);
@@ -175,25 +177,22 @@ public class JWeb {
      */
     public <A> JWeb get(com.osmig.Jweb.framework.routing.TypedRoute.Path1<A> route,
                         java.util.function.BiFunction<Request, A, Object> handler) {
-        router.get(route.pattern(), req ->
-            handler.apply(req, route.parse(req.param(route.paramNames().get(0)))));
+        router.addRoute(route.route("GET", req -> handler.apply(req, route.value(req))));
         return this;
     }
 
     /** GET with a two-param typed route. */
     public <A, B> JWeb get(com.osmig.Jweb.framework.routing.TypedRoute.Path2<A, B> route,
                            TriHandler<A, B> handler) {
-        router.get(route.pattern(), req -> handler.handle(req,
-            route.parseFirst(req.param(route.paramNames().get(0))),
-            route.parseSecond(req.param(route.paramNames().get(1)))));
+        router.addRoute(route.route("GET", req ->
+            handler.handle(req, route.first(req), route.second(req))));
         return this;
     }
 
     /** POST with a one-param typed route. */
     public <A> JWeb post(com.osmig.Jweb.framework.routing.TypedRoute.Path1<A> route,
                          java.util.function.BiFunction<Request, A, Object> handler) {
-        router.post(route.pattern(), req ->
-            handler.apply(req, route.parse(req.param(route.paramNames().get(0)))));
+        router.addRoute(route.route("POST", req -> handler.apply(req, route.value(req))));
         return this;
     }
 
@@ -316,6 +315,19 @@ public class JWeb {
         return this;
     }
 
+    /**
+     * Compiles the middleware chain of every registered route and page route,
+     * so the first request to each doesn't pay for it. Called at startup.
+     */
+    public void compileMiddleware() {
+        for (Route route : router.getRoutes()) {
+            middlewareStack.compile(route.getMethod(), route.getPath());
+        }
+        for (var page : pageRegistry.getRoutes()) {
+            middlewareStack.compile("GET", page.path());
+        }
+    }
+
     // ==================== Getters ====================
 
     public Router getRouter() {
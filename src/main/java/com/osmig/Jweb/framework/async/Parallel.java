@@ -0,0 +1,152 @@
+package com.osmig.Jweb.framework.async;
+
+import com.osmig.Jweb.framework.core.Element;
+import com.osmig.Jweb.framework.vdom.VFragment;
+import com.osmig.Jweb.framework.vdom.VNode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Renders independent parts of a page concurrently, on virtual threads.
+ *
+ * <p>For pages where building the tree dominates latency (large tables,
+ * dashboards). The parts are rendered on separate threads and put back in
+ * document order; request-scoped render state (state context,
+ * {@code Context}, {@code Portal}, {@code I18n}) is carried over by
+ * {@link RenderScope}:</p>
+ * <pre>
+ * // A drop-in for each(...): rows are rendered in chunks of at least
+ * // jweb.render.parallel-threshold items
+ * tbody(Parallel.each(report.rows(), row -&gt; tr(each(row.cells(), c -&gt; td(c)))))
+ *
+ * // Dashboard panels, one thread each
+ * Parallel.of(() -&gt; salesPanel(), () -&gt; trafficPanel(), () -&gt; alertsPanel())
+ * </pre>
+ *
+ * <p>The first part always renders on the calling thread. Lists shorter
+ * than twice the threshold, and everything when the threshold is 0,
+ * render sequentially like {@code each}. Only use it for parts that don't
+ * depend on each other: shared mutable objects in the mappers are read and
+ * written from several threads.</p>
+ */
+public final class Parallel {
+
+    private static final int DEFAULT_THRESHOLD = 256;
+
+    // Virtual threads: a render that blocks (a lazy load) doesn't pin a platform thread
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+    private static final int MAX_TASKS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static volatile int threshold = DEFAULT_THRESHOLD;
+
+    private Parallel() {
+        // Static utility class
+    }
+
+    /**
+     * Maps a collection to elements like {@code each}, rendering chunks of
+     * the items concurrently.
+     */
+    public static <T> Element each(Collection<T> items, Function<T, Element> mapper) {
+        List<T> list = items instanceof List<T> l ? l : new ArrayList<>(items);
+        int min = threshold;
+        int tasks = min > 0 ? Math.min(MAX_TASKS, list.size() / min) : 1;
+        if (tasks < 2) {
+            List<VNode> nodes = renderAll(list, mapper);
+            return () -> new VFragment(nodes);
+        }
+
+        int chunk = (list.size() + tasks - 1) / tasks;
+        List<Supplier<List<VNode>>> parts = new ArrayList<>(tasks);
+        for (int start = 0; start < list.size(); start += chunk) {
+            List<T> slice = list.subList(start, Math.min(start + chunk, list.size()));
+            parts.add(() -> renderAll(slice, mapper));
+        }
+
+        List<VNode> nodes = new ArrayList<>(list.size());
+        for (List<VNode> part : renderConcurrently(parts)) {
+            nodes.addAll(part);
+        }
+        return () -> new VFragment(nodes);
+    }
+
+    /**
+     * Renders each section on its own thread, in document order.
+     */
+    @SafeVarargs
+    public static Element of(Supplier<? extends Element>... sections) {
+        List<Supplier<VNode>> parts = new ArrayList<>(sections.length);
+        for (Supplier<? extends Element> section : sections) {
+            parts.add(() -> section.get().toVNode());
+        }
+        List<VNode> nodes = threshold > 0 && parts.size() > 1
+            ? renderConcurrently(parts)
+            : parts.stream().map(Supplier::get).toList();
+        return () -> new VFragment(nodes);
+    }
+
+    /**
+     * Sets the minimum number of items per concurrently rendered chunk
+     * ({@link #each}). 0 renders everything on the calling thread.
+     */
+    public static void setThreshold(int minItemsPerTask) {
+        threshold = Math.max(0, minItemsPerTask);
+    }
+
+    public static int getThreshold() {
+        return threshold;
+    }
+
+    // ==================== Internals ====================
+
+    private static <T> List<VNode> renderAll(List<T> items, Function<T, Element> mapper) {
+        List<VNode> nodes = new ArrayList<>(items.size());
+        for (T item : items) {
+            nodes.add(mapper.apply(item).toVNode());
+        }
+        return nodes;
+    }
+
+    /**
+     * Runs the first part here and the rest on virtual threads, then joins
+     * them in order (applying their portal content and state reads).
+     */
+    private static <R> List<R> renderConcurrently(List<? extends Supplier<R>> parts) {
+        RenderScope scope = RenderScope.capture();
+        List<Future<RenderScope.Branch<R>>> futures = new ArrayList<>(parts.size() - 1);
+        for (int i = 1; i < parts.size(); i++) {
+            Supplier<R> part = parts.get(i);
+            futures.add(EXECUTOR.submit(() -> scope.run(part)));
+        }
+
+        List<R> results = new ArrayList<>(parts.size());
+        try {
+            results.add(parts.get(0).get());
+            for (Future<RenderScope.Branch<R>> future : futures) {
+                results.add(future.get().join());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime) throw runtime;
+            if (cause instanceof Error error) throw error;
+            throw new IllegalStateException("Parallel render failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Parallel render interrupted", e);
+        } finally {
+            // No-op for finished parts; stops the rest after a failure
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+}
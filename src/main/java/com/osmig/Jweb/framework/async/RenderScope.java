@@ -0,0 +1,109 @@
+package com.osmig.Jweb.framework.async;
+
+import com.osmig.Jweb.framework.context.Context;
+import com.osmig.Jweb.framework.core.Element;
+import com.osmig.Jweb.framework.i18n.I18n;
+import com.osmig.Jweb.framework.portal.Portal;
+import com.osmig.Jweb.framework.state.State;
+import com.osmig.Jweb.framework.state.StateManager;
+import com.osmig.Jweb.framework.styles.PageStyles;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * The request-scoped render state of a thread, carried over to threads
+ * that render parts of the same page.
+ *
+ * <p>Captures the state context, {@link Context} values, the {@link I18n}
+ * locale, the page's {@link PageStyles} sheet and the streaming context (with the streamed block being
+ * rendered, so nested Suspense blocks stay nested). What the other thread adds to the
+ * page (portal content, and state reads for a tracked component render)
+ * is collected in a {@link Branch} and applied to the request thread by
+ * {@link Branch#join()}, in the order the branches are joined:</p>
+ * <pre>
+ * RenderScope scope = RenderScope.capture();                    // request thread
+ * Future&lt;Branch&lt;VNode&gt;&gt; part = executor.submit(() -&gt; scope.run(() -&gt; section.toVNode()));
+ * VNode node = part.get().join();                                 // request thread
+ * </pre>
+ */
+public final class RenderScope {
+
+    private final StateManager.StateContext state;
+    private final Map<String, Object> context;
+    private final Locale locale;
+    private final PageStyles styles;
+    private final StreamingContext streaming;
+    private final StreamingContext.Pending block;
+    private final boolean trackingReads;
+
+    private RenderScope() {
+        this.state = StateManager.getContext();
+        this.context = Context.snapshot();
+        this.locale = I18n.current();
+        this.styles = PageStyles.current();
+        this.streaming = StreamingContext.active();
+        this.block = StreamingContext.renderingBlock();
+        this.trackingReads = StateManager.isTrackingReads();
+    }
+
+    /** Captures the current thread's render state. */
+    public static RenderScope capture() {
+        return new RenderScope();
+    }
+
+    /**
+     * Runs render work on the current thread with the captured state
+     * installed, and removes it again afterwards.
+     *
+     * @param work the render work
+     * @return the result, with the effects to apply on the request thread
+     */
+    public <T> Branch<T> run(Supplier<T> work) {
+        StateManager.setContext(state);
+        Context.restore(context);
+        I18n.setCurrent(locale);
+        PageStyles.attach(styles);
+        StreamingContext.attach(streaming);
+        Portal.clear();
+        try {
+            Set<State<?>> reads = trackingReads ? new HashSet<>() : null;
+            Supplier<T> scoped = block != null ? () -> StreamingContext.rendering(block, work) : work;
+            T value = reads != null ? StateManager.trackReads(scoped, reads) : scoped.get();
+            return new Branch<>(value, reads, Portal.drain());
+        } finally {
+            StateManager.clearContext();
+            Context.clear();
+            I18n.clearCurrent();
+            PageStyles.clear();
+            StreamingContext.close();
+            Portal.clear();
+        }
+    }
+
+    /**
+     * The result of render work done on another thread.
+     *
+     * @param value the work's result
+     * @param reads states read by the work (null when reads weren't tracked)
+     * @param portals content the work sent to portals, by portal name
+     */
+    public record Branch<T>(T value, Set<State<?>> reads, Map<String, List<Element>> portals) {
+
+        /**
+         * Applies the branch's effects to the calling (request) thread and
+         * returns its value.
+         */
+        public T join() {
+            if (reads != null) {
+                StateManager.recordReads(reads);
+            }
+            Portal.merge(portals);
+            return value;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.osmig.Jweb.framework.async;
 
 import com.osmig.Jweb.framework.core.Element;
 
+import java.time.Duration;
 import java.util.function.Supplier;
 
 /**
@@ -23,11 +24,40 @@ import java.util.function.Supplier;
  *             .render(data -> reportTable(data))
  *     )).render()));
  * </pre>
+ *
+ * <p>Blocks are written as they finish, nested blocks after the block that
+ * contains them. Blocks still loading when the page timeout passes are
+ * written with their error fallback (jweb.render.stream-timeout-ms,
+ * or {@link #timeout} per page).</p>
+ *
+ * @param page builds the page
+ * @param timeout deadline for all blocks of the page (null: the default)
  */
-public record Streamed(Supplier<Element> page) {
+public record Streamed(Supplier<Element> page, Duration timeout) {
+
+    private static volatile Duration defaultTimeout = Duration.ofSeconds(30);
+
+    public Streamed(Supplier<Element> page) {
+        this(page, null);
+    }
 
     /** Wraps a lazily-built page for streaming delivery. */
     public static Streamed of(Supplier<Element> page) {
         return new Streamed(page);
     }
+
+    /** Sets the deadline for this page's blocks. */
+    public Streamed timeout(Duration timeout) {
+        return new Streamed(page, timeout);
+    }
+
+    /** The page's deadline, or the default when none was set. */
+    public Duration effectiveTimeout() {
+        return timeout != null ? timeout : defaultTimeout;
+    }
+
+    /** Sets the default page deadline (jweb.render.stream-timeout-ms). */
+    public static void setDefaultTimeout(Duration timeout) {
+        defaultTimeout = timeout;
+    }
 }
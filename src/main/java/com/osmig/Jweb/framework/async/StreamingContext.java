@@ -1,24 +1,136 @@
 package com.osmig.Jweb.framework.async;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Per-render registry of deferred Suspense blocks during a streaming render.
  * While active (opened by the controller for {@link Streamed} pages), every
  * {@code Suspense} renders an instantly-flushed placeholder and registers a
  * future that resolves to the block's final HTML.
+ *
+ * <p>{@link #stream} writes the blocks out of order, as they finish: each
+ * block puts itself on a completion queue when done, so the writer only
+ * ever waits on the queue. Blocks rendered inside a block's content
+ * (nested Suspense) are registered while it renders and written after it.
+ * Blocks past their deadline, or still open at the page deadline, are
+ * written with their error fallback, and their loaders are cancelled.</p>
  */
 public final class StreamingContext {
 
     private static final ThreadLocal<StreamingContext> CURRENT = new ThreadLocal<>();
 
-    /** A deferred block: placeholder id + future resolving to its HTML. */
-    public record Pending(String placeholderId, CompletableFuture<String> html) {}
+    // The block whose content is rendering on this thread (parent of nested blocks)
+    private static final ThreadLocal<Pending> RENDERING = new ThreadLocal<>();
+
+    /**
+     * A deferred block: placeholder id + future resolving to its HTML. The
+     * future always completes normally: failures resolve to the block's
+     * fallback, and cancelled blocks to an empty string.
+     */
+    public static final class Pending {
+        private final String placeholderId;
+        private final Pending parent;
+        private final CompletableFuture<String> source;
+        private final CompletableFuture<String> html;
+        private final List<Pending> children = new ArrayList<>(0);
+        private volatile boolean cancelled;
+
+        private Pending(String placeholderId, Pending parent, CompletableFuture<String> source,
+                        Function<Throwable, String> fallback) {
+            this.placeholderId = placeholderId;
+            this.parent = parent;
+            this.source = source;
+            this.html = source.handle((content, error) -> {
+                if (error == null) return content;
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+                if (cancelled || cause instanceof CancellationException) return "";
+                try {
+                    return fallback.apply(cause);
+                } catch (RuntimeException fallbackError) {
+                    return "";   // a broken fallback must not stop the stream
+                }
+            });
+        }
+
+        public String placeholderId() {
+            return placeholderId;
+        }
+
+        /** The enclosing block's placeholder id, or null for a block in the shell. */
+        public String parentId() {
+            return parent != null ? parent.placeholderId : null;
+        }
+
+        public CompletableFuture<String> html() {
+            return html;
+        }
+
+        /** Ends the block now with its error fallback. */
+        public void expire(Throwable reason) {
+            source.completeExceptionally(reason);
+        }
+
+        /** Abandons the block, and the blocks nested in it. */
+        public void cancel() {
+            cancelled = true;
+            source.cancel(true);
+            for (Pending child : children()) {
+                child.cancel();
+            }
+        }
+
+        /**
+         * Expires the block with its fallback if it hasn't finished within
+         * the timeout.
+         */
+        public void expireAfter(Duration timeout) {
+            CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS, Thread::startVirtualThread)
+                .execute(() -> {
+                    if (!source.isDone()) {
+                        expire(new TimeoutException("Suspense block timed out after " + timeout.toMillis() + "ms"));
+                    }
+                });
+        }
+
+        private synchronized void addChild(Pending child) {
+            children.add(child);
+        }
+
+        private synchronized List<Pending> children() {
+            return new ArrayList<>(children);
+        }
+    }
+
+    /** Receives the finished blocks during {@link #stream}. */
+    public interface ChunkWriter {
+        /** Writes a block's HTML (to replace its placeholder). */
+        void write(String placeholderId, String html) throws IOException;
+
+        /** Sends what was written; throws when the client has gone away. */
+        void flush() throws IOException;
+    }
 
     private final List<Pending> pendings = new ArrayList<>();
+    private final BlockingQueue<Pending> completed = new LinkedBlockingQueue<>();
     private int counter = 0;
+    private boolean expired;
 
     private StreamingContext() {}
 
@@ -29,6 +141,13 @@ public final class StreamingContext {
         return context;
     }
 
+    /** Attaches a context opened on another thread (parallel render threads). */
+    static void attach(StreamingContext context) {
+        if (context != null) {
+            CURRENT.set(context);
+        }
+    }
+
     /** Closes the streaming context on this thread. */
     public static void close() {
         CURRENT.remove();
@@ -41,13 +160,168 @@ public final class StreamingContext {
 
     /** Registers a deferred block; returns its placeholder element id. */
     public String register(CompletableFuture<String> htmlFuture) {
-        String id = "jw-s-" + (++counter);
-        pendings.add(new Pending(id, htmlFuture));
-        return id;
+        return defer(htmlFuture, error -> "").placeholderId();
+    }
+
+    /**
+     * Registers a deferred block whose content comes from {@code source};
+     * if it fails or expires, the block shows {@code fallback} instead.
+     * Blocks registered while another block's content renders (see
+     * {@link #rendering}) are nested in it.
+     */
+    public synchronized Pending defer(CompletableFuture<String> source, Function<Throwable, String> fallback) {
+        Pending parent = RENDERING.get();
+        Pending pending = new Pending("jw-s-" + (++counter), parent, source, fallback);
+        pendings.add(pending);
+        if (parent != null) {
+            parent.addChild(pending);
+        }
+        pending.html.whenComplete((html, error) -> completed.add(pending));
+        if (parent != null && parent.cancelled) {
+            pending.cancel();
+        } else if (expired) {
+            pending.expire(new TimeoutException("Page streaming deadline passed"));
+        }
+        return pending;
+    }
+
+    /**
+     * Runs a block's content render: blocks registered meanwhile (on this
+     * thread) are nested in it.
+     */
+    public static <T> T rendering(Pending block, Supplier<T> render) {
+        Pending outer = RENDERING.get();
+        RENDERING.set(block);
+        try {
+            return render.get();
+        } finally {
+            if (outer != null) {
+                RENDERING.set(outer);
+            } else {
+                RENDERING.remove();
+            }
+        }
+    }
+
+    /** The block whose content is rendering on this thread, or null. */
+    static Pending renderingBlock() {
+        return RENDERING.get();
     }
 
     /** The deferred blocks registered during the render. */
-    public List<Pending> pendings() {
-        return pendings;
+    public synchronized List<Pending> pendings() {
+        return new ArrayList<>(pendings);
+    }
+
+    // ==================== Streaming ====================
+
+    /**
+     * Writes every block as it finishes, nested ones after the block that
+     * contains their placeholder, until all are written. Blocks still open
+     * at the deadline are expired (written with their fallback). If the
+     * client goes away, the outstanding blocks are cancelled and the
+     * writer's exception is rethrown.
+     *
+     * @param out receives the finished blocks
+     * @param timeout page-wide deadline for the blocks
+     */
+    public void stream(ChunkWriter out, Duration timeout) throws IOException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        Set<Pending> written = new HashSet<>();
+        Set<Pending> dropped = new HashSet<>();
+        Map<Pending, List<Pending>> waiting = new HashMap<>();
+        int done = 0;
+        try {
+            while (done < registered()) {
+                Pending next;
+                long wait = deadline - System.nanoTime();
+                if (wait > 0) {
+                    next = completed.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) continue;
+                } else {
+                    expireAll();
+                    next = completed.take();
+                }
+
+                // Everything that finished meanwhile goes out in one flush
+                int before = written.size();
+                do {
+                    done++;
+                    place(next, out, written, dropped, waiting);
+                } while ((next = completed.poll()) != null);
+                if (written.size() > before) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            cancelAll();
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelAll();
+        }
+    }
+
+    private void place(Pending block, ChunkWriter out, Set<Pending> written, Set<Pending> dropped,
+                       Map<Pending, List<Pending>> waiting) throws IOException {
+        if (dropped.contains(block)) {
+            return;
+        }
+        Pending parent = block.parent;
+        if (parent != null && dropped.contains(parent)) {
+            drop(block, dropped, waiting);
+            return;
+        }
+        if (parent != null && !written.contains(parent)) {
+            waiting.computeIfAbsent(parent, k -> new ArrayList<>()).add(block);
+            return;
+        }
+
+        String html = block.html.join();
+        out.write(block.placeholderId, html);
+        written.add(block);
+
+        // Nested blocks whose placeholder didn't make it into the content
+        // (the block failed or expired) are never shown
+        for (Pending child : block.children()) {
+            if (!html.contains("id=\"" + child.placeholderId + "\"")) {
+                drop(child, dropped, waiting);
+            }
+        }
+        List<Pending> ready = waiting.remove(block);
+        if (ready != null) {
+            for (Pending child : ready) {
+                place(child, out, written, dropped, waiting);
+            }
+        }
+    }
+
+    private void drop(Pending block, Set<Pending> dropped, Map<Pending, List<Pending>> waiting) {
+        if (!dropped.add(block)) return;
+        block.cancel();
+        List<Pending> blocked = waiting.remove(block);
+        if (blocked != null) {
+            for (Pending child : blocked) {
+                drop(child, dropped, waiting);
+            }
+        }
+    }
+
+    private synchronized int registered() {
+        return pendings.size();
+    }
+
+    private synchronized void expireAll() {
+        if (expired) return;
+        expired = true;
+        for (Pending pending : new ArrayList<>(pendings)) {
+            pending.expire(new TimeoutException("Page streaming deadline passed"));
+        }
+    }
+
+    private synchronized void cancelAll() {
+        for (Pending pending : pendings) {
+            pending.cancel();
+        }
     }
 }
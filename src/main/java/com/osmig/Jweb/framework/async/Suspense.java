@@ -233,18 +233,7 @@ public class Suspense<T> implements Element {
         // the real content — it streams in when the data resolves.
         StreamingContext streaming = StreamingContext.active();
         if (streaming != null) {
-            CompletableFuture<String> htmlFuture = CompletableFuture.supplyAsync(() -> {
-                try {
-                    T data = dataLoader.call();
-                    return contentRenderer != null ? contentRenderer.apply(data).toHtml() : "";
-                } catch (Throwable t) {
-                    return errorElement.apply(t).toHtml();
-                }
-            }, EXECUTOR);
-            String id = streaming.register(htmlFuture);
-            return VElement.of("div",
-                java.util.Map.of("id", id),
-                java.util.List.of(loadingElement.get().toVNode()));
+            return deferred(streaming);
         }
 
         try {
@@ -282,6 +271,36 @@ public class Suspense<T> implements Element {
         }
     }
 
+    /**
+     * Registers the block with the streaming render and returns its
+     * placeholder. The content renders on a virtual thread with the
+     * request's render state, so Suspense blocks inside it stream too; the
+     * block falls back to the error element after {@code timeout(...)}.
+     */
+    private VNode deferred(StreamingContext streaming) {
+        CompletableFuture<String> content = new CompletableFuture<>();
+        StreamingContext.Pending pending = streaming.defer(content, t -> errorElement.apply(t).toHtml());
+        RenderScope scope = RenderScope.capture();
+        Future<?> loader = EXECUTOR.submit(() -> scope.run(() -> StreamingContext.rendering(pending, () -> {
+            try {
+                T data = dataLoader.call();
+                content.complete(contentRenderer != null ? contentRenderer.apply(data).toHtml() : "");
+            } catch (Throwable t) {
+                content.completeExceptionally(t);
+            }
+            return null;
+        })));
+        // Expired or cancelled: stop the loader
+        content.whenComplete((html, error) -> {
+            if (error != null) loader.cancel(true);
+        });
+        pending.expireAfter(java.time.Duration.ofMillis(timeoutMs));
+
+        return VElement.of("div",
+            java.util.Map.of("id", pending.placeholderId()),
+            java.util.List.of(loadingElement.get().toVNode()));
+    }
+
     // ==================== Static Helpers for Elements.java ====================
 
     /**
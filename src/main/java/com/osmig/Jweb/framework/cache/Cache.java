@@ -2,11 +2,14 @@ package com.osmig.Jweb.framework.cache;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Comparator;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 
 /**
@@ -51,9 +54,24 @@ import java.util.function.Supplier;
  * Cache&lt;String, User&gt; users = Cache.named("users");
  * Cache&lt;String, Product&gt; products = Cache.named("products");
  * </pre>
+ *
+ * <p>A cache created with a max size evicts in batches: once it is over the
+ * limit, one pass drops the expired entries and then those closest to
+ * expiring, down to 90% of the limit, so inserts don't scan the store one
+ * by one. While another thread is evicting, an insert may briefly leave the
+ * cache over its limit.</p>
  */
 public class Cache<K, V> {
 
+    // Shared scheduler for all cache instances - non-blocking.
+    // Declared before GLOBAL: its constructor schedules cleanup during class init
+    private static final ScheduledExecutorService CLEANUP_SCHEDULER =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "Cache-Cleanup");
+                t.setDaemon(true);
+                return t;
+            });
+
     private static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
     private static final Cache<String, Object> GLOBAL = new Cache<>(DEFAULT_TTL);
     private static final Map<String, Cache<?, ?>> NAMED_CACHES = new ConcurrentHashMap<>();
@@ -61,6 +79,8 @@ public class Cache<K, V> {
     private final Map<K, CacheEntry<V>> store = new ConcurrentHashMap<>();
     private final Duration defaultTtl;
     private final int maxSize;
+    private final int lowWater;
+    private final ReentrantLock evicting = new ReentrantLock();
     private volatile boolean cleanupScheduled = false;
 
     private Cache(Duration defaultTtl) {
@@ -70,6 +90,7 @@ public class Cache<K, V> {
     private Cache(Duration defaultTtl, int maxSize) {
         this.defaultTtl = defaultTtl;
         this.maxSize = maxSize;
+        this.lowWater = maxSize - Math.max(1, maxSize / 10);
         scheduleCleanup();
     }
 
@@ -158,9 +179,7 @@ public class Cache<K, V> {
             V value = supplier.get();
             return value != null ? new CacheEntry<>(value, Instant.now().plus(ttl)) : null;
         });
-        if (store.size() > maxSize) {
-            evictOldest();
-        }
+        evictIfFull();
         return entry != null ? entry.value : null;
     }
 
@@ -180,13 +199,9 @@ public class Cache<K, V> {
             return;
         }
 
-        // Evict if at max size
-        if (store.size() >= maxSize) {
-            evictOldest();
-        }
-
         Instant expiresAt = Instant.now().plus(ttl);
         store.put(key, new CacheEntry<>(value, expiresAt));
+        evictIfFull();
     }
 
     /**
@@ -332,35 +347,46 @@ public class Cache<K, V> {
 
     // ==================== Helpers ====================
 
-    private void evictOldest() {
-        // Simple eviction: remove first expired, or oldest
-        K oldestKey = null;
-        Instant oldestTime = Instant.MAX;
+    private void evictIfFull() {
+        // One thread evicts at a time; the others don't wait for it
+        if (store.size() <= maxSize || !evicting.tryLock()) {
+            return;
+        }
+        try {
+            if (store.size() > maxSize) {
+                evictToLowWater();
+            }
+        } finally {
+            evicting.unlock();
+        }
+    }
 
+    /**
+     * Drops expired entries, then the ones closest to expiring until the
+     * store is down to its low-water mark: one scan, keeping the candidates
+     * in a heap bounded by the number to drop.
+     */
+    private void evictToLowWater() {
+        cleanup();
+        int excess = store.size() - lowWater;
+        if (excess <= 0) {
+            return;
+        }
+        // Latest expiry on top, so the heap keeps the earliest to expire
+        PriorityQueue<Map.Entry<K, CacheEntry<V>>> earliest = new PriorityQueue<>(excess + 1,
+            Comparator.comparing((Map.Entry<K, CacheEntry<V>> e) -> e.getValue().expiresAt).reversed());
         for (var entry : store.entrySet()) {
-            if (entry.getValue().isExpired()) {
-                store.remove(entry.getKey());
-                return;
-            }
-            if (entry.getValue().expiresAt.isBefore(oldestTime)) {
-                oldestTime = entry.getValue().expiresAt;
-                oldestKey = entry.getKey();
+            earliest.add(Map.entry(entry.getKey(), entry.getValue()));
+            if (earliest.size() > excess) {
+                earliest.poll();
             }
         }
-
-        if (oldestKey != null) {
-            store.remove(oldestKey);
+        for (var entry : earliest) {
+            // Leaves a value set again since the scan
+            store.remove(entry.getKey(), entry.getValue());
         }
     }
 
-    // Shared scheduler for all cache instances - non-blocking
-    private static final ScheduledExecutorService CLEANUP_SCHEDULER =
-            Executors.newSingleThreadScheduledExecutor(r -> {
-                Thread t = new Thread(r, "Cache-Cleanup");
-                t.setDaemon(true);
-                return t;
-            });
-
     private void scheduleCleanup() {
         if (cleanupScheduled) return;
         cleanupScheduled = true;
@@ -0,0 +1,160 @@
+package com.osmig.Jweb.framework.cache;
+
+import com.osmig.Jweb.framework.core.Element;
+import com.osmig.Jweb.framework.metrics.Metrics;
+import com.osmig.Jweb.framework.security.Auth;
+import com.osmig.Jweb.framework.security.Principal;
+import com.osmig.Jweb.framework.server.Request;
+import com.osmig.Jweb.framework.styles.PageStyles;
+import com.osmig.Jweb.framework.vdom.VNode;
+import com.osmig.Jweb.framework.vdom.VRaw;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Element that renders an expensive subtree once and reuses its HTML.
+ *
+ * <p>The subtree is rendered on the first request (per key) and spliced
+ * into later pages as pre-rendered HTML until the TTL expires:</p>
+ * <pre>
+ * // Shared by every page for 10 minutes
+ * Cached.of("footer", Duration.ofMinutes(10), () -&gt; footer(...))
+ *
+ * // Re-rendered whenever the menu changes
+ * Cached.of("nav", Duration.ofHours(1), () -&gt; nav(menu)).version(menu.revision())
+ *
+ * // One copy per signed-in user
+ * Cached.of("account-menu", Duration.ofMinutes(5), () -&gt; accountMenu(user)).perUser(request)
+ * </pre>
+ *
+ * <p>Only cache static output: handlers ({@code onClick}), state bindings
+ * and {@code useComponent} regions are registered per render and won't be
+ * live in a cached copy. Styles the subtree added to the page
+ * ({@code StyledElement} rules, {@code CriticalCss} stylesheets) are kept
+ * with the HTML and added to every page that reuses it.</p>
+ *
+ * <p>Entries live in a size-bounded store (jweb.cache.fragments.max-entries);
+ * hits and misses are reported as {@code cache.fragment.hits} and
+ * {@code cache.fragment.misses}.</p>
+ */
+public final class Cached implements Element {
+
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private static volatile Cache<String, Fragment> store = Cache.create(Duration.ofMinutes(5), DEFAULT_MAX_ENTRIES);
+
+    private record Fragment(String html, PageStyles.Captured styles) {}
+
+    private final String key;
+    private final Duration ttl;
+    private final Supplier<? extends Element> body;
+    private String version;
+    private String scope;
+
+    private Cached(String key, Duration ttl, Supplier<? extends Element> body) {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("Cache key must not be empty");
+        }
+        this.key = key;
+        this.ttl = ttl;
+        this.body = body;
+    }
+
+    /**
+     * Creates a cached subtree.
+     *
+     * @param key identifies the subtree (unique per distinct output)
+     * @param ttl how long the rendered HTML is reused
+     * @param body builds the subtree on a miss
+     * @return the cached element
+     */
+    public static Cached of(String key, Duration ttl, Supplier<? extends Element> body) {
+        return new Cached(key, ttl, body);
+    }
+
+    /**
+     * Adds a version to the key: changing it (e.g. a data revision or
+     * last-modified timestamp) makes the next render miss.
+     */
+    public Cached version(Object version) {
+        this.version = String.valueOf(version);
+        return this;
+    }
+
+    /**
+     * Scopes the entry to one user, for subtrees that show user-specific data.
+     */
+    public Cached perUser(String userId) {
+        this.scope = userId == null ? "anonymous" : userId;
+        return this;
+    }
+
+    /**
+     * Scopes the entry to the request's authenticated user
+     * (anonymous visitors share one entry).
+     */
+    public Cached perUser(Request request) {
+        Principal principal = Auth.getPrincipal(request);
+        return perUser(principal != null ? principal.getId() : null);
+    }
+
+    @Override
+    public VNode toVNode() {
+        String compositeKey = compositeKey();
+        Fragment fragment = store.get(compositeKey);
+        if (fragment != null) {
+            Metrics.counter("cache.fragment.hits").increment();
+            String inline = fragment.styles().replay();
+            return new VRaw(inline.isEmpty() ? fragment.html() : inline + fragment.html());
+        }
+
+        // Rendered outside the store's lock: the subtree may contain other Cached elements
+        Metrics.counter("cache.fragment.misses").increment();
+        PageStyles.Recording recording = PageStyles.record();
+        String html;
+        PageStyles.Captured styles;
+        try {
+            Element element = body.get();
+            html = element != null ? element.toHtml() : "";
+        } finally {
+            styles = recording.stop();
+        }
+        store.set(compositeKey, new Fragment(html, styles), ttl);
+        return new VRaw(html);
+    }
+
+    // Key, version and user scope, NUL-separated so segments can't run together
+    private String compositeKey() {
+        StringBuilder sb = new StringBuilder(key.length() + 32).append(key);
+        if (version != null) sb.append("\0v=").append(version);
+        if (scope != null) sb.append("\0u=").append(scope);
+        return sb.toString();
+    }
+
+    // ==================== Store ====================
+
+    /**
+     * Sets the maximum number of cached fragments. Replaces (and empties)
+     * the current store.
+     */
+    public static void setMaxEntries(int maxEntries) {
+        Cache<String, Fragment> previous = store;
+        store = Cache.create(Duration.ofMinutes(5), maxEntries);
+        previous.clear();
+    }
+
+    /**
+     * Drops every cached fragment.
+     */
+    public static void clear() {
+        store.clear();
+    }
+
+    /**
+     * Returns statistics for the fragment store.
+     */
+    public static Cache.CacheStats stats() {
+        return store.stats();
+    }
+}
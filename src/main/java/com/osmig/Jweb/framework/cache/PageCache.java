@@ -0,0 +1,463 @@
+package com.osmig.Jweb.framework.cache;
+
+import com.osmig.Jweb.framework.i18n.I18n;
+import com.osmig.Jweb.framework.metrics.Metrics;
+import com.osmig.Jweb.framework.security.Auth;
+import com.osmig.Jweb.framework.security.Principal;
+import com.osmig.Jweb.framework.server.Compression;
+import com.osmig.Jweb.framework.server.ConditionalGet;
+import com.osmig.Jweb.framework.server.Request;
+import com.osmig.Jweb.framework.state.StateManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Server-side cache of fully rendered pages, stored as the bytes sent to
+ * the client (UTF-8, plus a gzip variant).
+ *
+ * <p>A page opts in by returning a policy from {@code Template.serverCache()};
+ * entries are keyed by route, path and query, and the inputs the policy
+ * varies by:</p>
+ * <pre>
+ * &#64;Override
+ * public Optional&lt;PageCache.Policy&gt; serverCache() {
+ *     return Optional.of(PageCache.policy(Duration.ofMinutes(1))
+ *         .staleWhileRevalidate(Duration.ofMinutes(10))
+ *         .varyByLocale()
+ *         .varyByAuth());
+ * }
+ * </pre>
+ *
+ * <ul>
+ *   <li>Concurrent misses on one key render the page once; the other
+ *       requests wait for that render ({@link #load}).</li>
+ *   <li>Within the stale window an expired entry is still served, while
+ *       the first request to find it stale renders its replacement through
+ *       its own, normal request path ({@link #revalidate}).</li>
+ *   <li>The store is bounded by the total size of its entries
+ *       (jweb.cache.pages.max-bytes); the least recently used go first.</li>
+ * </ul>
+ *
+ * <p>Only pages rendered without per-visitor client state are stored:
+ * a render that registered states, components or event handlers is sent
+ * to its own visitor only (see {@link #isShareable}). Hits, stale hits, misses and evictions are reported as
+ * {@code cache.page.hits}, {@code cache.page.stale}, {@code cache.page.misses}
+ * and {@code cache.page.evictions}.</p>
+ */
+public final class PageCache {
+
+    private static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    // Access-ordered: iteration starts at the least recently used entry
+    private static final Map<String, CachedPage> pages = new LinkedHashMap<>(64, 0.75f, true);
+    private static final Map<String, CompletableFuture<CachedPage>> loading = new ConcurrentHashMap<>();
+    private static long totalBytes;
+    private static volatile long maxBytes = DEFAULT_MAX_BYTES;
+
+    private PageCache() {
+        // Static utility class
+    }
+
+    /**
+     * Creates a policy whose entries are fresh for {@code ttl}.
+     */
+    public static Policy policy(Duration ttl) {
+        return new Policy(ttl);
+    }
+
+    // ==================== Policy ====================
+
+    /**
+     * How long a page is cached, and which request inputs select its entry.
+     */
+    public static final class Policy {
+        private final Duration ttl;
+        private Duration stale = Duration.ZERO;
+        private boolean locale;
+        private boolean auth;
+        private boolean user;
+        private final List<String> headers = new ArrayList<>(0);
+
+        private Policy(Duration ttl) {
+            if (ttl == null || ttl.isNegative() || ttl.isZero()) {
+                throw new IllegalArgumentException("Page cache TTL must be positive");
+            }
+            this.ttl = ttl;
+        }
+
+        /**
+         * Keeps serving an expired entry for up to {@code window} while one
+         * request renders its replacement.
+         */
+        public Policy staleWhileRevalidate(Duration window) {
+            this.stale = window;
+            return this;
+        }
+
+        /** One entry per request locale (as set by the i18n middleware). */
+        public Policy varyByLocale() {
+            this.locale = true;
+            return this;
+        }
+
+        /** Separate entries for signed-in and anonymous visitors. */
+        public Policy varyByAuth() {
+            this.auth = true;
+            return this;
+        }
+
+        /** One entry per signed-in user (anonymous visitors share one). */
+        public Policy varyByUser() {
+            this.user = true;
+            return this;
+        }
+
+        /** One entry per value of each of the given request headers. */
+        public Policy varyByHeader(String... names) {
+            for (String name : names) {
+                headers.add(name.toLowerCase(Locale.ROOT));
+            }
+            return this;
+        }
+
+        public Duration ttl() {
+            return ttl;
+        }
+
+        public Duration staleWindow() {
+            return stale;
+        }
+    }
+
+    // ==================== Entries ====================
+
+    /**
+     * A rendered page as stored: its encoded body, gzip variant and age.
+     */
+    public static final class CachedPage {
+        private final byte[] body;
+        private final byte[] gzip;
+        private final String etag;
+        private final String gzipEtag;
+        private final long freshUntil;
+        private final long staleUntil;
+        private final boolean shared;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private CachedPage(byte[] body, byte[] gzip, long freshUntil, long staleUntil, boolean shared) {
+            this.body = body;
+            this.gzip = gzip;
+            this.etag = shared ? ConditionalGet.strongEtag(body, 0, body.length) : null;
+            this.gzipEtag = gzip != null ? Compression.etagFor(etag, Compression.Encoding.GZIP) : null;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+            this.shared = shared;
+        }
+
+        /** The page as UTF-8 bytes. */
+        public byte[] body() {
+            return body;
+        }
+
+        /** The gzip-encoded page, or null when the page is too small to compress. */
+        public byte[] gzip() {
+            return gzip;
+        }
+
+        /** Strong ETag of the body (null for pages that aren't shared). */
+        public String etag() {
+            return etag;
+        }
+
+        /** Strong ETag of the gzip variant, or null when there is none. */
+        public String gzipEtag() {
+            return gzipEtag;
+        }
+
+        /** False once the TTL has passed (the entry is then stale). */
+        public boolean isFresh() {
+            return System.currentTimeMillis() < freshUntil;
+        }
+
+        /** True when the page can be sent to any visitor with the same key. */
+        public boolean isShared() {
+            return shared;
+        }
+
+        long size() {
+            return body.length + (gzip != null ? gzip.length : 0);
+        }
+
+        boolean isExpired(long now) {
+            return now >= staleUntil;
+        }
+    }
+
+    /**
+     * Whether a page rendered with this state context can be served to
+     * other visitors: it registered nothing the client references through
+     * the context (states, components, event handlers). Registering any of
+     * them gives the context an ID, which the page embeds.
+     *
+     * @param context the render's state context
+     */
+    public static boolean isShareable(StateManager.StateContext context) {
+        return !context.isActive() && context.getStates().isEmpty() && context.getComponents().isEmpty();
+    }
+
+    /**
+     * Builds an entry for a rendered page under the policy's lifetimes.
+     *
+     * @param policy the page's cache policy
+     * @param html the rendered document
+     * @param shared false when the render holds per-visitor state (never stored)
+     */
+    public static CachedPage page(Policy policy, String html, boolean shared) {
+        byte[] body = html.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        byte[] gzip = shared && Compression.isEnabled() && body.length >= Compression.minBytes()
+            ? Compression.compress(body, 0, body.length, Compression.Encoding.GZIP) : null;
+        if (gzip != null && gzip.length >= body.length) {
+            gzip = null;
+        }
+        long now = System.currentTimeMillis();
+        long freshUntil = now + policy.ttl.toMillis();
+        return new CachedPage(body, gzip, freshUntil, freshUntil + policy.stale.toMillis(), shared);
+    }
+
+    // ==================== Lookup ====================
+
+    /**
+     * The entry key for a request: route, path and query, then the values
+     * of the policy's vary inputs, NUL-separated so segments can't run together.
+     */
+    public static String key(String route, Request request, Policy policy) {
+        StringBuilder sb = new StringBuilder(96).append(request.path());
+        String query = request.queryString();
+        if (query != null && !query.isEmpty()) {
+            sb.append('?').append(query);
+        }
+        sb.append("\0r=").append(route);
+        if (policy.locale) {
+            sb.append("\0l=").append(I18n.current().toLanguageTag());
+        }
+        if (policy.auth || policy.user) {
+            Principal principal = Auth.getPrincipal(request);
+            if (policy.user) {
+                sb.append("\0u=").append(principal != null ? principal.getId() : "");
+            } else {
+                sb.append("\0a=").append(principal != null ? '1' : '0');
+            }
+        }
+        for (String header : policy.headers) {
+            String value = request.header(header);
+            sb.append("\0h=").append(header).append(':').append(value != null ? value : "");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the entry for a key, fresh or within its stale window, or
+     * null on a miss.
+     */
+    public static CachedPage lookup(String key) {
+        CachedPage page;
+        synchronized (pages) {
+            page = pages.get(key);
+            if (page != null && page.isExpired(System.currentTimeMillis())) {
+                remove(key);
+                page = null;
+            }
+        }
+        if (page == null) {
+            Metrics.counter("cache.page.misses").increment();
+        } else if (page.isFresh()) {
+            Metrics.counter("cache.page.hits").increment();
+        } else {
+            Metrics.counter("cache.page.stale").increment();
+        }
+        return page;
+    }
+
+    private static CachedPage current(String key) {
+        synchronized (pages) {
+            CachedPage page = pages.get(key);
+            return page != null && page.isFresh() ? page : null;
+        }
+    }
+
+    /**
+     * Renders and stores a missing page, once per key: requests that miss
+     * while the render runs wait for it and share its result. A render that
+     * isn't {@linkplain CachedPage#isShared shared} (or fails) isn't handed
+     * to the waiting requests; they render for themselves.
+     *
+     * @param key the entry key
+     * @param render renders the page on the calling thread
+     * @return the rendered (or shared) page
+     */
+    public static CachedPage load(String key, Supplier<CachedPage> render) {
+        CompletableFuture<CachedPage> mine = new CompletableFuture<>();
+        CompletableFuture<CachedPage> running = loading.putIfAbsent(key, mine);
+        if (running != null) {
+            CachedPage shared = running.exceptionally(error -> null).join();
+            return shared != null && shared.shared ? shared : render.get();
+        }
+        try {
+            // A render that finished since the caller's lookup
+            CachedPage page = current(key);
+            if (page != null) {
+                mine.complete(page);
+                return page;
+            }
+            page = render.get();
+            store(key, page);
+            mine.complete(page);
+            return page;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    /**
+     * Replaces a stale entry, rendered by the request that found it: the
+     * first caller per entry renders on its own thread, with its request,
+     * session and middleware state, and gets the new page; requests arriving
+     * while it renders get the stale entry. A render that fails, or that
+     * isn't {@linkplain CachedPage#isShared shared}, leaves the stale entry
+     * in place for a later request to retry.
+     *
+     * @param key the entry key
+     * @param stale the entry found stale
+     * @param render renders the page on the calling thread
+     * @return the page to send: the new render, or the stale entry
+     */
+    public static CachedPage revalidate(String key, CachedPage stale, Supplier<CachedPage> render) {
+        if (!stale.refreshing.compareAndSet(false, true)) {
+            return stale;
+        }
+        CachedPage page;
+        try {
+            page = render.get();
+        } catch (RuntimeException e) {
+            stale.refreshing.set(false);
+            com.osmig.Jweb.framework.util.Log.warn("Page cache refresh failed for {}: {}",
+                key.replace('\0', ' '), e.getMessage());
+            return stale;
+        }
+        if (page.shared) {
+            store(key, page);
+        } else {
+            // This visitor's own page; the next request tries again
+            stale.refreshing.set(false);
+        }
+        return page;
+    }
+
+    // ==================== Store ====================
+
+    private static void store(String key, CachedPage page) {
+        if (!page.shared) {
+            return;
+        }
+        long size = page.size();
+        synchronized (pages) {
+            // An entry that would crowd out most of the store isn't kept
+            if (size > maxBytes / 4) {
+                remove(key);
+                return;
+            }
+            remove(key);
+            pages.put(key, page);
+            totalBytes += size;
+            evict(System.currentTimeMillis());
+        }
+    }
+
+    // Caller holds the lock
+    private static void evict(long now) {
+        Iterator<CachedPage> it = pages.values().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            CachedPage page = it.next();
+            it.remove();
+            totalBytes -= page.size();
+            if (!page.isExpired(now)) {
+                Metrics.counter("cache.page.evictions").increment();
+            }
+        }
+    }
+
+    // Caller holds the lock
+    private static void remove(String key) {
+        CachedPage removed = pages.remove(key);
+        if (removed != null) {
+            totalBytes -= removed.size();
+        }
+    }
+
+    /**
+     * Drops every entry for a path (all queries and variants), e.g. after
+     * the data it shows has changed.
+     */
+    public static void invalidate(String path) {
+        synchronized (pages) {
+            Iterator<Map.Entry<String, CachedPage>> it = pages.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, CachedPage> entry = it.next();
+                String key = entry.getKey();
+                if (key.startsWith(path)
+                        && (key.charAt(path.length()) == '?' || key.charAt(path.length()) == '\0')) {
+                    it.remove();
+                    totalBytes -= entry.getValue().size();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every cached page.
+     */
+    public static void clear() {
+        synchronized (pages) {
+            pages.clear();
+            totalBytes = 0;
+        }
+    }
+
+    /**
+     * Sets the total size (body and gzip bytes) the store may hold, evicting
+     * least recently used entries to fit.
+     */
+    public static void setMaxBytes(long bytes) {
+        maxBytes = bytes;
+        synchronized (pages) {
+            evict(System.currentTimeMillis());
+        }
+    }
+
+    /** Number of cached pages. */
+    public static int size() {
+        synchronized (pages) {
+            return pages.size();
+        }
+    }
+
+    /** Total bytes held by the cached pages. */
+    public static long bytes() {
+        synchronized (pages) {
+            return totalBytes;
+        }
+    }
+}
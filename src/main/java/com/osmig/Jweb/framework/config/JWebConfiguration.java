@@ -31,6 +31,54 @@ public class JWebConfiguration implements WebMvcConfigurer {
     @Value("${jweb.runtime.enabled:true}")
     private boolean runtimeEnabled;
 
+    @Value("${jweb.render.direct-output:true}")
+    private boolean renderDirectOutput;
+
+    @Value("${jweb.render.parallel-threshold:256}")
+    private int renderParallelThreshold;
+
+    @Value("${jweb.render.stream-timeout-ms:30000}")
+    private long renderStreamTimeoutMs;
+
+    @Value("${jweb.hydration.include-tree:false}")
+    private boolean hydrationIncludeTree;
+
+    @Value("${jweb.compression.enabled:true}")
+    private boolean compressionEnabled;
+
+    @Value("${jweb.compression.level:6}")
+    private int compressionLevel;
+
+    @Value("${jweb.compression.min-bytes:1024}")
+    private int compressionMinBytes;
+
+    @Value("${jweb.cache.fragments.max-entries:1000}")
+    private int fragmentCacheMaxEntries;
+
+    @Value("${jweb.cache.pages.max-bytes:33554432}")
+    private long pageCacheMaxBytes;
+
+    @Value("${jweb.state.max-contexts:10000}")
+    private int stateMaxContexts;
+
+    @Value("${jweb.state.max-bytes:67108864}")
+    private long stateMaxBytes;
+
+    @Value("${jweb.state.release-grace-ms:30000}")
+    private long stateReleaseGraceMs;
+
+    @Value("${jweb.websocket.frame-ms:16}")
+    private long websocketFrameMs;
+
+    @Value("${jweb.websocket.outbound.max-messages:1000}")
+    private int websocketOutboundMaxMessages;
+
+    @Value("${jweb.websocket.outbound.max-bytes:1048576}")
+    private long websocketOutboundMaxBytes;
+
+    @Value("${jweb.websocket.outbound.overflow:coalesce}")
+    private String websocketOutboundOverflow;
+
     @Value("${jweb.ai.enabled:false}")
     private boolean aiEnabled;
 
@@ -63,6 +111,32 @@ public class JWebConfiguration implements WebMvcConfigurer {
         return args -> {
             com.osmig.Jweb.framework.server.ErrorPage.setDebug(devDebug);
             com.osmig.Jweb.framework.js.JWebRuntime.setEnabled(runtimeEnabled);
+            com.osmig.Jweb.framework.server.JWebController.setDirectOutput(renderDirectOutput);
+            com.osmig.Jweb.framework.server.JWebController.setHydrateTree(hydrationIncludeTree);
+            com.osmig.Jweb.framework.async.Parallel.setThreshold(renderParallelThreshold);
+            com.osmig.Jweb.framework.async.Streamed.setDefaultTimeout(java.time.Duration.ofMillis(renderStreamTimeoutMs));
+            com.osmig.Jweb.framework.server.Compression.setEnabled(compressionEnabled);
+            com.osmig.Jweb.framework.server.Compression.setLevel(compressionLevel);
+            com.osmig.Jweb.framework.server.Compression.setMinBytes(compressionMinBytes);
+            com.osmig.Jweb.framework.server.JWebAssetsController.prepare();
+            com.osmig.Jweb.framework.cache.Cached.setMaxEntries(fragmentCacheMaxEntries);
+            com.osmig.Jweb.framework.cache.PageCache.setMaxBytes(pageCacheMaxBytes);
+            com.osmig.Jweb.framework.state.StateManager.setMaxContexts(stateMaxContexts);
+            com.osmig.Jweb.framework.state.StateManager.setMaxBytes(stateMaxBytes);
+            com.osmig.Jweb.framework.state.StateManager.setReleaseGraceMs(stateReleaseGraceMs);
+            com.osmig.Jweb.framework.websocket.RenderScheduler.setFrameMillis(websocketFrameMs);
+            com.osmig.Jweb.framework.websocket.OutboundQueue.setMaxMessages(websocketOutboundMaxMessages);
+            com.osmig.Jweb.framework.websocket.OutboundQueue.setMaxBytes(websocketOutboundMaxBytes);
+            com.osmig.Jweb.framework.websocket.OutboundQueue.setOverflowPolicy(
+                com.osmig.Jweb.framework.websocket.OutboundQueue.OverflowPolicy.named(websocketOutboundOverflow));
+            com.osmig.Jweb.framework.metrics.Metrics.gauge("state.contexts",
+                com.osmig.Jweb.framework.state.StateManager::contextCount);
+            com.osmig.Jweb.framework.metrics.Metrics.gauge("state.contexts.bytes",
+                com.osmig.Jweb.framework.state.StateManager::registryBytes);
+            com.osmig.Jweb.framework.metrics.Metrics.gauge("websocket.outbound.depth",
+                com.osmig.Jweb.framework.websocket.OutboundQueue::totalMessages);
+            com.osmig.Jweb.framework.metrics.Metrics.gauge("websocket.outbound.bytes",
+                com.osmig.Jweb.framework.websocket.OutboundQueue::totalBytes);
             com.osmig.Jweb.framework.ai.AI.configure(new com.osmig.Jweb.framework.ai.AiConfig()
                 .enabled(aiEnabled)
                 .baseUrl(aiBaseUrl)
@@ -75,14 +149,16 @@ public class JWebConfiguration implements WebMvcConfigurer {
 
     /**
      * Warms the rendering pipeline in the background right after startup:
-     * pre-renders every registered page route once (DSL static init, JIT,
-     * lazy beans) so the first real request doesn't pay that cost. With
+     * compiles every route's middleware chain, then pre-renders every
+     * registered page route once (DSL static init, JIT, lazy beans) so the
+     * first real request doesn't pay that cost. With
      * spring.main.lazy-initialization=true this is what makes the first
      * page view fast instead of taking seconds.
      */
     @Bean
     public ApplicationRunner jwebWarmup(JWeb jweb) {
         return args -> {
+            jweb.compileMiddleware();
             Thread warmup = new Thread(() -> {
                 for (var route : jweb.getPageRegistry().getRoutes()) {
                     try {
@@ -292,6 +292,26 @@ public final class Context {
         contextStack.remove();
     }
 
+    /**
+     * Returns a copy of the values provided on this thread, for rendering
+     * part of the same tree on another thread (see {@link #restore}).
+     *
+     * @return the current values
+     */
+    public static Map<String, Object> snapshot() {
+        return new HashMap<>(contextStack.get());
+    }
+
+    /**
+     * Replaces this thread's values with a {@link #snapshot} taken on
+     * another thread.
+     *
+     * @param snapshot the values to provide
+     */
+    public static void restore(Map<String, Object> snapshot) {
+        contextStack.set(new HashMap<>(snapshot));
+    }
+
     // ==================== Context Builder ====================
 
     /**
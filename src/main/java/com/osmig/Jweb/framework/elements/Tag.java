@@ -16,7 +16,9 @@ import com.osmig.Jweb.framework.vdom.VText;
 import java.util.function.Consumer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -40,48 +42,82 @@ import java.util.function.Function;
  */
 public class Tag implements Element {
 
+    private static final String[] NO_STRINGS = new String[0];
+    private static final VNode[] NO_CHILDREN = new VNode[0];
+
     private final String tagName;
-    private final Map<String, String> attributes;
-    private final List<VNode> children;
+    // Attributes as parallel name/value arrays, children as an array; handed
+    // to the VElement as-is by toVNode()
+    private String[] attrNames = NO_STRINGS;
+    private String[] attrValues = NO_STRINGS;
+    private int attrCount;
+    private VNode[] children = NO_CHILDREN;
+    private int childCount;
+    // Set once toVNode() has given the arrays away; the next change copies them
+    private boolean shared;
 
     public Tag(String tagName) {
-        this(tagName, new LinkedHashMap<>(), new ArrayList<>());
+        this.tagName = tagName;
     }
 
     public Tag(String tagName, Attributes attributes) {
-        this(tagName, new LinkedHashMap<>(attributes.toMap()), new ArrayList<>());
+        this(tagName, attributes.toMap(), List.of());
     }
 
     public Tag(String tagName, List<VNode> children) {
-        this(tagName, new LinkedHashMap<>(), new ArrayList<>(children));
+        this(tagName, Map.of(), children);
     }
 
     public Tag(String tagName, Attributes attributes, List<VNode> children) {
-        this(tagName, new LinkedHashMap<>(attributes.toMap()), new ArrayList<>(children));
+        this(tagName, attributes.toMap(), children);
     }
 
     public Tag(String tagName, Map<String, String> attributes, List<VNode> children) {
         this.tagName = tagName;
-        this.attributes = new LinkedHashMap<>(attributes);
-        this.children = new ArrayList<>(children);
+        if (!attributes.isEmpty()) {
+            attrNames = new String[attributes.size()];
+            attrValues = new String[attributes.size()];
+            for (Map.Entry<String, String> attr : attributes.entrySet()) {
+                attrNames[attrCount] = attr.getKey();
+                attrValues[attrCount++] = attr.getValue();
+            }
+        }
+        if (!children.isEmpty()) {
+            this.children = children.toArray(NO_CHILDREN);
+            this.childCount = this.children.length;
+        }
     }
 
     @Override
     public VNode toVNode() {
-        return VElement.of(tagName, attributes, children);
+        shared = true;
+        return VElement.adopt(tagName, attrNames, attrValues, attrCount, children, childCount);
     }
 
     // ==================== Attribute Methods (Fluent) ====================
 
     public Tag attr(String name, String value) {
-        attributes.put(name, value);
+        unshare();
+        int index = indexOfAttribute(name);
+        if (index >= 0) {
+            attrValues[index] = value;
+            return this;
+        }
+        if (attrCount == attrNames.length) {
+            int capacity = Math.max(4, attrCount * 2);
+            attrNames = Arrays.copyOf(attrNames, capacity);
+            attrValues = Arrays.copyOf(attrValues, capacity);
+        }
+        attrNames[attrCount] = name;
+        attrValues[attrCount++] = value;
         return this;
     }
 
     public Tag id(String id) { return attr("id", id); }
     public Tag class_(String className) { return attr("class", className); }
     public Tag addClass(String className) {
-        String existing = attributes.getOrDefault("class", "");
+        String existing = getAttribute("class");
+        if (existing == null) existing = "";
         return attr("class", existing.isEmpty() ? className : existing + " " + className);
     }
 
@@ -245,7 +281,7 @@ public class Tag implements Element {
      * div().text("Hello") -> <div>Hello</div>
      */
     public Tag text(String content) {
-        children.add(new VText(content));
+        addChild(new VText(content));
         return this;
     }
 
@@ -255,7 +291,7 @@ public class Tag implements Element {
      */
     @Deprecated
     public Tag raw(String html) {
-        children.add(TextElement.raw(html).toVNode());
+        addChild(TextElement.raw(html).toVNode());
         return this;
     }
 
@@ -269,7 +305,7 @@ public class Tag implements Element {
      * @return this tag for chaining
      */
     public Tag unsafeHtml(String html) {
-        children.add(TextElement.raw(html).toVNode());
+        addChild(TextElement.raw(html).toVNode());
         return this;
     }
 
@@ -279,7 +315,7 @@ public class Tag implements Element {
      */
     public Tag child(Element child) {
         if (child != null) {
-            children.add(child.toVNode());
+            addChild(child.toVNode());
         }
         return this;
     }
@@ -291,7 +327,7 @@ public class Tag implements Element {
     public Tag children(Element... elements) {
         for (Element element : elements) {
             if (element != null) {
-                children.add(element.toVNode());
+                addChild(element.toVNode());
             }
         }
         return this;
@@ -303,7 +339,7 @@ public class Tag implements Element {
     public Tag children(Iterable<? extends Element> elements) {
         for (Element element : elements) {
             if (element != null) {
-                children.add(element.toVNode());
+                addChild(element.toVNode());
             }
         }
         return this;
@@ -317,7 +353,7 @@ public class Tag implements Element {
         for (T item : items) {
             Element element = mapper.apply(item);
             if (element != null) {
-                children.add(element.toVNode());
+                addChild(element.toVNode());
             }
         }
         return this;
@@ -331,7 +367,7 @@ public class Tag implements Element {
         if (condition) {
             Element el = element.get();
             if (el != null) {
-                children.add(el.toVNode());
+                addChild(el.toVNode());
             }
         }
         return this;
@@ -346,7 +382,7 @@ public class Tag implements Element {
                       java.util.function.Supplier<Element> ifFalse) {
         Element el = condition ? ifTrue.get() : ifFalse.get();
         if (el != null) {
-            children.add(el.toVNode());
+            addChild(el.toVNode());
         }
         return this;
     }
@@ -376,8 +412,55 @@ public class Tag implements Element {
     // ==================== Getters ====================
 
     public String getTagName() { return tagName; }
-    public Map<String, String> getAttributes() { return attributes; }
-    public List<VNode> getChildren() { return children; }
+
+    /** Value of the named attribute, or null if absent. */
+    public String getAttribute(String name) {
+        int index = indexOfAttribute(name);
+        return index >= 0 ? attrValues[index] : null;
+    }
+
+    /** Snapshot of the attributes, in declaration order. */
+    public Map<String, String> getAttributes() {
+        Map<String, String> map = new LinkedHashMap<>(attrCount * 2);
+        for (int i = 0; i < attrCount; i++) {
+            map.put(attrNames[i], attrValues[i]);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    /** Read-only snapshot of the children. */
+    public List<VNode> getChildren() {
+        return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(children, childCount)));
+    }
+
+    // ==================== Storage ====================
+
+    private int indexOfAttribute(String name) {
+        for (int i = 0; i < attrCount; i++) {
+            if (attrNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void addChild(VNode child) {
+        unshare();
+        if (childCount == children.length) {
+            children = Arrays.copyOf(children, Math.max(4, childCount * 2));
+        }
+        children[childCount++] = child;
+    }
+
+    // Copy-on-write after toVNode(): the rendered VElement owns the old arrays
+    private void unshare() {
+        if (shared) {
+            attrNames = Arrays.copyOf(attrNames, attrCount);
+            attrValues = Arrays.copyOf(attrValues, attrCount);
+            children = Arrays.copyOf(children, childCount);
+            shared = false;
+        }
+    }
 
     // ==================== Static Helpers ====================
 
@@ -444,8 +527,34 @@ public class Tag implements Element {
      * This enables: div(class_("foo"), id("bar"), p("text"))
      */
     public static Tag create(String tagName, Object... items) {
-        Map<String, String> attrs = extractAttrs(items);
-        List<VNode> children = toVNodes(items);
-        return new Tag(tagName, attrs, children);
+        // One pass, straight into the tag's arrays (same result as
+        // extractAttrs + toVNodes without the intermediate map and list)
+        Tag tag = new Tag(tagName);
+        for (Object item : items) {
+            if (item == null) continue;
+            if (item instanceof Attr attr) {
+                tag.attr(attr.name(), attr.value());
+            } else if (item instanceof Attributes attributes) {
+                attributes.toMap().forEach(tag::attr);
+            } else if (item instanceof InlineStyle inlineStyle) {
+                inlineStyle.toMap().forEach(tag::attr);
+            } else if (item instanceof com.osmig.Jweb.framework.styles.Style<?> style) {
+                tag.attr("style", style.build());
+            } else if (item instanceof Iterable<?> iterable) {
+                for (Object subItem : iterable) {
+                    if (subItem instanceof Attr attr) {
+                        tag.attr(attr.name(), attr.value());
+                    } else if (subItem instanceof Attributes attributes) {
+                        attributes.toMap().forEach(tag::attr);
+                    } else if (!(subItem instanceof InlineStyle)
+                            && !(subItem instanceof com.osmig.Jweb.framework.styles.Style)) {
+                        tag.addChild(toVNode(subItem));
+                    }
+                }
+            } else {
+                tag.addChild(toVNode(item));
+            }
+        }
+        return tag;
     }
 }
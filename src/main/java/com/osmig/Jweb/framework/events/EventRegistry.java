@@ -12,13 +12,33 @@ import java.util.function.Consumer;
  *
  * <p>The registry maintains handlers per session, so different users
  * have isolated handler namespaces.</p>
+ *
+ * <p>A session's handlers normally go with its state context. Sessions no
+ * live context owns expire after {@link #SESSION_TTL_MS} without use,
+ * tracked in a {@link com.osmig.Jweb.framework.util.TimingWheel} driven by
+ * the state cleanup tick.</p>
  */
 public final class EventRegistry {
 
     private static final AtomicLong handlerIdCounter = new AtomicLong(0);
 
-    // Session ID -> Handler ID -> Handler
-    private static final Map<String, Map<String, EventHandler>> sessionHandlers = new ConcurrentHashMap<>();
+    // Session ID -> its handlers
+    private static final Map<String, Session> sessionHandlers = new ConcurrentHashMap<>();
+
+    // Idle time after which a session no context owns is dropped (5 minutes)
+    static final long SESSION_TTL_MS = 5 * 60 * 1000;
+
+    private static final com.osmig.Jweb.framework.util.TimingWheel<String> idleSessions =
+            new com.osmig.Jweb.framework.util.TimingWheel<>(1000, 512, id -> {
+                Session session = sessionHandlers.get(id);
+                return session != null ? session.lastUsed + SESSION_TTL_MS : 0;
+            });
+
+    /** Handler ID -> handler, and when the session was last used. */
+    private static final class Session {
+        private final Map<String, EventHandler> handlers = new ConcurrentHashMap<>();
+        private volatile long lastUsed = System.currentTimeMillis();
+    }
 
     // For simple single-session use (e.g., development)
     private static final Map<String, EventHandler> globalHandlers = new ConcurrentHashMap<>();
@@ -67,9 +87,16 @@ public final class EventRegistry {
         String id = newHandlerId();
         EventHandler eventHandler = new EventHandler(id, eventType, handler);
 
-        sessionHandlers
-            .computeIfAbsent(sessionId, k -> new ConcurrentHashMap<>())
-            .put(id, eventHandler);
+        Session session = sessionHandlers.get(sessionId);
+        if (session == null) {
+            Session created = new Session();
+            session = sessionHandlers.putIfAbsent(sessionId, created);
+            if (session == null) {
+                session = created;
+                idleSessions.schedule(sessionId);
+            }
+        }
+        session.handlers.put(id, eventHandler);
 
         return eventHandler;
     }
@@ -92,10 +119,11 @@ public final class EventRegistry {
      * @return the handler, or null if not found
      */
     public static EventHandler get(String sessionId, String handlerId) {
-        Map<String, EventHandler> handlers = sessionHandlers.get(sessionId);
-        if (handlers != null) {
-            EventHandler handler = handlers.get(handlerId);
+        Session session = sessionHandlers.get(sessionId);
+        if (session != null) {
+            EventHandler handler = session.handlers.get(handlerId);
             if (handler != null) {
+                session.lastUsed = System.currentTimeMillis();
                 return handler;
             }
         }
@@ -143,7 +171,47 @@ public final class EventRegistry {
      * @param sessionId the session ID
      */
     public static void clearSession(String sessionId) {
-        sessionHandlers.remove(sessionId);
+        if (sessionHandlers.remove(sessionId) != null) {
+            idleSessions.cancel(sessionId);
+        }
+    }
+
+    /**
+     * Drops sessions idle for longer than {@link #SESSION_TTL_MS} that no
+     * live state context owns (a live context keeps its session, and clears
+     * it when it goes). Called every tick by the state cleanup.
+     *
+     * @param now   the current time in epoch milliseconds
+     * @param limit the most sessions to handle in this call
+     */
+    public static void expireIdleSessions(long now, int limit) {
+        int expired = 0;
+        for (String sessionId : idleSessions.advance(now, limit)) {
+            Session session = sessionHandlers.get(sessionId);
+            if (session == null) {
+                continue;
+            }
+            if (com.osmig.Jweb.framework.state.StateManager.hasContext(sessionId)) {
+                session.lastUsed = now;
+                idleSessions.schedule(sessionId);
+            } else if (sessionHandlers.remove(sessionId, session)) {
+                expired++;
+            }
+        }
+        if (expired > 0) {
+            com.osmig.Jweb.framework.metrics.Metrics.counter("events.sessions.expired").increment(expired);
+        }
+    }
+
+    /**
+     * Gets the number of handlers registered for a session.
+     *
+     * @param sessionId the session ID
+     * @return the handler count
+     */
+    public static int handlerCount(String sessionId) {
+        Session session = sessionHandlers.get(sessionId);
+        return session != null ? session.handlers.size() : 0;
     }
 
     /**
@@ -159,7 +227,9 @@ public final class EventRegistry {
      */
     public static void clearAll() {
         globalHandlers.clear();
-        sessionHandlers.clear();
+        for (String sessionId : sessionHandlers.keySet()) {
+            clearSession(sessionId);
+        }
     }
 
     /**
@@ -169,8 +239,8 @@ public final class EventRegistry {
      */
     public static int size() {
         int count = globalHandlers.size();
-        for (Map<String, EventHandler> handlers : sessionHandlers.values()) {
-            count += handlers.size();
+        for (Session session : sessionHandlers.values()) {
+            count += session.handlers.size();
         }
         return count;
     }
@@ -2,6 +2,7 @@ package com.osmig.Jweb.framework.hydration;
 
 import com.osmig.Jweb.framework.state.State;
 import com.osmig.Jweb.framework.state.StateManager;
+import com.osmig.Jweb.framework.vdom.HtmlSink;
 import com.osmig.Jweb.framework.vdom.VNode;
 
 import java.util.ArrayList;
@@ -16,16 +17,33 @@ import java.util.List;
  *   <li>Initial state values (JSON)</li>
  *   <li>Session/context ID</li>
  * </ul>
+ *
+ * <p>The script tag carries the compact encoding (format version 2),
+ * written straight into the page by {@link #writeScriptTag}:</p>
+ * <pre>
+ * {"v":2,"c":"ctx_...","s":[{"id":"state_1","value":0}],"h":["h1"],"n":[...],"t":[...]}
+ * </pre>
+ * <p>{@code c} is the context ID, {@code s} the states, {@code h} the
+ * handlers (omitted when empty) and {@code n}/{@code t} the VNode tree and
+ * its string table (see {@link VNodeSerializer#toCompactJson}). The
+ * JWebRuntime expands it back to the {@link #toJson} shape.</p>
  */
 public class HydrationData {
 
+    private static final String SCRIPT_OPEN = "<script id=\"__JWEB_DATA__\" type=\"application/json\">";
+    private static final String SCRIPT_CLOSE = "</script>";
+
+    private final VNode vnode;
     private final String vnodeJson;
+    private final List<State<?>> states;
     private final String stateJson;
     private final String contextId;
     private final List<String> handlers;
 
     private HydrationData(Builder builder) {
+        this.vnode = builder.vnode;
         this.vnodeJson = builder.vnodeJson;
+        this.states = builder.states;
         this.stateJson = builder.stateJson;
         this.contextId = builder.contextId;
         this.handlers = new ArrayList<>(builder.handlers);
@@ -44,7 +62,7 @@ public class HydrationData {
 
         StateManager.StateContext context = StateManager.getContext();
         if (context != null) {
-            builder.contextId(context.getSessionId());
+            builder.contextId(context.isActive() ? context.getSessionId() : null);
             builder.states(new ArrayList<>(context.getStates().values()));
         }
 
@@ -52,11 +70,19 @@ public class HydrationData {
     }
 
     public String getVnodeJson() {
-        return vnodeJson;
+        return vnode != null ? VNodeSerializer.toJson(vnode) : vnodeJson;
     }
 
     public String getStateJson() {
-        return stateJson;
+        if (states == null) {
+            return stateJson;
+        }
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < states.size(); i++) {
+            if (i > 0) sb.append(",");
+            sb.append(states.get(i).toJson());
+        }
+        return sb.append("]").toString();
     }
 
     public String getContextId() {
@@ -71,18 +97,66 @@ public class HydrationData {
      * Generates a script tag containing hydration data.
      */
     public String toScriptTag() {
-        // '<' can only occur inside JSON strings, so escaping it globally is
-        // safe and prevents "</script>" in state values from terminating the
-        // script block (XSS).
-        return "<script id=\"__JWEB_DATA__\" type=\"application/json\">" +
-                toJson().replace("<", "\\u003C") +
-                "</script>";
+        HtmlSink sink = new HtmlSink(256);
+        writeScriptTag(sink);
+        return sink.toString();
     }
 
     /**
-     * Generates the full hydration data as JSON.
+     * Writes the script tag with the compact payload directly to the sink.
+     * Strings are escaped as they are written ({@code <} included, so
+     * {@code "</script>"} in a state value can't end the block), with no
+     * intermediate JSON document.
+     */
+    public void writeScriptTag(HtmlSink out) {
+        out.append(SCRIPT_OPEN).append("{\"v\":2,\"c\":");
+        if (contextId != null) {
+            VNodeSerializer.writeJsonString(contextId, out);
+        } else {
+            out.append("null");
+        }
+
+        out.append(",\"s\":");
+        if (states != null) {
+            out.append('[');
+            for (int i = 0; i < states.size(); i++) {
+                if (i > 0) out.append(',');
+                VNodeSerializer.writeJsonSafe(states.get(i).toJson(), out);
+            }
+            out.append(']');
+        } else {
+            VNodeSerializer.writeJsonSafe(stateJson != null ? stateJson : "[]", out);
+        }
+
+        if (!handlers.isEmpty()) {
+            out.append(",\"h\":[");
+            for (int i = 0; i < handlers.size(); i++) {
+                if (i > 0) out.append(',');
+                VNodeSerializer.writeJsonString(handlers.get(i), out);
+            }
+            out.append(']');
+        }
+
+        if (vnode != null) {
+            StringTable strings = new StringTable();
+            out.append(",\"n\":");
+            VNodeSerializer.writeCompact(vnode, strings, out);
+            out.append(",\"t\":");
+            strings.writeTo(out);
+        } else if (vnodeJson != null) {
+            // Pre-serialized tree: passed through in the verbose format
+            out.append(",\"vnode\":");
+            VNodeSerializer.writeJsonSafe(vnodeJson, out);
+        }
+        out.append('}').append(SCRIPT_CLOSE);
+    }
+
+    /**
+     * Generates the full hydration data as (verbose) JSON.
      */
     public String toJson() {
+        String vnodeJson = getVnodeJson();
+        String stateJson = getStateJson();
         StringBuilder sb = new StringBuilder();
         sb.append("{");
         sb.append("\"contextId\":").append(contextId != null ? "\"" + contextId + "\"" : "null");
@@ -101,36 +175,35 @@ public class HydrationData {
      * Builder for HydrationData.
      */
     public static class Builder {
+        private VNode vnode;
         private String vnodeJson;
+        private List<State<?>> states;
         private String stateJson = "[]";
         private String contextId;
         private List<String> handlers = new ArrayList<>();
 
+        /** The tree, serialized when the payload is written. */
         public Builder vnode(VNode vnode) {
-            this.vnodeJson = VNodeSerializer.toJson(vnode);
+            this.vnode = vnode;
+            this.vnodeJson = null;
             return this;
         }
 
         public Builder vnodeJson(String json) {
             this.vnodeJson = json;
+            this.vnode = null;
             return this;
         }
 
+        /** The states, serialized when the payload is written. */
         public Builder states(List<State<?>> states) {
-            StringBuilder sb = new StringBuilder("[");
-            boolean first = true;
-            for (State<?> state : states) {
-                if (!first) sb.append(",");
-                sb.append(state.toJson());
-                first = false;
-            }
-            sb.append("]");
-            this.stateJson = sb.toString();
+            this.states = states;
             return this;
         }
 
         public Builder stateJson(String json) {
             this.stateJson = json;
+            this.states = null;
             return this;
         }
 
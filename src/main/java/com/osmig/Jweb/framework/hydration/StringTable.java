@@ -0,0 +1,43 @@
+package com.osmig.Jweb.framework.hydration;
+
+import com.osmig.Jweb.framework.vdom.HtmlSink;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Strings of a compact hydration payload (tag and attribute names), each
+ * stored once and referenced by index.
+ */
+final class StringTable {
+
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    /** Index of the string, adding it on first use. */
+    int indexOf(String s) {
+        Integer index = indexes.get(s);
+        if (index == null) {
+            index = strings.size();
+            indexes.put(s, index);
+            strings.add(s);
+        }
+        return index;
+    }
+
+    boolean isEmpty() {
+        return strings.isEmpty();
+    }
+
+    /** Writes the table as a JSON array of strings. */
+    void writeTo(HtmlSink out) {
+        out.append('[');
+        for (int i = 0; i < strings.size(); i++) {
+            if (i > 0) out.append(',');
+            VNodeSerializer.writeJsonString(strings.get(i), out);
+        }
+        out.append(']');
+    }
+}
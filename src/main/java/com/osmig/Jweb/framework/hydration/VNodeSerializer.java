@@ -1,5 +1,6 @@
 package com.osmig.Jweb.framework.hydration;
 
+import com.osmig.Jweb.framework.vdom.HtmlSink;
 import com.osmig.Jweb.framework.vdom.VElement;
 import com.osmig.Jweb.framework.vdom.VFragment;
 import com.osmig.Jweb.framework.vdom.VNode;
@@ -30,6 +31,23 @@ import java.util.Map;
  * // VFragment
  * {"type": "fragment", "children": [...]}
  * </pre>
+ *
+ * <p>{@link #toCompactJson} writes the smaller format used in hydration
+ * payloads: tag and attribute names go into a string table and are
+ * referenced by index, and nodes are arrays with short type codes:</p>
+ * <pre>
+ * {"t": ["div", "class", "br"],
+ *  "n": [0, [1, "card", 2, 1], "Hello", [-1, "&lt;b&gt;raw&lt;/b&gt;"], [-2, ...]]}
+ *
+ * // element:  [tag, attrs, ...children]  attrs: [name, value, ...] or 0;
+ * //           a value of 1 is a boolean attribute
+ * // text:     "content"
+ * // raw:      [-1, "html"]
+ * // fragment: [-2, ...children]
+ * </pre>
+ *
+ * <p>Both formats escape {@code <} so the JSON is safe inside an inline
+ * script tag.</p>
  */
 public final class VNodeSerializer {
 
@@ -53,6 +71,133 @@ public final class VNodeSerializer {
         return sb.toString();
     }
 
+    /**
+     * Serializes a VNode to the compact format ({@code {"t":[...],"n":...}}).
+     *
+     * @param node the node to serialize
+     * @return compact JSON string representation
+     */
+    public static String toCompactJson(VNode node) {
+        if (node == null) {
+            return "null";
+        }
+
+        StringTable strings = new StringTable();
+        HtmlSink out = new HtmlSink();
+        out.append("{\"n\":");
+        writeCompact(node, strings, out);
+        out.append(",\"t\":");
+        strings.writeTo(out);
+        return out.append('}').toString();
+    }
+
+    // ==================== Compact format ====================
+
+    // Type codes of the non-element nodes (elements start with a tag index)
+    private static final int RAW = -1;
+    private static final int FRAGMENT = -2;
+
+    /**
+     * Writes a node in the compact format straight to the output, adding
+     * its tag and attribute names to the string table.
+     */
+    static void writeCompact(VNode node, StringTable strings, HtmlSink out) {
+        switch (node) {
+            case VElement element -> {
+                out.append('[').append(Integer.toString(strings.indexOf(element.getTag())));
+                int attrCount = element.attributeCount();
+                if (attrCount == 0) {
+                    out.append(",0");
+                } else {
+                    out.append(",[");
+                    for (int i = 0; i < attrCount; i++) {
+                        if (i > 0) out.append(',');
+                        out.append(Integer.toString(strings.indexOf(element.attributeName(i)))).append(',');
+                        String value = element.attributeValue(i);
+                        if (value == null) {
+                            out.append('1');  // Boolean attribute
+                        } else {
+                            writeJsonString(value, out);
+                        }
+                    }
+                    out.append(']');
+                }
+                for (int i = 0; i < element.childCount(); i++) {
+                    out.append(',');
+                    writeCompact(element.child(i), strings, out);
+                }
+                out.append(']');
+            }
+            case VText text -> writeJsonString(text.content(), out);
+            case VRaw raw -> {
+                out.append('[').append(Integer.toString(RAW)).append(',');
+                writeJsonString(raw.html(), out);
+                out.append(']');
+            }
+            case VFragment fragment -> {
+                out.append('[').append(Integer.toString(FRAGMENT));
+                for (VNode child : fragment.children()) {
+                    out.append(',');
+                    writeCompact(child, strings, out);
+                }
+                out.append(']');
+            }
+        }
+    }
+
+    /**
+     * Writes a quoted JSON string, escaping inline: unescaped runs are
+     * copied in bulk, and {@code <} is written as a unicode escape.
+     */
+    static void writeJsonString(String s, HtmlSink out) {
+        out.append('"');
+        if (s != null) {
+            int start = 0;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < ' ' || c == '\\' || c == '"' || c == '<') {
+                    if (i > start) out.append(s, start, i);
+                    appendEscaped(c, out);
+                    start = i + 1;
+                }
+            }
+            if (start < s.length()) out.append(s, start, s.length());
+        }
+        out.append('"');
+    }
+
+    /**
+     * Copies JSON produced elsewhere to the output, escaping {@code <} (which
+     * can only occur inside its strings) so it can't close the script tag.
+     */
+    static void writeJsonSafe(String json, HtmlSink out) {
+        int start = 0;
+        int lt;
+        while ((lt = json.indexOf('<', start)) >= 0) {
+            out.append(json, start, lt).append("\\u003C");
+            start = lt + 1;
+        }
+        out.append(json, start, json.length());
+    }
+
+    private static void appendEscaped(char c, HtmlSink out) {
+        switch (c) {
+            case '\\' -> out.append("\\\\");
+            case '"' -> out.append("\\\"");
+            case '\n' -> out.append("\\n");
+            case '\r' -> out.append("\\r");
+            case '\t' -> out.append("\\t");
+            case '\b' -> out.append("\\b");
+            case '\f' -> out.append("\\f");
+            case '<' -> out.append("\\u003C");
+            default -> out.append("\\u00")
+                .append(HEX_DIGITS[(c >> 4) & 0xF])
+                .append(HEX_DIGITS[c & 0xF]);
+        }
+    }
+
+    // ==================== Verbose format ====================
+
     private static void serialize(VNode node, StringBuilder sb) {
         switch (node) {
             case VElement element -> serializeElement(element, sb);
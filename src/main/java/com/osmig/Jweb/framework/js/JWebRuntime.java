@@ -62,7 +62,8 @@ public final class JWebRuntime {
                 var dataEl=document.getElementById('__JWEB_DATA__');
                 if(dataEl){
                     try{
-                        this.data=JSON.parse(dataEl.textContent);
+                        var data=JSON.parse(dataEl.textContent);
+                        this.data=data.v===2?this.expandHydration(data):data;
                         if(this.data.state){
                             var self=this;
                             this.data.state.forEach(function(s){
@@ -79,6 +80,36 @@ public final class JWebRuntime {
                 this.initSwaps();
             },
 
+            // Compact payload (v2) -> {contextId,state,handlers,vnode}
+            expandHydration:function(d){
+                return {
+                    contextId:d.c===undefined?null:d.c,
+                    state:d.s||[],
+                    handlers:d.h||[],
+                    vnode:d.n===undefined?(d.vnode||null):this.decodeVNode(d.n,d.t||[])
+                };
+            },
+
+            // Element: [tag,attrs,...children], text: "...", raw: [-1,html], fragment: [-2,...children]
+            decodeVNode:function(n,t){
+                if(typeof n==='string')return {type:'text',content:n};
+                if(n[0]===-1)return {type:'raw',html:n[1]};
+                var node,i;
+                if(n[0]===-2){
+                    node={type:'fragment',children:[]};i=1;
+                }else{
+                    node={type:'element',tag:t[n[0]]};i=2;
+                    var a=n[1];
+                    if(a){
+                        node.attrs={};
+                        for(var k=0;k<a.length;k+=2)node.attrs[t[a[k]]]=a[k+1]===1?true:a[k+1];
+                    }
+                    if(n.length>2)node.children=[];
+                }
+                for(;i<n.length;i++)node.children.push(this.decodeVNode(n[i],t));
+                return node;
+            },
+
             initSwaps:function(){
                 var self=this;
                 document.addEventListener('click',function(e){
@@ -171,7 +202,9 @@ public final class JWebRuntime {
                 var protocol=window.location.protocol==='https:'?'wss:':'ws:';
                 var wsUrl=protocol+'//'+window.location.host+'/jweb';
                 try{
-                    this.ws=new WebSocket(wsUrl);
+                    // Protocol v2: one frame per render; servers without it pick v1
+                    this.ws=new WebSocket(wsUrl,['jweb.v2','jweb.v1']);
+                    this.ws.binaryType='arraybuffer';
                     var self=this;
                     this.ws.onopen=function(){
                         console.log('[JWeb] WebSocket connected');
@@ -182,7 +215,8 @@ public final class JWebRuntime {
                         }
                     };
                     this.ws.onmessage=function(event){
-                        self.handleMessage(JSON.parse(event.data));
+                        var data=typeof event.data==='string'?event.data:new TextDecoder().decode(event.data);
+                        self.handleMessage(JSON.parse(data));
                     };
                     this.ws.onclose=function(){
                         console.log('[JWeb] WebSocket disconnected');
@@ -222,6 +256,13 @@ public final class JWebRuntime {
                     case 'initState':
                         this.handleStateUpdate(msg.states);
                         break;
+                    case 'frame':
+                        this.handleStateUpdate(msg.states);
+                        if(msg.updates)this.handleDomUpdate(msg);
+                        if(msg.handled)msg.handled.forEach(function(h){
+                            document.dispatchEvent(new CustomEvent('jweb:eventHandled',{detail:{handler:h.handler}}));
+                        });
+                        break;
                     case 'eventHandled':
                         document.dispatchEvent(new CustomEvent('jweb:eventHandled',{detail:{handler:msg.handler}}));
                         break;
@@ -276,9 +317,13 @@ public final class JWebRuntime {
 
             handleDomUpdate:function(msg){
                 if(msg.updates&&Array.isArray(msg.updates)){
+                    var self=this;
                     msg.updates.forEach(function(update){
                         var target=document.getElementById(update.id);
-                        if(target){
+                        if(!target)return;
+                        if(update.ops){
+                            if(!self.applyPatches(target,update.ops))self.resync(update.id);
+                        }else{
                             target.outerHTML=update.html;
                         }
                     });
@@ -390,6 +435,82 @@ public final class JWebRuntime {
                 }
             },
 
+            applyPatches:function(root,ops){
+                for(var i=0;i<ops.length;i++){
+                    if(!this.applyPatch(root,ops[i]))return false;
+                }
+                return true;
+            },
+
+            applyPatch:function(root,p){
+                var node=root;
+                for(var i=0;i<p.path.length;i++){
+                    node=node.childNodes[p.path[i]];
+                    if(!node)return false;
+                    // the parser or a script reshaped the DOM: don't patch the wrong node
+                    if(p.tags&&p.tags[i]&&node.nodeName.toLowerCase()!==p.tags[i])return false;
+                }
+                var child;
+                switch(p.op){
+                    case 'text':
+                        if(node.nodeType!==3)return false;
+                        node.nodeValue=p.value;
+                        return true;
+                    case 'attr':
+                        if(node.nodeType!==1)return false;
+                        node.setAttribute(p.name,p.value);
+                        this.syncProperty(node,p.name,p.value);
+                        return true;
+                    case 'removeAttr':
+                        if(node.nodeType!==1)return false;
+                        node.removeAttribute(p.name);
+                        this.syncProperty(node,p.name,null);
+                        return true;
+                    case 'insert':
+                        if(node.nodeType!==1)return false;
+                        node.insertBefore(this.parseHtml(p.html),node.childNodes[p.index]||null);
+                        return true;
+                    case 'move':
+                        child=node.childNodes[p.from];
+                        if(!child)return false;
+                        node.insertBefore(child,node.childNodes[p.index]||null);
+                        return true;
+                    case 'remove':
+                        child=node.childNodes[p.index];
+                        if(!child)return false;
+                        node.removeChild(child);
+                        return true;
+                    case 'replace':
+                        node.replaceWith(this.parseHtml(p.html));
+                        return true;
+                    case 'html':
+                        if(node.nodeType!==1)return false;
+                        node.innerHTML=p.html;
+                        return true;
+                }
+                return false;
+            },
+
+            parseHtml:function(html){
+                var tpl=document.createElement('template');
+                tpl.innerHTML=html;
+                return tpl.content;
+            },
+
+            syncProperty:function(el,name,value){
+                // attributes only set defaults; keep live form state in step
+                if(name==='value'&&'value' in el&&el!==document.activeElement){
+                    el.value=value==null?'':value;
+                }else if(name==='checked'||name==='selected'){
+                    el[name]=value!=null;
+                }
+            },
+
+            resync:function(componentId){
+                if(!this.connected)return;
+                this.ws.send(JSON.stringify({type:'resync',id:componentId,contextId:this.data?this.data.contextId:null}));
+            },
+
             getState:function(stateId){
                 return this.state[stateId];
             },
@@ -0,0 +1,46 @@
+package com.osmig.Jweb.framework.js;
+
+/**
+ * Conservative whitespace and comment stripping for the framework's own
+ * scripts.
+ *
+ * <p>Works line by line: indentation and blank lines go, and so do
+ * {@code //} comments on lines without quotes or other slashes, so string
+ * and regex literals can't be corrupted. Line breaks are kept, so automatic
+ * semicolon insertion behaves as before. (Real minification belongs in a
+ * build step.)</p>
+ */
+public final class JsMinifier {
+
+    private JsMinifier() {
+        // Static utility class
+    }
+
+    /**
+     * Returns the script with indentation, blank lines and safe-to-remove
+     * comments stripped.
+     */
+    public static String minify(String js) {
+        if (js == null || js.isEmpty()) {
+            return js;
+        }
+        StringBuilder out = new StringBuilder(js.length());
+        for (String line : js.split("\n")) {
+            String trimmed = line.strip();
+            if (trimmed.isEmpty()) continue;
+            boolean hasQuotes = trimmed.indexOf('"') >= 0 || trimmed.indexOf('\'') >= 0 || trimmed.indexOf('`') >= 0;
+            if (!hasQuotes) {
+                if (trimmed.startsWith("//")) continue;
+                int comment = trimmed.indexOf("//");
+                // A slash before the comment could open a regex literal: keep the line
+                if (comment > 0 && trimmed.lastIndexOf('/', comment - 1) < 0) {
+                    trimmed = trimmed.substring(0, comment).strip();
+                }
+                if (trimmed.isEmpty()) continue;
+            }
+            if (out.length() > 0) out.append('\n');
+            out.append(trimmed);
+        }
+        return out.toString();
+    }
+}
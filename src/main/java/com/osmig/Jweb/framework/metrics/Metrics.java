@@ -160,6 +160,16 @@ public final class Metrics {
             updateMax(nanos);
         }
 
+        /**
+         * Records a duration in nanoseconds.
+         */
+        public void recordNanos(long nanos) {
+            count.increment();
+            totalTimeNanos.add(nanos);
+            updateMin(nanos);
+            updateMax(nanos);
+        }
+
         /**
          * Times a runnable operation.
          */
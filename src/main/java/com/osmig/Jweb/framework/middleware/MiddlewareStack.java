@@ -3,7 +3,12 @@ package com.osmig.Jweb.framework.middleware;
 import com.osmig.Jweb.framework.server.Request;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 /**
  * Manages a stack of middleware and executes them in order.
@@ -21,10 +26,20 @@ import java.util.List;
  *
  * Object result = stack.execute(request, () -> handler.handle(request));
  * </pre>
+ *
+ * <p>For routed requests the stack is compiled per route (method and path
+ * pattern) into a flat array holding only the middleware whose
+ * {@link #useForPath path} and {@link #useForMethods method} scope can
+ * apply, and each request walks that array with a single cursor instead of
+ * a continuation per layer. Predicates of {@link Middleware#when} are
+ * opaque and still run per request.</p>
  */
 public class MiddlewareStack {
 
     private final List<Middleware> middlewares = new ArrayList<>();
+    // Route pattern -> route method -> compiled chain
+    private final Map<String, Map<String, Chain>> chains = new ConcurrentHashMap<>();
+    private volatile Chain unscoped;
 
     /**
      * Adds a middleware to the stack.
@@ -34,7 +49,7 @@ public class MiddlewareStack {
      */
     public MiddlewareStack use(Middleware middleware) {
         if (middleware != null) {
-            middlewares.add(middleware);
+            add(middleware);
         }
         return this;
     }
@@ -48,7 +63,7 @@ public class MiddlewareStack {
      */
     public MiddlewareStack useIf(boolean condition, Middleware middleware) {
         if (condition && middleware != null) {
-            middlewares.add(middleware);
+            add(middleware);
         }
         return this;
     }
@@ -60,34 +75,22 @@ public class MiddlewareStack {
      * {@code "/api/**"} (the prefix and everything under it) and
      * {@code "/files/*.png"} ({@code *} matches within one segment).</p>
      *
+     * <p>The scope is resolved against each route's pattern when its chain is
+     * compiled, so routes outside it don't carry the middleware at all; only
+     * patterns the route can't decide (a glob against a {@code :param}
+     * segment) are checked per request.</p>
+     *
      * @param pathPattern the path prefix or glob pattern to match
      * @param middleware the middleware to add
      * @return this stack for chaining
      */
     public MiddlewareStack useForPath(String pathPattern, Middleware middleware) {
         if (middleware != null) {
-            var matcher = pathMatcher(pathPattern);
-            middlewares.add(Middleware.when(req -> matcher.test(req.path()), middleware));
+            add(new Scoped(middleware, new PathScope(pathPattern), null));
         }
         return this;
     }
 
-    private static java.util.function.Predicate<String> pathMatcher(String pattern) {
-        if (pattern.endsWith("/**")) {
-            String prefix = pattern.substring(0, pattern.length() - 3);
-            return path -> path.equals(prefix) || path.startsWith(prefix + "/");
-        }
-        if (pattern.contains("*")) {
-            String regex = java.util.regex.Pattern.quote(pattern)
-                    .replace("**", "\u0000")
-                    .replace("*", "\\E[^/]*\\Q")
-                    .replace("\u0000", "\\E.*\\Q");
-            java.util.regex.Pattern compiled = java.util.regex.Pattern.compile(regex);
-            return path -> compiled.matcher(path).matches();
-        }
-        return path -> path.startsWith(pattern);
-    }
-
     /**
      * Adds a middleware that only runs for specific HTTP methods.
      *
@@ -97,36 +100,110 @@ public class MiddlewareStack {
      */
     public MiddlewareStack useForMethods(List<String> methods, Middleware middleware) {
         if (middleware != null) {
-            middlewares.add(Middleware.when(
-                    req -> methods.stream().anyMatch(m -> m.equalsIgnoreCase(req.method())),
-                    middleware
-            ));
+            Set<String> upper = new HashSet<>();
+            for (String method : methods) {
+                upper.add(method.toUpperCase());
+            }
+            add(new Scoped(middleware, null, Set.copyOf(upper)));
         }
         return this;
     }
 
+    private void add(Middleware middleware) {
+        middlewares.add(middleware);
+        // Chains compiled for the old stack are stale
+        chains.clear();
+        unscoped = null;
+    }
+
     /**
      * Executes the middleware stack, ending with the final handler.
      *
+     * <p>Used when no route matched (404s): every scoped middleware checks
+     * its scope against the request. Routed requests go through
+     * {@link #execute(Request, String, String, MiddlewareChain)}.</p>
+     *
      * @param request      the HTTP request
      * @param finalHandler the final route handler
      * @return the response
      * @throws Exception if any middleware or handler throws
      */
     public Object execute(Request request, MiddlewareChain finalHandler) throws Exception {
-        if (middlewares.isEmpty()) {
-            return finalHandler.next();
+        Chain chain = unscoped;
+        if (chain == null) {
+            chain = new Chain(middlewares.toArray(new Middleware[0]));
+            unscoped = chain;
         }
-        return executeAt(0, request, finalHandler);
+        return chain.execute(request, finalHandler);
     }
 
-    private Object executeAt(int index, Request request, MiddlewareChain finalHandler) throws Exception {
-        if (index >= middlewares.size()) {
-            return finalHandler.next();
+    /**
+     * Executes the chain compiled for a route, ending with the final handler.
+     *
+     * @param request      the HTTP request
+     * @param method       the route's method (GET routes also serve HEAD)
+     * @param pattern      the route's path pattern, e.g. {@code /users/:id}
+     * @param finalHandler the route handler
+     * @return the response
+     * @throws Exception if any middleware or handler throws
+     */
+    public Object execute(Request request, String method, String pattern,
+                          MiddlewareChain finalHandler) throws Exception {
+        return compile(method, pattern).execute(request, finalHandler);
+    }
+
+    /**
+     * The chain for a route: only the middleware whose path and method scope
+     * can apply to it, in stack order. Compiled once per route and cached
+     * until the stack changes; the framework compiles every registered route
+     * at startup.
+     *
+     * @param method  the route's method
+     * @param pattern the route's path pattern
+     * @return the compiled chain
+     */
+    public Chain compile(String method, String pattern) {
+        Map<String, Chain> byMethod = chains.computeIfAbsent(pattern, p -> new ConcurrentHashMap<>(4));
+        Chain chain = byMethod.get(method);
+        if (chain == null) {
+            chain = byMethod.computeIfAbsent(method, m -> build(m, pattern));
         }
+        return chain;
+    }
 
-        Middleware current = middlewares.get(index);
-        return current.handle(request, () -> executeAt(index + 1, request, finalHandler));
+    private Chain build(String method, String pattern) {
+        String route = PathScope.canonical(pattern);
+        List<Middleware> layers = new ArrayList<>(middlewares.size());
+        for (Middleware middleware : middlewares) {
+            if (!(middleware instanceof Scoped scoped)) {
+                layers.add(middleware);
+                continue;
+            }
+            Boolean path = scoped.path == null ? Boolean.TRUE : scoped.path.decide(route);
+            Boolean methods = scoped.methods == null ? Boolean.TRUE : decideMethods(scoped.methods, method);
+            if (path == Boolean.FALSE || methods == Boolean.FALSE) {
+                continue;
+            }
+            if (path == Boolean.TRUE && methods == Boolean.TRUE) {
+                layers.add(scoped.middleware);
+            } else {
+                // Keep only the checks the pattern couldn't settle
+                layers.add(new Scoped(scoped.middleware,
+                        path == null ? scoped.path : null,
+                        methods == null ? scoped.methods : null));
+            }
+        }
+        return new Chain(layers.toArray(new Middleware[0]));
+    }
+
+    // A GET route also answers HEAD, so both have to agree
+    private static Boolean decideMethods(Set<String> methods, String routeMethod) {
+        String method = routeMethod.toUpperCase();
+        boolean applies = methods.contains(method);
+        if ("GET".equals(method) && methods.contains("HEAD") != applies) {
+            return null;
+        }
+        return applies;
     }
 
     /**
@@ -146,4 +223,172 @@ public class MiddlewareStack {
     public static MiddlewareStack create() {
         return new MiddlewareStack();
     }
+
+    /**
+     * A middleware chain compiled for one route.
+     */
+    public static final class Chain {
+        private final Middleware[] layers;
+
+        private Chain(Middleware[] layers) {
+            this.layers = layers;
+        }
+
+        /**
+         * Runs the chain, ending with the final handler.
+         *
+         * @param request      the HTTP request
+         * @param finalHandler the route handler
+         * @return the response
+         * @throws Exception if any middleware or handler throws
+         */
+        public Object execute(Request request, MiddlewareChain finalHandler) throws Exception {
+            if (layers.length == 0) {
+                return finalHandler.next();
+            }
+            return new Cursor(layers, request, finalHandler).next();
+        }
+
+        /** Number of middleware in the chain. */
+        public int size() {
+            return layers.length;
+        }
+    }
+
+    /**
+     * The position of one request in a chain. Layer i runs with the cursor at
+     * i + 1, and the position is restored when it returns, so a middleware
+     * that calls {@code next()} twice (a retry) runs the rest of the chain
+     * again.
+     */
+    private static final class Cursor implements MiddlewareChain {
+        private final Middleware[] layers;
+        private final Request request;
+        private final MiddlewareChain finalHandler;
+        private int index;
+
+        Cursor(Middleware[] layers, Request request, MiddlewareChain finalHandler) {
+            this.layers = layers;
+            this.request = request;
+            this.finalHandler = finalHandler;
+        }
+
+        @Override
+        public Object next() throws Exception {
+            int current = index;
+            if (current >= layers.length) {
+                return finalHandler.next();
+            }
+            index = current + 1;
+            try {
+                return layers[current].handle(request, this);
+            } finally {
+                index = current;
+            }
+        }
+    }
+
+    /** A middleware limited to a path scope and/or a set of methods (null = any). */
+    private static final class Scoped implements Middleware {
+        private final Middleware middleware;
+        private final PathScope path;
+        private final Set<String> methods;
+
+        Scoped(Middleware middleware, PathScope path, Set<String> methods) {
+            this.middleware = middleware;
+            this.path = path;
+            this.methods = methods;
+        }
+
+        @Override
+        public Object handle(Request request, MiddlewareChain chain) throws Exception {
+            if ((path == null || path.matches(request.path()))
+                    && (methods == null || methods.contains(request.method().toUpperCase()))) {
+                return middleware.handle(request, chain);
+            }
+            return chain.next();
+        }
+    }
+
+    /** A {@link #useForPath} pattern: a plain prefix, a {@code /**} subtree, or a glob. */
+    static final class PathScope {
+        private final String prefix;
+        private final String tree;
+        private final Pattern glob;
+
+        PathScope(String pattern) {
+            if (pattern.endsWith("/**")) {
+                prefix = null;
+                tree = pattern.substring(0, pattern.length() - 3);
+                glob = null;
+            } else if (pattern.contains("*")) {
+                prefix = null;
+                tree = null;
+                glob = Pattern.compile(Pattern.quote(pattern)
+                        .replace("**", "\u0000")
+                        .replace("*", "\\E[^/]*\\Q")
+                        .replace("\u0000", "\\E.*\\Q"));
+            } else {
+                prefix = pattern;
+                tree = null;
+                glob = null;
+            }
+        }
+
+        boolean matches(String path) {
+            if (prefix != null) return path.startsWith(prefix);
+            if (tree != null) return path.equals(tree) || path.startsWith(tree + "/");
+            return glob.matcher(path).matches();
+        }
+
+        /**
+         * Whether the scope covers every path a route pattern matches
+         * (TRUE), none of them (FALSE), or depends on the path (null).
+         *
+         * @param route a pattern in {@link #canonical} form
+         */
+        Boolean decide(String route) {
+            int dynamic = firstDynamic(route);
+            if (dynamic < 0) {
+                // A static route is requested with or without a trailing slash
+                boolean applies = matches(route);
+                return route.equals("/") || applies == matches(route + "/") ? applies : null;
+            }
+            if (glob != null) {
+                return null;
+            }
+            // Every path of the route starts with its static part, then "/" or nothing
+            String literal = route.substring(0, dynamic - 1);
+            if (prefix != null) {
+                if (literal.startsWith(prefix)) return true;
+                return prefix.startsWith(literal) ? null : Boolean.FALSE;
+            }
+            if (literal.equals(tree) || literal.startsWith(tree + "/")) return true;
+            return tree.startsWith(literal) ? null : Boolean.FALSE;
+        }
+
+        /** The pattern as "/" plus its non-empty segments, the way the router reads it. */
+        static String canonical(String pattern) {
+            StringBuilder path = new StringBuilder(pattern.length() + 1);
+            for (String segment : pattern.split("/")) {
+                if (!segment.isEmpty()) {
+                    path.append('/').append(segment);
+                }
+            }
+            return path.isEmpty() ? "/" : path.toString();
+        }
+
+        // Index of the first :param or * segment, or -1 for a static route
+        private static int firstDynamic(String route) {
+            for (int i = 1; i < route.length(); i++) {
+                char c = route.charAt(i);
+                if (route.charAt(i - 1) != '/') continue;
+                boolean wildcard = c == '*' && (i + 1 == route.length() || route.charAt(i + 1) == '/');
+                if (c == ':' || wildcard) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
 }
@@ -428,9 +428,11 @@ public final class Middlewares {
     /**
      * Creates middleware that sets headers indicating compression is acceptable.
      *
-     * <p>Note: Actual compression is typically handled by the servlet container
-     * or a reverse proxy. This middleware sets the Vary header and can be used
-     * with Spring Boot's compression settings.</p>
+     * <p>Note: rendered pages, cached pages and the framework's assets are
+     * compressed by JWeb itself (see {@code server.Compression},
+     * jweb.compression.*). Other responses are left to the servlet container
+     * or a reverse proxy; this middleware sets the Vary header for them and
+     * can be used with Spring Boot's compression settings.</p>
      *
      * <p>Enable compression in application.properties:</p>
      * <pre>
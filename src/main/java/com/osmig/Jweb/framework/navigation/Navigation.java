@@ -2,6 +2,7 @@ package com.osmig.Jweb.framework.navigation;
 
 import com.osmig.Jweb.framework.core.Element;
 import com.osmig.Jweb.framework.elements.TextElement;
+import com.osmig.Jweb.framework.js.JsMinifier;
 
 import static com.osmig.Jweb.framework.elements.Elements.*;
 
@@ -274,23 +275,6 @@ public final class Navigation {
      * @return minified JavaScript
      */
     public static String minifiedJs() {
-        // Conservative whitespace/comment stripping that never touches lines
-        // containing quotes, so string literals can't be corrupted.
-        // (Real minification belongs in a build step.)
-        StringBuilder out = new StringBuilder();
-        for (String line : js().split("\n")) {
-            String trimmed = line.strip();
-            if (trimmed.isEmpty()) continue;
-            boolean hasQuotes = trimmed.indexOf('"') >= 0 || trimmed.indexOf('\'') >= 0 || trimmed.indexOf('`') >= 0;
-            if (!hasQuotes) {
-                if (trimmed.startsWith("//")) continue;
-                int comment = trimmed.indexOf("//");
-                if (comment >= 0) trimmed = trimmed.substring(0, comment).strip();
-                if (trimmed.isEmpty()) continue;
-            }
-            if (out.length() > 0) out.append('\n');
-            out.append(trimmed);
-        }
-        return out.toString();
+        return JsMinifier.minify(js());
     }
 }
@@ -153,6 +153,32 @@ public final class Portal {
         portalContent.get().remove(name);
     }
 
+    /**
+     * Removes and returns the content sent on this thread, so content sent
+     * while rendering part of a page on another thread can be handed back
+     * to the request thread (see {@link #merge}).
+     *
+     * @return the content by portal name
+     */
+    public static Map<String, List<Element>> drain() {
+        Map<String, List<Element>> content = portalContent.get();
+        portalContent.remove();
+        return content;
+    }
+
+    /**
+     * Adds content drained on another thread to this thread's portals,
+     * after any content already sent to them.
+     *
+     * @param content the content by portal name
+     */
+    public static void merge(Map<String, List<Element>> content) {
+        if (content.isEmpty()) return;
+        Map<String, List<Element>> current = portalContent.get();
+        content.forEach((name, elements) ->
+            current.computeIfAbsent(name, k -> new ArrayList<>()).addAll(elements));
+    }
+
     // ==================== Internal Classes ====================
 
     private static class PortalOutlet implements Element {
@@ -10,24 +10,56 @@ import java.util.*;
 
 /**
  * Represents a route mapping a URL pattern to a handler.
+ *
+ * <p>The {@link Router} matches routes through its trie; the regex-based
+ * {@link #matches}/{@link #extractParams} here are kept for checking a single
+ * route and compile their pattern on first use.</p>
  */
 public class Route {
 
     private final String method;
     private final String path;
-    private final Pattern pattern;
+    private volatile Pattern pattern;
     private final List<String> paramNames;
+    private final List<Class<?>> paramTypes;
     private final RouteHandler handler;
 
     public Route(String method, String path, RouteHandler handler) {
+        this(method, path, handler, List.of());
+    }
+
+    /**
+     * A route whose path parameters are converted when it matches, one type
+     * per parameter in path order (see {@link TypedRoute}). A value that
+     * doesn't convert makes the router try other routes before answering 400.
+     */
+    public Route(String method, String path, RouteHandler handler, List<Class<?>> paramTypes) {
         this.method = method.toUpperCase();
         this.path = path;
         this.handler = handler;
         this.paramNames = new ArrayList<>();
-        this.pattern = compilePath(path);
+        for (String segment : path.split("/")) {
+            if (segment.startsWith(":")) {
+                paramNames.add(segment.substring(1));
+            }
+        }
+        if (!paramTypes.isEmpty() && paramTypes.size() != paramNames.size()) {
+            throw new IllegalArgumentException("Route '" + path + "' has " + paramNames.size()
+                + " parameter(s) but " + paramTypes.size() + " type(s) were declared");
+        }
+        this.paramTypes = List.copyOf(paramTypes);
     }
 
-    private Pattern compilePath(String path) {
+    private Pattern pattern() {
+        Pattern compiled = pattern;
+        if (compiled == null) {
+            compiled = compilePath(path);
+            pattern = compiled;
+        }
+        return compiled;
+    }
+
+    private static Pattern compilePath(String path) {
         StringBuilder regex = new StringBuilder("^");
         String[] segments = path.split("/");
 
@@ -35,8 +67,6 @@ public class Route {
             if (segment.isEmpty()) continue;
             regex.append("/");
             if (segment.startsWith(":")) {
-                String paramName = segment.substring(1);
-                paramNames.add(paramName);
                 regex.append("([^/]+)");
             } else if (segment.equals("*")) {
                 regex.append(".*");
@@ -53,17 +83,17 @@ public class Route {
         if (!this.method.equals(method.toUpperCase())) {
             return false;
         }
-        return pattern.matcher(path).matches();
+        return pattern().matcher(path).matches();
     }
 
     /** True when the path matches regardless of HTTP method (used for 405s). */
     public boolean matchesPath(String path) {
-        return pattern.matcher(path).matches();
+        return pattern().matcher(path).matches();
     }
 
     public Map<String, String> extractParams(String path) {
         Map<String, String> params = new HashMap<>();
-        Matcher matcher = pattern.matcher(path);
+        Matcher matcher = pattern().matcher(path);
 
         if (matcher.matches()) {
             for (int i = 0; i < paramNames.size(); i++) {
@@ -73,6 +103,24 @@ public class Route {
         return params;
     }
 
+    /**
+     * Converts matched parameters to the route's declared types.
+     *
+     * @return name to converted value; empty for an untyped route
+     * @throws TypedRoute.RouteParamException when a value doesn't convert
+     */
+    public Map<String, Object> convertParams(Map<String, String> params) {
+        if (paramTypes.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < paramTypes.size(); i++) {
+            String name = paramNames.get(i);
+            values.put(name, TypedRoute.Base.convert(params.get(name), paramTypes.get(i), name));
+        }
+        return values;
+    }
+
     public Object handle(Request request) {
         return handler.handle(request);
     }
@@ -81,6 +129,7 @@ public class Route {
     public String getPath() { return path; }
     public RouteHandler getHandler() { return handler; }
     public List<String> getParamNames() { return Collections.unmodifiableList(paramNames); }
+    public List<Class<?>> getParamTypes() { return paramTypes; }
 
     public static Route get(String path, Supplier<Element> elementSupplier) {
         return new Route("GET", path, req -> elementSupplier.get());
@@ -0,0 +1,185 @@
+package com.osmig.Jweb.framework.routing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Routes compiled into a segment trie, matched in one walk over the path.
+ *
+ * <p>Each node is one path segment: static children by name, then one
+ * {@code :param} child and one {@code *} wildcard child, tried in that
+ * order (static segments win over parameters, whatever the registration
+ * order). Routes hang off the node for their last segment, in a per-node
+ * method table; routes sharing a pattern and method are tried in
+ * registration order. A node that has the path but not the method falls through
+ * to the other branches, so {@code GET /users/new} and
+ * {@code POST /users/:id} coexist.</p>
+ *
+ * <p>Parameters are captured as offsets during the walk and only cut out
+ * of the path once a route matches; typed parameters are converted then
+ * too, and a value that doesn't convert (e.g. {@code /users/abc} for a
+ * Long id) lets the walk try the remaining branches.</p>
+ */
+final class RouteTrie {
+
+    private final Node root = new Node();
+
+    private static final class Node {
+        private final Map<String, Node> statics = new HashMap<>();
+        private Node param;
+        private Node wildcard;
+        // Method -> routes in registration order; the first that accepts the
+        // path wins (later ones only matter when a typed param doesn't convert)
+        private final Map<String, List<Route>> methods = new LinkedHashMap<>(4);
+    }
+
+    /** Adds a route under its path's segments. */
+    void add(Route route) {
+        Node node = root;
+        for (String segment : route.getPath().split("/")) {
+            if (segment.isEmpty()) continue;
+            if (segment.startsWith(":")) {
+                if (node.param == null) node.param = new Node();
+                node = node.param;
+            } else if (segment.equals("*")) {
+                if (node.wildcard == null) node.wildcard = new Node();
+                node = node.wildcard;
+            } else {
+                node = node.statics.computeIfAbsent(segment, s -> new Node());
+            }
+        }
+        node.methods.computeIfAbsent(route.getMethod(), m -> new ArrayList<>(1)).add(route);
+    }
+
+    /**
+     * Finds the route for a method and path.
+     *
+     * @return the match, or null when no route has this method and path
+     */
+    Router.RouteMatch match(String method, String path) {
+        Walk walk = Walk.of(path);
+        if (walk == null) return null;
+        walk.method = method;
+        if (find(root, 0, walk)) {
+            return walk.match;
+        }
+        // Only a conversion failed: the route still handles it (and reports the bad value)
+        return walk.failed;
+    }
+
+    /** The methods routed at a path, whatever the method requested. */
+    void collectMethods(String path, Set<String> methods) {
+        Walk walk = Walk.of(path);
+        if (walk == null) return;
+        walk.methods = methods;
+        find(root, 0, walk);
+    }
+
+    private static boolean find(Node node, int index, Walk walk) {
+        if (index == walk.count) {
+            if (walk.methods != null) {
+                walk.methods.addAll(node.methods.keySet());
+            } else {
+                List<Route> routes = node.methods.get(walk.method);
+                if (routes != null) {
+                    for (int i = 0; i < routes.size(); i++) {
+                        if (walk.accept(routes.get(i))) return true;
+                    }
+                }
+            }
+        } else {
+            int start = walk.starts[index];
+            int end = walk.ends[index];
+            if (end > start) {
+                if (!node.statics.isEmpty()) {
+                    Node child = node.statics.get(walk.path.substring(start, end));
+                    if (child != null && find(child, index + 1, walk)) return true;
+                }
+                if (node.param != null) {
+                    walk.captured[walk.depth++] = index;
+                    boolean found = find(node.param, index + 1, walk);
+                    walk.depth--;
+                    if (found) return true;
+                }
+            }
+        }
+        if (node.wildcard != null) {
+            // '*' spans any number of segments, including none: shortest first
+            // so later segments of the pattern get a chance to match
+            for (int next = index; next <= walk.count; next++) {
+                if (find(node.wildcard, next, walk)) return true;
+            }
+        }
+        return false;
+    }
+
+    /** The state of one walk: the path's segment offsets and the params captured so far. */
+    private static final class Walk {
+        private final String path;
+        private final int count;
+        private final int[] starts;
+        private final int[] ends;
+        private final int[] captured;
+        private int depth;
+        private String method;
+        private Set<String> methods;
+        private Router.RouteMatch match;
+        private Router.RouteMatch failed;
+
+        private Walk(String path, int count, int[] starts, int[] ends) {
+            this.path = path;
+            this.count = count;
+            this.starts = starts;
+            this.ends = ends;
+            this.captured = new int[count];
+        }
+
+        /** Splits a path into segments (one trailing slash tolerated), or null if it isn't absolute. */
+        static Walk of(String path) {
+            int length = path.length();
+            if (length > 0 && path.charAt(0) != '/') return null;
+            if (length > 1 && path.charAt(length - 1) == '/') length--;
+            int count = 0;
+            for (int i = 1; i < length; i++) {
+                if (path.charAt(i) == '/') count++;
+            }
+            if (length > 1) count++;
+            int[] starts = new int[count];
+            int[] ends = new int[count];
+            int segment = 0;
+            int start = 1;
+            for (int i = 1; i <= length && length > 1; i++) {
+                if (i == length || path.charAt(i) == '/') {
+                    starts[segment] = start;
+                    ends[segment] = i;
+                    segment++;
+                    start = i + 1;
+                }
+            }
+            return new Walk(path, count, starts, ends);
+        }
+
+        /** Builds the match for a route at the end of the walk; false if a typed param doesn't convert. */
+        boolean accept(Route route) {
+            List<String> names = route.getParamNames();
+            Map<String, String> params = new HashMap<>();
+            for (int i = 0; i < depth && i < names.size(); i++) {
+                int segment = captured[i];
+                params.put(names.get(i), path.substring(starts[segment], ends[segment]));
+            }
+            try {
+                match = new Router.RouteMatch(route, params, route.convertParams(params));
+                return true;
+            } catch (TypedRoute.RouteParamException e) {
+                if (failed == null) {
+                    failed = new Router.RouteMatch(route, params, null);
+                }
+                return false;
+            }
+        }
+    }
+}
@@ -9,13 +9,21 @@ import java.util.function.Supplier;
 
 /**
  * Manages route registration and matching.
+ *
+ * <p>Routes are compiled into a segment trie as they are added, so matching
+ * is one walk over the request path whatever the number of routes. Static
+ * segments take priority over {@code :param} segments, which take priority
+ * over {@code *}; among routes with the same pattern and method the first
+ * registered wins, unless it is a typed route whose value doesn't convert.</p>
  */
 public class Router {
 
     private final List<Route> routes = new ArrayList<>();
+    private final RouteTrie trie = new RouteTrie();
 
     public Router addRoute(Route route) {
         routes.add(route);
+        trie.add(route);
         return this;
     }
 
@@ -50,14 +58,8 @@ public class Router {
 
     public Optional<RouteMatch> match(String method, String path) {
         // HEAD is served by GET handlers (the container strips the body)
-        String effective = "HEAD".equalsIgnoreCase(method) ? "GET" : method;
-        for (Route route : routes) {
-            if (route.matches(effective, path)) {
-                Map<String, String> params = route.extractParams(path);
-                return Optional.of(new RouteMatch(route, params));
-            }
-        }
-        return Optional.empty();
+        String effective = "HEAD".equalsIgnoreCase(method) ? "GET" : method.toUpperCase();
+        return Optional.ofNullable(trie.match(effective, path));
     }
 
     /**
@@ -68,11 +70,7 @@ public class Router {
      */
     public Set<String> allowedMethods(String path) {
         Set<String> methods = new TreeSet<>();
-        for (Route route : routes) {
-            if (route.matchesPath(path)) {
-                methods.add(route.getMethod());
-            }
-        }
+        trie.collectMethods(path, methods);
         return methods;
     }
 
@@ -80,9 +78,21 @@ public class Router {
         return Collections.unmodifiableList(routes);
     }
 
-    public record RouteMatch(Route route, Map<String, String> params) {
+    /**
+     * A matched route with its raw path parameters and, for typed routes,
+     * the values converted at match time. {@code values} is null when a value
+     * didn't convert and no other route matched: {@link #handle} then
+     * converts again so the route's error (a 400) goes through the usual
+     * error handling.
+     */
+    public record RouteMatch(Route route, Map<String, String> params, Map<String, Object> values) {
+        public RouteMatch(Route route, Map<String, String> params) {
+            this(route, params, route.convertParams(params));
+        }
+
         public Object handle(Request request) {
             request.setPathParams(params);
+            request.setPathValues(values != null ? values : route.convertParams(params));
             return route.handle(request);
         }
     }
@@ -1,5 +1,7 @@
 package com.osmig.Jweb.framework.routing;
 
+import com.osmig.Jweb.framework.server.Request;
+
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -50,7 +52,7 @@ public final class TypedRoute {
 
     public static final class Path0 extends Base {
         Path0(String pattern) {
-            super(pattern, 0);
+            super(pattern, 0, List.of());
         }
 
         /** The URL for this route. */
@@ -63,7 +65,7 @@ public final class TypedRoute {
         private final Class<A> typeA;
 
         Path1(String pattern, Class<A> typeA) {
-            super(pattern, 1);
+            super(pattern, 1, List.of(typeA));
             this.typeA = typeA;
         }
 
@@ -76,6 +78,11 @@ public final class TypedRoute {
         public A parse(String raw) {
             return convert(raw, typeA, paramNames().get(0));
         }
+
+        /** The parameter of a request matched by this route, converted when it matched. */
+        public A value(Request request) {
+            return valueOf(request, 0, typeA);
+        }
     }
 
     public static final class Path2<A, B> extends Base {
@@ -83,7 +90,7 @@ public final class TypedRoute {
         private final Class<B> typeB;
 
         Path2(String pattern, Class<A> typeA, Class<B> typeB) {
-            super(pattern, 2);
+            super(pattern, 2, List.of(typeA, typeB));
             this.typeA = typeA;
             this.typeB = typeB;
         }
@@ -99,6 +106,14 @@ public final class TypedRoute {
         public B parseSecond(String raw) {
             return convert(raw, typeB, paramNames().get(1));
         }
+
+        public A first(Request request) {
+            return valueOf(request, 0, typeA);
+        }
+
+        public B second(Request request) {
+            return valueOf(request, 1, typeB);
+        }
     }
 
     // ==================== Shared machinery ====================
@@ -106,9 +121,11 @@ public final class TypedRoute {
     public abstract static sealed class Base permits Path0, Path1, Path2 {
         private final String pattern;
         private final List<String> paramNames;
+        private final List<Class<?>> paramTypes;
 
-        Base(String pattern, int expectedParams) {
+        Base(String pattern, int expectedParams, List<Class<?>> paramTypes) {
             this.pattern = pattern;
+            this.paramTypes = paramTypes;
             this.paramNames = extractParamNames(pattern);
             if (paramNames.size() != expectedParams) {
                 throw new IllegalArgumentException(
@@ -127,6 +144,26 @@ public final class TypedRoute {
             return paramNames;
         }
 
+        /** The parameter types in path order. */
+        public List<Class<?>> paramTypes() {
+            return paramTypes;
+        }
+
+        /** A router route for this pattern whose parameters are converted when it matches. */
+        public Route route(String method, RouteHandler handler) {
+            return new Route(method, pattern, handler, paramTypes);
+        }
+
+        /**
+         * The converted value the router stored on the request, or the raw
+         * parameter converted now (e.g. a request built by hand in a test).
+         */
+        <T> T valueOf(Request request, int index, Class<T> type) {
+            String name = paramNames.get(index);
+            T value = request.pathValue(name);
+            return value != null ? value : convert(request.param(name), type, name);
+        }
+
         String substitute(List<Object> values) {
             String result = pattern;
             for (int i = 0; i < paramNames.size(); i++) {
@@ -0,0 +1,379 @@
+package com.osmig.Jweb.framework.server;
+
+import com.osmig.Jweb.framework.metrics.Metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Response compression: {@code Accept-Encoding} negotiation and gzip /
+ * deflate encoding with pooled {@link Deflater}s.
+ *
+ * <p>Rendered pages are compressed as they are written; bodies that never
+ * change (framework assets, cached pages) are compressed once and their
+ * variants kept in a {@link Variants}:</p>
+ * <pre>
+ * Compression.Encoding encoding = Compression.negotiate(request.header("Accept-Encoding"));
+ * Compression.Variants script = Compression.Variants.of(bytes);
+ * byte[] body = script.get(encoding);          // compressed on first use, then reused
+ * </pre>
+ *
+ * <p>Bodies under the minimum size (jweb.compression.min-bytes) are sent
+ * as they are. Time spent compressing is reported as the
+ * {@code compression.time} timer, and the bytes in and out as the
+ * {@code compression.bytes.in} / {@code compression.bytes.out} counters.</p>
+ */
+public final class Compression {
+
+    /** A content coding the framework can produce. */
+    public enum Encoding {
+        GZIP("gzip"),
+        DEFLATE("deflate"),
+        IDENTITY(null);
+
+        private final String token;
+
+        Encoding(String token) {
+            this.token = token;
+        }
+
+        /** The {@code Content-Encoding} value, or null for identity. */
+        public String token() {
+            return token;
+        }
+    }
+
+    private static final int POOL_LIMIT = 32;
+
+    // Raw deflaters (gzip writes its own header and trailer) and zlib-wrapped ones
+    private static final ArrayBlockingQueue<Deflater> RAW_POOL = new ArrayBlockingQueue<>(POOL_LIMIT);
+    private static final ArrayBlockingQueue<Deflater> ZLIB_POOL = new ArrayBlockingQueue<>(POOL_LIMIT);
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static volatile boolean enabled = true;
+    private static volatile int level = 6;
+    private static volatile int minBytes = 1024;
+
+    private Compression() {
+        // Static utility class
+    }
+
+    /** Enables or disables framework compression (jweb.compression.enabled). */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Sets the deflate level, 1 (fastest) to 9 (smallest). */
+    public static void setLevel(int deflateLevel) {
+        if (deflateLevel < Deflater.BEST_SPEED || deflateLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be 1-9: " + deflateLevel);
+        }
+        level = deflateLevel;
+    }
+
+    /** Sets the smallest body worth compressing, in bytes. */
+    public static void setMinBytes(int bytes) {
+        minBytes = bytes;
+    }
+
+    public static int minBytes() {
+        return minBytes;
+    }
+
+    // ==================== Negotiation ====================
+
+    /**
+     * Picks the encoding for an {@code Accept-Encoding} header: gzip or
+     * deflate if accepted (highest q-value, gzip on a tie), otherwise
+     * identity. Always identity while compression is disabled.
+     */
+    public static Encoding negotiate(String acceptEncoding) {
+        if (!enabled || acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return Encoding.IDENTITY;
+        }
+        // Scanned in place (no splitting): this runs on every request
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        int length = acceptEncoding.length();
+        int start = 0;
+        while (start < length) {
+            int end = acceptEncoding.indexOf(',', start);
+            if (end < 0) end = length;
+            int params = acceptEncoding.indexOf(';', start);
+            int codingEnd = params >= 0 && params < end ? params : end;
+            int from = skipSpaces(acceptEncoding, start, codingEnd);
+            int to = codingEnd;
+            while (to > from && acceptEncoding.charAt(to - 1) == ' ') to--;
+            double q = codingEnd < end ? quality(acceptEncoding, codingEnd, end) : 1;
+            if (is(acceptEncoding, from, to, "gzip") || is(acceptEncoding, from, to, "x-gzip")) gzip = q;
+            else if (is(acceptEncoding, from, to, "deflate")) deflate = q;
+            else if (to - from == 1 && acceptEncoding.charAt(from) == '*') any = q;
+            start = end + 1;
+        }
+        if (gzip < 0) gzip = any;
+        if (deflate < 0) deflate = any;
+        if (gzip > 0 && gzip >= deflate) return Encoding.GZIP;
+        if (deflate > 0) return Encoding.DEFLATE;
+        return Encoding.IDENTITY;
+    }
+
+    private static boolean is(String header, int from, int to, String coding) {
+        return to - from == coding.length() && header.regionMatches(true, from, coding, 0, coding.length());
+    }
+
+    private static int skipSpaces(String header, int from, int to) {
+        while (from < to && header.charAt(from) == ' ') from++;
+        return from;
+    }
+
+    // The q parameter among ";param" pairs in [from, to): 0 to 1, three decimals at most
+    private static double quality(String header, int from, int to) {
+        int q = header.indexOf("q=", from);
+        if (q < 0 || q >= to) return 1;
+        int i = q + 2;
+        if (i >= to) return 0;
+        char first = header.charAt(i++);
+        if (first != '0' && first != '1') return 0;
+        double value = first - '0';
+        if (i < to && header.charAt(i) == '.') {
+            double scale = 0.1;
+            for (i++; i < to && scale > 0.0001; i++, scale /= 10) {
+                char c = header.charAt(i);
+                if (c < '0' || c > '9') break;
+                value += (c - '0') * scale;
+            }
+        }
+        return Math.min(value, 1);
+    }
+
+    /**
+     * The strong ETag of an encoded variant, derived from the identity
+     * ETag so each representation has its own validator.
+     */
+    public static String etagFor(String identityEtag, Encoding encoding) {
+        if (identityEtag == null || encoding == Encoding.IDENTITY) {
+            return identityEtag;
+        }
+        return identityEtag.substring(0, identityEtag.length() - 1) + '-' + encoding.token() + '"';
+    }
+
+    // ==================== Encoding ====================
+
+    /**
+     * Compresses a body in one go.
+     */
+    public static byte[] compress(byte[] data, int offset, int length, Encoding encoding) {
+        if (encoding == Encoding.IDENTITY) {
+            return java.util.Arrays.copyOfRange(data, offset, offset + length);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length / 4 + 64);
+        try (DeflatingStream stream = new DeflatingStream(out, encoding)) {
+            stream.write(data, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Opens a stream that compresses into {@code out}. Each {@code flush()}
+     * sends what was written so far (a sync flush); {@code close()} writes
+     * the end of the stream and returns the deflater to the pool, but leaves
+     * {@code out} open.
+     */
+    public static OutputStream open(OutputStream out, Encoding encoding) {
+        if (encoding == Encoding.IDENTITY) {
+            throw new IllegalArgumentException("Nothing to compress for identity");
+        }
+        return new DeflatingStream(out, encoding);
+    }
+
+    private static final class DeflatingStream extends OutputStream {
+        private final OutputStream out;
+        private final boolean gzip;
+        private final CRC32 crc;
+        private final byte[] chunk = new byte[8192];
+        private Deflater deflater;
+        private long nanos;
+        private long bytesIn;
+        private long bytesOut;
+
+        DeflatingStream(OutputStream out, Encoding encoding) {
+            this.out = out;
+            this.gzip = encoding == Encoding.GZIP;
+            this.crc = gzip ? new CRC32() : null;
+            this.deflater = acquire(gzip);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return;
+            long start = System.nanoTime();
+            if (gzip && bytesIn == 0) {
+                out.write(GZIP_HEADER);
+                bytesOut += GZIP_HEADER.length;
+            }
+            if (crc != null) crc.update(b, off, len);
+            bytesIn += len;
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                emit(Deflater.NO_FLUSH);
+            }
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long start = System.nanoTime();
+            int n;
+            do {
+                n = emit(Deflater.SYNC_FLUSH);
+            } while (n == chunk.length);
+            nanos += System.nanoTime() - start;
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (deflater == null) return;
+            try {
+                long start = System.nanoTime();
+                if (gzip && bytesIn == 0) {
+                    out.write(GZIP_HEADER);
+                    bytesOut += GZIP_HEADER.length;
+                }
+                deflater.finish();
+                while (!deflater.finished()) {
+                    emit(Deflater.NO_FLUSH);
+                }
+                if (gzip) {
+                    writeTrailer();
+                }
+                nanos += System.nanoTime() - start;
+                out.flush();
+            } finally {
+                release(deflater, gzip);
+                deflater = null;
+                Metrics.timer("compression.time").recordNanos(nanos);
+                Metrics.counter("compression.bytes.in").increment(bytesIn);
+                Metrics.counter("compression.bytes.out").increment(bytesOut);
+            }
+        }
+
+        private int emit(int flush) throws IOException {
+            int n = deflater.deflate(chunk, 0, chunk.length, flush);
+            if (n > 0) {
+                out.write(chunk, 0, n);
+                bytesOut += n;
+            }
+            return n;
+        }
+
+        private void writeTrailer() throws IOException {
+            long value = crc.getValue();
+            long size = bytesIn & 0xffffffffL;
+            byte[] trailer = new byte[8];
+            for (int i = 0; i < 4; i++) {
+                trailer[i] = (byte) (value >>> (8 * i));
+                trailer[4 + i] = (byte) (size >>> (8 * i));
+            }
+            out.write(trailer);
+            bytesOut += trailer.length;
+        }
+    }
+
+    // ==================== Deflater pool ====================
+
+    private static Deflater acquire(boolean raw) {
+        Deflater pooled = (raw ? RAW_POOL : ZLIB_POOL).poll();
+        if (pooled == null) {
+            return new Deflater(level, raw);
+        }
+        pooled.setLevel(level);   // applies from the first deflate after reset
+        return pooled;
+    }
+
+    private static void release(Deflater deflater, boolean raw) {
+        deflater.reset();
+        if (!(raw ? RAW_POOL : ZLIB_POOL).offer(deflater)) {
+            deflater.end();   // pool full: free the native memory now
+        }
+    }
+
+    // ==================== Variants ====================
+
+    /**
+     * A body that never changes, with its compressed variants made on first
+     * use and kept. Bodies under the minimum size are never compressed.
+     */
+    public static final class Variants {
+        private final byte[] identity;
+        private volatile byte[] gzip;
+        private volatile byte[] deflate;
+
+        private Variants(byte[] identity) {
+            this.identity = identity;
+        }
+
+        public static Variants of(byte[] identity) {
+            return new Variants(identity);
+        }
+
+        /**
+         * The encoding actually used for a negotiated one: identity when the
+         * body is too small, or when compressing doesn't make it smaller.
+         */
+        public Encoding effective(Encoding negotiated) {
+            if (negotiated == Encoding.IDENTITY || identity.length < minBytes) {
+                return Encoding.IDENTITY;
+            }
+            return get(negotiated) != identity ? negotiated : Encoding.IDENTITY;
+        }
+
+        /** The body in an encoding (see {@link #effective}). */
+        public byte[] get(Encoding encoding) {
+            if (encoding == Encoding.IDENTITY || identity.length < minBytes) {
+                return identity;
+            }
+            byte[] variant = encoding == Encoding.GZIP ? gzip : deflate;
+            if (variant == null) {
+                variant = compress(identity, 0, identity.length, encoding);
+                if (variant.length >= identity.length) {
+                    variant = identity;
+                }
+                if (encoding == Encoding.GZIP) gzip = variant;
+                else deflate = variant;
+            }
+            return variant;
+        }
+
+        public byte[] identity() {
+            return identity;
+        }
+
+        /** Bytes held by the body and the variants made so far. */
+        public long size() {
+            byte[] g = gzip;
+            byte[] d = deflate;
+            return identity.length
+                + (g != null && g != identity ? g.length : 0)
+                + (d != null && d != identity ? d.length : 0);
+        }
+    }
+}
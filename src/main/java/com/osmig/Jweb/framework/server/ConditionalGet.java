@@ -0,0 +1,164 @@
+package com.osmig.Jweb.framework.server;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Conditional GET: answers {@code If-None-Match} / {@code If-Modified-Since}
+ * with 304 Not Modified before a page is rendered.
+ *
+ * <p>Pages declare a cheap version key or last-modified time (see
+ * {@code Template.version} and {@code Template.lastModified}); when the
+ * client's copy is current the render is skipped entirely:</p>
+ * <pre>
+ * ResponseEntity&lt;String&gt; notModified = ConditionalGet.check(request, version, lastModified);
+ * if (notModified != null) return notModified;   // 304, nothing rendered
+ * </pre>
+ *
+ * <p>Version ETags include a per-process token, so a restart (e.g. a
+ * deploy with new page code) never answers 304 for an old version.</p>
+ */
+public final class ConditionalGet {
+
+    // Changes on every start, so new page code never matches an old ETag
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+
+    private static final DateTimeFormatter HTTP_DATE =
+        DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    // Bytes of SHA-256 kept in an ETag (base64url: 24 chars)
+    private static final int ETAG_BYTES = 18;
+
+    private ConditionalGet() {
+        // Static utility class
+    }
+
+    /**
+     * Checks a request against a page's validators, and queues the
+     * {@code ETag} / {@code Last-Modified} response headers for them.
+     *
+     * @param request the request (only GET and HEAD are conditional)
+     * @param version the page's version key, if declared
+     * @param lastModified when the page's content last changed, if declared
+     * @return a 304 response when the client's copy is current, else null
+     */
+    public static ResponseEntity<String> check(Request request, Optional<String> version,
+                                               Optional<Instant> lastModified) {
+        if (version.isEmpty() && lastModified.isEmpty()) {
+            return null;
+        }
+        String method = request.method();
+        if (!"GET".equalsIgnoreCase(method) && !"HEAD".equalsIgnoreCase(method)) {
+            return null;
+        }
+
+        String etag = version.map(ConditionalGet::versionEtag).orElse(null);
+        Instant modified = lastModified.map(t -> t.truncatedTo(ChronoUnit.SECONDS)).orElse(null);
+        if (etag != null) {
+            request.responseHeader("ETag", etag);
+        }
+        if (modified != null) {
+            request.responseHeader("Last-Modified", httpDate(modified));
+        }
+
+        // If-None-Match wins over If-Modified-Since when both are sent
+        String ifNoneMatch = request.header("If-None-Match");
+        boolean current = ifNoneMatch != null
+            ? etag != null && matches(ifNoneMatch, etag)
+            : modified != null && notModifiedSince(request.header("If-Modified-Since"), modified);
+        if (!current) {
+            return null;
+        }
+        var response = ResponseEntity.status(HttpStatus.NOT_MODIFIED);
+        if (etag != null) response.header("ETag", etag);
+        if (modified != null) response.header("Last-Modified", httpDate(modified));
+        return response.build();
+    }
+
+    /**
+     * The strong ETag for a version key.
+     */
+    public static String versionEtag(String version) {
+        byte[] bytes = (EPOCH + '\0' + version).getBytes(StandardCharsets.UTF_8);
+        return strongEtag(bytes, 0, bytes.length);
+    }
+
+    /**
+     * A strong ETag hashing the exact bytes of a response body.
+     */
+    public static String strongEtag(byte[] bytes, int offset, int length) {
+        MessageDigest digest = bodyDigest();
+        digest.update(bytes, offset, length);
+        return strongEtag(digest);
+    }
+
+    /** A digest to feed a response body in parts, for {@link #strongEtag(MessageDigest)}. */
+    public static MessageDigest bodyDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * A strong ETag from a {@link #bodyDigest} fed the exact bytes of a
+     * response body.
+     */
+    public static String strongEtag(MessageDigest digest) {
+        byte[] hash = Arrays.copyOf(digest.digest(), ETAG_BYTES);
+        return '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(hash) + '"';
+    }
+
+    /**
+     * True when an {@code If-None-Match} header lists the ETag (or is
+     * {@code *}). Weak validators compare by their opaque tag, as the
+     * header's weak comparison requires.
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        // Scanned in place (no splitting): assets check this on every request
+        int length = ifNoneMatch.length();
+        int start = 0;
+        while (start < length) {
+            int end = ifNoneMatch.indexOf(',', start);
+            if (end < 0) end = length;
+            int from = start;
+            int to = end;
+            while (from < to && Character.isWhitespace(ifNoneMatch.charAt(from))) from++;
+            while (to > from && Character.isWhitespace(ifNoneMatch.charAt(to - 1))) to--;
+            if (to - from == 1 && ifNoneMatch.charAt(from) == '*') return true;
+            if (ifNoneMatch.startsWith("W/", from)) from += 2;
+            if (to - from == etag.length() && ifNoneMatch.regionMatches(from, etag, 0, etag.length())) return true;
+            start = end + 1;
+        }
+        return false;
+    }
+
+    private static boolean notModifiedSince(String ifModifiedSince, Instant modified) {
+        if (ifModifiedSince == null) return false;
+        try {
+            Instant since = DateTimeFormatter.RFC_1123_DATE_TIME.parse(ifModifiedSince.trim(), Instant::from);
+            return !modified.isAfter(since);
+        } catch (DateTimeParseException e) {
+            return false;   // unparseable dates are ignored
+        }
+    }
+
+    private static String httpDate(Instant instant) {
+        return HTTP_DATE.format(instant);
+    }
+}
@@ -0,0 +1,134 @@
+package com.osmig.Jweb.framework.server;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * A text asset encoded once: its bytes, compressed variants, content-hash
+ * version and finished responses are all built up front, so serving it
+ * allocates nothing per request.
+ *
+ * <pre>
+ * EncodedAsset runtime = EncodedAsset.of(source, JsMinifier.minify(source), JAVASCRIPT, IMMUTABLE);
+ * String src = "/jweb/runtime.js?v=" + runtime.version();
+ * return runtime.respond(acceptEncoding, ifNoneMatch);   // 200 or 304, prebuilt
+ * </pre>
+ *
+ * <p>The version is a SHA-256 prefix of the served bytes, so it only
+ * changes when they do. Each encoding has its own strong ETag, and a
+ * matching {@code If-None-Match} is answered 304 without a body.</p>
+ */
+public final class EncodedAsset {
+
+    // Bytes of SHA-256 kept in the version (hex: 16 chars)
+    private static final int VERSION_BYTES = 8;
+
+    private static final Compression.Encoding[] ENCODINGS = Compression.Encoding.values();
+
+    private final String source;
+    private final String version;
+    private final Compression.Variants body;
+    // Per Compression.Encoding ordinal: the encoding actually sent, and its responses
+    private final Compression.Encoding[] effective = new Compression.Encoding[ENCODINGS.length];
+    private final String[] etags = new String[ENCODINGS.length];
+    private final ResponseEntity<byte[]>[] ok;
+    private final ResponseEntity<byte[]>[] notModified;
+
+    @SuppressWarnings("unchecked")
+    private EncodedAsset(String source, String content, MediaType type, CacheControl cacheControl) {
+        this.source = source;
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        this.version = hash(bytes);
+        this.body = Compression.Variants.of(bytes);
+        this.ok = new ResponseEntity[ENCODINGS.length];
+        this.notModified = new ResponseEntity[ENCODINGS.length];
+
+        String etag = '"' + version + '"';
+        for (Compression.Encoding encoding : ENCODINGS) {
+            int i = encoding.ordinal();
+            // Compressing here, not on the first request that asks for it
+            effective[i] = body.effective(encoding);
+            etags[i] = Compression.etagFor(etag, effective[i]);
+            HttpHeaders headers = new HttpHeaders();
+            headers.setCacheControl(cacheControl);
+            headers.setETag(etags[i]);
+            headers.add(HttpHeaders.VARY, "Accept-Encoding");
+            HttpHeaders notModifiedHeaders = HttpHeaders.readOnlyHttpHeaders(copy(headers));
+            headers.setContentType(type);
+            if (effective[i] != Compression.Encoding.IDENTITY) {
+                headers.add(HttpHeaders.CONTENT_ENCODING, effective[i].token());
+            }
+            byte[] encoded = body.get(effective[i]);
+            headers.setContentLength(encoded.length);
+            ok[i] = new ResponseEntity<>(encoded, HttpHeaders.readOnlyHttpHeaders(headers), HttpStatus.OK);
+            notModified[i] = new ResponseEntity<>(notModifiedHeaders, HttpStatus.NOT_MODIFIED);
+        }
+    }
+
+    /**
+     * Encodes an asset.
+     *
+     * @param source what the asset was built from, to tell when to rebuild (see {@link #isFor})
+     * @param content the text to serve (e.g. the minified source)
+     * @param type the Content-Type
+     * @param cacheControl the Cache-Control of every response
+     */
+    public static EncodedAsset of(String source, String content, MediaType type, CacheControl cacheControl) {
+        return new EncodedAsset(source, content, type, cacheControl);
+    }
+
+    /** True when this asset was built from {@code source}. */
+    public boolean isFor(String source) {
+        return this.source == source || this.source.equals(source);
+    }
+
+    /** The content-hash version, for {@code ?v=} cache busting. */
+    public String version() {
+        return version;
+    }
+
+    /** The strong ETag of the variant sent for an encoding. */
+    public String etag(Compression.Encoding encoding) {
+        return etags[encoding.ordinal()];
+    }
+
+    /** The served bytes before compression. */
+    public byte[] bytes() {
+        return body.identity();
+    }
+
+    /**
+     * The prebuilt response for a request: 304 when {@code If-None-Match}
+     * lists the negotiated variant's ETag, else 200 with that variant.
+     */
+    public ResponseEntity<byte[]> respond(String acceptEncoding, String ifNoneMatch) {
+        int i = effective[Compression.negotiate(acceptEncoding).ordinal()].ordinal();
+        if (ifNoneMatch != null && ConditionalGet.matches(ifNoneMatch, etags[i])) {
+            return notModified[i];
+        }
+        return ok[i];
+    }
+
+    private static HttpHeaders copy(HttpHeaders headers) {
+        HttpHeaders copy = new HttpHeaders();
+        copy.putAll(headers);
+        return copy;
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return HexFormat.of().formatHex(digest, 0, VERSION_BYTES);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
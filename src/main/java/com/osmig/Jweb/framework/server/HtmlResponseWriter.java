@@ -0,0 +1,331 @@
+package com.osmig.Jweb.framework.server;
+
+import com.osmig.Jweb.framework.vdom.HtmlSink;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encodes rendered HTML straight into the servlet output stream as UTF-8.
+ *
+ * <p>The page is rendered completely before anything is written (so render
+ * errors still get an error page, and the document slots can be filled in
+ * after the walk); it is then encoded into a pooled byte buffer sized from
+ * the route's previous render and handed to the output stream each time the
+ * buffer fills, so a page never exists as a String, a ResponseEntity body
+ * and a converter-encoded copy at once. The container decides when those
+ * writes reach the client; the response is flushed once, at the end.</p>
+ *
+ * <p>Pages that fit in a single buffer are sent with an exact
+ * Content-Length. When {@link #validate} is on, they get a strong ETag
+ * hashing their bytes (answered with 304 if the client already has them).
+ * A page that may not fit in the buffer is encoded once, as it is sent,
+ * unless the request is conditional: only then is it encoded into the
+ * digest first, so a matching {@code If-None-Match} is answered before
+ * anything is sent. Otherwise its bytes are hashed as they are written and
+ * the ETag goes out as a trailer to clients that accept trailers. With a
+ * negotiated {@link #compress} encoding, larger pages are compressed as
+ * each buffer is written.</p>
+ */
+final class HtmlResponseWriter implements HtmlSink.Drain {
+
+    static final int MIN_BUFFER = 8 * 1024;
+    static final int MAX_BUFFER = 64 * 1024;
+
+    // Buffers kept per size class (8K, 16K, 32K, 64K)
+    private static final int POOL_LIMIT = 32;
+    private static final List<ArrayBlockingQueue<ByteBuffer>> POOL = List.of(
+            new ArrayBlockingQueue<>(POOL_LIMIT),
+            new ArrayBlockingQueue<>(POOL_LIMIT),
+            new ArrayBlockingQueue<>(POOL_LIMIT),
+            new ArrayBlockingQueue<>(POOL_LIMIT));
+
+    // Encoded size of each route's last render, keyed by route pattern
+    private static final Map<String, Integer> lastRenderBytes = new ConcurrentHashMap<>();
+
+    private final HttpServletResponse response;
+    private final String routeKey;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer buffer;
+    private OutputStream out;
+    private long written;
+    private boolean validate;
+    private String ifNoneMatch;
+    private boolean trailers;
+    private String etag;
+    // Hashes the bytes as they are sent, for the trailing ETag
+    private MessageDigest sentDigest;
+    // Bytes out of the encoder, sent or hashed
+    private long encoded;
+    private Compression.Encoding encoding = Compression.Encoding.IDENTITY;
+    private OutputStream compressor;
+
+    HtmlResponseWriter(HttpServletResponse response, String routeKey) {
+        this.response = response;
+        this.routeKey = routeKey;
+        this.buffer = acquire(bufferSizeFor(routeKey));
+    }
+
+    /** Expected size of the route's output, for presizing its render buffer. */
+    static int sizeHint(String routeKey) {
+        if (routeKey == null) return MIN_BUFFER;
+        return lastRenderBytes.getOrDefault(routeKey, MIN_BUFFER);
+    }
+
+    /**
+     * Sends a strong ETag of the encoded bytes, and a bodiless 304 when it
+     * matches {@code ifNoneMatch}.
+     *
+     * @param ifNoneMatch the request's {@code If-None-Match} header, or null
+     * @param te the request's {@code TE} header: a page sent before its
+     *           hash is known only gets a (trailing) ETag when it lists
+     *           {@code trailers}
+     */
+    void validate(String ifNoneMatch, String te) {
+        this.validate = true;
+        this.ifNoneMatch = ifNoneMatch;
+        this.trailers = te != null && te.toLowerCase(java.util.Locale.ROOT).contains("trailers");
+    }
+
+    /** Bytes the encoder produced for this response, whether sent or only hashed. */
+    long encodedBytes() {
+        return encoded;
+    }
+
+    /**
+     * Compresses the page in the given encoding: a page that fits in one
+     * buffer in one go (if it reaches the minimum size), a larger one as
+     * each buffer is flushed.
+     */
+    void compress(Compression.Encoding encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * Encodes the sink's output to the client and completes the response.
+     * The buffer returns to the pool even if the client has gone away.
+     */
+    void writeAndClose(HtmlSink sink) throws IOException {
+        try {
+            // UTF-8 may take up to 3 bytes a char. A conditional request is
+            // worth a second encoding: hash before the headers go out
+            if (validate && ifNoneMatch != null && (long) sink.length() * 3 > buffer.capacity()
+                    && notModified(sink)) {
+                return;
+            }
+            sink.drainTo(this, buffer.capacity());
+            finish();
+        } finally {
+            release(buffer);
+            buffer = null;
+            if (compressor != null) {
+                // Client gone mid-page: still return the deflater to its pool
+                try {
+                    compressor.close();
+                } catch (IOException ignored) {
+                    // Nothing more can be sent
+                }
+            }
+        }
+    }
+
+    @Override
+    public void write(char[] chars, int length) throws IOException {
+        CharBuffer in = CharBuffer.wrap(chars, 0, length);
+        while (true) {
+            CoderResult result = encoder.encode(in, buffer, false);
+            if (result.isUnderflow()) {
+                return;
+            }
+            if (result.isOverflow()) {
+                flushBuffer();
+            } else {
+                result.throwException();
+            }
+        }
+    }
+
+    private void finish() throws IOException {
+        while (encoder.encode(CharBuffer.allocate(0), buffer, true).isOverflow()) {
+            flushBuffer();
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            flushBuffer();
+        }
+        if (out == null) {
+            // Nothing sent yet: the whole page is in this buffer
+            writeWhole();
+        } else {
+            flushBuffer();
+            if (sentDigest != null) {
+                // Read by the container once the body is complete
+                etag = Compression.etagFor(ConditionalGet.strongEtag(sentDigest), encoding);
+            }
+            if (compressor != null) {
+                OutputStream stream = compressor;
+                compressor = null;
+                stream.close();   // finishes the stream and flushes
+            } else {
+                out.flush();
+            }
+        }
+        if (routeKey != null) {
+            lastRenderBytes.put(routeKey, (int) Math.min(written, Integer.MAX_VALUE));
+        }
+    }
+
+    // Sends a page that fit in the buffer, with an exact length (and ETag)
+    private void writeWhole() throws IOException {
+        int length = buffer.position();
+        written = length;
+        encoded += length;
+        Compression.Encoding coding = length >= Compression.minBytes() ? encoding : Compression.Encoding.IDENTITY;
+        byte[] body = buffer.array();
+        int offset = buffer.arrayOffset();
+        if (coding != Compression.Encoding.IDENTITY) {
+            body = Compression.compress(body, offset, length, coding);
+            offset = 0;
+            length = body.length;
+            response.setHeader("Content-Encoding", coding.token());
+        }
+        if (validate && etag == null) {
+            etag = Compression.etagFor(
+                ConditionalGet.strongEtag(buffer.array(), buffer.arrayOffset(), buffer.position()), coding);
+            if (sendEtag()) {
+                buffer.clear();
+                return;
+            }
+        }
+        response.setContentLength(length);
+        response.getOutputStream().write(body, offset, length);
+        response.getOutputStream().flush();
+        buffer.clear();
+    }
+
+    /**
+     * Hashes the whole encoded page and sends its ETag, before any of it is
+     * written; the page is encoded again when it is sent.
+     *
+     * @return true when the client already has the page (304 sent)
+     */
+    private boolean notModified(HtmlSink sink) throws IOException {
+        MessageDigest digest = ConditionalGet.bodyDigest();
+        long[] length = {0};
+        sink.copyTo((chars, count) -> {
+            CharBuffer in = CharBuffer.wrap(chars, 0, count);
+            while (encoder.encode(in, buffer, false).isOverflow()) {
+                length[0] += digestBuffer(digest);
+            }
+        }, buffer.capacity());
+        while (encoder.encode(CharBuffer.allocate(0), buffer, true).isOverflow()) {
+            length[0] += digestBuffer(digest);
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            length[0] += digestBuffer(digest);
+        }
+        length[0] += digestBuffer(digest);
+        encoder.reset();
+        // The encoding finish() will pick: a page that fits is only compressed past the minimum
+        Compression.Encoding coding = length[0] > buffer.capacity() || length[0] >= Compression.minBytes()
+            ? encoding : Compression.Encoding.IDENTITY;
+        etag = Compression.etagFor(ConditionalGet.strongEtag(digest), coding);
+        return sendEtag();
+    }
+
+    private int digestBuffer(MessageDigest digest) {
+        buffer.flip();
+        int length = buffer.remaining();
+        digest.update(buffer.array(), buffer.arrayOffset(), length);
+        buffer.clear();
+        encoded += length;
+        return length;
+    }
+
+    // Sets the ETag header; a match is answered with a bodiless 304
+    private boolean sendEtag() {
+        response.setHeader("ETag", etag);
+        if (ConditionalGet.matches(ifNoneMatch, etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        return false;
+    }
+
+    // Hands the buffered bytes to the output stream (flushed once, in finish)
+    private void flushBuffer() throws IOException {
+        if (out == null) {
+            if (validate && etag == null && trailers) {
+                trailEtag();
+            }
+            out = response.getOutputStream();
+            if (encoding != Compression.Encoding.IDENTITY) {
+                response.setHeader("Content-Encoding", encoding.token());
+                compressor = Compression.open(out, encoding);
+                out = compressor;
+            }
+        }
+        buffer.flip();
+        if (buffer.hasRemaining()) {
+            if (sentDigest != null) {
+                sentDigest.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            }
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            written += buffer.remaining();
+            encoded += buffer.remaining();
+        }
+        buffer.clear();
+    }
+
+    // Declares the ETag as a trailer, hashed while the body is written
+    private void trailEtag() {
+        try {
+            response.setTrailerFields(() -> etag != null ? Map.of("ETag", etag) : Map.of());
+        } catch (IllegalStateException e) {
+            // The protocol or container can't send trailers
+            return;
+        }
+        response.setHeader("Trailer", "ETag");
+        sentDigest = ConditionalGet.bodyDigest();
+    }
+
+    // ==================== Buffer pool ====================
+
+    private static int bufferSizeFor(String routeKey) {
+        int expected = sizeHint(routeKey);
+        int size = MIN_BUFFER;
+        while (size < expected && size < MAX_BUFFER) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static int sizeClass(int capacity) {
+        return Integer.numberOfTrailingZeros(capacity / MIN_BUFFER);
+    }
+
+    private static ByteBuffer acquire(int size) {
+        ByteBuffer pooled = POOL.get(sizeClass(size)).poll();
+        return pooled != null ? pooled : ByteBuffer.allocate(size);
+    }
+
+    private static void release(ByteBuffer buffer) {
+        if (buffer != null) {
+            buffer.clear();
+            POOL.get(sizeClass(buffer.capacity())).offer(buffer);
+        }
+    }
+}
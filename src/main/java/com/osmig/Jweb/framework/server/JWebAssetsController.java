@@ -1,14 +1,21 @@
 package com.osmig.Jweb.framework.server;
 
 import com.osmig.Jweb.framework.js.JWebRuntime;
+import com.osmig.Jweb.framework.js.JsMinifier;
 import com.osmig.Jweb.framework.performance.Prefetch;
+import com.osmig.Jweb.framework.styles.CriticalCss;
 import org.springframework.http.CacheControl;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -16,8 +23,16 @@ import java.util.concurrent.TimeUnit;
  * assets instead of inlining them into every page.
  *
  * <p>Pages reference these with a content-hash version parameter
- * ({@code /jweb/runtime.js?v=<hash>}), so they can be cached immutably —
- * the URL changes whenever the script content changes.</p>
+ * ({@code /jweb/runtime.js?v=<hash>}, a SHA-256 prefix of the served
+ * bytes), so they can be cached immutably — the URL changes whenever the
+ * script content changes. Each script is minified, encoded and compressed
+ * once (see {@link EncodedAsset}); requests get a prebuilt response, or a
+ * 304 when {@code If-None-Match} carries the current ETag.</p>
+ *
+ * <p>Full stylesheets of {@link CriticalCss} pages are served the same way
+ * from {@code /jweb/css/<hash>.css}. A version this instance doesn't know
+ * gets the registered sheet (or a 404) marked {@code no-store}, so a cache
+ * never keeps it under that URL.</p>
  */
 @Controller
 public class JWebAssetsController {
@@ -27,27 +42,99 @@ public class JWebAssetsController {
             .cachePublic()
             .immutable();
 
-    /** Content-hash of a script, used as its cache-busting version. */
-    public static String versionOf(String script) {
-        return Integer.toHexString(script.hashCode());
+    private static final MediaType JAVASCRIPT = MediaType.parseMediaType("application/javascript;charset=UTF-8");
+    private static final MediaType CSS = MediaType.parseMediaType("text/css;charset=UTF-8");
+
+    // Rebuilt only if a script changes (e.g. prefetch settings applied after startup)
+    private static volatile EncodedAsset runtime;
+    private static volatile EncodedAsset prefetch;
+
+    // Encoded on first request, by version (bounded by CriticalCss's sheet limit)
+    private static final Map<String, EncodedAsset> stylesheets = new ConcurrentHashMap<>();
+
+    /** The version of the served runtime script. */
+    public static String runtimeVersion() {
+        return runtimeAsset().version();
+    }
+
+    /** The version of the served prefetch script. */
+    public static String prefetchVersion() {
+        return prefetchAsset().version();
+    }
+
+    /**
+     * Encodes both scripts now, so the first requests don't pay for it.
+     * Called at startup once settings are applied.
+     */
+    public static void prepare() {
+        runtimeAsset();
+        prefetchAsset();
     }
 
     @GetMapping("/jweb/runtime.js")
     @ResponseBody
-    public ResponseEntity<String> runtime() {
-        return js(JWebRuntime.getScript());
+    public ResponseEntity<byte[]> runtime(
+            @RequestHeader(value = "Accept-Encoding", required = false) String acceptEncoding,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        return runtimeAsset().respond(acceptEncoding, ifNoneMatch);
     }
 
     @GetMapping("/jweb/prefetch.js")
     @ResponseBody
-    public ResponseEntity<String> prefetch() {
-        return js(Prefetch.clientScript());
+    public ResponseEntity<byte[]> prefetch(
+            @RequestHeader(value = "Accept-Encoding", required = false) String acceptEncoding,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        return prefetchAsset().respond(acceptEncoding, ifNoneMatch);
     }
 
-    private ResponseEntity<String> js(String script) {
+    @GetMapping("/jweb/css/{version}.css")
+    @ResponseBody
+    public ResponseEntity<byte[]> stylesheet(
+            @PathVariable String version,
+            @RequestHeader(value = "Accept-Encoding", required = false) String acceptEncoding,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        EncodedAsset asset = stylesheets.get(version);
+        if (asset == null) {
+            String css = CriticalCss.stylesheet(version);
+            if (css == null) {
+                return unknownStylesheet();
+            }
+            asset = stylesheets.computeIfAbsent(version, v -> EncodedAsset.of(css, css, CSS, IMMUTABLE));
+        }
+        return asset.respond(acceptEncoding, ifNoneMatch);
+    }
+
+    // Not rendered here yet: the registered sheet beats an unstyled page, but must not be cached as this version
+    private static ResponseEntity<byte[]> unknownStylesheet() {
+        String css = CriticalCss.registeredStylesheet();
+        if (css == null) {
+            return ResponseEntity.notFound().cacheControl(CacheControl.noStore()).build();
+        }
         return ResponseEntity.ok()
-                .cacheControl(IMMUTABLE)
-                .contentType(MediaType.parseMediaType("application/javascript;charset=UTF-8"))
-                .body(script);
+                .cacheControl(CacheControl.noStore())
+                .contentType(CSS)
+                .body(css.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static EncodedAsset runtimeAsset() {
+        EncodedAsset asset = runtime;
+        String script = JWebRuntime.getScript();
+        if (asset == null || !asset.isFor(script)) {
+            runtime = asset = encode(script);
+        }
+        return asset;
+    }
+
+    private static EncodedAsset prefetchAsset() {
+        EncodedAsset asset = prefetch;
+        String script = Prefetch.clientScript();
+        if (asset == null || !asset.isFor(script)) {
+            prefetch = asset = encode(script);
+        }
+        return asset;
+    }
+
+    private static EncodedAsset encode(String script) {
+        return EncodedAsset.of(script, JsMinifier.minify(script), JAVASCRIPT, IMMUTABLE);
     }
 }
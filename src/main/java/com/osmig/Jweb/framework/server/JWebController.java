@@ -1,6 +1,7 @@
 package com.osmig.Jweb.framework.server;
 
 import com.osmig.Jweb.framework.JWeb;
+import com.osmig.Jweb.framework.cache.PageCache;
 import com.osmig.Jweb.framework.core.Element;
 import com.osmig.Jweb.framework.core.RawContent;
 import com.osmig.Jweb.framework.hydration.HydrationData;
@@ -11,6 +12,9 @@ import com.osmig.Jweb.framework.routing.PageRoute;
 import com.osmig.Jweb.framework.routing.Router;
 import com.osmig.Jweb.framework.state.StateManager;
 import com.osmig.Jweb.framework.template.Template;
+import com.osmig.Jweb.framework.vdom.DocumentSlots;
+import com.osmig.Jweb.framework.vdom.HtmlSink;
+import com.osmig.Jweb.framework.vdom.VNode;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.http.CacheControl;
@@ -54,9 +58,15 @@ public class JWebController {
     // Cache layout constructors to avoid reflection overhead per request
     private static final Map<Class<?>, Constructor<?>> layoutConstructorCache = new ConcurrentHashMap<>();
 
-    // Pre-cached markers for fast HTML injection
+    // Where streamed chunks are spliced into the shell
     private static final String BODY_END = "</body>";
-    private static final String HTML_END = "</html>";
+
+    // Write rendered pages straight to the servlet output stream as UTF-8
+    // instead of returning them as a String body (jweb.render.direct-output)
+    private static volatile boolean directOutput = true;
+
+    // Send the page's tree in the hydration data (jweb.hydration.include-tree)
+    private static volatile boolean hydrateTree = false;
 
     public JWebController(JWeb jweb) {
         this.router = jweb.getRouter();
@@ -64,6 +74,24 @@ public class JWebController {
         this.pageRegistry = jweb.getPageRegistry();
     }
 
+    /**
+     * Enables or disables direct output: when on, HTML documents are encoded
+     * straight into the response stream in chunks; when off, they are
+     * returned as {@code ResponseEntity<String>} bodies.
+     */
+    public static void setDirectOutput(boolean enabled) {
+        directOutput = enabled;
+    }
+
+    /**
+     * Includes each page's VNode tree in its hydration data, in the compact
+     * encoding, for client code that reads {@code JWeb.data.vnode}. Off by
+     * default: the bundled runtime doesn't need it.
+     */
+    public static void setHydrateTree(boolean enabled) {
+        hydrateTree = enabled;
+    }
+
     @RequestMapping(value = "/**")
     public Object handleRequest(
             HttpServletRequest servletRequest,
@@ -88,7 +116,7 @@ public class JWebController {
                     .header("Allow", "GET, HEAD")
                     .body("Method not allowed");
             }
-            return handlePageRoute(pageMatch.get(), servletRequest);
+            return handlePageRoute(pageMatch.get(), servletRequest, servletResponse);
         }
 
         // Try legacy routes
@@ -115,11 +143,14 @@ public class JWebController {
 
         // Create state context for this request
         StateManager.StateContext context = StateManager.createContext();
+        com.osmig.Jweb.framework.styles.PageStyles.open();
         try {
             Request request = new Request(servletRequest);
 
             // Execute through middleware stack
-            Object result = middlewareStack.execute(request, () -> match.get().handle(request));
+            Router.RouteMatch routed = match.get();
+            Object result = middlewareStack.execute(request, routed.route().getMethod(),
+                routed.route().getPath(), () -> routed.handle(request));
 
             // SSE emitters stream through Spring MVC directly
             if (result instanceof org.springframework.web.servlet.mvc.method.annotation.SseEmitter emitter) {
@@ -135,22 +166,23 @@ public class JWebController {
                 return null;   // response already written and committed
             }
 
-            return applyQueuedHeaders(processResult(result, context, request), request);
+            return respond(result, context, request, servletResponse, match.get().route().getPath());
         } catch (Exception e) {
             return handleError(e);
         } finally {
-            // Detach from this thread only. The context stays registered so
-            // browser events (WebSocket) can reference it; the TTL reaper in
-            // StateManager collects it once idle.
-            StateManager.clearContext();
+            // Detach from this thread. A context the page used stays
+            // registered so browser events (WebSocket) can reference it; an
+            // unused one is released now.
+            StateManager.finishRequest();
             clearThreadLocals();
         }
     }
 
-    /** Clears per-request thread-locals (DI context, portals, locale) after a render. */
+    /** Clears per-request thread-locals (DI context, portals, styles, locale) after a render. */
     private void clearThreadLocals() {
         com.osmig.Jweb.framework.context.Context.clear();
         com.osmig.Jweb.framework.portal.Portal.clear();
+        com.osmig.Jweb.framework.styles.PageStyles.clear();
         com.osmig.Jweb.framework.i18n.I18n.clearCurrent();
     }
 
@@ -177,16 +209,10 @@ public class JWebController {
 
         // Templates returned from handlers get their lifecycle hooks
         if (result instanceof Template template) {
-            template.beforeRender(request);
-            String html = template.render().toHtml();
-            template.afterRender(request);
-            html = applyTemplateExtras(html, template);
-            if (context != null) {
-                html = injectHydrationData(html, buildHydrationScript(context));
-            }
+            HtmlSink sink = renderTemplate(template, context, request, HtmlResponseWriter.MIN_BUFFER);
             return ResponseEntity.ok()
                 .contentType(MediaType.TEXT_HTML)
-                .body(html);
+                .body(sink.toString());
         }
 
         // If middleware already returned a ResponseEntity, use it directly
@@ -207,20 +233,13 @@ public class JWebController {
         }
 
         if (result instanceof Element element) {
-            String html = element.toHtml();
-
-            // Inject hydration data with state and context info
-            // (skipped when no state context exists, e.g. 404 pages)
-            if (context != null) {
-                String hydrationScript = buildHydrationScript(context);
-                html = injectHydrationData(html, hydrationScript);
-            }
+            HtmlSink sink = renderElement(element, context, HtmlResponseWriter.MIN_BUFFER);
 
             // Short private cache so back/forward and quick revisits are free
             return ResponseEntity.ok()
                 .cacheControl(NAVIGATION_CACHE)
                 .contentType(MediaType.TEXT_HTML)
-                .body(html);
+                .body(sink.toString());
         }
 
         if (result instanceof String str) {
@@ -239,52 +258,133 @@ public class JWebController {
             .body(com.osmig.Jweb.framework.util.Json.stringify(result));
     }
 
-    private String buildHydrationScript(StateManager.StateContext context) {
-        HydrationData data = HydrationData.builder()
-            .contextId(context.getSessionId())
-            .states(new java.util.ArrayList<>(context.getStates().values()))
-            .build();
-        return data.toScriptTag();
+    // ==================== Document rendering ====================
+
+    /**
+     * Sends a handler result. Templates and elements are written straight to
+     * the output stream in direct-output mode; everything else (and every
+     * result when direct output is off) goes through {@link #processResult}.
+     */
+    private Object respond(Object result, StateManager.StateContext context, Request request,
+                           HttpServletResponse servletResponse, String routeKey) throws java.io.IOException {
+        // A template whose declared version the client already has isn't rendered
+        if (result instanceof Template template) {
+            ResponseEntity<String> notModified = ConditionalGet.check(request,
+                template.version(request), template.lastModified(request));
+            if (notModified != null) {
+                return applyQueuedHeaders(notModified, request);
+            }
+        }
+        if (directOutput && !(result instanceof RawContent)) {
+            if (result instanceof Template template) {
+                int sizeHint = HtmlResponseWriter.sizeHint(routeKey);
+                writeDocument(renderTemplate(template, context, request, sizeHint),
+                    null, request, servletResponse, routeKey);
+                return null;
+            }
+            if (result instanceof Element element) {
+                int sizeHint = HtmlResponseWriter.sizeHint(routeKey);
+                writeDocument(renderElement(element, context, sizeHint),
+                    NAVIGATION_CACHE, request, servletResponse, routeKey);
+                return null;
+            }
+        }
+        return applyQueuedHeaders(processResult(result, context, request), request);
     }
 
-    private String injectHydrationData(String html, String hydrationScript) {
-        // External, immutably-cached script references (the browser caches
-        // them across navigations; the ?v= content hash busts on change).
-        // Only the per-request hydration data stays inline.
-        String prefetchScript = externalPrefetchTag();
-        String runtimeScript = externalRuntimeTag();
+    /** Renders a handler-returned template with its lifecycle hooks and extras. */
+    private HtmlSink renderTemplate(Template template, StateManager.StateContext context,
+                                    Request request, int sizeHint) {
+        template.beforeRender(request);
+        VNode tree = template.render().toVNode();
+        template.afterRender(request);
+        return renderDocument(tree, template, context, sizeHint);
+    }
+
+    /**
+     * Renders an element in a single pass, with hydration data
+     * (skipped when no state context exists, e.g. 404 pages).
+     */
+    private HtmlSink renderElement(Element element, StateManager.StateContext context, int sizeHint) {
+        return renderDocument(element.toVNode(), null, context, sizeHint);
+    }
 
-        // Fast path: if no scripts to inject, return as-is
-        if (prefetchScript.isEmpty() && hydrationScript.isEmpty() && runtimeScript.isEmpty()) {
-            return html;
+    /**
+     * Writes a built tree with the page's extras and the framework scripts
+     * emitted into their slots during the walk. The tree is built first so
+     * the hydration data sees every state it registered.
+     */
+    private HtmlSink renderDocument(VNode tree, Template page, StateManager.StateContext context, int sizeHint) {
+        DocumentSlots slots = new DocumentSlots();
+        if (page != null) {
+            addTemplateExtras(slots, page);
+        }
+        // StyledElement rules collected while the tree was built (once each)
+        // and the critical part of the page's stylesheets
+        com.osmig.Jweb.framework.styles.PageStyles.closeCurrent(tree, slots);
+        if (context != null) {
+            addFrameworkScripts(slots, hydrationData(context, tree));
         }
+        HtmlSink sink = new HtmlSink(sizeHint).withSlots(slots);
+        tree.writeTo(sink);
+        slots.finish(sink);
+        return sink;
+    }
 
-        // Order: hydration data first so JWeb.init() can read __JWEB_DATA__
-        String scripts = prefetchScript + hydrationScript + runtimeScript;
+    /**
+     * Writes a rendered document to the servlet response as UTF-8 bytes.
+     * Everything that can fail (handlers, rendering) has already run, so the
+     * response is only committed once the page is known to be good.
+     */
+    private void writeDocument(HtmlSink sink, CacheControl cacheControl, Request request,
+                               HttpServletResponse servletResponse, String routeKey) throws java.io.IOException {
+        servletResponse.setStatus(HttpServletResponse.SC_OK);
+        servletResponse.setContentType("text/html;charset=UTF-8");
+        if (cacheControl != null) {
+            servletResponse.setHeader("Cache-Control", cacheControl.getHeaderValue());
+        }
+        // Middleware-queued headers; explicitly set ones win (as in applyQueuedHeaders)
+        request.responseHeaders().forEach((name, value) -> {
+            if (!servletResponse.containsHeader(name)) {
+                servletResponse.setHeader(name, value);
+            }
+        });
+        if ("HEAD".equalsIgnoreCase(request.method())) {
+            return;
+        }
+        HtmlResponseWriter writer = new HtmlResponseWriter(servletResponse, routeKey);
+        if (Compression.isEnabled()) {
+            servletResponse.addHeader("Vary", "Accept-Encoding");
+            writer.compress(Compression.negotiate(request.header("Accept-Encoding")));
+        }
+        if (!servletResponse.containsHeader("ETag")) {
+            // No declared version: validate by the hash of the bytes sent
+            writer.validate(request.header("If-None-Match"), request.header("TE"));
+        }
+        writer.writeAndClose(sink);
+    }
 
-        // Use StringBuilder for efficient string building
-        int bodyEnd = html.lastIndexOf(BODY_END);
-        if (bodyEnd != -1) {
-            return new StringBuilder(html.length() + scripts.length())
-                .append(html, 0, bodyEnd)
-                .append(scripts)
-                .append(html, bodyEnd, html.length())
-                .toString();
-        }
-
-        // Inject before </html> if no body
-        int htmlEnd = html.lastIndexOf(HTML_END);
-        if (htmlEnd != -1) {
-            return new StringBuilder(html.length() + scripts.length())
-                .append(html, 0, htmlEnd)
-                .append(scripts)
-                .append(html, htmlEnd, html.length())
-                .toString();
-        }
-
-        // HTML fragment (no <body>/<html>) — served for swap targets;
-        // injecting scripts would duplicate them in the page after the swap
-        return html;
+    private HydrationData hydrationData(StateManager.StateContext context, VNode tree) {
+        // A page without state or handlers has no context for the client to reference
+        HydrationData.Builder hydration = HydrationData.builder()
+            .contextId(context.isActive() ? context.getSessionId() : null)
+            .states(new java.util.ArrayList<>(context.getStates().values()));
+        if (hydrateTree) {
+            hydration.vnode(tree);
+        }
+        return hydration.build();
+    }
+
+    private void addFrameworkScripts(DocumentSlots slots, HydrationData hydration) {
+        // External, immutably-cached script references (the browser caches
+        // them across navigations; the ?v= content hash busts on change).
+        // Only the per-request hydration data stays inline.
+        // Order: hydration data before the runtime so JWeb.init() can read
+        // __JWEB_DATA__. Fragments (swap targets) get none of these, or the
+        // scripts would be duplicated in the page after the swap.
+        slots.scripts(externalPrefetchTag())
+            .scripts(hydration::writeScriptTag)
+            .scripts(externalRuntimeTag());
     }
 
     // Cached external script tags (content is fixed after startup; the
@@ -298,8 +398,7 @@ public class JWebController {
             if (!com.osmig.Jweb.framework.js.JWebRuntime.isEnabled()) {
                 tag = "";
             } else {
-                String script = com.osmig.Jweb.framework.js.JWebRuntime.getScript();
-                tag = "<script src=\"/jweb/runtime.js?v=" + JWebAssetsController.versionOf(script) + "\"></script>";
+                tag = "<script src=\"/jweb/runtime.js?v=" + JWebAssetsController.runtimeVersion() + "\"></script>";
             }
             cachedRuntimeTag = tag;
         }
@@ -312,7 +411,7 @@ public class JWebController {
             String script = Prefetch.clientScript();
             tag = (script == null || script.isEmpty())
                 ? ""
-                : "<script src=\"/jweb/prefetch.js?v=" + JWebAssetsController.versionOf(script) + "\"></script>";
+                : "<script src=\"/jweb/prefetch.js?v=" + JWebAssetsController.prefetchVersion() + "\"></script>";
             cachedPrefetchTag = tag;
         }
         return tag;
@@ -324,27 +423,28 @@ public class JWebController {
      * Renders a {@link com.osmig.Jweb.framework.async.Streamed} page: the
      * shell (with placeholders) flushes immediately; each Suspense block's
      * HTML is written as a chunk the moment its data resolves, replacing its
-     * placeholder via a tiny inline script.
+     * placeholder via a tiny inline script (see {@link
+     * com.osmig.Jweb.framework.async.StreamingContext#stream}).
      */
     private void streamResponse(com.osmig.Jweb.framework.async.Streamed streamed,
                                 StateManager.StateContext context, Request request,
                                 HttpServletResponse servletResponse) throws java.io.IOException {
         var streaming = com.osmig.Jweb.framework.async.StreamingContext.open();
-        String html;
+        VNode tree;
         try {
-            html = streamed.page().get().toHtml();
+            tree = streamed.page().get().toVNode();
         } finally {
             com.osmig.Jweb.framework.async.StreamingContext.close();
         }
-        if (context != null) {
-            html = injectHydrationData(html, buildHydrationScript(context));
-        }
+        // Suspense blocks may register state or handlers after the shell is
+        // sent, so the shell always carries the context's ID
+        context.getSessionId();
+        String html = renderDocument(tree, null, context, HtmlResponseWriter.MIN_BUFFER).toString();
 
         // Split so late chunks land inside <body>
         int bodyEnd = html.lastIndexOf(BODY_END);
         String shell = bodyEnd >= 0 ? html.substring(0, bodyEnd) : html;
         String tail = bodyEnd >= 0 ? html.substring(bodyEnd) : "";
-        var pendings = new java.util.ArrayList<>(streaming.pendings());
 
         servletResponse.setContentType("text/html;charset=UTF-8");
         request.responseHeaders().forEach(servletResponse::setHeader);
@@ -353,19 +453,27 @@ public class JWebController {
         out.write(shell);
         out.flush();   // commits the response — the shell paints immediately
 
-        while (!pendings.isEmpty()) {
-            java.util.concurrent.CompletableFuture.anyOf(
-                pendings.stream().map(p -> p.html()).toArray(java.util.concurrent.CompletableFuture[]::new)
-            ).join();
-            var it = pendings.iterator();
-            while (it.hasNext()) {
-                var pending = it.next();
-                if (pending.html().isDone()) {
-                    out.write(streamChunk(pending.placeholderId(), pending.html().join()));
-                    it.remove();
+        // Blocks are written as they complete (nested ones after their
+        // parent); the client going away cancels the outstanding loaders
+        try {
+            streaming.stream(new com.osmig.Jweb.framework.async.StreamingContext.ChunkWriter() {
+                @Override
+                public void write(String placeholderId, String html) {
+                    out.write(streamChunk(placeholderId, html));
                 }
-            }
-            out.flush();
+
+                @Override
+                public void flush() throws java.io.IOException {
+                    out.flush();
+                    if (out.checkError()) {
+                        throw new java.io.IOException("Client disconnected during streaming");
+                    }
+                }
+            }, streamed.effectiveTimeout());
+        } catch (java.io.IOException e) {
+            // Response is committed: nothing left to send
+            com.osmig.Jweb.framework.util.Log.debug("Streaming stopped: {}", e.getMessage());
+            return;
         }
 
         out.write(tail);
@@ -407,55 +515,155 @@ public class JWebController {
         return pageRegistry.findByPath(path);
     }
 
-    private ResponseEntity<String> handlePageRoute(PageRoute route, HttpServletRequest servletRequest) {
+    private Object handlePageRoute(PageRoute route, HttpServletRequest servletRequest,
+                                   HttpServletResponse servletResponse) {
         StateManager.StateContext context = StateManager.createContext();
+        com.osmig.Jweb.framework.styles.PageStyles.open();
         try {
             Request request = new Request(servletRequest);
 
             // Page routes run through the middleware stack like every other
             // route, so auth/CSRF/headers/logging apply to them too.
-            Template[] pageHolder = new Template[1];
-            Object result = middlewareStack.execute(request, () -> renderPage(route, request, pageHolder));
+            PageRender render = new PageRender(route, request, context);
+            Object result = middlewareStack.execute(request, "GET", route.path(), render::run);
+
+            // Check if this is a prefetch request (has X-Prefetch header)
+            boolean isPrefetch = "true".equals(servletRequest.getHeader("X-Prefetch"));
+
+            // Served from the page cache: the rendered bytes go out as they are
+            if (result instanceof PageCache.CachedPage cached) {
+                CacheControl cacheControl = isPrefetch ? PREFETCH_CACHE : cacheControlFor(render.page);
+                writeCached(cached, cacheControl, request, servletResponse);
+                return null;
+            }
 
             // Middleware may short-circuit (auth redirect, rate limit, ...)
             if (!(result instanceof Element element)) {
                 return applyQueuedHeaders(processResult(result, context, request), request);
             }
 
-            Template page = pageHolder[0];
-            String html = element.toHtml();
-            if (page != null) {
-                html = applyTemplateExtras(html, page);
-            }
-            String hydrationScript = buildHydrationScript(context);
-            html = injectHydrationData(html, hydrationScript);
-
-            // Check if this is a prefetch request (has X-Prefetch header)
-            boolean isPrefetch = "true".equals(servletRequest.getHeader("X-Prefetch"));
+            Template page = render.page;
+            HtmlSink sink = renderDocument(element.toVNode(), page, context,
+                HtmlResponseWriter.sizeHint(route.path()));
             CacheControl cacheControl = isPrefetch ? PREFETCH_CACHE : cacheControlFor(page);
 
+            if (directOutput) {
+                writeDocument(sink, cacheControl, request, servletResponse, route.path());
+                return null;
+            }
             return applyQueuedHeaders(ResponseEntity.ok()
                 .cacheControl(cacheControl)
                 .contentType(MediaType.TEXT_HTML)
-                .body(html), request);
+                .body(sink.toString()), request);
         } catch (Exception e) {
             return handleError(e);
         } finally {
-            // Detach from this thread only — see handleRequest
-            StateManager.clearContext();
+            // Detach from this thread — see handleRequest
+            StateManager.finishRequest();
             clearThreadLocals();
         }
     }
 
+    /**
+     * A page route request inside the middleware chain: renders the page, or
+     * for pages with a {@code serverCache()} policy returns the cached page
+     * (rendering it once on a miss, and on the first request that finds it
+     * stale).
+     */
+    private final class PageRender {
+        private final PageRoute route;
+        private final Request request;
+        private final StateManager.StateContext context;
+        private Template page;
+        private PageCache.Policy policy;
+
+        PageRender(PageRoute route, Request request, StateManager.StateContext context) {
+            this.route = route;
+            this.request = request;
+            this.context = context;
+        }
+
+        Object run() {
+            page = route.pageSupplier().get();
+            ResponseEntity<String> notModified = ConditionalGet.check(request,
+                page.version(request), page.lastModified(request));
+            if (notModified != null) {
+                return notModified;
+            }
+
+            policy = page.serverCache().orElse(null);
+            if (policy == null) {
+                return renderPage(route, request, page);
+            }
+
+            String key = PageCache.key(route.path(), request, policy);
+            PageCache.CachedPage cached = PageCache.lookup(key);
+            if (cached == null) {
+                cached = PageCache.load(key, this::renderForCache);
+            } else if (!cached.isFresh()) {
+                // Rendered here, with this request's session and middleware state
+                cached = PageCache.revalidate(key, cached, this::renderForCache);
+            }
+            return cached;
+        }
+
+        /** Renders the complete document as a cache entry. */
+        private PageCache.CachedPage renderForCache() {
+            Element element = renderPage(route, request, page);
+            HtmlSink sink = renderDocument(element.toVNode(), page, context,
+                HtmlResponseWriter.sizeHint(route.path()));
+            // Client state or handlers belong to this visitor: such a render is never shared
+            boolean shared = PageCache.isShareable(context);
+            return PageCache.page(policy, sink.toString(), shared);
+        }
+    }
+
+    /**
+     * Sends a cached page: the gzip variant when the client accepts it,
+     * otherwise the UTF-8 body, with an exact Content-Length.
+     */
+    private void writeCached(PageCache.CachedPage cached, CacheControl cacheControl,
+                             Request request, HttpServletResponse servletResponse) throws java.io.IOException {
+        servletResponse.setStatus(HttpServletResponse.SC_OK);
+        servletResponse.setContentType("text/html;charset=UTF-8");
+        if (cacheControl != null) {
+            servletResponse.setHeader("Cache-Control", cacheControl.getHeaderValue());
+        }
+        request.responseHeaders().forEach((name, value) -> {
+            if (!servletResponse.containsHeader(name)) {
+                servletResponse.setHeader(name, value);
+            }
+        });
+        byte[] body = cached.body();
+        String etag = cached.etag();
+        if (cached.gzip() != null) {
+            servletResponse.addHeader("Vary", "Accept-Encoding");
+            if (Compression.negotiate(request.header("Accept-Encoding")) == Compression.Encoding.GZIP) {
+                servletResponse.setHeader("Content-Encoding", "gzip");
+                body = cached.gzip();
+                etag = cached.gzipEtag();
+            }
+        }
+        // A declared version (queued by ConditionalGet) wins over the body hash
+        if (etag != null && !servletResponse.containsHeader("ETag")) {
+            servletResponse.setHeader("ETag", etag);
+            if (ConditionalGet.matches(request.header("If-None-Match"), etag)) {
+                servletResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        }
+        servletResponse.setContentLength(body.length);
+        if (!"HEAD".equalsIgnoreCase(request.method())) {
+            servletResponse.getOutputStream().write(body);
+        }
+    }
+
     /**
      * Renders a page route's template with its lifecycle hooks
      * (beforeRender → render → layout → afterRender), wrapped in its layout
-     * if configured. The instantiated page is exposed via pageHolder so the
-     * caller can apply title/head/script extras to the final HTML.
+     * if configured.
      */
-    private Element renderPage(PageRoute route, Request request, Template[] pageHolder) {
-        Template page = route.pageSupplier().get();
-        pageHolder[0] = page;
+    private Element renderPage(PageRoute route, Request request, Template page) {
         page.beforeRender(request);
         Element content = page.render();
         String title = page.pageTitle().orElse(route.title());
@@ -479,66 +687,27 @@ public class JWebController {
     }
 
     /**
-     * Injects the template's pageTitle/metaDescription/extraHead into the
-     * head, and scripts/onMount/onUnmount before the closing body tag.
+     * Fills the slots with the template's pageTitle/metaDescription/extraHead
+     * (head) and scripts/onMount/onUnmount (end of body).
      */
-    private String applyTemplateExtras(String html, Template page) {
-        // Title: replace the existing <title> or add one to the head
-        Optional<String> pageTitle = page.pageTitle();
-        if (pageTitle.isPresent()) {
-            String escaped = escapeHtmlText(pageTitle.get());
-            int start = html.indexOf("<title>");
-            int end = html.indexOf("</title>");
-            if (start >= 0 && end > start) {
-                html = html.substring(0, start + "<title>".length()) + escaped + html.substring(end);
-            } else {
-                html = injectBefore(html, "</head>", "<title>" + escaped + "</title>");
-            }
-        }
+    private void addTemplateExtras(DocumentSlots slots, Template page) {
+        page.pageTitle().ifPresent(slots::title);
 
-        StringBuilder headExtras = new StringBuilder();
-        page.metaDescription().ifPresent(desc -> headExtras
-            .append("<meta name=\"description\" content=\"")
-            .append(escapeHtmlAttribute(desc))
-            .append("\">"));
-        page.extraHead().ifPresent(extra -> headExtras.append(extra.toHtml()));
-        if (headExtras.length() > 0) {
-            html = injectBefore(html, "</head>", headExtras.toString());
-        }
+        page.metaDescription().ifPresent(desc -> slots.head(
+            "<meta name=\"description\" content=\"" + HtmlSink.escape(desc) + "\">"));
+        page.extraHead().ifPresent(extra -> slots.head(extra.toHtml()));
 
-        StringBuilder bodyExtras = new StringBuilder();
-        page.scripts().ifPresent(js -> bodyExtras.append("<script>").append(js).append("</script>"));
+        page.scripts().ifPresent(js -> slots.bodyEnd("<script>" + js + "</script>"));
         String mount = page.onMount();
         if (mount != null && !mount.isBlank()) {
-            bodyExtras.append("<script>document.addEventListener('DOMContentLoaded',function(){")
-                .append(mount).append("});</script>");
+            slots.bodyEnd("<script>document.addEventListener('DOMContentLoaded',function(){"
+                + mount + "});</script>");
         }
         String unmount = page.onUnmount();
         if (unmount != null && !unmount.isBlank()) {
-            bodyExtras.append("<script>window.addEventListener('beforeunload',function(){")
-                .append(unmount).append("});</script>");
+            slots.bodyEnd("<script>window.addEventListener('beforeunload',function(){"
+                + unmount + "});</script>");
         }
-        if (bodyExtras.length() > 0) {
-            html = injectBefore(html, "</body>", bodyExtras.toString());
-        }
-
-        return html;
-    }
-
-    private static String injectBefore(String html, String marker, String content) {
-        int index = html.lastIndexOf(marker);
-        if (index < 0) {
-            return html + content;
-        }
-        return html.substring(0, index) + content + html.substring(index);
-    }
-
-    private static String escapeHtmlText(String text) {
-        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
-    }
-
-    private static String escapeHtmlAttribute(String text) {
-        return escapeHtmlText(text).replace("\"", "&quot;").replace("'", "&#39;");
     }
 
     private Element wrapInLayout(Class<? extends Template> layoutClass, String title, Element content) {
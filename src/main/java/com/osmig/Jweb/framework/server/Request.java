@@ -14,6 +14,7 @@ public class Request {
 
     private final HttpServletRequest servletRequest;
     private Map<String, String> pathParams = new HashMap<>();
+    private Map<String, Object> pathValues = Map.of();
     private final Map<String, String> responseHeaders = new LinkedHashMap<>();
     private String cachedBody;
 
@@ -301,6 +302,22 @@ public class Request {
         return Collections.unmodifiableMap(pathParams);
     }
 
+    /**
+     * Gets a path parameter as converted by its typed route when the route
+     * matched (see {@link com.osmig.Jweb.framework.routing.TypedRoute}).
+     *
+     * @param name the parameter name
+     * @return the converted value, or null for an untyped route or unknown name
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T pathValue(String name) {
+        return (T) pathValues.get(name);
+    }
+
+    public void setPathValues(Map<String, Object> values) {
+        this.pathValues = values != null ? values : Map.of();
+    }
+
     // === Query Parameters ===
 
     public String query(String name) { return servletRequest.getParameter(name); }
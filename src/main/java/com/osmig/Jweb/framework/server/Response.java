@@ -270,6 +270,32 @@ public final class Response {
         return ResponseEntity.noContent().build();
     }
 
+    // ========== Conditional Responses ==========
+
+    /**
+     * Builds a page only when the client's copy is out of date. The version
+     * key (e.g. a data revision or {@code updatedAt} timestamp) becomes the
+     * ETag; if the request's {@code If-None-Match} matches it, a 304 is
+     * returned and {@code page} is never called.
+     *
+     * <pre>
+     * app.get("/posts/:id", req -&gt; {
+     *     Doc post = posts.find(req.param("id"));
+     *     return Response.ifModified(req, post.getLong("updatedAt"), () -&gt; postPage(post));
+     * });
+     * </pre>
+     *
+     * @param request the request
+     * @param version identifies the content the page would show
+     * @param page builds the page
+     * @return 304 Not Modified, or the page
+     */
+    public static Object ifModified(Request request, Object version, java.util.function.Supplier<?> page) {
+        ResponseEntity<String> notModified = ConditionalGet.check(request,
+            java.util.Optional.of(String.valueOf(version)), java.util.Optional.empty());
+        return notModified != null ? notModified : page.get();
+    }
+
     // ========== Error Responses ==========
 
     /**
@@ -1,5 +1,8 @@
 package com.osmig.Jweb.framework.state;
 
+import com.osmig.Jweb.framework.vdom.VNode;
+import com.osmig.Jweb.framework.vdom.VRaw;
+
 /**
  * Interface for components that can be re-rendered when state changes.
  */
@@ -12,4 +15,15 @@ public interface RenderableComponent {
      * @return the HTML string
      */
     String render();
+
+    /**
+     * Renders the component as a virtual DOM tree, so updates can be sent as
+     * a diff against the previous render. Components that only produce HTML
+     * are treated as one opaque node (replaced whole when changed).
+     *
+     * @return the rendered tree
+     */
+    default VNode renderTree() {
+        return new VRaw(render());
+    }
 }
@@ -45,10 +45,13 @@ public class State<T> {
 
     /**
      * Gets the current state value.
+     * Reads made while a {@code useComponent} region renders are recorded as
+     * that component's dependencies.
      *
      * @return the current value
      */
     public T get() {
+        StateManager.recordRead(this);
         return value;
     }
 
@@ -115,8 +115,11 @@ public final class StateHooks {
 
     /**
      * Declares a reactive region of the page. The body is re-rendered on the
-     * server whenever state changes during an event, and the resulting HTML is
-     * patched into the DOM (matched by the given element ID).
+     * server whenever state changes during an event, and the difference from
+     * the previous render is patched into the DOM (matched by the given
+     * element ID; list items keyed by {@code id} or {@code data-key}).
+     * Only regions whose last render read a changed state are re-rendered, so
+     * read reactive values through {@link State#get()} inside the body.
      *
      * <p>Example:</p>
      * <pre>
@@ -136,9 +139,39 @@ public final class StateHooks {
             String componentId, java.util.function.Supplier<com.osmig.Jweb.framework.core.Element> body) {
         StateManager.StateContext context = StateManager.getContext();
         if (context != null) {
-            context.registerComponent(componentId, () -> renderComponent(componentId, body));
+            context.registerComponent(componentId, new RenderableComponent() {
+                @Override
+                public String render() {
+                    return renderTree().toHtml();
+                }
+
+                @Override
+                public com.osmig.Jweb.framework.vdom.VNode renderTree() {
+                    return trackedRender(context, componentId, body);
+                }
+            });
+        }
+        return () -> {
+            // Remember what the page sent, so the first update can be a diff
+            com.osmig.Jweb.framework.vdom.VElement tree = trackedRender(context, componentId, body);
+            if (context != null) {
+                context.setRenderedTree(componentId, tree);
+            }
+            return tree;
+        };
+    }
+
+    // Renders the region, recording the states it reads as its dependencies
+    private static com.osmig.Jweb.framework.vdom.VElement trackedRender(
+            StateManager.StateContext context, String componentId,
+            java.util.function.Supplier<com.osmig.Jweb.framework.core.Element> body) {
+        java.util.Set<State<?>> reads = new java.util.HashSet<>();
+        com.osmig.Jweb.framework.vdom.VElement tree =
+                StateManager.trackReads(() -> wrapperVNode(componentId, body), reads);
+        if (context != null) {
+            context.setComponentDependencies(componentId, reads);
         }
-        return () -> wrapperVNode(componentId, body);
+        return tree;
     }
 
     private static com.osmig.Jweb.framework.vdom.VElement wrapperVNode(
@@ -148,9 +181,4 @@ public final class StateHooks {
                 java.util.Map.of("id", componentId),
                 java.util.List.of(body.get().toVNode()));
     }
-
-    private static String renderComponent(
-            String componentId, java.util.function.Supplier<com.osmig.Jweb.framework.core.Element> body) {
-        return wrapperVNode(componentId, body).toHtml();
-    }
 }
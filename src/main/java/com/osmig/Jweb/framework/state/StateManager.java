@@ -1,6 +1,7 @@
 package com.osmig.Jweb.framework.state;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -9,6 +10,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
 
 /**
@@ -21,6 +23,17 @@ import java.util.function.BiConsumer;
  *   <li>Notifies listeners of state changes (for WebSocket sync)</li>
  *   <li>Provides access to all states for serialization</li>
  * </ul>
+ *
+ * <p>Each page request gets a {@link StateContext}, but it stays a bare
+ * object until the page creates a state, registers a component or asks for
+ * its ID (an event handler). Only then does it get an ID and a registry
+ * entry, and a request that ends without using it releases it at once
+ * ({@link #finishRequest()}). The registry is bounded by count and by an
+ * estimate of the memory each context holds: past either bound, one thread
+ * at a time evicts the least recently used contexts down to 90% of it. A
+ * context whose page has a WebSocket open is never evicted (its events
+ * would fail with an unknown context); it is released shortly after the
+ * socket closes.</p>
  */
 public final class StateManager {
 
@@ -30,7 +43,29 @@ public final class StateManager {
     private static final ThreadLocal<StateContext> currentContext = new ThreadLocal<>();
 
     // Context registry - maps session ID to context (for WebSocket lookup)
-    private static final Map<String, StateContext> contextRegistry = new ConcurrentHashMap<>();
+    private static final Map<String, StateContext> contextRegistry = new ConcurrentHashMap<>(256);
+    private static final AtomicLong registryBytes = new AtomicLong();
+
+    // Order of last use, for choosing what to evict (a counter, so ties can't happen)
+    private static final AtomicLong useClock = new AtomicLong();
+
+    // Held by the one thread evicting; others carry on over the bound meanwhile
+    private static final ReentrantLock evicting = new ReentrantLock();
+
+    // Registry bounds and the delay before a disconnected page's context goes
+    private static volatile int maxContexts = 10_000;
+    private static volatile long maxBytes = 64L * 1024 * 1024;
+    private static volatile long releaseGraceMs = 30_000;
+
+    // Memory estimates: a context's maps and ID, and what each entry retains
+    // (the state and its JSON, a component's closure, one node of a rendered tree)
+    static final long CONTEXT_BYTES = 1024;
+    static final long STATE_BYTES = 256;
+    static final long COMPONENT_BYTES = 512;
+    static final long NODE_BYTES = 96;
+
+    // States read by the component render in progress on this thread (null = not tracking)
+    private static final ThreadLocal<Set<State<?>>> currentReads = new ThreadLocal<>();
 
     // Global state change listeners (for WebSocket integration)
     private static final List<BiConsumer<State<?>, Object>> globalListeners = new ArrayList<>();
@@ -46,11 +81,18 @@ public final class StateManager {
     // Context TTL in milliseconds (5 minutes)
     private static final long CONTEXT_TTL_MS = 5 * 60 * 1000;
 
+    // Idle expiry of registered contexts: 1s ticks, a wheel spanning ~8.5 minutes
+    private static final com.osmig.Jweb.framework.util.TimingWheel<StateContext> expiry =
+            new com.osmig.Jweb.framework.util.TimingWheel<>(1000, 512,
+                    context -> context.getLastAccessedAt() + CONTEXT_TTL_MS);
+
+    // Most contexts released per tick; a larger burst is spread over the next ticks
+    private static final int EXPIRE_PER_TICK = 1000;
+
     static {
-        // Schedule periodic cleanup of stale contexts (runs every minute)
         cleanupScheduler.scheduleAtFixedRate(
                 StateManager::cleanupStaleContexts,
-                1, 1, TimeUnit.MINUTES
+                1, 1, TimeUnit.SECONDS
         );
     }
 
@@ -62,17 +104,137 @@ public final class StateManager {
      * Removes stale contexts that haven't been explicitly cleaned up.
      * This prevents memory leaks from abandoned requests or exceptions.
      * Also evicts the event handlers registered under each reaped context.
+     *
+     * <p>Runs every second and only visits the contexts whose idle deadline
+     * fell in the elapsed ticks, at most {@link #EXPIRE_PER_TICK} of them.</p>
      */
     private static void cleanupStaleContexts() {
-        long now = System.currentTimeMillis();
-        contextRegistry.entrySet().removeIf(entry -> {
-            StateContext ctx = entry.getValue();
-            boolean stale = now - ctx.getLastAccessedAt() > CONTEXT_TTL_MS;
-            if (stale) {
-                com.osmig.Jweb.framework.events.EventRegistry.clearSession(entry.getKey());
+        try {
+            long now = System.currentTimeMillis();
+            List<StateContext> stale = expiry.advance(now, EXPIRE_PER_TICK);
+            for (StateContext ctx : stale) {
+                ctx.clearContext();
+            }
+            if (!stale.isEmpty()) {
+                com.osmig.Jweb.framework.metrics.Metrics.counter("state.contexts.expired").increment(stale.size());
             }
-            return stale;
-        });
+            com.osmig.Jweb.framework.events.EventRegistry.expireIdleSessions(now, EXPIRE_PER_TICK);
+        } catch (RuntimeException e) {
+            // A failed tick must not cancel the schedule
+            com.osmig.Jweb.framework.util.Log.warn("State cleanup failed: {}", e.getMessage());
+        }
+    }
+
+    /** Sets the maximum number of registered contexts; the least recently used go first. */
+    public static void setMaxContexts(int max) {
+        maxContexts = Math.max(1, max);
+        enforceLimits();
+    }
+
+    /** Sets the estimated memory all registered contexts may hold together. */
+    public static void setMaxBytes(long max) {
+        maxBytes = Math.max(0, max);
+        enforceLimits();
+    }
+
+    /** Sets how long a context outlives its page's last WebSocket (for reconnects). */
+    public static void setReleaseGraceMs(long ms) {
+        releaseGraceMs = Math.max(0, ms);
+    }
+
+    /** Number of registered contexts. */
+    public static int contextCount() {
+        return contextRegistry.size();
+    }
+
+    /** Estimated memory held by the registered contexts. */
+    public static long registryBytes() {
+        return registryBytes.get();
+    }
+
+    // The context's own lock keeps its bytes and the registry total in step
+    private static void addToRegistry(StateContext context) {
+        synchronized (context) {
+            contextRegistry.put(context.sessionId, context);
+            registryBytes.addAndGet(context.bytes);
+        }
+        expiry.schedule(context);
+        enforceLimits();
+    }
+
+    private static boolean removeFromRegistry(StateContext context) {
+        synchronized (context) {
+            if (contextRegistry.remove(context.sessionId, context)) {
+                registryBytes.addAndGet(-context.bytes);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /** Adds to a context's memory estimate (and the registry's, once it is registered). */
+    private static void account(StateContext context, long delta) {
+        synchronized (context) {
+            context.bytes += delta;
+            if (context.isActive() && contextRegistry.get(context.sessionId) == context) {
+                registryBytes.addAndGet(delta);
+            }
+        }
+        if (delta > 0) {
+            enforceLimits();
+        }
+    }
+
+    private static boolean overLimits() {
+        return contextRegistry.size() > maxContexts || registryBytes.get() > maxBytes;
+    }
+
+    /**
+     * Evicts least recently used contexts once the registry is past a bound,
+     * down to 90% of it, so the sweep runs once per batch of new contexts.
+     * Skips contexts with a WebSocket open and the one this thread is
+     * rendering. If another thread is already evicting, returns at once.
+     */
+    private static void enforceLimits() {
+        if (!overLimits() || !evicting.tryLock()) {
+            return;
+        }
+        List<StateContext> evicted = new ArrayList<>();
+        try {
+            int countTarget = maxContexts - maxContexts / 10;
+            long bytesTarget = maxBytes - maxBytes / 10;
+            StateContext current = currentContext.get();
+
+            // Last-use times are copied so the sort sees a stable order
+            List<long[]> candidates = new ArrayList<>();
+            List<StateContext> contexts = new ArrayList<>();
+            for (StateContext context : contextRegistry.values()) {
+                if (context != current && context.connections.get() <= 0) {
+                    candidates.add(new long[] {context.lastUsed, contexts.size()});
+                    contexts.add(context);
+                }
+            }
+            candidates.sort(Comparator.comparingLong(candidate -> candidate[0]));
+
+            for (long[] candidate : candidates) {
+                if (contextRegistry.size() <= countTarget && registryBytes.get() <= bytesTarget) {
+                    break;
+                }
+                StateContext context = contexts.get((int) candidate[1]);
+                // A page may have connected since the scan
+                if (context.connections.get() <= 0 && removeFromRegistry(context)) {
+                    evicted.add(context);
+                }
+            }
+        } finally {
+            evicting.unlock();
+        }
+        for (StateContext context : evicted) {
+            context.clearContext();
+        }
+        if (!evicted.isEmpty()) {
+            com.osmig.Jweb.framework.metrics.Metrics.counter("state.contexts.evicted").increment(evicted.size());
+        }
     }
 
     /**
@@ -133,6 +295,58 @@ public final class StateManager {
         }
     }
 
+    /**
+     * Records a state read for the component render in progress, if any.
+     */
+    static void recordRead(State<?> state) {
+        Set<State<?>> reads = currentReads.get();
+        if (reads != null) {
+            reads.add(state);
+        }
+    }
+
+    /**
+     * Whether a component render on this thread is collecting state reads.
+     */
+    public static boolean isTrackingReads() {
+        return currentReads.get() != null;
+    }
+
+    /**
+     * Records reads made for this thread's render on another thread
+     * (parts of a page rendered in parallel).
+     */
+    public static void recordReads(java.util.Collection<State<?>> states) {
+        Set<State<?>> reads = currentReads.get();
+        if (reads != null) {
+            reads.addAll(states);
+        }
+    }
+
+    /**
+     * Runs a component render, collecting the states it reads into
+     * {@code reads}. Reads of nested components also count for the
+     * enclosing one, since re-rendering it re-renders them.
+     *
+     * @param render the render to run
+     * @param reads receives every state read during the render
+     * @return the render's result
+     */
+    public static <T> T trackReads(java.util.function.Supplier<T> render, Set<State<?>> reads) {
+        Set<State<?>> outer = currentReads.get();
+        currentReads.set(reads);
+        try {
+            return render.get();
+        } finally {
+            if (outer != null) {
+                outer.addAll(reads);
+                currentReads.set(outer);
+            } else {
+                currentReads.remove();
+            }
+        }
+    }
+
     /**
      * Registers a global state change listener.
      * Used by WebSocket handler to push updates to clients.
@@ -161,10 +375,55 @@ public final class StateManager {
     public static StateContext createContext() {
         StateContext context = new StateContext();
         currentContext.set(context);
-        contextRegistry.put(context.getSessionId(), context);
         return context;
     }
 
+    /**
+     * Detaches the current context at the end of a request, releasing it
+     * when the page left nothing in it for the browser to reference (no
+     * states, components or event handlers). A used context stays registered
+     * for its page's WebSocket.
+     */
+    public static void finishRequest() {
+        StateContext context = currentContext.get();
+        currentContext.remove();
+        if (context != null && context.isUnused()) {
+            context.clearContext();
+        }
+    }
+
+    /**
+     * Records a WebSocket connection for a context's page.
+     *
+     * @param sessionId the context's session ID
+     */
+    public static void connected(String sessionId) {
+        StateContext context = getContextById(sessionId);
+        if (context != null) {
+            context.connections.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records that a WebSocket of a context's page closed. When it was the
+     * last one, the context is released after the grace period unless the
+     * page reconnects first.
+     *
+     * @param sessionId the context's session ID
+     */
+    public static void disconnected(String sessionId) {
+        StateContext context = sessionId != null ? contextRegistry.get(sessionId) : null;
+        if (context == null || context.connections.decrementAndGet() > 0) {
+            return;
+        }
+        cleanupScheduler.schedule(() -> {
+            if (context.connections.get() <= 0 && context.isActive()) {
+                context.clearContext();
+                com.osmig.Jweb.framework.metrics.Metrics.counter("state.contexts.released").increment();
+            }
+        }, releaseGraceMs, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * Gets a context by its session ID.
      * Used by WebSocket handler to restore context.
@@ -181,6 +440,14 @@ public final class StateManager {
         return context;
     }
 
+    /**
+     * Whether a context is registered under this ID, without counting as a
+     * use of it (unlike {@link #getContextById}).
+     */
+    public static boolean hasContext(String sessionId) {
+        return sessionId != null && contextRegistry.containsKey(sessionId);
+    }
+
     /**
      * Sets the current thread's context.
      * Used by WebSocket handler to restore context for event handling.
@@ -212,11 +479,11 @@ public final class StateManager {
      * @param runnable the code to execute
      */
     public static void withContext(Runnable runnable) {
-        StateContext context = createContext();
+        createContext();
         try {
             runnable.run();
         } finally {
-            clearContext();
+            finishRequest();
         }
     }
 
@@ -230,20 +497,73 @@ public final class StateManager {
     /**
      * Represents a state context for a single request/session.
      * Tracks all states created during the request.
+     *
+     * <p>A new context is inactive: no ID and no registry entry. The first
+     * state, component or {@link #getSessionId()} call activates it.</p>
      */
     public static class StateContext {
         private final Map<String, State<?>> states = new ConcurrentHashMap<>();
         private final Set<State<?>> changedStates = ConcurrentHashMap.newKeySet();
         private final Map<String, RenderableComponent> components = new ConcurrentHashMap<>();
-        private final String sessionId;
+        private final Map<String, com.osmig.Jweb.framework.vdom.VNode> renderedTrees = new ConcurrentHashMap<>();
+        private final Map<String, Set<String>> componentDependencies = new ConcurrentHashMap<>();
+        // Nodes in each component's rendered tree, for the memory estimate
+        private final Map<String, Integer> renderedNodes = new ConcurrentHashMap<>();
+        private final java.util.concurrent.atomic.AtomicInteger connections =
+                new java.util.concurrent.atomic.AtomicInteger();
         private final long createdAt;
         private volatile long lastAccessedAt;
+        // Position in the order of last use (see useClock)
+        private volatile long lastUsed = useClock.incrementAndGet();
+        private volatile String sessionId;
+        private volatile boolean released;
+        // Estimated retained memory; guarded by this context's lock
+        private long bytes = CONTEXT_BYTES;
 
         StateContext() {
             this.createdAt = System.currentTimeMillis();
             this.lastAccessedAt = createdAt;
-            // Random ID so context IDs can't be guessed across sessions
-            this.sessionId = "ctx_" + java.util.UUID.randomUUID();
+        }
+
+        /** Gives the context its ID and registers it, on first use. */
+        private String activate() {
+            String id = sessionId;
+            if (id != null) {
+                return id;
+            }
+            synchronized (this) {
+                if (sessionId == null) {
+                    // Random ID so context IDs can't be guessed across sessions
+                    sessionId = "ctx_" + java.util.UUID.randomUUID();
+                    if (!released) {
+                        addToRegistry(this);
+                    }
+                }
+                return sessionId;
+            }
+        }
+
+        /**
+         * Whether the context has been given an ID and is registered (it has
+         * state, components or event handlers the browser may reference).
+         */
+        public boolean isActive() {
+            return sessionId != null && !released;
+        }
+
+        /** Whether nothing in the context can be referenced by the page. */
+        boolean isUnused() {
+            String id = sessionId;
+            return id == null || (states.isEmpty() && components.isEmpty()
+                    && com.osmig.Jweb.framework.events.EventRegistry.handlerCount(id) == 0);
+        }
+
+        /**
+         * Estimated memory the context retains: its states, components and
+         * their last rendered trees. Used to bound the registry.
+         */
+        public synchronized long estimatedBytes() {
+            return bytes;
         }
 
         /**
@@ -264,10 +584,14 @@ public final class StateManager {
         /** Marks this context as recently used, extending its TTL. */
         public void touch() {
             this.lastAccessedAt = System.currentTimeMillis();
+            this.lastUsed = useClock.incrementAndGet();
         }
 
         void register(State<?> state) {
-            states.put(state.getId(), state);
+            activate();
+            if (states.put(state.getId(), state) == null) {
+                account(this, STATE_BYTES);
+            }
         }
 
         void onStateChange(State<?> state) {
@@ -278,7 +602,10 @@ public final class StateManager {
          * Registers a component for re-rendering.
          */
         public void registerComponent(String componentId, RenderableComponent component) {
-            components.put(componentId, component);
+            activate();
+            if (components.put(componentId, component) == null) {
+                account(this, COMPONENT_BYTES);
+            }
         }
 
         /**
@@ -295,6 +622,78 @@ public final class StateManager {
             return components.get(componentId);
         }
 
+        /**
+         * Records the states a component read during its last render.
+         */
+        public void setComponentDependencies(String componentId, Set<State<?>> dependencies) {
+            Set<String> ids = new java.util.HashSet<>(dependencies.size() * 2);
+            for (State<?> state : dependencies) {
+                ids.add(state.getId());
+            }
+            componentDependencies.put(componentId, ids);
+        }
+
+        /**
+         * Gets the components that must re-render after the given states
+         * changed: those whose last render read one of them, plus any whose
+         * dependencies were never recorded (e.g. registered directly rather
+         * than through {@code useComponent}).
+         */
+        public Map<String, RenderableComponent> getComponentsAffectedBy(java.util.Collection<State<?>> changed) {
+            Set<String> changedIds = new java.util.HashSet<>(changed.size() * 2);
+            for (State<?> state : changed) {
+                changedIds.add(state.getId());
+            }
+            Map<String, RenderableComponent> affected = new java.util.LinkedHashMap<>();
+            for (Map.Entry<String, RenderableComponent> entry : components.entrySet()) {
+                Set<String> dependencies = componentDependencies.get(entry.getKey());
+                if (dependencies == null || !java.util.Collections.disjoint(dependencies, changedIds)) {
+                    affected.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return affected;
+        }
+
+        /**
+         * Gets the tree a component last rendered (the DOM the client has),
+         * or null if it hasn't rendered yet.
+         */
+        public com.osmig.Jweb.framework.vdom.VNode getRenderedTree(String componentId) {
+            return renderedTrees.get(componentId);
+        }
+
+        /**
+         * Records the tree a component rendered, as the base for diffing its
+         * next update.
+         */
+        public void setRenderedTree(String componentId, com.osmig.Jweb.framework.vdom.VNode tree) {
+            renderedTrees.put(componentId, tree);
+            int nodes = countNodes(tree);
+            Integer previous = renderedNodes.put(componentId, nodes);
+            long delta = (nodes - (previous != null ? previous : 0)) * NODE_BYTES;
+            if (delta != 0) {
+                account(this, delta);
+            }
+        }
+
+        private static int countNodes(com.osmig.Jweb.framework.vdom.VNode node) {
+            if (node instanceof com.osmig.Jweb.framework.vdom.VElement element) {
+                int count = 1;
+                for (int i = 0; i < element.childCount(); i++) {
+                    count += countNodes(element.child(i));
+                }
+                return count;
+            }
+            if (node instanceof com.osmig.Jweb.framework.vdom.VFragment fragment) {
+                int count = 0;
+                for (com.osmig.Jweb.framework.vdom.VNode child : fragment.children()) {
+                    count += countNodes(child);
+                }
+                return count;
+            }
+            return 1;
+        }
+
         /**
          * Gets all states in this context.
          *
@@ -335,12 +734,13 @@ public final class StateManager {
         }
 
         /**
-         * Gets the session ID for this context.
+         * Gets the session ID for this context, activating it (so the
+         * browser can reference it) if it isn't yet.
          *
          * @return the session ID
          */
         public String getSessionId() {
-            return sessionId;
+            return activate();
         }
 
         /**
@@ -369,10 +769,18 @@ public final class StateManager {
             states.clear();
             changedStates.clear();
             components.clear();
+            renderedTrees.clear();
+            renderedNodes.clear();
+            componentDependencies.clear();
 
             // Remove from registry and drop this context's event handlers
-            contextRegistry.remove(sessionId);
-            com.osmig.Jweb.framework.events.EventRegistry.clearSession(sessionId);
+            released = true;
+            String id = sessionId;
+            if (id != null) {
+                removeFromRegistry(this);
+                expiry.cancel(this);
+                com.osmig.Jweb.framework.events.EventRegistry.clearSession(id);
+            }
 
             // Clear thread-local if this is the current context
             if (currentContext.get() == this) {
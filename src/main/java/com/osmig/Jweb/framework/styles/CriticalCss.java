@@ -0,0 +1,508 @@
+package com.osmig.Jweb.framework.styles;
+
+import com.osmig.Jweb.framework.core.Element;
+import com.osmig.Jweb.framework.vdom.VElement;
+import com.osmig.Jweb.framework.vdom.VFragment;
+import com.osmig.Jweb.framework.vdom.VNode;
+import com.osmig.Jweb.framework.vdom.VRaw;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Per-page critical CSS: only the rules a page actually uses are inlined,
+ * and the full stylesheet loads as a cached external file.
+ *
+ * <p>Use it in place of a {@code style(...)} element for the app's global
+ * stylesheet:</p>
+ * <pre>
+ * head(
+ *     metaCharset(),
+ *     CriticalCss.style(stylesheet().rule(...).build())
+ * )
+ * </pre>
+ *
+ * <p>When the document is written, the framework collects the tags,
+ * classes and ids in the rendered tree and inlines the rules whose
+ * selectors can match them at the end of {@code <head>}, followed by a
+ * link to the whole sheet as {@code /jweb/css/<hash>.css} (content-hashed,
+ * cached immutably, shared by every page). The link is a preload that
+ * becomes a stylesheet when loaded, so it never blocks first paint, and it
+ * comes before the page's generated {@code StyledElement} rules, which
+ * keep overriding it. Rules for classes added by scripts apply once it has
+ * loaded.</p>
+ *
+ * <p>At-rules without selectors ({@code @font-face}, {@code @keyframes},
+ * {@code @import}, ...) are always inlined; {@code @media},
+ * {@code @supports}, {@code @container} and {@code @layer} blocks keep only
+ * their matching rules. Outside a page request (e.g. a WebSocket
+ * re-render) the element renders the full stylesheet inline.</p>
+ *
+ * <p>Register the sheet at startup with {@link #register(String)} so every
+ * instance can serve its file, even before it renders a page itself (behind
+ * a load balancer, or after a restart).</p>
+ */
+public final class CriticalCss {
+
+    // Parsed stylesheets by CSS text (apps have a few, built from constants)
+    private static final int SHEET_LIMIT = 64;
+    private static final Map<String, Sheet> sheets = new ConcurrentHashMap<>();
+    private static final Map<String, Sheet> byVersion = new ConcurrentHashMap<>();
+
+    // Last sheet registered at startup, served for versions this instance doesn't know
+    private static volatile Sheet registered;
+
+    // Bytes of SHA-256 kept in the version (hex: 16 chars)
+    private static final int VERSION_BYTES = 8;
+
+    // Markup inside raw HTML nodes: opening tags, and class / id attributes
+    private static final Pattern RAW_TAG = Pattern.compile("<([a-zA-Z][a-zA-Z0-9-]*)");
+    private static final Pattern RAW_ATTR = Pattern.compile(
+        "\\s(class|id)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')", Pattern.CASE_INSENSITIVE);
+
+    private static final Set<String> GROUPING_AT_RULES = Set.of("media", "supports", "container", "layer");
+
+    private CriticalCss() {
+        // Static utility class
+    }
+
+    /**
+     * A stylesheet whose rules are inlined per page as far as the page uses
+     * them (see the class docs).
+     */
+    public static Element style(String css) {
+        return () -> {
+            Sheet sheet = sheet(css);
+            if (sheet != null && PageStyles.addStylesheet(sheet)) {
+                return new VFragment(List.of());
+            }
+            return new VRaw("<style>" + css + "</style>");
+        };
+    }
+
+    /** Same as {@link #style(String)} for a built {@link Stylesheet}. */
+    public static Element style(Stylesheet stylesheet) {
+        return style(stylesheet.build());
+    }
+
+    /**
+     * Makes a stylesheet servable as a file before any page renders it.
+     * Call it at startup with the same CSS the pages pass to
+     * {@link #style(String)}.
+     *
+     * @return the sheet's version, as used in its URL
+     */
+    public static String register(String css) {
+        Sheet sheet = sheet(css);
+        if (sheet == null) {
+            throw new IllegalStateException("Too many CriticalCss stylesheets (limit " + SHEET_LIMIT + ")");
+        }
+        registered = sheet;
+        return sheet.version();
+    }
+
+    /** Same as {@link #register(String)} for a built {@link Stylesheet}. */
+    public static String register(Stylesheet stylesheet) {
+        return register(stylesheet.build());
+    }
+
+    /** The full CSS of a sheet by its version, or null if none is known. */
+    public static String stylesheet(String version) {
+        Sheet sheet = byVersion.get(version);
+        return sheet == null ? null : sheet.css();
+    }
+
+    /**
+     * The CSS of the sheet last {@link #register registered}, or null. It
+     * stands in for a version this instance doesn't know, e.g. a page from
+     * an older deployment.
+     */
+    public static String registeredStylesheet() {
+        Sheet sheet = registered;
+        return sheet == null ? null : sheet.css();
+    }
+
+    /**
+     * The parsed sheet for some CSS, or null past the limit (it could not
+     * be served as a file, so it is inlined whole).
+     */
+    static Sheet sheet(String css) {
+        Sheet sheet = sheets.get(css);
+        if (sheet == null) {
+            if (sheets.size() >= SHEET_LIMIT) {
+                return null;
+            }
+            sheet = new Sheet(css, version(css), parse(css, 0, css.length()));
+            Sheet raced = sheets.putIfAbsent(css, sheet);
+            if (raced != null) {
+                return raced;
+            }
+            byVersion.putIfAbsent(sheet.version(), sheet);
+        }
+        return sheet;
+    }
+
+    // ==================== Sheets ====================
+
+    /**
+     * A parsed stylesheet.
+     *
+     * @param css the full CSS
+     * @param version content hash, for the external file name
+     * @param rules the top-level rules
+     */
+    record Sheet(String css, String version, List<Rule> rules) {
+
+        /** The rules that can match something in the page. */
+        String critical(Usage usage) {
+            StringBuilder out = new StringBuilder(css.length() / 4);
+            for (Rule rule : rules) {
+                rule.appendIfUsed(usage, out);
+            }
+            return out.toString();
+        }
+
+        /** The URL of the full stylesheet. */
+        String href() {
+            return "/jweb/css/" + version + ".css";
+        }
+    }
+
+    sealed interface Rule permits StyleRule, GroupRule, AtRule {
+        void appendIfUsed(Usage usage, StringBuilder out);
+    }
+
+    /** A selector rule, kept when any of its selectors can match. */
+    record StyleRule(String text, List<Selector> selectors) implements Rule {
+        @Override
+        public void appendIfUsed(Usage usage, StringBuilder out) {
+            for (Selector selector : selectors) {
+                if (selector.canMatch(usage)) {
+                    out.append(text);
+                    return;
+                }
+            }
+        }
+    }
+
+    /** {@code @media} and the like: kept with only its matching rules. */
+    record GroupRule(String prelude, List<Rule> rules) implements Rule {
+        @Override
+        public void appendIfUsed(Usage usage, StringBuilder out) {
+            int start = out.length();
+            out.append(prelude).append('{');
+            int body = out.length();
+            for (Rule rule : rules) {
+                rule.appendIfUsed(usage, out);
+            }
+            if (out.length() == body && !rules.isEmpty()) {
+                out.setLength(start);   // nothing used inside
+            } else {
+                out.append('}');
+            }
+        }
+    }
+
+    /** An at-rule without selectors, always kept. */
+    record AtRule(String text) implements Rule {
+        @Override
+        public void appendIfUsed(Usage usage, StringBuilder out) {
+            out.append(text);
+        }
+    }
+
+    /**
+     * The tags, classes and ids one selector needs present in the page. A
+     * selector with none of them (e.g. {@code *}, {@code :root}) always can
+     * match.
+     */
+    record Selector(String[] tags, String[] classes, String[] ids) {
+        boolean canMatch(Usage usage) {
+            for (String tag : tags) if (!usage.tags().contains(tag)) return false;
+            for (String cls : classes) if (!usage.classes().contains(cls)) return false;
+            for (String id : ids) if (!usage.ids().contains(id)) return false;
+            return true;
+        }
+    }
+
+    // ==================== Usage ====================
+
+    /** The tags, classes and ids present in a rendered page. */
+    record Usage(Set<String> tags, Set<String> classes, Set<String> ids) {}
+
+    /** Collects what a rendered tree uses, in one walk. */
+    static Usage usage(VNode tree) {
+        Usage usage = new Usage(new HashSet<>(List.of("html", "head", "body")), new HashSet<>(), new HashSet<>());
+        collect(tree, usage);
+        return usage;
+    }
+
+    private static void collect(VNode node, Usage usage) {
+        if (node instanceof VElement element) {
+            usage.tags().add(element.getTag().toLowerCase(Locale.ROOT));
+            addClasses(element.getAttribute("class"), usage);
+            String id = element.getAttribute("id");
+            if (id != null) usage.ids().add(id);
+            for (int i = 0; i < element.childCount(); i++) {
+                collect(element.child(i), usage);
+            }
+        } else if (node instanceof VFragment fragment) {
+            for (VNode child : fragment.children()) {
+                collect(child, usage);
+            }
+        } else if (node instanceof VRaw raw) {
+            collectRaw(raw.html(), usage);
+        }
+    }
+
+    // Raw HTML (e.g. rendered markdown) is scanned for tags and attributes
+    private static void collectRaw(String html, Usage usage) {
+        if (html.indexOf('<') < 0) return;
+        Matcher tag = RAW_TAG.matcher(html);
+        while (tag.find()) {
+            usage.tags().add(tag.group(1).toLowerCase(Locale.ROOT));
+        }
+        Matcher attr = RAW_ATTR.matcher(html);
+        while (attr.find()) {
+            String value = attr.group(2) != null ? attr.group(2) : attr.group(3);
+            if (attr.group(1).equalsIgnoreCase("class")) {
+                addClasses(value, usage);
+            } else {
+                usage.ids().add(value.trim());
+            }
+        }
+    }
+
+    private static void addClasses(String value, Usage usage) {
+        if (value == null) return;
+        int i = 0;
+        int length = value.length();
+        while (i < length) {
+            while (i < length && Character.isWhitespace(value.charAt(i))) i++;
+            int start = i;
+            while (i < length && !Character.isWhitespace(value.charAt(i))) i++;
+            if (i > start) usage.classes().add(value.substring(start, i));
+        }
+    }
+
+    // ==================== Parsing ====================
+
+    private static List<Rule> parse(String css, int from, int to) {
+        List<Rule> rules = new ArrayList<>();
+        int i = from;
+        while (true) {
+            i = skipSpaceAndComments(css, i, to);
+            if (i >= to) break;
+            if (css.charAt(i) == '}') {   // stray brace: skip it
+                i++;
+                continue;
+            }
+            int brace = find(css, i, to, '{', ';');
+            if (brace >= to || css.charAt(brace) == ';') {
+                // Statement at-rule (@import, @charset, @layer a, b;) or trailing junk
+                int end = Math.min(brace + 1, to);
+                if (css.charAt(i) == '@') {
+                    rules.add(new AtRule(css.substring(i, end)));
+                }
+                i = end;
+                continue;
+            }
+            int close = matching(css, brace, to);
+            String prelude = css.substring(i, brace).trim();
+            if (prelude.startsWith("@")) {
+                String name = atRuleName(prelude);
+                if (GROUPING_AT_RULES.contains(name)) {
+                    rules.add(new GroupRule(prelude, parse(css, brace + 1, close)));
+                } else {
+                    rules.add(new AtRule(css.substring(i, Math.min(close + 1, to))));
+                }
+            } else {
+                rules.add(new StyleRule(prelude + css.substring(brace, Math.min(close + 1, to)), selectors(prelude)));
+            }
+            i = close + 1;
+        }
+        return rules;
+    }
+
+    private static String atRuleName(String prelude) {
+        int end = 1;
+        while (end < prelude.length() && (Character.isLetterOrDigit(prelude.charAt(end)) || prelude.charAt(end) == '-')) {
+            end++;
+        }
+        return prelude.substring(1, end).toLowerCase(Locale.ROOT);
+    }
+
+    // Index of the first of two characters at nesting depth 0, outside strings and comments
+    private static int find(String css, int from, int to, char a, char b) {
+        int depth = 0;
+        for (int i = from; i < to; i++) {
+            char c = css.charAt(i);
+            if (c == '"' || c == '\'') {
+                i = skipString(css, i, to);
+            } else if (c == '/' && i + 1 < to && css.charAt(i + 1) == '*') {
+                i = skipComment(css, i, to) - 1;
+            } else if (c == '(' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == ']') {
+                depth--;
+            } else if (depth <= 0 && (c == a || c == b)) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    // Index of the brace closing the block opened at {@code open}
+    private static int matching(String css, int open, int to) {
+        int depth = 0;
+        for (int i = open; i < to; i++) {
+            char c = css.charAt(i);
+            if (c == '"' || c == '\'') {
+                i = skipString(css, i, to);
+            } else if (c == '/' && i + 1 < to && css.charAt(i + 1) == '*') {
+                i = skipComment(css, i, to) - 1;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}' && --depth == 0) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static int skipString(String css, int quote, int to) {
+        char q = css.charAt(quote);
+        for (int i = quote + 1; i < to; i++) {
+            char c = css.charAt(i);
+            if (c == '\\') i++;
+            else if (c == q) return i;
+        }
+        return to;
+    }
+
+    private static int skipComment(String css, int start, int to) {
+        int end = css.indexOf("*/", start + 2);
+        return end < 0 || end >= to ? to : end + 2;
+    }
+
+    private static int skipSpaceAndComments(String css, int i, int to) {
+        while (i < to) {
+            char c = css.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '/' && i + 1 < to && css.charAt(i + 1) == '*') {
+                i = skipComment(css, i, to);
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /** The comma-separated selectors of a prelude, with what each needs. */
+    static List<Selector> selectors(String prelude) {
+        List<Selector> result = new ArrayList<>();
+        int start = 0;
+        while (start <= prelude.length()) {
+            int comma = find(prelude, start, prelude.length(), ',', ',');
+            result.add(selector(prelude, start, comma));
+            start = comma + 1;
+        }
+        return result;
+    }
+
+    private static Selector selector(String text, int from, int to) {
+        List<String> tags = new ArrayList<>();
+        List<String> classes = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        boolean compoundStart = true;
+        int i = from;
+        while (i < to) {
+            char c = text.charAt(i);
+            if (c == '.' || c == '#') {
+                int end = identEnd(text, i + 1, to);
+                String name = unescape(text.substring(i + 1, end));
+                if (!name.isEmpty()) (c == '.' ? classes : ids).add(name);
+                i = end;
+                compoundStart = false;
+            } else if (c == ':') {
+                // Pseudo-classes and elements need nothing; their arguments are skipped
+                while (i < to && text.charAt(i) == ':') i++;
+                i = identEnd(text, i, to);
+                if (i < to && text.charAt(i) == '(') i = closeParen(text, i, to);
+                compoundStart = false;
+            } else if (c == '[') {
+                i = find(text, i + 1, to, ']', ']') + 1;
+                compoundStart = false;
+            } else if (Character.isWhitespace(c) || c == '>' || c == '+' || c == '~') {
+                i++;
+                compoundStart = true;
+            } else if (compoundStart && (Character.isLetter(c) || c == '-' || c == '_')) {
+                int end = identEnd(text, i, to);
+                tags.add(text.substring(i, end).toLowerCase(Locale.ROOT));
+                i = end;
+                compoundStart = false;
+            } else {
+                // '*', '&' (nesting) and anything unrecognized
+                i++;
+                compoundStart = false;
+            }
+        }
+        return new Selector(tags.toArray(String[]::new), classes.toArray(String[]::new), ids.toArray(String[]::new));
+    }
+
+    private static int identEnd(String text, int i, int to) {
+        while (i < to) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (Character.isLetterOrDigit(c) || c == '-' || c == '_' || c > 0x7f) {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return Math.min(i, to);
+    }
+
+    private static int closeParen(String text, int open, int to) {
+        int depth = 0;
+        for (int i = open; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '(') depth++;
+            else if (c == ')' && --depth == 0) return i + 1;
+        }
+        return to;
+    }
+
+    private static String unescape(String ident) {
+        if (ident.indexOf('\\') < 0) return ident;
+        StringBuilder out = new StringBuilder(ident.length());
+        for (int i = 0; i < ident.length(); i++) {
+            char c = ident.charAt(i);
+            if (c == '\\' && i + 1 < ident.length()) c = ident.charAt(++i);
+            out.append(c);
+        }
+        return out.toString();
+    }
+
+    private static String version(String css) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(css.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, VERSION_BYTES);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
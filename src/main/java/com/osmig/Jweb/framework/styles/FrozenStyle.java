@@ -0,0 +1,102 @@
+package com.osmig.Jweb.framework.styles;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable style whose CSS string is computed once.
+ *
+ * <p>Created with {@link Style#freeze()} or {@link Styles#constant(Style)},
+ * and interned: structurally equal styles (same properties, in the same
+ * order) share one instance, so a constant applied on every render costs a
+ * field read instead of serializing the property map:</p>
+ * <pre>
+ * static final FrozenStyle CARD = Styles.constant(style().padding(rem(1)).background(white));
+ *
+ * div().style(CARD)      // cached CSS, no rebuild
+ * </pre>
+ *
+ * <p>Setting a property on a frozen style throws
+ * {@link UnsupportedOperationException}; build a new style for a
+ * variation.</p>
+ */
+public final class FrozenStyle extends Style<FrozenStyle> {
+
+    // Past this many distinct styles new ones are frozen but not interned,
+    // so per-request dynamic styles can't grow the table without bound
+    private static final int INTERN_LIMIT = 4096;
+
+    private static final Map<String, FrozenStyle> interned = new ConcurrentHashMap<>();
+
+    private final String css;
+
+    private FrozenStyle(Map<String, String> source, String css) {
+        super(readOnly(source));
+        this.css = css;
+    }
+
+    /** The shared frozen style for a style's current properties. */
+    static FrozenStyle intern(Style<?> style) {
+        if (style instanceof FrozenStyle frozen) {
+            return frozen;
+        }
+        // The CSS text is the structural key: it keeps property order, which matters for shorthands
+        String css = style.build();
+        FrozenStyle existing = interned.get(css);
+        if (existing != null) {
+            return existing;
+        }
+        FrozenStyle frozen = new FrozenStyle(style.properties, css);
+        if (interned.size() >= INTERN_LIMIT) {
+            return frozen;
+        }
+        FrozenStyle raced = interned.putIfAbsent(css, frozen);
+        return raced != null ? raced : frozen;
+    }
+
+    @Override
+    protected FrozenStyle self() {
+        return this;
+    }
+
+    @Override
+    public FrozenStyle freeze() {
+        return this;
+    }
+
+    /** The cached CSS string. */
+    @Override
+    public String build() {
+        return css;
+    }
+
+    /** Number of interned styles. */
+    public static int internedCount() {
+        return interned.size();
+    }
+
+    private static Map<String, String> readOnly(Map<String, String> source) {
+        return new LinkedHashMap<>(source) {
+            @Override
+            public String put(String key, String value) {
+                throw new UnsupportedOperationException("Style is frozen: cannot set " + key);
+            }
+
+            @Override
+            public void putAll(Map<? extends String, ? extends String> m) {
+                throw new UnsupportedOperationException("Style is frozen");
+            }
+
+            @Override
+            public String remove(Object key) {
+                throw new UnsupportedOperationException("Style is frozen");
+            }
+
+            @Override
+            public void clear() {
+                throw new UnsupportedOperationException("Style is frozen");
+            }
+        };
+    }
+}
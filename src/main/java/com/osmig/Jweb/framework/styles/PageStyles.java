@@ -0,0 +1,284 @@
+package com.osmig.Jweb.framework.styles;
+
+import com.osmig.Jweb.framework.vdom.DocumentSlots;
+import com.osmig.Jweb.framework.vdom.VNode;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The per-page stylesheet that {@link StyledElement} rules are collected
+ * into, written once in {@code <head>}, along with the page's
+ * {@link CriticalCss} stylesheets.
+ *
+ * <p>Generated class names are content hashes of the rules, so every
+ * element with the same styles shares one class and one rule set: a list
+ * of 500 hover-styled cards ships a single rule instead of 500
+ * {@code <style>} blocks. The framework opens a sheet for each page request
+ * and closes it when the document is written:</p>
+ * <pre>
+ * PageStyles.open();                          // request start
+ * VNode tree = page.toVNode();                // StyledElements add their rules
+ * PageStyles.closeCurrent(tree, slots);       // styles into the document's slots
+ * </pre>
+ *
+ * <p>Rules added after the sheet is closed (streamed Suspense blocks,
+ * WebSocket re-renders) or with no sheet open are written inline by the
+ * element instead, unless the page's sheet already has them. The sheet is
+ * carried to other render threads by {@code RenderScope}.</p>
+ *
+ * <p>Output that is rendered once and reused as markup ({@code Cached}
+ * fragments, the static parts of {@code Compiled} shapes) {@link #record}s
+ * the styles its render added, and {@linkplain Captured#replay replays}
+ * them into each page that reuses it.</p>
+ */
+public final class PageStyles {
+
+    private static final ThreadLocal<PageStyles> current = new ThreadLocal<>();
+
+    // Recordings open on this thread, outermost first (reused output can nest)
+    private static final ThreadLocal<List<Recording>> recordings = new ThreadLocal<>();
+
+    // Generated class -> its rules, in first-use order
+    private final Map<String, String> rules = new LinkedHashMap<>();
+    private final List<CriticalCss.Sheet> stylesheets = new ArrayList<>();
+    private boolean closed;
+
+    private PageStyles() {}
+
+    /** Opens a new sheet for the current thread's page render. */
+    public static PageStyles open() {
+        PageStyles sheet = new PageStyles();
+        current.set(sheet);
+        return sheet;
+    }
+
+    /** The current thread's sheet, or null when none is open. */
+    public static PageStyles current() {
+        return current.get();
+    }
+
+    /** Makes a sheet (captured on another thread) the current one; null detaches. */
+    public static void attach(PageStyles sheet) {
+        if (sheet == null) {
+            current.remove();
+        } else {
+            current.set(sheet);
+        }
+    }
+
+    /** Detaches the current thread's sheet. */
+    public static void clear() {
+        current.remove();
+    }
+
+    /**
+     * Closes the current thread's sheet and returns its style element, or
+     * an empty string when there is no sheet or nothing in it.
+     */
+    public static String closeCurrent() {
+        PageStyles sheet = current.get();
+        return sheet == null ? "" : sheet.close();
+    }
+
+    /**
+     * Closes the current thread's sheet and adds the page's styles to the
+     * end of {@code <head>}, in cascade order: for each {@link CriticalCss}
+     * stylesheet its critical part (matched against the tree) and a
+     * non-blocking link to the full file, then the generated rules, so
+     * they still override the stylesheets once those load.
+     */
+    public static void closeCurrent(VNode tree, DocumentSlots slots) {
+        PageStyles sheet = current.get();
+        if (sheet == null) {
+            return;
+        }
+        List<CriticalCss.Sheet> linked = sheet.closeStylesheets();
+        if (!linked.isEmpty()) {
+            CriticalCss.Usage usage = CriticalCss.usage(tree);
+            for (CriticalCss.Sheet stylesheet : linked) {
+                String critical = stylesheet.critical(usage);
+                if (!critical.isEmpty()) {
+                    slots.head("<style>" + critical + "</style>");
+                }
+                // Preloaded and applied when loaded, without blocking first paint
+                slots.head("<link rel=\"preload\" href=\"" + stylesheet.href()
+                    + "\" as=\"style\" onload=\"this.onload=null;this.rel='stylesheet'\">"
+                    + "<noscript><link rel=\"stylesheet\" href=\"" + stylesheet.href() + "\"></noscript>");
+            }
+        }
+        slots.head(sheet.close());
+    }
+
+    /**
+     * Adds a stylesheet for critical CSS extraction to the current sheet.
+     *
+     * @return true when the page will write it, false when the caller must
+     *         write it inline (no sheet, or the sheet is closed)
+     */
+    static boolean addStylesheet(CriticalCss.Sheet stylesheet) {
+        List<Recording> active = recordings.get();
+        if (active != null) {
+            for (Recording recording : active) {
+                if (!recording.stylesheets.contains(stylesheet)) {
+                    recording.stylesheets.add(stylesheet);
+                }
+            }
+        }
+        PageStyles sheet = current.get();
+        return sheet != null && sheet.putStylesheet(stylesheet);
+    }
+
+    private synchronized boolean putStylesheet(CriticalCss.Sheet stylesheet) {
+        if (closed) {
+            return false;
+        }
+        if (!stylesheets.contains(stylesheet)) {
+            stylesheets.add(stylesheet);
+        }
+        return true;
+    }
+
+    private synchronized List<CriticalCss.Sheet> closeStylesheets() {
+        closed = true;
+        return List.copyOf(stylesheets);
+    }
+
+    /**
+     * Adds a class's rules to the current sheet.
+     *
+     * @param className the generated class
+     * @param css builds the rules, only called when the sheet doesn't have them yet
+     * @return true when the page's stylesheet has the rules, false when the
+     *         caller must write them inline
+     */
+    static boolean add(String className, Supplier<String> css) {
+        List<Recording> active = recordings.get();
+        if (active != null) {
+            String rules = css.get();
+            for (Recording recording : active) {
+                recording.rules.putIfAbsent(className, rules);
+            }
+            css = () -> rules;
+        }
+        PageStyles sheet = current.get();
+        return sheet != null && sheet.put(className, css);
+    }
+
+    private synchronized boolean put(String className, Supplier<String> css) {
+        if (rules.containsKey(className)) {
+            return true;
+        }
+        if (closed) {
+            return false;
+        }
+        rules.put(className, css.get());
+        return true;
+    }
+
+    /**
+     * Closes the sheet (later rules are written inline) and returns its
+     * style element, or an empty string when it has no rules.
+     */
+    public synchronized String close() {
+        closed = true;
+        if (rules.isEmpty()) {
+            return "";
+        }
+        StringBuilder html = new StringBuilder(64 * rules.size() + 16).append("<style>");
+        for (String css : rules.values()) {
+            html.append(css);
+        }
+        return html.append("</style>").toString();
+    }
+
+    /** Number of distinct rule sets in the sheet. */
+    public synchronized int size() {
+        return rules.size();
+    }
+
+    // ==================== Reused output ====================
+
+    /**
+     * Starts recording the styles added on this thread (the current sheet
+     * still gets them), for output that will be reused without rendering it
+     * again. Recordings nest; each must be {@linkplain Recording#stop stopped}.
+     */
+    public static Recording record() {
+        Recording recording = new Recording();
+        List<Recording> active = recordings.get();
+        if (active == null) {
+            active = new ArrayList<>(2);
+            recordings.set(active);
+        }
+        active.add(recording);
+        return recording;
+    }
+
+    /** Styles being recorded by {@link #record}. */
+    public static final class Recording {
+        private final Map<String, String> rules = new LinkedHashMap<>();
+        private final List<CriticalCss.Sheet> stylesheets = new ArrayList<>();
+
+        private Recording() {}
+
+        /** Stops recording and returns what was added. */
+        public Captured stop() {
+            List<Recording> active = recordings.get();
+            if (active != null) {
+                active.remove(this);
+                if (active.isEmpty()) {
+                    recordings.remove();
+                }
+            }
+            // No longer written to: handed over as they are
+            return rules.isEmpty() && stylesheets.isEmpty() ? Captured.NONE : new Captured(rules, stylesheets);
+        }
+    }
+
+    /** The styles a render added, for adding them again where its output is reused. */
+    public static final class Captured {
+
+        /** Nothing captured. */
+        public static final Captured NONE = new Captured(Map.of(), List.of());
+
+        private final Map<String, String> rules;
+        private final List<CriticalCss.Sheet> stylesheets;
+
+        private Captured(Map<String, String> rules, List<CriticalCss.Sheet> stylesheets) {
+            this.rules = rules;
+            this.stylesheets = stylesheets;
+        }
+
+        /**
+         * Adds the captured styles to the current sheet, as the render that
+         * captured them did.
+         *
+         * @return the markup to write inline for the styles the sheet can't
+         *         take (no sheet, or it is closed), or an empty string
+         */
+        public String replay() {
+            if (this == NONE) {
+                return "";
+            }
+            StringBuilder inline = new StringBuilder();
+            for (Map.Entry<String, String> rule : rules.entrySet()) {
+                if (!add(rule.getKey(), rule::getValue)) {
+                    inline.append(rule.getValue());
+                }
+            }
+            if (!inline.isEmpty()) {
+                inline.insert(0, "<style>").append("</style>");
+            }
+            for (CriticalCss.Sheet stylesheet : stylesheets) {
+                if (!addStylesheet(stylesheet)) {
+                    inline.append("<style>").append(stylesheet.css()).append("</style>");
+                }
+            }
+            return inline.toString();
+        }
+    }
+}
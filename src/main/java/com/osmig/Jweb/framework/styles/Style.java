@@ -51,10 +51,17 @@ import java.util.Map;
 public class Style<T extends Style<T>> implements CSSValue {
 
     /** Stores CSS property-value pairs in insertion order. */
-    protected final Map<String, String> properties = new LinkedHashMap<>();
+    protected final Map<String, String> properties;
 
     /** Creates a new empty Style builder. */
-    public Style() {}
+    public Style() {
+        this.properties = new LinkedHashMap<>();
+    }
+
+    /** Creates a style over a given property map (see {@link FrozenStyle}). */
+    Style(Map<String, String> properties) {
+        this.properties = properties;
+    }
 
     /**
      * Returns this instance cast to the concrete type T.
@@ -2182,6 +2189,21 @@ public class Style<T extends Style<T>> implements CSSValue {
         return sb.toString();
     }
 
+    /**
+     * Returns an immutable copy of this style with its CSS computed once,
+     * shared with every structurally equal frozen style. Use it for styles
+     * that are constants reused on every render:
+     * <pre>
+     * static final FrozenStyle CARD = style().padding(rem(1)).borderRadius(px(8)).freeze();
+     * </pre>
+     *
+     * @return the interned frozen style
+     * @see Styles#constant(Style)
+     */
+    public FrozenStyle freeze() {
+        return FrozenStyle.intern(this);
+    }
+
     /**
      * Returns the CSS properties as a map.
      * Useful for iteration or inspection.
@@ -10,11 +10,12 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Wraps an element with pseudo-class styles (hover, focus, active, etc.).
- * Generates unique class names and a style tag for CSS rules.
+ * The class name is a hash of the rules, so identical styles share one
+ * class, and the rules go once into the page's stylesheet (see
+ * {@link PageStyles}) rather than a style tag per element.
  *
  * Usage:
  *   div(attrs().class_("card"))
@@ -24,16 +25,12 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public class StyledElement implements Element {
 
-    private static final AtomicLong ID_COUNTER = new AtomicLong(0);
-
     private final VNode baseElement;
-    private final String generatedClass;
     private Style<?> baseStyle;
     private final Map<String, Style<?>> pseudoStyles = new LinkedHashMap<>();
 
     public StyledElement(VNode baseElement) {
         this.baseElement = baseElement;
-        this.generatedClass = "jweb-" + ID_COUNTER.incrementAndGet();
     }
 
     public StyledElement style(Style<?> style) {
@@ -123,47 +120,57 @@ public class StyledElement implements Element {
             return applyInlineStyle(baseElement);
         }
 
-        // Generate minified CSS rules
-        StringBuilder css = new StringBuilder();
-
-        // Base style rule (minified - no spaces)
+        // The declarations of each rule, keyed by selector suffix ("" for the base rule)
+        Map<String, String> declarations = new LinkedHashMap<>();
         if (baseStyle != null && !baseStyle.isEmpty()) {
-            css.append(".").append(generatedClass).append("{")
-               .append(baseStyle.build())
-               .append("}");
+            declarations.put("", baseStyle.build());
         }
-
-        // Pseudo-class rules (minified)
         for (Map.Entry<String, Style<?>> entry : pseudoStyles.entrySet()) {
             String pseudo = entry.getKey();
-            Style<?> style = entry.getValue();
-
-            if (pseudo.startsWith(":")) {
-                // Pseudo-element (::before, ::after, ::placeholder)
-                css.append(".").append(generatedClass).append(pseudo).append("{")
-                   .append(style.build())
-                   .append("}");
-            } else {
-                // Pseudo-class (:hover, :focus, etc.)
-                css.append(".").append(generatedClass).append(":").append(pseudo).append("{")
-                   .append(style.build())
-                   .append("}");
-            }
+            // Pseudo-elements (::before, ::after, ::placeholder) are stored with their first colon
+            declarations.put(pseudo.startsWith(":") ? pseudo : ":" + pseudo, entry.getValue().build());
         }
 
-        // Add the generated class to the element
-        VNode styledElement = addClassToElement(baseElement);
-
-        // Create a fragment with style tag and element (minified)
-        VNode styleTag = new VRaw("<style>" + css + "</style>");
+        String generatedClass = classFor(declarations);
+        VNode styledElement = addClassToElement(baseElement, generatedClass);
+        if (PageStyles.add(generatedClass, () -> rules(generatedClass, declarations))) {
+            return styledElement;
+        }
 
+        // No page stylesheet to add to (e.g. a re-render over WebSocket): inline the rules
         List<VNode> nodes = new ArrayList<>();
-        nodes.add(styleTag);
+        nodes.add(new VRaw("<style>" + rules(generatedClass, declarations) + "</style>"));
         nodes.add(styledElement);
-
         return new VFragment(nodes);
     }
 
+    /** Minified CSS rules for the class. */
+    private static String rules(String generatedClass, Map<String, String> declarations) {
+        StringBuilder css = new StringBuilder();
+        declarations.forEach((suffix, body) ->
+            css.append('.').append(generatedClass).append(suffix).append('{').append(body).append('}'));
+        return css.toString();
+    }
+
+    /** A class named by a 64-bit FNV-1a hash of the rules, equal for equal styles. */
+    private static String classFor(Map<String, String> declarations) {
+        long hash = 0xcbf29ce484222325L;
+        for (Map.Entry<String, String> entry : declarations.entrySet()) {
+            hash = fnv(hash, entry.getKey());
+            hash = fnv(hash, entry.getValue());
+        }
+        return "jweb-" + Long.toUnsignedString(hash, 36);
+    }
+
+    private static long fnv(long hash, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // Separator, so "a"+"bc" and "ab"+"c" differ
+        return (hash ^ 0xffff) * 0x100000001b3L;
+    }
+
     private VNode applyInlineStyle(VNode node) {
         if (baseStyle == null || baseStyle.isEmpty()) {
             return node;
@@ -183,7 +190,7 @@ public class StyledElement implements Element {
         return node;
     }
 
-    private VNode addClassToElement(VNode node) {
+    private VNode addClassToElement(VNode node, String generatedClass) {
         if (node instanceof VElement element) {
             Map<String, String> newAttrs = new LinkedHashMap<>(element.getAttributes());
             String existingClass = newAttrs.get("class");
@@ -28,4 +28,12 @@ public final class Styles {
     public static Style<?> style() {
         return new Style<>();
     }
+
+    /**
+     * Freezes a style for reuse as a constant: its CSS is computed once and
+     * structurally equal constants share one instance (see {@link FrozenStyle}).
+     */
+    public static FrozenStyle constant(Style<?> style) {
+        return style.freeze();
+    }
 }
@@ -0,0 +1,193 @@
+package com.osmig.Jweb.framework.template;
+
+import com.osmig.Jweb.framework.core.Element;
+import com.osmig.Jweb.framework.styles.PageStyles;
+import com.osmig.Jweb.framework.vdom.HtmlSink;
+import com.osmig.Jweb.framework.vdom.VFragment;
+import com.osmig.Jweb.framework.vdom.VNode;
+import com.osmig.Jweb.framework.vdom.VRaw;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Ahead-of-time compiled page shell: static markup rendered once, with holes
+ * evaluated per render.
+ *
+ * <p>The shape is built and rendered a single time, on first use. Its
+ * output is split at the holes into pre-rendered segments, so each later
+ * render costs only its holes, however large the static markup is:</p>
+ * <pre>
+ * public class ProductPage implements Template {
+ *     private static final Compiled&lt;ProductPage&gt; VIEW = Compiled.of(() -&gt; div(
+ *         siteHeader(),                                  // static, rendered once
+ *         Compiled.&lt;ProductPage&gt;hole(page -&gt; productCard(page.product)),
+ *         siteFooter()                                   // static, rendered once
+ *     ));
+ *
+ *     private final Product product = ...;
+ *
+ *     public Element render() {
+ *         return VIEW.bind(this);
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>Everything outside a hole is frozen after the first render, so request
+ * data, state ({@code useState}), event handlers and {@code useComponent}
+ * regions belong inside holes. A hole must be written as part of the shape's
+ * tree: one inside something that renders to a string of its own (such as
+ * {@code Cached.of}) fails the compile. Styles the static markup added to
+ * the page ({@code StyledElement} rules, {@code CriticalCss} stylesheets)
+ * are added again on every render.</p>
+ *
+ * @param <T> the per-render input passed to the holes
+ */
+public final class Compiled<T> {
+
+    // Holes created while a shape is being compiled on this thread
+    private static final ThreadLocal<List<Hole<?>>> compiling = new ThreadLocal<>();
+
+    private final Supplier<? extends Element> shape;
+    private volatile Segments<T> segments;
+
+    private Compiled(Supplier<? extends Element> shape) {
+        this.shape = shape;
+    }
+
+    /**
+     * Declares a compiled shell. The shape is built on the first
+     * {@link #bind}, not here.
+     *
+     * @param shape builds the markup, with {@link #hole} for the dynamic parts
+     */
+    public static <T> Compiled<T> of(Supplier<? extends Element> shape) {
+        return new Compiled<>(shape);
+    }
+
+    /**
+     * A dynamic part of a compiled shape, evaluated on every render with the
+     * input passed to {@link #bind}.
+     */
+    public static <T> Element hole(Function<? super T, ? extends Element> content) {
+        return new Hole<>(content);
+    }
+
+    /**
+     * Renders the shell for one request: pre-rendered segments with each
+     * hole filled from {@code input}.
+     */
+    public Element bind(T input) {
+        Segments<T> compiled = compile();
+        return () -> {
+            List<VNode> parts = new ArrayList<>(compiled.text.length + compiled.holes.size() + 1);
+            String inline = compiled.styles.replay();
+            if (!inline.isEmpty()) {
+                parts.add(new VRaw(inline));
+            }
+            for (int i = 0; i < compiled.holes.size(); i++) {
+                parts.add(compiled.text[i]);
+                Element filled = compiled.holes.get(i).content.apply(input);
+                if (filled != null) {
+                    parts.add(filled.toVNode());
+                }
+            }
+            parts.add(compiled.text[compiled.holes.size()]);
+            return new VFragment(parts);
+        };
+    }
+
+    /** Number of holes in the compiled shape (compiles it if needed). */
+    public int holeCount() {
+        return compile().holes.size();
+    }
+
+    private Segments<T> compile() {
+        Segments<T> compiled = segments;
+        if (compiled == null) {
+            synchronized (this) {
+                compiled = segments;
+                if (compiled == null) {
+                    compiled = doCompile();
+                    segments = compiled;
+                }
+            }
+        }
+        return compiled;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Segments<T> doCompile() {
+        List<Hole<?>> outer = compiling.get();
+        List<Hole<?>> holes = new ArrayList<>();
+        compiling.set(holes);
+        PageStyles.Recording recording = PageStyles.record();
+        VNode tree;
+        PageStyles.Captured styles;
+        try {
+            tree = shape.get().toVNode();
+        } finally {
+            styles = recording.stop();
+            if (outer != null) {
+                compiling.set(outer);
+            } else {
+                compiling.remove();
+            }
+        }
+
+        // Each hole's marker reports where it was written, in document order
+        Map<String, Hole<?>> byMarker = new IdentityHashMap<>();
+        for (Hole<?> hole : holes) {
+            byMarker.put(hole.marker, hole);
+        }
+        List<Hole<T>> ordered = new ArrayList<>(holes.size());
+        List<Integer> offsets = new ArrayList<>(holes.size());
+        HtmlSink sink = new HtmlSink().onMarker((markup, offset) -> {
+            Hole<?> hole = byMarker.get(markup);
+            if (hole != null) {
+                ordered.add((Hole<T>) hole);
+                offsets.add(offset);
+            }
+        });
+        tree.writeTo(sink);
+        if (ordered.size() < holes.size()) {
+            throw new IllegalStateException(
+                "Compiled.hole() rendered outside the shape's output (e.g. inside Cached.of)");
+        }
+
+        String html = sink.toString();
+        VRaw[] text = new VRaw[ordered.size() + 1];
+        int start = 0;
+        for (int i = 0; i < offsets.size(); i++) {
+            text[i] = new VRaw(html.substring(start, offsets.get(i)));
+            start = offsets.get(i);
+        }
+        text[ordered.size()] = new VRaw(html.substring(start));
+        return new Segments<>(text, ordered, styles);
+    }
+
+    private record Segments<T>(VRaw[] text, List<Hole<T>> holes, PageStyles.Captured styles) {}
+
+    private static final class Hole<T> implements Element {
+        private final Function<? super T, ? extends Element> content;
+        private final String marker = HtmlSink.newMarker();
+
+        Hole(Function<? super T, ? extends Element> content) {
+            this.content = content;
+        }
+
+        @Override
+        public VNode toVNode() {
+            List<Hole<?>> holes = compiling.get();
+            if (holes == null) {
+                throw new IllegalStateException("Compiled.hole() used outside a Compiled shape");
+            }
+            holes.add(this);
+            return new VRaw(marker);
+        }
+    }
+}
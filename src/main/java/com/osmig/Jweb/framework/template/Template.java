@@ -1,9 +1,11 @@
 package com.osmig.Jweb.framework.template;
 
+import com.osmig.Jweb.framework.cache.PageCache;
 import com.osmig.Jweb.framework.core.Element;
 import com.osmig.Jweb.framework.server.Request;
 import com.osmig.Jweb.framework.vdom.VNode;
 
+import java.time.Instant;
 import java.util.Optional;
 
 /**
@@ -247,4 +249,58 @@ public interface Template extends Element {
     default int cacheDuration() {
         return 0;
     }
+
+    /**
+     * Returns a cheap key identifying this page's current content, e.g. a
+     * data revision or an {@code updatedAt} timestamp. It becomes the page's
+     * ETag, and a request whose {@code If-None-Match} matches it is answered
+     * with 304 Not Modified before {@link #beforeRender} and {@link #render}
+     * run. Computed before rendering, so it must not depend on data loaded
+     * in {@code beforeRender}.
+     *
+     * <p>Example:</p>
+     * <pre>
+     * &#64;Override
+     * public Optional&lt;String&gt; version(Request request) {
+     *     return Optional.of(String.valueOf(posts.updatedAt(request.param("id"))));
+     * }
+     * </pre>
+     *
+     * @param request the HTTP request
+     * @return the version key, or empty to always render (default)
+     */
+    default Optional<String> version(Request request) {
+        return Optional.empty();
+    }
+
+    /**
+     * Returns when this page's content last changed. Sent as
+     * {@code Last-Modified}; a request whose {@code If-Modified-Since} is not
+     * older is answered with 304 before rendering (see {@link #version}).
+     *
+     * @param request the HTTP request
+     * @return the last modification time, or empty for none (default)
+     */
+    default Optional<Instant> lastModified(Request request) {
+        return Optional.empty();
+    }
+
+    /**
+     * Caches the rendered page on the server, so later requests are sent
+     * the stored bytes without running the page at all. Only for pages that
+     * are identical for every visitor sharing the policy's vary inputs.
+     *
+     * <p>Example:</p>
+     * <pre>
+     * &#64;Override
+     * public Optional&lt;PageCache.Policy&gt; serverCache() {
+     *     return Optional.of(PageCache.policy(Duration.ofMinutes(1)).varyByLocale());
+     * }
+     * </pre>
+     *
+     * @return the cache policy, or empty to render every request (default)
+     */
+    default Optional<PageCache.Policy> serverCache() {
+        return Optional.empty();
+    }
 }
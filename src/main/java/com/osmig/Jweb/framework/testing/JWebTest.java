@@ -86,7 +86,7 @@ public final class JWebTest {
             }
             try {
                 var route = pageMatch.get();
-                Object result = app.getMiddlewareStack().execute(request, () -> {
+                Object result = app.getMiddlewareStack().execute(request, "GET", route.path(), () -> {
                     var page = route.pageSupplier().get();
                     page.beforeRender(request);
                     Element content = page.render();
@@ -108,7 +108,9 @@ public final class JWebTest {
         }
 
         try {
-            Object result = app.getMiddlewareStack().execute(request, () -> match.get().handle(request));
+            var route = match.get().route();
+            Object result = app.getMiddlewareStack().execute(request, route.getMethod(), route.getPath(),
+                () -> match.get().handle(request));
             return TestResult.from(result);
         } catch (Exception e) {
             return new TestResult(500, null, e.getMessage());
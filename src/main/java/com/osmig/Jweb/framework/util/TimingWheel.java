@@ -0,0 +1,139 @@
+package com.osmig.Jweb.framework.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+/**
+ * A hashed timing wheel for idle expiry: each entry sits in the bucket of
+ * the tick its deadline falls in, and {@link #advance} only visits the
+ * buckets whose tick has passed, so expiring costs O(expired) instead of a
+ * scan over every entry.
+ *
+ * <p>Deadlines are read through a function rather than stored, so
+ * extending one (a {@code touch()}) is just a field write on the entry.
+ * When its old bucket comes up the entry is found not yet due and moved to
+ * the bucket of its current deadline: an entry in active use is rescheduled
+ * at most once per idle period.</p>
+ *
+ * <pre>
+ * TimingWheel&lt;Session&gt; wheel = new TimingWheel&lt;&gt;(1000, 512, s -&gt; s.lastUsed + TTL);
+ * wheel.schedule(session);
+ * ...
+ * for (Session expired : wheel.advance(System.currentTimeMillis(), 1000)) expired.close();
+ * </pre>
+ *
+ * <p>Thread-safe; the work of one {@link #advance} call is bounded by its
+ * limit, and due entries past the limit are returned by the next call.</p>
+ *
+ * @param <K> the entry type (compared by equals/hashCode)
+ */
+public final class TimingWheel<K> {
+
+    private final long tickMs;
+    private final int mask;
+    private final List<Set<K>> buckets;
+    private final Map<K, Integer> slots = new HashMap<>();
+    private final ToLongFunction<K> deadline;
+    // The next tick to expire: every bucket before it has been emptied of due entries
+    private long current;
+
+    /**
+     * @param tickMs   the resolution: entries expire up to one tick late
+     * @param slots    number of buckets, rounded up to a power of two; a
+     *                 span (tickMs * slots) longer than typical deadlines
+     *                 avoids revisiting entries
+     * @param deadline the current deadline of an entry, in epoch milliseconds
+     */
+    public TimingWheel(long tickMs, int slots, ToLongFunction<K> deadline) {
+        this.tickMs = tickMs;
+        int size = Integer.highestOneBit(Math.max(2, slots - 1)) << 1;
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new LinkedHashSet<>());
+        }
+        this.deadline = deadline;
+        this.current = System.currentTimeMillis() / tickMs;
+    }
+
+    /** Adds an entry (or moves it to its current deadline). */
+    public synchronized void schedule(K key) {
+        cancel(key);
+        place(key, deadline.applyAsLong(key) / tickMs);
+    }
+
+    /** Removes an entry; no-op when it isn't scheduled. */
+    public synchronized void cancel(K key) {
+        Integer slot = slots.remove(key);
+        if (slot != null) {
+            buckets.get(slot).remove(key);
+        }
+    }
+
+    /** Number of scheduled entries. */
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    /**
+     * Removes and returns the entries whose deadline has passed, at most
+     * {@code limit} of them.
+     *
+     * @param now   the current time in epoch milliseconds
+     * @param limit the most entries to return (and rescheduled entries to
+     *              visit twice that), so a burst is spread over several calls
+     * @return the expired entries, no longer scheduled
+     */
+    public synchronized List<K> advance(long now, int limit) {
+        List<K> expired = new ArrayList<>();
+        List<K> moved = new ArrayList<>();
+        long target = now / tickMs;
+        if (target - current > mask) {
+            // Fell more than a rotation behind: one rotation visits every bucket
+            current = target - mask;
+        }
+        int budget = limit * 2;
+        while (current <= target && expired.size() < limit && budget > 0) {
+            Set<K> bucket = buckets.get((int) (current & mask));
+            Iterator<K> entries = bucket.iterator();
+            while (entries.hasNext() && expired.size() < limit && budget-- > 0) {
+                K key = entries.next();
+                long due = deadline.applyAsLong(key);
+                if (due <= now) {
+                    entries.remove();
+                    slots.remove(key);
+                    expired.add(key);
+                } else if (due / tickMs != current) {
+                    // Touched since it was placed, or due in a later round
+                    entries.remove();
+                    slots.remove(key);
+                    moved.add(key);
+                }
+            }
+            if (entries.hasNext()) {
+                break;   // budget spent: continue with this bucket next time
+            }
+            if (current == target) {
+                break;   // entries left are due later this tick
+            }
+            current++;
+        }
+        for (K key : moved) {
+            place(key, deadline.applyAsLong(key) / tickMs);
+        }
+        return expired;
+    }
+
+    private void place(K key, long tick) {
+        // Already due: the next advance picks it up
+        int slot = (int) (Math.max(tick, current) & mask);
+        buckets.get(slot).add(key);
+        slots.put(key, slot);
+    }
+}
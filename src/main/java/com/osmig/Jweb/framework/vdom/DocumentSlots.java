@@ -0,0 +1,188 @@
+package com.osmig.Jweb.framework.vdom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Insertion points of a full HTML document, filled in while it renders.
+ *
+ * <p>Attached to an {@link HtmlSink}, the slots are written by the elements
+ * themselves as the tree is walked: the title replaces the content of
+ * {@code <title>}, head content goes in just before {@code </head>} and
+ * scripts just before {@code </body>}. The page is never searched or
+ * spliced after rendering:</p>
+ * <pre>
+ * DocumentSlots slots = new DocumentSlots()
+ *     .title("Dashboard")
+ *     .head("&lt;meta name=\"description\" content=\"...\"&gt;")
+ *     .scripts(hydrationScript);
+ * HtmlSink sink = new HtmlSink().withSlots(slots);
+ * tree.writeTo(sink);
+ * slots.finish(sink);
+ * </pre>
+ *
+ * <p>{@link #finish} places whatever the walk couldn't, e.g. when the
+ * document skeleton comes from raw HTML rather than elements.</p>
+ */
+public final class DocumentSlots {
+
+    private static final String TITLE_OPEN = "<title>";
+    private static final String TITLE_CLOSE = "</title>";
+
+    private String title;
+    private final StringBuilder head = new StringBuilder();
+    private final StringBuilder bodyEnd = new StringBuilder();
+    private final List<Consumer<HtmlSink>> scripts = new ArrayList<>();
+
+    private boolean titleWritten;
+    private boolean headWritten;
+    private boolean bodyWritten;
+
+    /** Sets the document title (plain text, escaped when written). */
+    public DocumentSlots title(String text) {
+        this.title = text;
+        return this;
+    }
+
+    /** Adds markup to the end of {@code <head>}. */
+    public DocumentSlots head(String html) {
+        head.append(html);
+        return this;
+    }
+
+    /**
+     * Adds markup to the end of {@code <body>}. Appended to the output when
+     * the document has no body.
+     */
+    public DocumentSlots bodyEnd(String html) {
+        bodyEnd.append(html);
+        return this;
+    }
+
+    /**
+     * Adds framework scripts after the {@link #bodyEnd} content. Only
+     * written into full documents: fragments (no {@code <body>} or
+     * {@code <html>}) are swapped into a page that already has them.
+     */
+    public DocumentSlots scripts(String html) {
+        if (!html.isEmpty()) {
+            scripts.add(sink -> sink.append(html));
+        }
+        return this;
+    }
+
+    /**
+     * Adds framework scripts produced by a writer, which writes them straight
+     * into the output when the slot is reached (see {@link #scripts(String)}).
+     */
+    public DocumentSlots scripts(Consumer<HtmlSink> writer) {
+        scripts.add(writer);
+        return this;
+    }
+
+    /** True when there is nothing to insert. */
+    public boolean isEmpty() {
+        return title == null && head.isEmpty() && bodyEnd.isEmpty() && scripts.isEmpty();
+    }
+
+    // ==================== During the walk ====================
+
+    /**
+     * Writes the content of an element in place of its children, if a slot
+     * replaces it. Returns false when the children should be written.
+     */
+    boolean writeContent(String tag, HtmlSink sink) {
+        if (title != null && !titleWritten && "title".equals(tag)) {
+            titleWritten = true;
+            sink.appendText(title);
+            return true;
+        }
+        return false;
+    }
+
+    /** Writes the slots that belong just before the element's closing tag. */
+    void beforeClose(String tag, HtmlSink sink) {
+        switch (tag) {
+            case "head" -> {
+                if (headWritten) return;
+                headWritten = true;
+                if (title != null && !titleWritten) {
+                    titleWritten = true;
+                    sink.append(TITLE_OPEN).appendText(title).append(TITLE_CLOSE);
+                }
+                sink.append(head.toString());
+            }
+            case "body", "html" -> {
+                if (bodyWritten) return;
+                bodyWritten = true;
+                sink.append(bodyEnd.toString());
+                writeScripts(sink);
+            }
+            default -> {
+                return;
+            }
+        }
+        // Nothing left to place: the rest of the walk skips the slot checks
+        if (headWritten && bodyWritten && (title == null || titleWritten)) {
+            sink.withSlots(null);
+        }
+    }
+
+    // ==================== After the walk ====================
+
+    /**
+     * Places the slots the walk didn't reach, by locating the document's
+     * markers in the output (the title, head and body of raw HTML), and
+     * detaches the slots from the sink.
+     */
+    public void finish(HtmlSink sink) {
+        sink.withSlots(null);
+
+        if (title != null && !titleWritten) {
+            titleWritten = true;
+            String escaped = HtmlSink.escape(title);
+            int start = sink.indexOf(TITLE_OPEN);
+            int end = sink.indexOf(TITLE_CLOSE);
+            if (start >= 0 && end > start) {
+                sink.replace(start + TITLE_OPEN.length(), end, escaped);
+            } else if (!headWritten) {
+                head.insert(0, TITLE_OPEN + escaped + TITLE_CLOSE);
+            }
+        }
+
+        if (!headWritten) {
+            headWritten = true;
+            if (!head.isEmpty()) {
+                int index = sink.lastIndexOf("</head>");
+                if (index >= 0) {
+                    sink.insert(index, head.toString());
+                } else {
+                    sink.append(head.toString());
+                }
+            }
+        }
+
+        if (!bodyWritten) {
+            bodyWritten = true;
+            int index = sink.lastIndexOf("</body>");
+            if (index < 0) {
+                index = sink.lastIndexOf("</html>");
+            }
+            if (index >= 0) {
+                HtmlSink tail = new HtmlSink(bodyEnd.length() + 256).append(bodyEnd.toString());
+                writeScripts(tail);
+                sink.insert(index, tail.toString());
+            } else {
+                // Fragment: page content only, the host page has the scripts
+                sink.append(bodyEnd.toString());
+            }
+        }
+    }
+
+    private void writeScripts(HtmlSink sink) {
+        for (Consumer<HtmlSink> writer : scripts) {
+            writer.accept(sink);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.osmig.Jweb.framework.vdom;
+
+import java.io.IOException;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Append-only output buffer for single-pass VNode rendering.
+ *
+ * <p>Every node writes itself straight into the sink
+ * ({@link VNode#writeTo(HtmlSink)}), so a tree renders in one walk into one
+ * buffer instead of each node building a string that its parent copies
+ * again (O(n) instead of O(n·depth)).</p>
+ *
+ * <pre>
+ * HtmlSink sink = new HtmlSink();
+ * page.toVNode().writeTo(sink);
+ * String html = sink.toString();
+ *
+ * // Or, reusing this thread's buffer:
+ * String html = HtmlSink.render(page.toVNode());
+ * </pre>
+ */
+public final class HtmlSink {
+
+    // Buffers that grew past this are dropped instead of kept per thread
+    private static final int RETAINED_CAPACITY = 64 * 1024;
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private static final ThreadLocal<HtmlSink> REUSABLE =
+            ThreadLocal.withInitial(() -> new HtmlSink(DEFAULT_CAPACITY));
+
+    private final StringBuilder out;
+    private boolean inUse;
+    private DocumentSlots slots;
+    private ObjIntConsumer<String> markers;
+
+    public HtmlSink() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public HtmlSink(int initialCapacity) {
+        this.out = new StringBuilder(initialCapacity);
+    }
+
+    /**
+     * Renders a node to HTML using this thread's reusable buffer.
+     * Falls back to a fresh buffer if called re-entrantly.
+     */
+    public static String render(VNode node) {
+        HtmlSink sink = REUSABLE.get();
+        if (sink.inUse) {
+            HtmlSink fresh = new HtmlSink();
+            node.writeTo(fresh);
+            return fresh.toString();
+        }
+        sink.inUse = true;
+        try {
+            node.writeTo(sink);
+            return sink.out.toString();
+        } finally {
+            sink.inUse = false;
+            if (sink.out.capacity() > RETAINED_CAPACITY) {
+                REUSABLE.set(new HtmlSink(DEFAULT_CAPACITY));
+            } else {
+                sink.out.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * Attaches document slots that elements fill in as they are written
+     * (null detaches them).
+     */
+    public HtmlSink withSlots(DocumentSlots slots) {
+        this.slots = slots;
+        return this;
+    }
+
+    /** The attached document slots, or null. */
+    DocumentSlots slots() {
+        return slots;
+    }
+
+    /**
+     * A new marker: an empty markup instance that writes nothing, but is
+     * reported with its output offset to an {@link #onMarker} listener when
+     * appended (as a {@code VRaw}). Markers are told apart by identity, so
+     * no content can be mistaken for one.
+     */
+    @SuppressWarnings("StringOperationCanBeSimplified")
+    public static String newMarker() {
+        return new String();
+    }
+
+    /**
+     * Reports every empty markup appended (markers among them, see
+     * {@link #newMarker}) with the output offset it was written at; the
+     * listener compares by identity. Null detaches it.
+     */
+    public HtmlSink onMarker(ObjIntConsumer<String> listener) {
+        this.markers = listener;
+        return this;
+    }
+
+    // ==================== Writing ====================
+
+    /** Appends markup as-is (no escaping). */
+    public HtmlSink append(String markup) {
+        if (markers != null && markup.isEmpty()) {
+            markers.accept(markup, out.length());
+        }
+        out.append(markup);
+        return this;
+    }
+
+    /** Appends part of a string as-is (no escaping). */
+    public HtmlSink append(String markup, int start, int end) {
+        out.append(markup, start, end);
+        return this;
+    }
+
+    /** Appends a single character as-is. */
+    public HtmlSink append(char c) {
+        out.append(c);
+        return this;
+    }
+
+    /** Appends text content, HTML-escaped. */
+    public HtmlSink appendText(String text) {
+        appendEscaped(text);
+        return this;
+    }
+
+    /** Appends an attribute value, HTML-escaped (quotes included). */
+    public HtmlSink appendAttribute(String value) {
+        appendEscaped(value);
+        return this;
+    }
+
+    /** Inserts markup at a character offset of the output written so far. */
+    public HtmlSink insert(int index, String markup) {
+        out.insert(index, markup);
+        return this;
+    }
+
+    /** Replaces the output between two character offsets with markup. */
+    public HtmlSink replace(int start, int end, String markup) {
+        out.replace(start, end, markup);
+        return this;
+    }
+
+    /** Offset of the first occurrence of the markup, or -1. */
+    public int indexOf(String markup) {
+        return out.indexOf(markup);
+    }
+
+    /** Offset of the last occurrence of the markup, or -1. */
+    public int lastIndexOf(String markup) {
+        return out.lastIndexOf(markup);
+    }
+
+    /** Number of characters written so far. */
+    public int length() {
+        return out.length();
+    }
+
+    // ==================== Draining ====================
+
+    /** Receives rendered output in chunks (see {@link #drainTo}). */
+    @FunctionalInterface
+    public interface Drain {
+        void write(char[] chars, int length) throws IOException;
+    }
+
+    /**
+     * Hands everything written so far to the drain in chunks of at most
+     * {@code chunkSize} chars, then clears the buffer. A chunk never ends
+     * between the two halves of a surrogate pair, so each chunk can be
+     * encoded independently.
+     */
+    public void drainTo(Drain drain, int chunkSize) throws IOException {
+        copyTo(drain, chunkSize);
+        out.setLength(0);
+    }
+
+    /**
+     * Hands everything written so far to the drain in chunks, as
+     * {@link #drainTo} does, but keeps it (e.g. to hash the output before
+     * sending it).
+     */
+    public void copyTo(Drain drain, int chunkSize) throws IOException {
+        char[] chunk = new char[Math.min(Math.max(chunkSize, 2), Math.max(out.length(), 2))];
+        int pos = 0;
+        int total = out.length();
+        while (pos < total) {
+            int end = Math.min(pos + chunk.length, total);
+            if (end < total && Character.isHighSurrogate(out.charAt(end - 1))) {
+                end--;
+            }
+            out.getChars(pos, end, chunk, 0);
+            drain.write(chunk, end - pos);
+            pos = end;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+
+    // Copies unescaped runs in bulk; only the special characters are replaced
+    private void appendEscaped(String s) {
+        if (s == null || s.isEmpty()) return;
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            String entity = entityFor(s.charAt(i));
+            if (entity != null) {
+                if (i > start) out.append(s, start, i);
+                out.append(entity);
+                start = i + 1;
+            }
+        }
+        if (start < s.length()) out.append(s, start, s.length());
+    }
+
+    private static String entityFor(char c) {
+        return switch (c) {
+            case '&' -> "&amp;";
+            case '<' -> "&lt;";
+            case '>' -> "&gt;";
+            case '"' -> "&quot;";
+            case '\'' -> "&#x27;";
+            default -> null;
+        };
+    }
+
+    /** Escapes text for HTML content or attribute values. */
+    public static String escape(String s) {
+        if (s == null || s.isEmpty()) return "";
+        HtmlSink sink = new HtmlSink(s.length() + 16);
+        sink.appendEscaped(s);
+        return sink.toString();
+    }
+}
@@ -0,0 +1,267 @@
+package com.osmig.Jweb.framework.vdom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Computes the DOM operations that turn one rendered tree into another.
+ *
+ * <p>Children are matched by key first ({@code id} or {@code data-key}),
+ * then unkeyed children in order by node type and tag, so a reordered or
+ * partially changed list produces moves and small edits instead of a full
+ * re-render:</p>
+ *
+ * <pre>
+ * List&lt;VPatch&gt; ops = VDiff.diff(previousTree, nextTree);
+ * // [text [0, 1] "Count: 5"]
+ * </pre>
+ *
+ * <p>Paths address DOM child nodes, so children are normalized the way the
+ * browser sees them: fragments are flattened, adjacent text nodes merged and
+ * empty text dropped. Children containing raw HTML (unknown node count),
+ * raw-text elements such as {@code script} and children the parser moves
+ * into elements of its own ({@code <tr>} directly in a {@code <table>} ends
+ * up in an implicit {@code <tbody>}) are compared as a whole and replaced
+ * with an {@code html} operation when they differ. Every operation also
+ * carries the node names along its path, so a client whose DOM has another
+ * shape anyway rejects it instead of patching the wrong node.</p>
+ */
+public final class VDiff {
+
+    private static final int[] ROOT = new int[0];
+    private static final String[] ROOT_TAGS = new String[0];
+
+    // Elements whose content the browser doesn't parse into child nodes
+    private static final Set<String> RAW_TEXT_ELEMENTS = Set.of(
+        "script", "style", "textarea", "title"
+    );
+
+    private VDiff() {
+        // Static utility class
+    }
+
+    /**
+     * Returns the operations transforming {@code oldTree} into
+     * {@code newTree}; empty when they render identically.
+     */
+    public static List<VPatch> diff(VNode oldTree, VNode newTree) {
+        List<VPatch> out = new ArrayList<>();
+        if (oldTree instanceof VElement || newTree instanceof VElement) {
+            diffNode(oldTree, newTree, ROOT, ROOT_TAGS, out);
+        } else if (!oldTree.toHtml().equals(newTree.toHtml())) {
+            out.add(VPatch.replace(ROOT, ROOT_TAGS, newTree.toHtml()));
+        }
+        return out;
+    }
+
+    private static void diffNode(VNode oldNode, VNode newNode, int[] path, String[] tags, List<VPatch> out) {
+        if (oldNode instanceof VText oldText && newNode instanceof VText newText) {
+            if (!oldText.content().equals(newText.content())) {
+                out.add(VPatch.text(path, tags, newText.content()));
+            }
+            return;
+        }
+        if (oldNode instanceof VElement oldEl && newNode instanceof VElement newEl
+                && oldEl.getTag().equals(newEl.getTag())) {
+            diffAttributes(oldEl, newEl, path, tags, out);
+            if (!newEl.isSelfClosing()) {
+                diffChildren(oldEl, newEl, path, tags, out);
+            }
+            return;
+        }
+        out.add(VPatch.replace(path, tags, newNode.toHtml()));
+    }
+
+    private static void diffAttributes(VElement oldEl, VElement newEl, int[] path, String[] tags, List<VPatch> out) {
+        for (int i = 0; i < oldEl.attributeCount(); i++) {
+            String name = oldEl.attributeName(i);
+            if (!newEl.hasAttribute(name)) {
+                out.add(VPatch.removeAttr(path, tags, name));
+            }
+        }
+        for (int i = 0; i < newEl.attributeCount(); i++) {
+            String name = newEl.attributeName(i);
+            String value = newEl.attributeValue(i);
+            if (!oldEl.hasAttribute(name) || !Objects.equals(oldEl.getAttribute(name), value)) {
+                out.add(VPatch.attr(path, tags, name, value));
+            }
+        }
+    }
+
+    private static void diffChildren(VElement oldEl, VElement newEl, int[] path, String[] tags, List<VPatch> out) {
+        List<VNode> oldKids = RAW_TEXT_ELEMENTS.contains(newEl.getTag()) ? null : normalize(oldEl.getChildren());
+        List<VNode> newKids = oldKids == null ? null : normalize(newEl.getChildren());
+        if (oldKids == null || newKids == null || reparented(newEl, oldKids) || reparented(newEl, newKids)) {
+            String oldHtml = new VFragment(oldEl.getChildren()).toHtml();
+            String newHtml = new VFragment(newEl.getChildren()).toHtml();
+            if (!oldHtml.equals(newHtml)) {
+                out.add(VPatch.innerHtml(path, tags, newHtml));
+            }
+            return;
+        }
+
+        int[] matches = match(oldKids, newKids);
+        boolean[] reused = new boolean[oldKids.size()];
+        for (int oldIndex : matches) {
+            if (oldIndex >= 0) reused[oldIndex] = true;
+        }
+
+        // The children as they stand in the DOM while the operations apply,
+        // as old indexes (-1 = inserted)
+        List<Integer> live = new ArrayList<>(oldKids.size());
+        for (int i = 0; i < oldKids.size(); i++) {
+            live.add(i);
+        }
+
+        // Removals first, from the end so earlier indexes stay valid
+        for (int i = oldKids.size() - 1; i >= 0; i--) {
+            if (!reused[i]) {
+                out.add(VPatch.remove(path, tags, i));
+                live.remove(i);
+            }
+        }
+
+        // Positions before i are final, so a matched child is always found at i or later
+        for (int i = 0; i < newKids.size(); i++) {
+            int oldIndex = matches[i];
+            if (oldIndex < 0) {
+                out.add(VPatch.insert(path, tags, i, newKids.get(i).toHtml()));
+                live.add(i, -1);
+                continue;
+            }
+            int position = live.indexOf(oldIndex);
+            if (position != i) {
+                out.add(VPatch.move(path, tags, position, i));
+                live.remove(position);
+                live.add(i, oldIndex);
+            }
+            diffNode(oldKids.get(oldIndex), newKids.get(i), childPath(path, i), childTags(tags, newKids.get(i)), out);
+        }
+    }
+
+    /**
+     * For each new child, the index of the old child it updates, or -1 if it
+     * is new. Keyed children match by key and tag; unkeyed children take the
+     * next compatible unkeyed old child.
+     */
+    private static int[] match(List<VNode> oldKids, List<VNode> newKids) {
+        // Duplicate keys match in order
+        Map<String, List<Integer>> keyed = new HashMap<>();
+        for (int i = 0; i < oldKids.size(); i++) {
+            String key = keyOf(oldKids.get(i));
+            if (key != null) {
+                keyed.computeIfAbsent(key, k -> new ArrayList<>(1)).add(i);
+            }
+        }
+
+        int[] matches = new int[newKids.size()];
+        boolean[] taken = new boolean[oldKids.size()];
+        int cursor = 0;
+        for (int i = 0; i < newKids.size(); i++) {
+            VNode child = newKids.get(i);
+            matches[i] = -1;
+            String key = keyOf(child);
+            if (key != null) {
+                for (int oldIndex : keyed.getOrDefault(key, List.of())) {
+                    if (!taken[oldIndex] && sameKind(oldKids.get(oldIndex), child)) {
+                        matches[i] = oldIndex;
+                        taken[oldIndex] = true;
+                        break;
+                    }
+                }
+                continue;
+            }
+            for (int j = cursor; j < oldKids.size(); j++) {
+                VNode candidate = oldKids.get(j);
+                if (!taken[j] && keyOf(candidate) == null && sameKind(candidate, child)) {
+                    matches[i] = j;
+                    taken[j] = true;
+                    cursor = j + 1;
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static String keyOf(VNode node) {
+        if (node instanceof VElement el) {
+            String key = el.getAttribute("data-key");
+            return key != null ? key : el.getAttribute("id");
+        }
+        return null;
+    }
+
+    /**
+     * Whether the parser puts some of these children of {@code parent} into
+     * an element of its own, so they aren't its DOM children: rows directly
+     * in a table go into an implicit {@code tbody}.
+     */
+    private static boolean reparented(VElement parent, List<VNode> children) {
+        if (!parent.getTag().equals("table")) {
+            return false;
+        }
+        for (VNode child : children) {
+            if (child instanceof VElement el && el.getTag().equals("tr")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean sameKind(VNode a, VNode b) {
+        if (a instanceof VText && b instanceof VText) return true;
+        return a instanceof VElement ea && b instanceof VElement eb && ea.getTag().equals(eb.getTag());
+    }
+
+    /**
+     * Children as DOM nodes: fragments flattened, adjacent text merged,
+     * empty text dropped. Returns null if raw HTML makes the count unknown.
+     */
+    private static List<VNode> normalize(List<VNode> children) {
+        List<VNode> out = new ArrayList<>(children.size());
+        return flatten(children, out) ? out : null;
+    }
+
+    private static boolean flatten(List<VNode> children, List<VNode> out) {
+        for (VNode child : children) {
+            switch (child) {
+                case VFragment fragment -> {
+                    if (!flatten(fragment.children(), out)) return false;
+                }
+                case VRaw raw -> {
+                    if (!raw.html().isEmpty()) return false;
+                }
+                case VText text -> {
+                    if (text.content().isEmpty()) continue;
+                    int last = out.size() - 1;
+                    if (last >= 0 && out.get(last) instanceof VText previous) {
+                        out.set(last, new VText(previous.content() + text.content()));
+                    } else {
+                        out.add(text);
+                    }
+                }
+                case VElement element -> out.add(element);
+            }
+        }
+        return true;
+    }
+
+    private static int[] childPath(int[] path, int index) {
+        int[] child = Arrays.copyOf(path, path.length + 1);
+        child[path.length] = index;
+        return child;
+    }
+
+    // Node names as the DOM reports them (lowercased by the client)
+    private static String[] childTags(String[] tags, VNode child) {
+        String[] childTags = Arrays.copyOf(tags, tags.length + 1);
+        childTags[tags.length] = child instanceof VElement el ? el.getTag() : "#text";
+        return childTags;
+    }
+}
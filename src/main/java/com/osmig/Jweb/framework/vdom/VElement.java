@@ -1,131 +1,282 @@
 package com.osmig.Jweb.framework.vdom;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Virtual DOM Element - an HTML tag with attributes and children.
+ *
+ * <p>Stored compactly: the tag name is interned (with its void-element flag
+ * resolved once per distinct name), attributes live in parallel name/value
+ * arrays and children in an array. {@link #adopt} takes ownership of a
+ * builder's arrays, so a {@code Tag} becomes a node without copying.
+ * {@link #getAttributes()} and {@link #getChildren()} are read-only views.</p>
  */
 public final class VElement implements VNode {
 
-    private final String tag;
-    private final Map<String, String> attributes;
-    private final List<VNode> children;
-    private final boolean selfClosing;
+    private static final String[] NO_STRINGS = new String[0];
+    private static final VNode[] NO_CHILDREN = new VNode[0];
 
     private static final Set<String> VOID_ELEMENTS = Set.of(
         "area", "base", "br", "col", "embed", "hr", "img", "input",
         "link", "meta", "param", "source", "track", "wbr"
     );
 
-    private VElement(String tag, Map<String, String> attributes, List<VNode> children) {
-        this.tag = tag.toLowerCase();
-        this.attributes = attributes == null
-            ? Collections.emptyMap()
-            : Collections.unmodifiableMap(new LinkedHashMap<>(attributes));
-        this.selfClosing = VOID_ELEMENTS.contains(this.tag);
+    // Canonical (lowercase) names by spelling; void-ness resolved once per name
+    private static final Map<String, TagName> TAG_NAMES = new ConcurrentHashMap<>();
+    private static final int MAX_INTERNED_TAGS = 1024;
 
-        if (selfClosing && children != null && !children.isEmpty()) {
+    private final TagName tag;
+    private final String[] attrNames;
+    private final String[] attrValues;
+    private final int attrCount;
+    private final VNode[] children;
+    private final int childCount;
+
+    private VElement(TagName tag, String[] attrNames, String[] attrValues, int attrCount,
+                     VNode[] children, int childCount) {
+        if (tag.isVoid && childCount > 0) {
             throw new IllegalArgumentException(
-                "Void element <" + tag + "> cannot have children"
+                "Void element <" + tag.name + "> cannot have children"
             );
         }
-
-        this.children = selfClosing || children == null
-            ? Collections.emptyList()
-            : Collections.unmodifiableList(new ArrayList<>(children));
+        this.tag = tag;
+        this.attrNames = attrNames;
+        this.attrValues = attrValues;
+        this.attrCount = attrCount;
+        this.children = children;
+        this.childCount = childCount;
     }
 
     public static VElement of(String tag) {
-        return new VElement(tag, null, null);
+        return of(tag, null, null);
     }
 
     public static VElement of(String tag, List<VNode> children) {
-        return new VElement(tag, null, children);
+        return of(tag, null, children);
     }
 
     public static VElement of(String tag, Map<String, String> attributes, List<VNode> children) {
-        return new VElement(tag, attributes, children);
+        int attrCount = attributes == null ? 0 : attributes.size();
+        String[] names = attrCount == 0 ? NO_STRINGS : new String[attrCount];
+        String[] values = attrCount == 0 ? NO_STRINGS : new String[attrCount];
+        if (attrCount > 0) {
+            int i = 0;
+            for (Map.Entry<String, String> attr : attributes.entrySet()) {
+                names[i] = attr.getKey();
+                values[i] = attr.getValue();
+                i++;
+            }
+        }
+        VNode[] kids = children == null || children.isEmpty() ? NO_CHILDREN : children.toArray(NO_CHILDREN);
+        return new VElement(tagName(tag), names, values, attrCount, kids, kids.length);
+    }
+
+    /**
+     * Creates an element that takes ownership of the given arrays (no copy).
+     * Attribute names must be unique; only the first {@code attrCount} /
+     * {@code childCount} entries are used. The caller must not modify the
+     * arrays afterwards.
+     */
+    public static VElement adopt(String tag, String[] attrNames, String[] attrValues, int attrCount,
+                                 VNode[] children, int childCount) {
+        return new VElement(tagName(tag), attrNames, attrValues, attrCount, children, childCount);
     }
 
     public VElement withAttribute(String name, String value) {
-        Map<String, String> newAttrs = new LinkedHashMap<>(this.attributes);
-        newAttrs.put(name, value);
-        return new VElement(this.tag, newAttrs, this.children);
+        int index = indexOfAttribute(name);
+        int count = index >= 0 ? attrCount : attrCount + 1;
+        String[] names = Arrays.copyOf(attrNames, count);
+        String[] values = Arrays.copyOf(attrValues, count);
+        if (index >= 0) {
+            values[index] = value;
+        } else {
+            names[attrCount] = name;
+            values[attrCount] = value;
+        }
+        return new VElement(tag, names, values, count, children, childCount);
     }
 
     public VElement withChild(VNode child) {
-        if (selfClosing) {
-            throw new IllegalArgumentException("Void element <" + tag + "> cannot have children");
+        if (tag.isVoid) {
+            throw new IllegalArgumentException("Void element <" + tag.name + "> cannot have children");
         }
-        List<VNode> newChildren = new ArrayList<>(this.children);
-        newChildren.add(child);
-        return new VElement(this.tag, this.attributes, newChildren);
+        VNode[] kids = Arrays.copyOf(children, childCount + 1);
+        kids[childCount] = child;
+        return new VElement(tag, attrNames, attrValues, attrCount, kids, childCount + 1);
     }
 
     @Override
-    public String toHtml() {
-        StringBuilder html = new StringBuilder();
-        html.append("<").append(tag);
-
-        for (Map.Entry<String, String> attr : attributes.entrySet()) {
-            String name = attr.getKey();
-            String value = attr.getValue();
-
-            if (value == null) {
-                html.append(" ").append(name);
-            } else {
-                html.append(" ").append(name).append("=\"")
-                    .append(escapeAttribute(value)).append("\"");
+    public void writeTo(HtmlSink sink) {
+        sink.append('<').append(tag.name);
+
+        for (int i = 0; i < attrCount; i++) {
+            String value = attrValues[i];
+            sink.append(' ').append(attrNames[i]);
+            if (value != null) {
+                sink.append("=\"").appendAttribute(value).append('"');
             }
         }
 
-        if (selfClosing) {
-            html.append(">");
-            return html.toString();
+        sink.append('>');
+        if (tag.isVoid) {
+            return;
         }
 
-        html.append(">");
-
-        for (VNode child : children) {
-            html.append(child.toHtml());
+        DocumentSlots slots = sink.slots();
+        if (slots == null || !slots.writeContent(tag.name, sink)) {
+            for (int i = 0; i < childCount; i++) {
+                children[i].writeTo(sink);
+            }
         }
 
-        html.append("</").append(tag).append(">");
-        return html.toString();
+        // Re-read: a child may have filled the last slot
+        slots = sink.slots();
+        if (slots != null) {
+            slots.beforeClose(tag.name, sink);
+        }
+        sink.append("</").append(tag.name).append('>');
     }
 
     @Override
     public String getId() {
-        return attributes.get("id");
+        return getAttribute("id");
     }
 
     @Override
     public VNode copy() {
-        List<VNode> copiedChildren = children.stream()
-            .map(VNode::copy)
-            .toList();
-        return new VElement(tag, new LinkedHashMap<>(attributes), copiedChildren);
-    }
-
-    public String getTag() { return tag; }
-    public Map<String, String> getAttributes() { return attributes; }
-    public List<VNode> getChildren() { return children; }
-    public boolean isSelfClosing() { return selfClosing; }
-
-    private static String escapeAttribute(String value) {
-        if (value == null) return "";
-        StringBuilder escaped = new StringBuilder(value.length());
-        for (int i = 0; i < value.length(); i++) {
-            char c = value.charAt(i);
-            switch (c) {
-                case '&' -> escaped.append("&amp;");
-                case '<' -> escaped.append("&lt;");
-                case '>' -> escaped.append("&gt;");
-                case '"' -> escaped.append("&quot;");
-                case '\'' -> escaped.append("&#x27;");
-                default -> escaped.append(c);
+        VNode[] copiedChildren = new VNode[childCount];
+        for (int i = 0; i < childCount; i++) {
+            copiedChildren[i] = children[i].copy();
+        }
+        return new VElement(tag, Arrays.copyOf(attrNames, attrCount), Arrays.copyOf(attrValues, attrCount),
+            attrCount, copiedChildren, childCount);
+    }
+
+    public String getTag() { return tag.name; }
+    public boolean isSelfClosing() { return tag.isVoid; }
+
+    // ==================== Attributes ====================
+
+    /** Value of the named attribute, or null if absent (or valueless). */
+    public String getAttribute(String name) {
+        int index = indexOfAttribute(name);
+        return index >= 0 ? attrValues[index] : null;
+    }
+
+    public boolean hasAttribute(String name) {
+        return indexOfAttribute(name) >= 0;
+    }
+
+    public int attributeCount() { return attrCount; }
+    public String attributeName(int index) { return attrNames[Objects.checkIndex(index, attrCount)]; }
+    public String attributeValue(int index) { return attrValues[Objects.checkIndex(index, attrCount)]; }
+
+    /** Read-only map view of the attributes, in declaration order. */
+    public Map<String, String> getAttributes() {
+        return attrCount == 0 ? Collections.emptyMap() : new AttributeView();
+    }
+
+    private int indexOfAttribute(String name) {
+        for (int i = 0; i < attrCount; i++) {
+            if (attrNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // ==================== Children ====================
+
+    public int childCount() { return childCount; }
+    public VNode child(int index) { return children[Objects.checkIndex(index, childCount)]; }
+
+    /** Read-only list view of the children. */
+    public List<VNode> getChildren() {
+        return childCount == 0 ? Collections.emptyList() : new ChildView();
+    }
+
+    // ==================== Internals ====================
+
+    private record TagName(String name, boolean isVoid) {}
+
+    private static TagName tagName(String spelling) {
+        TagName known = TAG_NAMES.get(spelling);
+        if (known != null) {
+            return known;
+        }
+        String name = spelling.toLowerCase(Locale.ROOT);
+        // Other spellings share the lowercase name's entry
+        TagName canonical = TAG_NAMES.get(name);
+        if (canonical == null) {
+            canonical = new TagName(name, VOID_ELEMENTS.contains(name));
+        }
+        // Bounded so generated tag names can't grow the table forever
+        if (TAG_NAMES.size() < MAX_INTERNED_TAGS) {
+            TagName previous = TAG_NAMES.putIfAbsent(name, canonical);
+            if (previous != null) {
+                canonical = previous;
             }
+            TAG_NAMES.putIfAbsent(spelling, canonical);
+        }
+        return canonical;
+    }
+
+    private final class AttributeView extends AbstractMap<String, String> {
+        @Override
+        public String get(Object key) {
+            return key instanceof String name ? getAttribute(name) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String name && hasAttribute(name);
+        }
+
+        @Override
+        public int size() {
+            return attrCount;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new Iterator<>() {
+                        private int next;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < attrCount;
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            if (next >= attrCount) throw new NoSuchElementException();
+                            int i = next++;
+                            return new SimpleImmutableEntry<>(attrNames[i], attrValues[i]);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return attrCount;
+                }
+            };
+        }
+    }
+
+    private final class ChildView extends AbstractList<VNode> implements RandomAccess {
+        @Override
+        public VNode get(int index) {
+            return child(index);
+        }
+
+        @Override
+        public int size() {
+            return childCount;
         }
-        return escaped.toString();
     }
 }
@@ -20,12 +20,10 @@ public record VFragment(List<VNode> children) implements VNode {
     }
 
     @Override
-    public String toHtml() {
-        StringBuilder html = new StringBuilder();
+    public void writeTo(HtmlSink sink) {
         for (VNode child : children) {
-            html.append(child.toHtml());
+            child.writeTo(sink);
         }
-        return html.toString();
     }
 
     @Override
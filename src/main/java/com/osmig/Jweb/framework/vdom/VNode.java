@@ -5,10 +5,18 @@ package com.osmig.Jweb.framework.vdom;
  */
 public sealed interface VNode permits VElement, VText, VRaw, VFragment {
 
+    /**
+     * Writes this node's HTML into the sink in a single pass.
+     * Children write into the same sink, so nothing is copied twice.
+     */
+    void writeTo(HtmlSink sink);
+
     /**
      * Converts this virtual node to HTML.
      */
-    String toHtml();
+    default String toHtml() {
+        return HtmlSink.render(this);
+    }
 
     /**
      * Returns the node ID (for diffing).
@@ -0,0 +1,123 @@
+package com.osmig.Jweb.framework.vdom;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single DOM patch operation produced by {@link VDiff}.
+ *
+ * <p>{@code path} is the child-index path from the patched root element
+ * (empty = the root itself), and {@code tags} the node name expected at
+ * each step ({@code #text} for text nodes). Operations are applied in order;
+ * every path is valid against the DOM as left by the operations before it.
+ * A client that finds another node at some step (the HTML parser reshaped
+ * the markup, or the DOM was changed by a script) must not apply the
+ * operation, and asks for the component's full HTML instead.</p>
+ *
+ * <ul>
+ *   <li><b>text</b> - set the text node at {@code path} to {@code value}</li>
+ *   <li><b>attr</b> / <b>removeAttr</b> - set or remove attribute {@code name}</li>
+ *   <li><b>insert</b> - parse {@code html} and insert it as child {@code index}</li>
+ *   <li><b>move</b> - move child {@code from} to position {@code index}</li>
+ *   <li><b>remove</b> - remove child {@code index}</li>
+ *   <li><b>replace</b> - replace the node at {@code path} with {@code html}</li>
+ *   <li><b>html</b> - replace the element's children with {@code html}</li>
+ * </ul>
+ */
+public final class VPatch {
+
+    private final String op;
+    private final int[] path;
+    private final String[] tags;
+    private final int index;
+    private final int from;
+    private final String name;
+    private final String value;
+    private final String html;
+
+    private VPatch(String op, int[] path, String[] tags, int index, int from, String name, String value, String html) {
+        this.op = op;
+        this.path = path;
+        this.tags = tags;
+        this.index = index;
+        this.from = from;
+        this.name = name;
+        this.value = value;
+        this.html = html;
+    }
+
+    static VPatch text(int[] path, String[] tags, String value) {
+        return new VPatch("text", path, tags, -1, -1, null, value, null);
+    }
+
+    static VPatch attr(int[] path, String[] tags, String name, String value) {
+        return new VPatch("attr", path, tags, -1, -1, name, value == null ? "" : value, null);
+    }
+
+    static VPatch removeAttr(int[] path, String[] tags, String name) {
+        return new VPatch("removeAttr", path, tags, -1, -1, name, null, null);
+    }
+
+    static VPatch insert(int[] path, String[] tags, int index, String html) {
+        return new VPatch("insert", path, tags, index, -1, null, null, html);
+    }
+
+    static VPatch move(int[] path, String[] tags, int from, int index) {
+        return new VPatch("move", path, tags, index, from, null, null, null);
+    }
+
+    static VPatch remove(int[] path, String[] tags, int index) {
+        return new VPatch("remove", path, tags, index, -1, null, null, null);
+    }
+
+    static VPatch replace(int[] path, String[] tags, String html) {
+        return new VPatch("replace", path, tags, -1, -1, null, null, html);
+    }
+
+    static VPatch innerHtml(int[] path, String[] tags, String html) {
+        return new VPatch("html", path, tags, -1, -1, null, null, html);
+    }
+
+    public String getOp() { return op; }
+    public int[] getPath() { return path.clone(); }
+    public String[] getTags() { return tags.clone(); }
+    public int getIndex() { return index; }
+    public int getFrom() { return from; }
+    public String getName() { return name; }
+    public String getValue() { return value; }
+    public String getHtml() { return html; }
+
+    /**
+     * Converts this operation to a map holding only the fields it uses,
+     * for compact JSON serialization.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("op", op);
+        map.put("path", path);
+        map.put("tags", tags);
+        if (index >= 0) map.put("index", index);
+        if (from >= 0) map.put("from", from);
+        if (name != null) map.put("name", name);
+        if (value != null) map.put("value", value);
+        if (html != null) map.put("html", html);
+        return map;
+    }
+
+    /**
+     * Rough serialized size of the operations, for deciding whether sending
+     * patches beats sending the full HTML.
+     */
+    public static int weight(List<VPatch> patches) {
+        int size = 0;
+        for (VPatch patch : patches) {
+            size += 32 + patch.path.length * 3;
+            for (String tag : patch.tags) size += tag.length() + 3;
+            if (patch.name != null) size += patch.name.length();
+            if (patch.value != null) size += patch.value.length();
+            if (patch.html != null) size += patch.html.length();
+        }
+        return size;
+    }
+}
@@ -12,6 +12,11 @@ public record VRaw(String html) implements VNode {
         }
     }
 
+    @Override
+    public void writeTo(HtmlSink sink) {
+        sink.append(html);
+    }
+
     @Override
     public String toHtml() {
         return html;
@@ -11,33 +11,18 @@ public record VText(String content) implements VNode {
         }
     }
 
+    @Override
+    public void writeTo(HtmlSink sink) {
+        sink.appendText(content);
+    }
+
     @Override
     public String toHtml() {
-        return escapeHtml(content);
+        return HtmlSink.escape(content);
     }
 
     @Override
     public VNode copy() {
         return new VText(content);
     }
-
-    private static String escapeHtml(String text) {
-        if (text == null || text.isEmpty()) {
-            return "";
-        }
-
-        StringBuilder escaped = new StringBuilder(text.length());
-        for (int i = 0; i < text.length(); i++) {
-            char c = text.charAt(i);
-            switch (c) {
-                case '&' -> escaped.append("&amp;");
-                case '<' -> escaped.append("&lt;");
-                case '>' -> escaped.append("&gt;");
-                case '"' -> escaped.append("&quot;");
-                case '\'' -> escaped.append("&#x27;");
-                default -> escaped.append(c);
-            }
-        }
-        return escaped.toString();
-    }
 }
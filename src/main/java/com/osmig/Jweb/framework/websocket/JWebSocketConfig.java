@@ -2,9 +2,14 @@ package com.osmig.Jweb.framework.websocket;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.List;
 
 /**
  * WebSocket configuration for JWeb.
@@ -19,6 +24,11 @@ import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry
  * <p>Allowed origins default to same-origin. To allow cross-origin
  * connections, set {@code jweb.websocket.allowed-origins} to a
  * comma-separated list of origins (or {@code *} for all — dev only).</p>
+ *
+ * <p>{@code jweb.websocket.binary-frames} sends protocol v2 frames as binary
+ * messages, and {@code jweb.websocket.deflate} controls whether the
+ * permessage-deflate extension (compressing large DOM patches on the wire)
+ * is accepted when the browser and container offer it.</p>
  */
 @Configuration
 @EnableWebSocket
@@ -29,6 +39,12 @@ public class JWebSocketConfig implements WebSocketConfigurer {
     @Value("${jweb.websocket.allowed-origins:}")
     private String allowedOrigins;
 
+    @Value("${jweb.websocket.binary-frames:false}")
+    private boolean binaryFrames;
+
+    @Value("${jweb.websocket.deflate:true}")
+    private boolean deflate;
+
     public JWebSocketConfig(JWebSocketHandler webSocketHandler) {
         this.webSocketHandler = webSocketHandler;
     }
@@ -42,7 +58,21 @@ public class JWebSocketConfig implements WebSocketConfigurer {
             servletRegistry.setOrder(-1);
         }
 
-        var registration = registry.addHandler(webSocketHandler, "/jweb");
+        webSocketHandler.setBinaryFrames(binaryFrames);
+        var registration = registry.addHandler(webSocketHandler, "/jweb")
+                .setHandshakeHandler(new DefaultHandshakeHandler() {
+                    @Override
+                    protected List<WebSocketExtension> filterRequestedExtensions(ServerHttpRequest request,
+                            List<WebSocketExtension> requested, List<WebSocketExtension> supported) {
+                        List<WebSocketExtension> accepted = super.filterRequestedExtensions(request, requested, supported);
+                        if (deflate) {
+                            return accepted;
+                        }
+                        return accepted.stream()
+                                .filter(extension -> !"permessage-deflate".equalsIgnoreCase(extension.getName()))
+                                .toList();
+                    }
+                });
         if (allowedOrigins != null && !allowedOrigins.isBlank()) {
             registration.setAllowedOrigins(allowedOrigins.split("\\s*,\\s*"));
         }
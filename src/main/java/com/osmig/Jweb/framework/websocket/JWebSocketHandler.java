@@ -1,19 +1,22 @@
 package com.osmig.Jweb.framework.websocket;
 
 import com.osmig.Jweb.framework.events.DomEvent;
-import com.osmig.Jweb.framework.events.EventRegistry;
 import com.osmig.Jweb.framework.state.State;
 import com.osmig.Jweb.framework.state.StateManager;
 import com.osmig.Jweb.framework.util.Json;
 import com.osmig.Jweb.framework.util.Log;
 import com.osmig.Jweb.framework.websocket.WebSocketMessage.*;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -33,9 +36,23 @@ import java.util.concurrent.ConcurrentHashMap;
  *   <li>State updates</li>
  *   <li>DOM patches</li>
  * </ul>
+ *
+ * <p>Events, state changes and resyncs are handed to the session's
+ * {@link RenderScheduler}, which applies them off the I/O thread and sends
+ * their results as one frame per frame interval.</p>
+ *
+ * <p>Sessions that negotiated the {@code jweb.v2} subprotocol receive each
+ * frame as one message (binary when {@link #setBinaryFrames} is on); other
+ * sessions get the v1 messages. See {@link WebSocketCodec}.</p>
+ *
+ * <p>Every send goes through the session's bounded {@link OutboundQueue}:
+ * callers never block on the socket, and a client that can't keep up has
+ * its queue trimmed or is disconnected instead of stalling the others.</p>
  */
 @Component
-public class JWebSocketHandler extends TextWebSocketHandler {
+public class JWebSocketHandler extends AbstractWebSocketHandler implements SubProtocolCapable {
+
+    private static final List<String> SUBPROTOCOLS = List.of(WebSocketCodec.V2, WebSocketCodec.V1);
 
     // Session ID -> WebSocket session
     private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
@@ -43,9 +60,29 @@ public class JWebSocketHandler extends TextWebSocketHandler {
     // WebSocket session ID -> State context session ID
     private final Map<String, String> sessionContextMap = new ConcurrentHashMap<>();
 
+    // WebSocket session ID -> its render frames
+    private final Map<String, RenderScheduler> schedulers = new ConcurrentHashMap<>();
+
+    // WebSocket session ID -> its outbound messages
+    private final Map<String, OutboundQueue> queues = new ConcurrentHashMap<>();
+
+    private volatile boolean binaryFrames;
+
+    /** Sends v2 messages as binary UTF-8 JSON instead of text. */
+    public void setBinaryFrames(boolean binaryFrames) {
+        this.binaryFrames = binaryFrames;
+    }
+
+    @Override
+    public List<String> getSubProtocols() {
+        return SUBPROTOCOLS;
+    }
+
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         sessions.put(session.getId(), session);
+        queues.put(session.getId(), newQueue(session));
+        scheduler(session);
         Log.debug("WebSocket connected: {}", session.getId());
 
         // Send acknowledgment
@@ -56,27 +93,50 @@ public class JWebSocketHandler extends TextWebSocketHandler {
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
         String payload = message.getPayload();
         Log.trace("Received: {}", payload);
-
         try {
-            // Parse the base message to determine type
-            Base baseMessage = Json.parse(payload, Base.class);
-            String type = baseMessage.getType();
-
-            if (type == null) {
-                sendMessage(session, new ErrorResponse("Missing message type"));
-                return;
-            }
+            dispatch(session, WebSocketCodec.decode(payload));
+        } catch (Json.JsonException e) {
+            Log.warn("JSON parse error: {}", e.getMessage());
+            sendMessage(session, new ErrorResponse("Invalid JSON: " + e.getMessage()));
+        }
+    }
 
-            switch (type) {
-                case "event" -> handleEventMessage(session, Json.parse(payload, EventMessage.class));
-                case "init" -> handleInitMessage(session, Json.parse(payload, InitMessage.class));
-                case "setState" -> handleSetStateMessage(session, Json.parse(payload, SetStateMessage.class));
-                case "ping" -> sendMessage(session, new PongResponse());
-                default -> sendMessage(session, new ErrorResponse("Unknown message type: " + type));
-            }
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
+        ByteBuffer buffer = message.getPayload();
+        byte[] payload = new byte[buffer.remaining()];
+        buffer.get(payload);
+        Log.trace("Received: {}", new String(payload, StandardCharsets.UTF_8));
+        try {
+            dispatch(session, WebSocketCodec.decode(payload));
         } catch (Json.JsonException e) {
             Log.warn("JSON parse error: {}", e.getMessage());
             sendMessage(session, new ErrorResponse("Invalid JSON: " + e.getMessage()));
+        }
+    }
+
+    /** Handles a decoded client message by its type. */
+    private void dispatch(WebSocketSession session, Base message) throws IOException {
+        String type = message.getType();
+        if (type == null) {
+            sendMessage(session, new ErrorResponse("Missing message type"));
+            return;
+        }
+
+        try {
+            switch (message) {
+                case EventMessage event -> handleEventMessage(session, event);
+                case InitMessage init -> handleInitMessage(session, init);
+                case SetStateMessage setState -> handleSetStateMessage(session, setState);
+                case ResyncMessage resync -> handleResyncMessage(session, resync);
+                default -> {
+                    if (type.equals("ping")) {
+                        sendMessage(session, new PongResponse());
+                    } else {
+                        sendMessage(session, new ErrorResponse("Unknown message type: " + type));
+                    }
+                }
+            }
         } catch (Exception e) {
             Log.error("Error handling message: {}", e.getMessage(), e);
             sendMessage(session, new ErrorResponse(e.getMessage()));
@@ -98,13 +158,7 @@ public class JWebSocketHandler extends TextWebSocketHandler {
         if (contextId == null) {
             contextId = sessionContextMap.get(session.getId());
         }
-        StateManager.StateContext context = null;
-        if (contextId != null) {
-            context = StateManager.getContextById(contextId);
-            if (context != null) {
-                StateManager.setContext(context);
-            }
-        }
+        StateManager.StateContext context = contextId != null ? StateManager.getContextById(contextId) : null;
 
         // Build event from message
         DomEvent event = DomEvent.builder()
@@ -124,62 +178,24 @@ public class JWebSocketHandler extends TextWebSocketHandler {
                 .dataset(msg.getDataset())
                 .build();
 
-        // Execute the handler (context-scoped first, then global fallback)
-        boolean executed = contextId != null
-                ? EventRegistry.execute(contextId, handlerId, event)
-                : EventRegistry.execute(handlerId, event);
-
-        if (executed) {
-            // Check for state changes
-            if (context == null) {
-                context = StateManager.getContext();
-            }
-
-            if (context != null) {
-                var changedStates = context.getChangedStates();
-                if (!changedStates.isEmpty()) {
-                    // Send state updates
-                    List<StateData> stateDataList = new ArrayList<>();
-                    for (State<?> state : changedStates) {
-                        stateDataList.add(new StateData(state.getId(), state.get()));
-                    }
-                    sendMessage(session, new StateUpdateResponse(stateDataList));
-
-                    // Re-render components and send DOM updates
-                    sendDomUpdates(session, context);
-
-                    context.clearChangedStates();
-                }
-            }
-
-            // Send success response
-            sendMessage(session, new EventHandledResponse(handlerId, event.isDefaultPrevented()));
-        } else {
-            sendMessage(session, new ErrorResponse("Handler not found: " + handlerId));
-        }
-
-        // Clear thread-local context
-        StateManager.clearContext();
+        // Runs on the session's frame thread; results go out with the next frame
+        scheduler(session).event(contextId, context, handlerId, event);
     }
 
     /**
-     * Re-renders components and sends DOM updates to the client.
+     * Handles resync requests: the client's DOM for a component no longer
+     * matched the patches it was sent (e.g. a script or the parser changed
+     * it), so the component's full HTML is sent instead.
      */
-    private void sendDomUpdates(WebSocketSession session, StateManager.StateContext context) throws IOException {
-        var components = context.getComponents();
-        if (components.isEmpty()) {
+    private void handleResyncMessage(WebSocketSession session, ResyncMessage msg) throws IOException {
+        String contextId = msg.getContextId() != null ? msg.getContextId() : sessionContextMap.get(session.getId());
+        StateManager.StateContext context = StateManager.getContextById(contextId);
+        if (context == null || context.getComponent(msg.getId()) == null) {
+            sendMessage(session, new ErrorResponse("Unknown component: " + msg.getId()));
             return;
         }
 
-        List<DomPatch> patches = new ArrayList<>();
-        for (var entry : components.entrySet()) {
-            String componentId = entry.getKey();
-            var component = entry.getValue();
-            String newHtml = component.render();
-            patches.add(new DomPatch(componentId, newHtml));
-        }
-
-        sendMessage(session, new DomUpdateResponse(patches));
+        scheduler(session).resync(context, msg.getId());
     }
 
     /**
@@ -188,7 +204,11 @@ public class JWebSocketHandler extends TextWebSocketHandler {
     private void handleInitMessage(WebSocketSession session, InitMessage msg) throws IOException {
         String contextId = msg.getContextId();
         if (contextId != null) {
-            sessionContextMap.put(session.getId(), contextId);
+            String previous = sessionContextMap.put(session.getId(), contextId);
+            if (!contextId.equals(previous)) {
+                StateManager.disconnected(previous);
+                StateManager.connected(contextId);
+            }
         }
 
         // Send the current state of the page's render context
@@ -206,8 +226,8 @@ public class JWebSocketHandler extends TextWebSocketHandler {
 
     /**
      * Handles JWeb.setState() calls from the client: updates the state in the
-     * page's context and reports resulting changes (including derived states
-     * and DOM patches) back to the session.
+     * page's context, and the next frame reports the resulting changes
+     * (including derived states and DOM patches) back to the session.
      */
     private void handleSetStateMessage(WebSocketSession session, SetStateMessage msg) throws IOException {
         StateManager.StateContext context = StateManager.getContextById(msg.getContextId());
@@ -221,28 +241,22 @@ public class JWebSocketHandler extends TextWebSocketHandler {
             return;
         }
 
-        StateManager.setContext(context);
-        try {
-            state.set(msg.getValue());
-            var changedStates = context.getChangedStates();
-            if (!changedStates.isEmpty()) {
-                List<StateData> stateDataList = new ArrayList<>();
-                for (State<?> changed : changedStates) {
-                    stateDataList.add(new StateData(changed.getId(), changed.get()));
-                }
-                sendMessage(session, new StateUpdateResponse(stateDataList));
-                sendDomUpdates(session, context);
-                context.clearChangedStates();
-            }
-        } finally {
-            StateManager.clearContext();
-        }
+        scheduler(session).setState(context, state, msg.getValue());
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
         sessions.remove(session.getId());
-        sessionContextMap.remove(session.getId());
+        RenderScheduler scheduler = schedulers.remove(session.getId());
+        if (scheduler != null) {
+            scheduler.close();
+        }
+        OutboundQueue queue = queues.remove(session.getId());
+        if (queue != null) {
+            queue.close();
+        }
+        // The page is gone (or reconnecting): its context goes after a grace period
+        StateManager.disconnected(sessionContextMap.remove(session.getId()));
         Log.debug("WebSocket disconnected: {}", session.getId());
     }
 
@@ -253,12 +267,21 @@ public class JWebSocketHandler extends TextWebSocketHandler {
 
     /**
      * Sends a message object to a specific session.
-     * The object will be serialized to JSON.
+     * The object will be serialized to JSON: one message in v2 (binary when
+     * enabled), while a frame is split into its v1 messages for v1 sessions.
+     * The message is queued; see {@link OutboundQueue}.
      */
     public void sendMessage(WebSocketSession session, Object message) throws IOException {
-        if (session.isOpen()) {
-            String json = Json.stringify(message);
-            session.sendMessage(new TextMessage(json));
+        OutboundQueue queue = queues.get(session.getId());
+        if (queue == null) {
+            return;   // closed
+        }
+        if (message instanceof FrameResponse frame && !WebSocketCodec.isV2(session.getAcceptedProtocol())) {
+            for (Base legacy : WebSocketCodec.legacy(frame)) {
+                queue.offer(legacy);
+            }
+        } else {
+            queue.offer(message);
         }
     }
 
@@ -266,23 +289,47 @@ public class JWebSocketHandler extends TextWebSocketHandler {
      * Sends a raw JSON string to a specific session.
      */
     public void sendRawMessage(WebSocketSession session, String json) throws IOException {
-        if (session.isOpen()) {
-            session.sendMessage(new TextMessage(json));
+        OutboundQueue queue = queues.get(session.getId());
+        if (queue != null) {
+            queue.offer(null, json.getBytes(StandardCharsets.UTF_8));
         }
     }
 
+    private RenderScheduler scheduler(WebSocketSession session) {
+        return schedulers.computeIfAbsent(session.getId(),
+                id -> new RenderScheduler(id, message -> sendMessage(session, message)));
+    }
+
+    private OutboundQueue newQueue(WebSocketSession session) {
+        return new OutboundQueue(session.getId(),
+                binaryFrames && WebSocketCodec.isV2(session.getAcceptedProtocol()),
+                new OutboundQueue.Transport() {
+                    @Override
+                    public void send(byte[] payload, boolean binary) throws IOException {
+                        if (session.isOpen()) {
+                            session.sendMessage(binary ? new BinaryMessage(payload) : new TextMessage(payload));
+                        }
+                    }
+
+                    @Override
+                    public void close() {
+                        try {
+                            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+                        } catch (IOException e) {
+                            Log.warn("WebSocket close failed: {}", e.getMessage());
+                        }
+                    }
+                });
+    }
+
     /**
      * Broadcasts a message to all connected sessions.
+     * The message is encoded once; each session's queue applies its own
+     * limits, so a slow client doesn't hold up the others.
      */
     public void broadcast(Object message) {
-        String json = Json.stringify(message);
-        sessions.values().forEach(session -> {
-            try {
-                sendRawMessage(session, json);
-            } catch (IOException e) {
-                Log.warn("Broadcast error: {}", e.getMessage());
-            }
-        });
+        byte[] payload = WebSocketCodec.encode(message);
+        queues.values().forEach(queue -> queue.offer(message, payload));
     }
 
     /**
@@ -0,0 +1,324 @@
+package com.osmig.Jweb.framework.websocket;
+
+import com.osmig.Jweb.framework.metrics.Metrics;
+import com.osmig.Jweb.framework.util.Log;
+import com.osmig.Jweb.framework.websocket.WebSocketMessage.*;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The bounded outbound queue of one WebSocket session.
+ *
+ * <p>{@link #offer} never blocks: messages are encoded by the caller, queued,
+ * and written one at a time by a virtual thread per busy session, so a slow
+ * client only holds up its own queue, not a broadcast loop or an event
+ * reply. When a queue holds more than {@link #setMaxMessages} messages or
+ * {@link #setMaxBytes} bytes, the {@link OverflowPolicy} decides what
+ * gives:</p>
+ * <ul>
+ *   <li>{@link OverflowPolicy#DROP_OLDEST} - the oldest droppable messages are dropped</li>
+ *   <li>{@link OverflowPolicy#COALESCE} - queued {@code stateUpdate}s are merged into one,
+ *       keeping the latest value per state id, then the oldest droppable messages are dropped</li>
+ *   <li>{@link OverflowPolicy#DISCONNECT} - the session is closed as a slow consumer</li>
+ * </ul>
+ *
+ * <p>Only messages the page can do without are dropped: {@code stateUpdate},
+ * {@code eventHandled}, {@code pong} and {@code error}. Frames and DOM
+ * updates are never dropped or merged, since their patches build on each
+ * other and losing one leaves the page out of sync; when only those are
+ * left to make room, the session is disconnected instead. A single message
+ * larger than the byte limit is still sent.</p>
+ *
+ * <pre>
+ * OutboundQueue queue = new OutboundQueue(session.getId(), false, transport);
+ * queue.offer(new StateUpdateResponse(states));
+ * ...
+ * queue.close();
+ * </pre>
+ */
+public final class OutboundQueue {
+
+    /**
+     * Makes room in a queue over its limits. Called with the queue locked,
+     * repeatedly until the queue fits or the policy gives up.
+     */
+    @FunctionalInterface
+    public interface OverflowPolicy {
+
+        /**
+         * @return true when room was made, false to disconnect the session
+         */
+        boolean overflow(OutboundQueue queue);
+
+        OverflowPolicy DROP_OLDEST = OutboundQueue::dropOldest;
+
+        OverflowPolicy COALESCE = queue -> queue.coalesceStateUpdates() || queue.dropOldest();
+
+        OverflowPolicy DISCONNECT = queue -> false;
+
+        /** The policy for a config value: drop-oldest, coalesce or disconnect. */
+        static OverflowPolicy named(String name) {
+            return switch (name.trim().toLowerCase(Locale.ROOT)) {
+                case "drop-oldest" -> DROP_OLDEST;
+                case "coalesce" -> COALESCE;
+                case "disconnect" -> DISCONNECT;
+                default -> throw new IllegalArgumentException("Unknown overflow policy: " + name);
+            };
+        }
+    }
+
+    /** Writes to the session; only called by one thread at a time. */
+    interface Transport {
+        void send(byte[] payload, boolean binary) throws IOException;
+
+        /** Closes the session as a slow consumer. */
+        void close();
+    }
+
+    private static volatile int maxMessages = 1000;
+    private static volatile long maxBytes = 1024 * 1024;
+    private static volatile OverflowPolicy policy = OverflowPolicy.COALESCE;
+
+    // Across all sessions, for the depth gauges
+    private static final AtomicLong totalMessages = new AtomicLong();
+    private static final AtomicLong totalBytes = new AtomicLong();
+
+    private record Entry(Object message, byte[] payload) {}
+
+    private final String name;
+    private final boolean binary;
+    private final Transport transport;
+    private final Deque<Entry> entries = new ArrayDeque<>();
+    private long bytes;
+    private boolean sending;
+    private boolean closed;
+
+    /**
+     * @param name      the session, for the sender thread's name
+     * @param binary    send payloads as binary messages instead of text
+     * @param transport writes to and closes the session
+     */
+    OutboundQueue(String name, boolean binary, Transport transport) {
+        this.name = name;
+        this.binary = binary;
+        this.transport = transport;
+    }
+
+    /** Sets the most messages one session may have queued. */
+    public static void setMaxMessages(int max) {
+        maxMessages = Math.max(1, max);
+    }
+
+    /** Sets the most bytes one session may have queued. */
+    public static void setMaxBytes(long max) {
+        maxBytes = Math.max(1, max);
+    }
+
+    /** Sets what happens when a session's queue is full. */
+    public static void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        policy = overflowPolicy;
+    }
+
+    /** Messages queued across all sessions. */
+    public static long totalMessages() {
+        return totalMessages.get();
+    }
+
+    /** Bytes queued across all sessions. */
+    public static long totalBytes() {
+        return totalBytes.get();
+    }
+
+    /** Queues a message, encoded as JSON. */
+    public boolean offer(Object message) {
+        return offer(message, WebSocketCodec.encode(message));
+    }
+
+    /**
+     * Queues a message already encoded (a broadcast encodes once for all
+     * sessions); the message itself is kept for coalescing.
+     *
+     * @return false when the session is closed or was disconnected for
+     *         overflowing
+     */
+    public boolean offer(Object message, byte[] payload) {
+        boolean disconnect = false;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            Entry entry = new Entry(message, payload);
+            entries.addLast(entry);
+            account(entry);
+            while (entries.size() > 1 && (entries.size() > maxMessages || bytes > maxBytes)) {
+                if (!policy.overflow(this)) {
+                    disconnect = true;
+                    break;
+                }
+            }
+            if (disconnect) {
+                clear();
+                closed = true;
+            } else if (!sending) {
+                sending = true;
+                Thread.ofVirtual().name("jweb-send-" + name).start(this::drain);
+            }
+        }
+        if (disconnect) {
+            Metrics.counter("websocket.outbound.disconnects").increment();
+            Log.warn("WebSocket {} disconnected: outbound queue full", name);
+            transport.close();
+            return false;
+        }
+        return true;
+    }
+
+    /** Messages waiting to be sent. */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** Bytes waiting to be sent. */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Drops the oldest queued message that is {@linkplain #isDroppable
+     * droppable}, other than the newest (for overflow policies).
+     *
+     * @return false when there is none, and only messages carrying patches
+     *         would make room
+     */
+    public synchronized boolean dropOldest() {
+        Entry newest = entries.peekLast();
+        for (var it = entries.iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry == newest) {
+                return false;
+            }
+            if (isDroppable(entry.message())) {
+                it.remove();
+                remove(entry);
+                Metrics.counter("websocket.outbound.dropped").increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a message can be dropped without leaving the page out of sync:
+     * state values, acknowledgements, pongs and errors. Frames and DOM
+     * updates carry patches that later ones build on.
+     */
+    public static boolean isDroppable(Object message) {
+        return message instanceof StateUpdateResponse
+            || message instanceof EventHandledResponse
+            || message instanceof PongResponse
+            || message instanceof ErrorResponse;
+    }
+
+    /**
+     * Merges the queued {@code stateUpdate} messages into one, in the place
+     * of the newest, keeping the latest value of each state (for overflow
+     * policies).
+     *
+     * @return false when there were fewer than two to merge
+     */
+    public synchronized boolean coalesceStateUpdates() {
+        List<Entry> updates = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.message() instanceof StateUpdateResponse) {
+                updates.add(entry);
+            }
+        }
+        if (updates.size() < 2) {
+            return false;
+        }
+        Map<String, StateData> latest = new LinkedHashMap<>();
+        for (Entry entry : updates) {
+            List<StateData> states = ((StateUpdateResponse) entry.message()).getStates();
+            if (states != null) {
+                for (StateData state : states) {
+                    latest.remove(state.getId());
+                    latest.put(state.getId(), state);
+                }
+            }
+        }
+        StateUpdateResponse states = new StateUpdateResponse(new ArrayList<>(latest.values()));
+        Entry merged = new Entry(states, WebSocketCodec.encode(states));
+        Entry newest = updates.get(updates.size() - 1);
+        List<Entry> kept = new ArrayList<>(entries.size() - updates.size() + 1);
+        for (Entry entry : entries) {
+            if (entry.message() instanceof StateUpdateResponse) {
+                remove(entry);
+                if (entry == newest) {
+                    kept.add(merged);
+                }
+            } else {
+                kept.add(entry);
+            }
+        }
+        entries.clear();
+        entries.addAll(kept);
+        account(merged);
+        Metrics.counter("websocket.outbound.coalesced").increment(updates.size() - 1);
+        return true;
+    }
+
+    /** Drops everything queued; later offers are ignored. */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            clear();
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Entry entry;
+            synchronized (this) {
+                entry = entries.pollFirst();
+                if (entry == null) {
+                    sending = false;
+                    return;
+                }
+                remove(entry);
+            }
+            try {
+                transport.send(entry.payload(), binary);
+            } catch (IOException | RuntimeException e) {
+                Log.warn("WebSocket send failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void account(Entry entry) {
+        bytes += entry.payload().length;
+        totalMessages.incrementAndGet();
+        totalBytes.addAndGet(entry.payload().length);
+    }
+
+    // Accounting only: the caller takes the entry out of the deque
+    private void remove(Entry entry) {
+        bytes -= entry.payload().length;
+        totalMessages.decrementAndGet();
+        totalBytes.addAndGet(-entry.payload().length);
+    }
+
+    private void clear() {
+        for (Entry entry : entries) {
+            remove(entry);
+        }
+        entries.clear();
+    }
+}
@@ -0,0 +1,281 @@
+package com.osmig.Jweb.framework.websocket;
+
+import com.osmig.Jweb.framework.events.DomEvent;
+import com.osmig.Jweb.framework.events.EventRegistry;
+import com.osmig.Jweb.framework.state.State;
+import com.osmig.Jweb.framework.state.StateManager;
+import com.osmig.Jweb.framework.util.Log;
+import com.osmig.Jweb.framework.vdom.VDiff;
+import com.osmig.Jweb.framework.vdom.VNode;
+import com.osmig.Jweb.framework.vdom.VPatch;
+import com.osmig.Jweb.framework.websocket.WebSocketMessage.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coalesces the state changes of one WebSocket session into render frames.
+ *
+ * <p>Events, {@code setState} calls and resyncs are queued and applied in
+ * order on a virtual thread, off the container's I/O thread. Each one only
+ * marks its context dirty; the session is re-rendered and sent at most once
+ * per frame interval, as a single {@link FrameResponse} carrying every state
+ * change, DOM update and event acknowledgement since the previous frame. A
+ * burst of keystrokes becomes one render and one message per frame instead
+ * of three messages and a render each.</p>
+ *
+ * <p>The first change after an idle frame is flushed as soon as the queue is
+ * drained, so a single event isn't delayed; changes arriving within the
+ * interval after a flush wait for the next frame.</p>
+ *
+ * <pre>
+ * RenderScheduler frames = new RenderScheduler(session.getId(), message -&gt; send(session, message));
+ * frames.event(contextId, context, handlerId, event);
+ * frames.setState(context, state, value);
+ * ...
+ * frames.close();
+ * </pre>
+ */
+public final class RenderScheduler {
+
+    private static volatile long frameMs = 16;
+
+    /** Sends one outbound message to the session. */
+    @FunctionalInterface
+    interface Sender {
+        void send(Object message) throws IOException;
+    }
+
+    private final String name;
+    private final Sender sender;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean closed;
+
+    // Frame state: only touched by the draining thread (one at a time)
+    private final Set<StateManager.StateContext> dirty = new LinkedHashSet<>();
+    private final List<DomPatch> replaced = new ArrayList<>();
+    private final List<HandledEvent> handled = new ArrayList<>();
+    private long lastFlush;
+
+    RenderScheduler(String name, Sender sender) {
+        this.name = name;
+        this.sender = sender;
+    }
+
+    /**
+     * Sets the frame interval: changes within it are sent together.
+     * 16ms matches a 60Hz display; up to ~50ms still feels immediate.
+     */
+    public static void setFrameMillis(long ms) {
+        frameMs = Math.max(0, ms);
+    }
+
+    /** The frame interval in milliseconds. */
+    public static long getFrameMillis() {
+        return frameMs;
+    }
+
+    /**
+     * Queues an event handler: it runs in its page's context, and its state
+     * changes and acknowledgement go out with the next frame.
+     */
+    void event(String contextId, StateManager.StateContext context, String handlerId, DomEvent event) {
+        submit(() -> {
+            if (context != null) {
+                StateManager.setContext(context);
+            }
+            try {
+                // Context-scoped first, then global fallback
+                boolean executed = contextId != null
+                        ? EventRegistry.execute(contextId, handlerId, event)
+                        : EventRegistry.execute(handlerId, event);
+                if (!executed) {
+                    send(new ErrorResponse("Handler not found: " + handlerId));
+                    return;
+                }
+                StateManager.StateContext current = context != null ? context : StateManager.getContext();
+                if (current != null) {
+                    dirty.add(current);
+                }
+                handled.add(new HandledEvent(handlerId, event.isDefaultPrevented()));
+            } finally {
+                StateManager.clearContext();
+            }
+        });
+    }
+
+    /** Queues a client-side state change for the next frame. */
+    void setState(StateManager.StateContext context, State<Object> state, Object value) {
+        submit(() -> {
+            StateManager.setContext(context);
+            try {
+                state.set(value);
+                dirty.add(context);
+            } finally {
+                StateManager.clearContext();
+            }
+        });
+    }
+
+    /** Queues a full re-render of one component (its DOM no longer matches the patches). */
+    void resync(StateManager.StateContext context, String componentId) {
+        submit(() -> {
+            var component = context.getComponent(componentId);
+            if (component == null) {
+                send(new ErrorResponse("Unknown component: " + componentId));
+                return;
+            }
+            StateManager.setContext(context);
+            try {
+                VNode tree = component.renderTree();
+                context.setRenderedTree(componentId, tree);
+                replaced.removeIf(patch -> componentId.equals(patch.getId()));
+                replaced.add(new DomPatch(componentId, tree.toHtml()));
+            } finally {
+                StateManager.clearContext();
+            }
+        });
+    }
+
+    /** Drops queued work; a frame being rendered is still sent if the session is open. */
+    void close() {
+        closed = true;
+        tasks.clear();
+    }
+
+    private void submit(Runnable task) {
+        if (closed) {
+            return;
+        }
+        tasks.add(task);
+        if (running.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("jweb-frames-" + name).start(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    Log.error("Error handling message: {}", e.getMessage(), e);
+                    send(new ErrorResponse(e.getMessage()));
+                }
+            }
+            if (!closed && hasFrame()) {
+                long wait = lastFlush + frameMs - System.currentTimeMillis();
+                if (wait > 0) {
+                    // Within the current frame: gather what arrives until it ends
+                    sleep(wait);
+                    continue;
+                }
+                flush();
+                lastFlush = System.currentTimeMillis();
+                continue;
+            }
+            running.set(false);
+            // A task queued after the poll but before the flag cleared has no thread yet
+            if (tasks.isEmpty() || !running.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private boolean hasFrame() {
+        return !dirty.isEmpty() || !replaced.isEmpty() || !handled.isEmpty();
+    }
+
+    /** Renders every dirty context once and sends the frame. */
+    private void flush() {
+        List<StateData> states = new ArrayList<>();
+        List<DomPatch> updates = new ArrayList<>(replaced);
+        for (StateManager.StateContext context : dirty) {
+            StateManager.setContext(context);
+            try {
+                List<State<?>> changed = context.getChangedStates();
+                if (changed.isEmpty()) {
+                    continue;
+                }
+                for (State<?> state : changed) {
+                    states.add(new StateData(state.getId(), state.get()));
+                }
+                for (DomPatch patch : render(context, changed)) {
+                    // A component re-rendered here supersedes its resync
+                    updates.removeIf(previous -> previous.getId().equals(patch.getId()));
+                    updates.add(patch);
+                }
+                context.clearChangedStates();
+            } catch (Exception e) {
+                Log.error("Error rendering frame: {}", e.getMessage(), e);
+            } finally {
+                StateManager.clearContext();
+            }
+        }
+        List<HandledEvent> acks = new ArrayList<>(handled);
+        dirty.clear();
+        replaced.clear();
+        handled.clear();
+
+        if (!states.isEmpty() || !updates.isEmpty() || !acks.isEmpty()) {
+            send(new FrameResponse(
+                    states.isEmpty() ? null : states,
+                    updates.isEmpty() ? null : updates,
+                    acks.isEmpty() ? null : acks));
+        }
+    }
+
+    /**
+     * Re-renders the components that read a changed state: a keyed diff
+     * against each component's previous render, or its full HTML when there
+     * is no previous render or the diff would be larger.
+     */
+    static List<DomPatch> render(StateManager.StateContext context, List<State<?>> changedStates) {
+        var components = context.getComponentsAffectedBy(changedStates);
+        List<DomPatch> patches = new ArrayList<>();
+        for (var entry : components.entrySet()) {
+            String componentId = entry.getKey();
+            VNode tree = entry.getValue().renderTree();
+            VNode previous = context.getRenderedTree(componentId);
+            context.setRenderedTree(componentId, tree);
+
+            if (previous == null) {
+                patches.add(new DomPatch(componentId, tree.toHtml()));
+                continue;
+            }
+            List<VPatch> ops = VDiff.diff(previous, tree);
+            if (ops.isEmpty()) {
+                continue;
+            }
+            String html = tree.toHtml();
+            patches.add(VPatch.weight(ops) < html.length()
+                    ? new DomPatch(componentId, ops)
+                    : new DomPatch(componentId, html));
+        }
+        return patches;
+    }
+
+    private void send(Object message) {
+        try {
+            sender.send(message);
+        } catch (IOException e) {
+            Log.warn("WebSocket send failed: {}", e.getMessage());
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
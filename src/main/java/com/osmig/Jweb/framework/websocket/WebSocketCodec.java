@@ -0,0 +1,120 @@
+package com.osmig.Jweb.framework.websocket;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.osmig.Jweb.framework.util.Json;
+import com.osmig.Jweb.framework.websocket.WebSocketMessage.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format of the {@code /jweb} WebSocket, in both protocol versions.
+ *
+ * <p>The version is negotiated as a WebSocket subprotocol: the bundled
+ * runtime offers {@value #V2}, and a client that offers none (or only
+ * {@value #V1}) gets version 1.</p>
+ * <ul>
+ *   <li><b>v1</b> - one message per result: {@code stateUpdate},
+ *       {@code domUpdate} and {@code eventHandled}, always text</li>
+ *   <li><b>v2</b> - one {@code frame} per render frame carrying all three,
+ *       as text or, when {@code jweb.websocket.binary-frames} is on, as
+ *       binary UTF-8 JSON (encoded straight to bytes, no String copy)</li>
+ * </ul>
+ *
+ * <p>Incoming messages are decoded in one pass in both versions: the
+ * {@code type} property selects the message class while parsing, instead of
+ * parsing into {@link Base} and again into the concrete class.</p>
+ */
+final class WebSocketCodec {
+
+    /** Subprotocol of the original protocol: separate messages per result. */
+    static final String V1 = "jweb.v1";
+
+    /** Subprotocol of the frame protocol. */
+    static final String V2 = "jweb.v2";
+
+    // Client message classes by their type; other types (ping, unknown) decode as Base
+    @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.EXISTING_PROPERTY,
+            property = "type", visible = true, defaultImpl = Base.class)
+    @JsonSubTypes({
+            @JsonSubTypes.Type(value = EventMessage.class, name = "event"),
+            @JsonSubTypes.Type(value = InitMessage.class, name = "init"),
+            @JsonSubTypes.Type(value = SetStateMessage.class, name = "setState"),
+            @JsonSubTypes.Type(value = ResyncMessage.class, name = "resync")
+    })
+    private abstract static class Inbound {}
+
+    private static final ObjectReader reader = Json.mapper().copy()
+            .addMixIn(Base.class, Inbound.class)
+            .readerFor(Base.class);
+
+    private static final ObjectWriter writer = Json.mapper().writer();
+
+    private WebSocketCodec() {
+        // Static utility class
+    }
+
+    /**
+     * Decodes a client message into its concrete class.
+     *
+     * @return the message; a {@link Base} for types without a payload class,
+     *         with a null type when the message has none
+     * @throws Json.JsonException if the payload isn't a JSON message
+     */
+    static Base decode(String json) {
+        try {
+            return reader.readValue(json);
+        } catch (JsonProcessingException e) {
+            throw new Json.JsonException("Failed to parse JSON to message", e);
+        }
+    }
+
+    /** Decodes a client message sent as binary UTF-8 JSON. */
+    static Base decode(byte[] utf8) {
+        try {
+            return reader.readValue(utf8);
+        } catch (IOException e) {
+            throw new Json.JsonException("Failed to parse JSON to message", e);
+        }
+    }
+
+    /** Encodes a server message as UTF-8 JSON. */
+    static byte[] encode(Object message) {
+        try {
+            return writer.writeValueAsBytes(message);
+        } catch (JsonProcessingException e) {
+            throw new Json.JsonException("Failed to serialize " + message.getClass().getSimpleName(), e);
+        }
+    }
+
+    /** Whether a negotiated subprotocol is the frame protocol. */
+    static boolean isV2(String subprotocol) {
+        return V2.equals(subprotocol);
+    }
+
+    /**
+     * Splits a frame into the v1 messages with the same effect, in the order
+     * the frame is applied: states, DOM updates, then one acknowledgement
+     * per handled event.
+     */
+    static List<Base> legacy(FrameResponse frame) {
+        List<Base> messages = new ArrayList<>();
+        if (frame.getStates() != null) {
+            messages.add(new StateUpdateResponse(frame.getStates()));
+        }
+        if (frame.getUpdates() != null) {
+            messages.add(new DomUpdateResponse(frame.getUpdates()));
+        }
+        if (frame.getHandled() != null) {
+            for (HandledEvent event : frame.getHandled()) {
+                messages.add(new EventHandledResponse(event.getHandler(), event.isPreventDefault()));
+            }
+        }
+        return messages;
+    }
+}
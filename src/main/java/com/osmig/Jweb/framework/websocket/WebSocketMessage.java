@@ -13,9 +13,11 @@ import java.util.Map;
  * <ul>
  *   <li><b>event</b> - Client sends event (click, change, submit)</li>
  *   <li><b>init</b> - Client initializes connection with context</li>
+ *   <li><b>resync</b> - Client asks for a component's full HTML after a failed patch</li>
  *   <li><b>ping/pong</b> - Keep-alive messages</li>
  *   <li><b>stateUpdate</b> - Server sends state changes</li>
  *   <li><b>domUpdate</b> - Server sends DOM patches</li>
+ *   <li><b>frame</b> - Server sends states, DOM patches and handled events together (protocol v2)</li>
  *   <li><b>error</b> - Server sends error message</li>
  * </ul>
  */
@@ -246,6 +248,32 @@ public final class WebSocketMessage {
         }
     }
 
+    /**
+     * Resync request from client.
+     * Sent when DOM patches for a component could not be applied.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class ResyncMessage extends Base {
+        private String contextId;
+        private String id;
+
+        public String getContextId() {
+            return contextId;
+        }
+
+        public void setContextId(String contextId) {
+            this.contextId = contextId;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+    }
+
     /**
      * Connected response from server.
      * Sent after WebSocket connection is established.
@@ -357,12 +385,15 @@ public final class WebSocketMessage {
     }
 
     /**
-     * DOM patch for a single component.
+     * DOM patch for a single component: either its full HTML or the
+     * operations that update the previously sent render
+     * (see {@link com.osmig.Jweb.framework.vdom.VPatch}).
      */
     @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class DomPatch {
         private String id;
         private String html;
+        private List<Map<String, Object>> ops;
 
         public DomPatch() {}
 
@@ -371,6 +402,11 @@ public final class WebSocketMessage {
             this.html = html;
         }
 
+        public DomPatch(String id, List<com.osmig.Jweb.framework.vdom.VPatch> ops) {
+            this.id = id;
+            this.ops = ops.stream().map(com.osmig.Jweb.framework.vdom.VPatch::toMap).toList();
+        }
+
         public String getId() {
             return id;
         }
@@ -386,6 +422,14 @@ public final class WebSocketMessage {
         public void setHtml(String html) {
             this.html = html;
         }
+
+        public List<Map<String, Object>> getOps() {
+            return ops;
+        }
+
+        public void setOps(List<Map<String, Object>> ops) {
+            this.ops = ops;
+        }
     }
 
     /**
@@ -423,6 +467,84 @@ public final class WebSocketMessage {
         }
     }
 
+    /**
+     * One render frame from server: every state change, DOM update and
+     * handled event since the previous frame, applied by the client in that
+     * order.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class FrameResponse extends Base {
+        private List<StateData> states;
+        private List<DomPatch> updates;
+        private List<HandledEvent> handled;
+
+        public FrameResponse() {
+            setType("frame");
+        }
+
+        public FrameResponse(List<StateData> states, List<DomPatch> updates, List<HandledEvent> handled) {
+            this();
+            this.states = states;
+            this.updates = updates;
+            this.handled = handled;
+        }
+
+        public List<StateData> getStates() {
+            return states;
+        }
+
+        public void setStates(List<StateData> states) {
+            this.states = states;
+        }
+
+        public List<DomPatch> getUpdates() {
+            return updates;
+        }
+
+        public void setUpdates(List<DomPatch> updates) {
+            this.updates = updates;
+        }
+
+        public List<HandledEvent> getHandled() {
+            return handled;
+        }
+
+        public void setHandled(List<HandledEvent> handled) {
+            this.handled = handled;
+        }
+    }
+
+    /**
+     * An event acknowledged in a frame.
+     */
+    public static class HandledEvent {
+        private String handler;
+        private boolean preventDefault;
+
+        public HandledEvent() {}
+
+        public HandledEvent(String handler, boolean preventDefault) {
+            this.handler = handler;
+            this.preventDefault = preventDefault;
+        }
+
+        public String getHandler() {
+            return handler;
+        }
+
+        public void setHandler(String handler) {
+            this.handler = handler;
+        }
+
+        public boolean isPreventDefault() {
+            return preventDefault;
+        }
+
+        public void setPreventDefault(boolean preventDefault) {
+            this.preventDefault = preventDefault;
+        }
+    }
+
     /**
      * Error response from server.
      */
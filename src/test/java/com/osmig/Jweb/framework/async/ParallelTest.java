@@ -0,0 +1,60 @@
+package com.osmig.Jweb.framework.async;
+
+import com.osmig.Jweb.framework.context.Context;
+import com.osmig.Jweb.framework.portal.Portal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static com.osmig.Jweb.framework.elements.El.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelTest {
+
+    @AfterEach
+    void cleanup() {
+        Parallel.setThreshold(256);
+        Context.clear();
+        Portal.clear();
+    }
+
+    @Test
+    void rendersChunksInDocumentOrder() {
+        Parallel.setThreshold(10);
+        List<Integer> items = IntStream.range(0, 100).boxed().toList();
+
+        String parallel = ul(Parallel.each(items, i -> li(text("item " + i)))).toHtml();
+        String sequential = ul(each(items, i -> li(text("item " + i)))).toHtml();
+
+        assertEquals(sequential, parallel);
+    }
+
+    @Test
+    void carriesContextToRenderThreadsAndPortalsBack() {
+        Parallel.setThreshold(10);
+        List<Integer> items = IntStream.range(0, 40).boxed().toList();
+
+        String html = Context.provide("prefix", "row-", () -> div(
+            Parallel.each(items, i -> {
+                if (i % 10 == 0) Portal.to("notes", text("[" + i + "]"));
+                return text(Context.get("prefix", String.class) + i + ";");
+            }),
+            Portal.outlet("notes")
+        ).toHtml());
+
+        assertTrue(html.startsWith("<div>row-0;row-1;"), html);
+        assertTrue(html.contains("row-39;"), html);
+        assertTrue(html.endsWith("[0][10][20][30]</div>"), html);
+    }
+
+    @Test
+    void sectionsFailOnTheCallingThread() {
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> Parallel.of(
+            () -> text("ok"),
+            () -> { throw new IllegalStateException("boom"); }));
+
+        assertEquals("boom", error.getMessage());
+    }
+}
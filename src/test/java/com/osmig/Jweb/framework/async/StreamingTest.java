@@ -4,6 +4,9 @@ import com.osmig.Jweb.framework.server.JWebController;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 import static com.osmig.Jweb.framework.elements.El.*;
@@ -79,4 +82,50 @@ class StreamingTest {
         assertEquals("jw-s-2", b);
         assertEquals(2, ctx.pendings().size());
     }
+
+    @Test
+    void streamsBlocksAsTheyCompleteWithNestedBlocksAfterTheirParent() throws Exception {
+        StreamingContext ctx = StreamingContext.open();
+        CompletableFuture<String> outer = new CompletableFuture<>();
+        StreamingContext.Pending parent = ctx.defer(outer, t -> "failed");
+        ctx.register(CompletableFuture.completedFuture("<b>quick</b>"));
+        // Registered while the parent renders; finishes before it
+        String nested = StreamingContext.rendering(parent,
+            () -> ctx.register(CompletableFuture.completedFuture("<i>nested</i>")));
+        outer.complete("<div id=\"" + nested + "\"></div>");
+
+        List<String> chunks = new ArrayList<>();
+        ctx.stream(collect(chunks), Duration.ofSeconds(5));
+
+        assertEquals(List.of("jw-s-2=<b>quick</b>", "jw-s-1=<div id=\"jw-s-3\"></div>", "jw-s-3=<i>nested</i>"),
+            chunks);
+    }
+
+    @Test
+    void pageDeadlineWritesFallbacksAndDropsOrphanedBlocks() throws Exception {
+        StreamingContext ctx = StreamingContext.open();
+        CompletableFuture<String> slow = new CompletableFuture<>();
+        StreamingContext.Pending parent = ctx.defer(slow, t -> "<p>timed out</p>");
+        CompletableFuture<String> child = new CompletableFuture<>();
+        StreamingContext.rendering(parent, () -> ctx.defer(child, t -> "unused"));
+
+        List<String> chunks = new ArrayList<>();
+        ctx.stream(collect(chunks), Duration.ofMillis(50));
+
+        assertEquals(List.of("jw-s-1=<p>timed out</p>"), chunks);
+        assertTrue(child.isDone());
+    }
+
+    private static StreamingContext.ChunkWriter collect(List<String> chunks) {
+        return new StreamingContext.ChunkWriter() {
+            @Override
+            public void write(String placeholderId, String html) {
+                chunks.add(placeholderId + "=" + html);
+            }
+
+            @Override
+            public void flush() {
+            }
+        };
+    }
 }
@@ -0,0 +1,44 @@
+package com.osmig.Jweb.framework.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheTest {
+
+    @Test
+    void aFullCacheEvictsABatchClosestToExpiring() {
+        Cache<Integer, String> cache = Cache.create(Duration.ofMinutes(5), 100);
+        for (int i = 0; i < 100; i++) {
+            cache.set(i, "v" + i, Duration.ofMinutes(10 + i));
+        }
+        assertEquals(100, cache.size());
+
+        cache.set(100, "v100", Duration.ofHours(1));
+
+        // Down to 90% of the limit in one pass, the shortest TTLs first
+        assertEquals(90, cache.size());
+        assertNull(cache.get(0));
+        assertNull(cache.get(10));
+        assertEquals("v11", cache.get(11));
+        assertEquals("v100", cache.get(100));
+
+        // Room for a batch of inserts before the next eviction
+        for (int i = 101; i < 111; i++) {
+            cache.set(i, "v" + i, Duration.ofHours(1));
+        }
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    void getOrSetIsBoundedToo() {
+        Cache<Integer, String> cache = Cache.create(Duration.ofMinutes(5), 10);
+        for (int i = 0; i < 50; i++) {
+            cache.getOrSet(i, () -> "v");
+        }
+        assertTrue(cache.size() <= 10);
+        assertEquals("v", cache.get(49));
+    }
+}
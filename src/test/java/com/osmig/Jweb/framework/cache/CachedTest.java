@@ -0,0 +1,71 @@
+package com.osmig.Jweb.framework.cache;
+
+import com.osmig.Jweb.framework.styles.PageStyles;
+import com.osmig.Jweb.framework.styles.StyledElement;
+import com.osmig.Jweb.framework.styles.Styles;
+import com.osmig.Jweb.framework.vdom.VElement;
+import com.osmig.Jweb.framework.vdom.VText;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachedTest {
+
+    @AfterEach
+    void cleanup() {
+        Cached.clear();
+        PageStyles.clear();
+    }
+
+    @Test
+    void rendersOncePerKeyVersionAndUser() {
+        AtomicInteger renders = new AtomicInteger();
+        java.util.function.Supplier<com.osmig.Jweb.framework.core.Element> body = () -> {
+            renders.incrementAndGet();
+            return () -> new VText("nav " + renders.get());
+        };
+
+        assertEquals("nav 1", Cached.of("nav", Duration.ofMinutes(1), body).toHtml());
+        assertEquals("nav 1", Cached.of("nav", Duration.ofMinutes(1), body).toHtml());
+        assertEquals(1, renders.get());
+
+        assertEquals("nav 2", Cached.of("nav", Duration.ofMinutes(1), body).version(2).toHtml());
+        assertEquals("nav 3", Cached.of("nav", Duration.ofMinutes(1), body).version(2).perUser("u1").toHtml());
+        assertEquals("nav 3", Cached.of("nav", Duration.ofMinutes(1), body).version(2).perUser("u1").toHtml());
+        assertEquals(3, renders.get());
+    }
+
+    @Test
+    void nestedCachedElementsRender() {
+        String html = Cached.of("outer", Duration.ofMinutes(1), () ->
+            Cached.of("inner", Duration.ofMinutes(1), () -> () -> new VText("x"))).toHtml();
+        assertEquals("x", html);
+    }
+
+    @Test
+    void stylesOfTheCachedSubtreeReachEveryPage() {
+        java.util.function.Supplier<com.osmig.Jweb.framework.core.Element> card = () ->
+            new StyledElement(VElement.of("div", java.util.List.of(new VText("Sale"))))
+                .hover(Styles.style().prop("background:#eee"));
+
+        PageStyles.open();
+        String first = Cached.of("card", Duration.ofMinutes(1), card).toHtml();
+        String firstSheet = PageStyles.closeCurrent();
+        assertTrue(firstSheet.contains(":hover{background: #eee;}"));
+
+        // A hit renders no StyledElement: the rule comes with the cached HTML
+        PageStyles.open();
+        assertEquals(first, Cached.of("card", Duration.ofMinutes(1), card).toHtml());
+        assertEquals(firstSheet, PageStyles.closeCurrent());
+
+        // No page sheet to add to: written inline
+        PageStyles.clear();
+        String inline = Cached.of("card", Duration.ofMinutes(1), card).toHtml();
+        assertTrue(inline.startsWith("<style>.jweb-"));
+        assertTrue(inline.endsWith(first));
+    }
+}
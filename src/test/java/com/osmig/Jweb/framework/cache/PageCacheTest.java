@@ -0,0 +1,165 @@
+package com.osmig.Jweb.framework.cache;
+
+import com.osmig.Jweb.framework.state.StateManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static com.osmig.Jweb.framework.elements.El.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageCacheTest {
+
+    private static final PageCache.Policy POLICY = PageCache.policy(Duration.ofMinutes(1));
+
+    @AfterEach
+    void cleanup() {
+        PageCache.clear();
+        PageCache.setMaxBytes(32L * 1024 * 1024);
+    }
+
+    @Test
+    void concurrentMissesRenderOnce() throws Exception {
+        AtomicInteger renders = new AtomicInteger();
+        CountDownLatch rendering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<PageCache.CachedPage> first = CompletableFuture.supplyAsync(() ->
+            PageCache.load("/home", () -> {
+                renders.incrementAndGet();
+                rendering.countDown();
+                await(release);
+                return PageCache.page(POLICY, "<p>home</p>", true);
+            }));
+        assertTrue(rendering.await(5, TimeUnit.SECONDS));
+
+        List<CompletableFuture<PageCache.CachedPage>> waiting = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            waiting.add(CompletableFuture.supplyAsync(() -> PageCache.load("/home", () -> {
+                renders.incrementAndGet();
+                return PageCache.page(POLICY, "<p>again</p>", true);
+            })));
+        }
+        release.countDown();
+
+        byte[] body = first.get(5, TimeUnit.SECONDS).body();
+        for (CompletableFuture<PageCache.CachedPage> request : waiting) {
+            assertSame(body, request.get(5, TimeUnit.SECONDS).body());
+        }
+        assertEquals(1, renders.get());
+        assertNotNull(PageCache.lookup("/home"));
+    }
+
+    @Test
+    void storesGzipVariantOfLargePages() throws Exception {
+        String html = "<ul>" + "<li>item</li>".repeat(200) + "</ul>";
+        PageCache.CachedPage page = PageCache.load("/list", () -> PageCache.page(POLICY, html, true));
+
+        assertNotNull(page.gzip());
+        assertTrue(page.gzip().length < page.body().length);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(page.gzip()))) {
+            assertEquals(html, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(page.body().length + page.gzip().length, PageCache.bytes());
+    }
+
+    @Test
+    void pagesWithClientStateAreNotStored() {
+        PageCache.load("/counter", () -> PageCache.page(POLICY, "<p>0</p>", false));
+        assertNull(PageCache.lookup("/counter"));
+    }
+
+    @Test
+    void pagesWithEventHandlersAreNotShareable() {
+        StateManager.StateContext context = StateManager.createContext();
+        try {
+            div(h1("Offers"), p("No client state")).toVNode();
+            assertTrue(PageCache.isShareable(context));
+
+            div(h1("Offers"), button("Buy").onClick(event -> {})).toVNode();
+            assertFalse(PageCache.isShareable(context));
+        } finally {
+            context.clearContext();
+        }
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedPastTheByteBudget() {
+        PageCache.setMaxBytes(1000);
+        String html = "x".repeat(200);
+        PageCache.load("/a", () -> PageCache.page(POLICY, html, true));
+        PageCache.load("/b", () -> PageCache.page(POLICY, html, true));
+        PageCache.load("/c", () -> PageCache.page(POLICY, html, true));
+        PageCache.lookup("/a");
+        PageCache.load("/d", () -> PageCache.page(POLICY, html, true));
+        PageCache.load("/e", () -> PageCache.page(POLICY, html, true));
+        PageCache.load("/f", () -> PageCache.page(POLICY, html, true));
+
+        assertTrue(PageCache.bytes() <= 1000);
+        assertNotNull(PageCache.lookup("/a"));
+        assertNull(PageCache.lookup("/b"));
+    }
+
+    @Test
+    void staleEntryIsServedWhileOneRequestRevalidatesIt() throws Exception {
+        PageCache.Policy policy = PageCache.policy(Duration.ofMillis(1)).staleWhileRevalidate(Duration.ofMinutes(1));
+        PageCache.load("/news", () -> PageCache.page(policy, "<p>old</p>", true));
+        Thread.sleep(5);
+
+        PageCache.CachedPage stale = PageCache.lookup("/news");
+        assertNotNull(stale);
+        assertFalse(stale.isFresh());
+
+        CountDownLatch rendering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<PageCache.CachedPage> first = CompletableFuture.supplyAsync(() ->
+            PageCache.revalidate("/news", stale, () -> {
+                rendering.countDown();
+                await(release);
+                return PageCache.page(PageCache.policy(Duration.ofMinutes(1)), "<p>new</p>", true);
+            }));
+        assertTrue(rendering.await(5, TimeUnit.SECONDS));
+
+        // Requests during the render get the stale entry without rendering
+        assertSame(stale, PageCache.revalidate("/news", stale, () -> fail("second refresh")));
+        assertSame(stale, PageCache.lookup("/news"));
+
+        release.countDown();
+        assertEquals("<p>new</p>", new String(first.get(5, TimeUnit.SECONDS).body(), StandardCharsets.UTF_8));
+        assertEquals("<p>new</p>", new String(PageCache.lookup("/news").body(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void failedRevalidationKeepsTheStaleEntryForTheNextRequest() throws Exception {
+        PageCache.Policy policy = PageCache.policy(Duration.ofMillis(1)).staleWhileRevalidate(Duration.ofMinutes(1));
+        PageCache.load("/news", () -> PageCache.page(policy, "<p>old</p>", true));
+        Thread.sleep(5);
+        PageCache.CachedPage stale = PageCache.lookup("/news");
+
+        assertSame(stale, PageCache.revalidate("/news", stale, () -> {
+            throw new IllegalStateException("session unavailable");
+        }));
+
+        PageCache.CachedPage retried = PageCache.revalidate("/news", stale,
+            () -> PageCache.page(PageCache.policy(Duration.ofMinutes(1)), "<p>new</p>", true));
+        assertEquals("<p>new</p>", new String(retried.body(), StandardCharsets.UTF_8));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.osmig.Jweb.framework.hydration;
+
+import com.osmig.Jweb.framework.vdom.VElement;
+import com.osmig.Jweb.framework.vdom.VFragment;
+import com.osmig.Jweb.framework.vdom.VNode;
+import com.osmig.Jweb.framework.vdom.VRaw;
+import com.osmig.Jweb.framework.vdom.VText;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VNodeSerializerTest {
+
+    @Test
+    void compactFormatSharesNamesThroughTheStringTable() {
+        Map<String, String> attrs = new LinkedHashMap<>();
+        attrs.put("class", "card");
+        attrs.put("hidden", null);
+        VNode tree = VElement.of("div", attrs, List.of(
+            VElement.of("div", Map.of("class", "body"), List.of(new VText("Hi"))),
+            new VFragment(new VRaw("<b>x</b>"))));
+
+        assertEquals("{\"n\":[0,[1,\"card\",2,1],[0,[1,\"body\"],\"Hi\"],[-2,[-1,\"\\u003Cb>x\\u003C/b>\"]]],"
+                + "\"t\":[\"div\",\"class\",\"hidden\"]}",
+            VNodeSerializer.toCompactJson(tree));
+    }
+
+    @Test
+    void compactFormatIsSmallerThanVerbose() {
+        List<VNode> rows = new java.util.ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            rows.add(VElement.of("li", Map.of("class", "row"), List.of(new VText("item " + i))));
+        }
+        VNode list = VElement.of("ul", rows);
+
+        assertTrue(VNodeSerializer.toCompactJson(list).length() * 2 < VNodeSerializer.toJson(list).length());
+    }
+
+    @Test
+    void scriptTagEscapesStringsInline() {
+        String tag = HydrationData.builder()
+            .contextId("ctx_1")
+            .stateJson("[{\"id\":\"s\",\"value\":\"</script><script>alert(1)\"}]")
+            .vnode(new VText("a\"b\n"))
+            .build()
+            .toScriptTag();
+
+        assertEquals("<script id=\"__JWEB_DATA__\" type=\"application/json\">"
+                + "{\"v\":2,\"c\":\"ctx_1\",\"s\":[{\"id\":\"s\",\"value\":\"\\u003C/script>\\u003Cscript>alert(1)\"}],"
+                + "\"n\":\"a\\\"b\\n\",\"t\":[]}</script>",
+            tag);
+    }
+}
@@ -75,4 +75,54 @@ class MiddlewareStackTest {
         assertEquals("nosniff", req.responseHeaders().get("X-Content-Type-Options"));
         assertEquals("DENY", req.responseHeaders().get("X-Frame-Options"));
     }
+
+    @Test
+    void compiledChainsOnlyHoldApplicableMiddleware() {
+        Middleware pass = (req, chain) -> chain.next();
+        MiddlewareStack stack = new MiddlewareStack()
+            .use(pass)
+            .useForPath("/api", pass)
+            .useForPath("/admin/**", pass)
+            .useForMethods(List.of("POST"), pass);
+
+        assertEquals(2, stack.compile("GET", "/api/users/:id").size());
+        assertEquals(3, stack.compile("POST", "/api/users").size());
+        assertEquals(1, stack.compile("GET", "/home").size());
+        assertEquals(2, stack.compile("GET", "/admin").size());
+        assertSame(stack.compile("GET", "/home"), stack.compile("GET", "/home"));
+    }
+
+    @Test
+    void undecidableScopesAreCheckedPerRequest() throws Exception {
+        List<String> hits = new ArrayList<>();
+        MiddlewareStack stack = new MiddlewareStack()
+            .useForPath("/users/*/edit", (req, chain) -> { hits.add(req.path()); return chain.next(); })
+            .useForMethods(List.of("HEAD"), (req, chain) -> { hits.add("head"); return chain.next(); });
+
+        stack.execute(request("GET", "/users/7/edit"), "GET", "/users/:id/edit", () -> "ok");
+        stack.execute(request("HEAD", "/users/7/view"), "GET", "/users/:id/view", () -> "ok");
+
+        assertEquals(List.of("/users/7/edit", "head"), hits);
+    }
+
+    @Test
+    void addingMiddlewareRecompilesChains() {
+        MiddlewareStack stack = new MiddlewareStack().use((req, chain) -> chain.next());
+        assertEquals(1, stack.compile("GET", "/").size());
+
+        stack.use((req, chain) -> chain.next());
+        assertEquals(2, stack.compile("GET", "/").size());
+    }
+
+    @Test
+    void middlewareCanRunTheRestOfTheChainAgain() throws Exception {
+        List<String> order = new ArrayList<>();
+        MiddlewareStack stack = new MiddlewareStack()
+            .use((req, chain) -> { chain.next(); return chain.next(); })
+            .use((req, chain) -> { order.add("inner"); return chain.next(); });
+
+        stack.execute(request("GET", "/"), "GET", "/", () -> { order.add("handler"); return "ok"; });
+
+        assertEquals(List.of("inner", "handler", "inner", "handler"), order);
+    }
 }
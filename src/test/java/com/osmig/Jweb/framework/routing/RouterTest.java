@@ -54,4 +54,60 @@ class RouterTest {
 
         assertTrue(router.match("PATCH", "/thing").isPresent());
     }
+
+    @Test
+    void staticSegmentsWinOverParamsWhateverTheOrder() {
+        Router router = new Router();
+        router.get("/users/:id", req -> "user");
+        router.get("/users/new", req -> "form");
+
+        assertEquals("/users/new", router.match("GET", "/users/new").orElseThrow().route().getPath());
+        assertEquals("/users/:id", router.match("GET", "/users/7").orElseThrow().route().getPath());
+    }
+
+    @Test
+    void methodFallsThroughToOtherBranches() {
+        Router router = new Router();
+        router.get("/users/new", req -> "form");
+        router.post("/users/:id", req -> "update");
+
+        var match = router.match("POST", "/users/new").orElseThrow();
+        assertEquals("new", match.params().get("id"));
+        assertEquals(Set.of("GET", "POST"), router.allowedMethods("/users/new"));
+    }
+
+    @Test
+    void wildcardSpansSegments() {
+        Router router = new Router();
+        router.get("/files/*", req -> "file");
+        router.get("/files/:name/meta", req -> "meta");
+
+        assertTrue(router.match("GET", "/files/a/b/c.txt").isPresent());
+        assertEquals("/files/:name/meta", router.match("GET", "/files/x/meta").orElseThrow().route().getPath());
+        assertTrue(router.match("GET", "/other/a").isEmpty());
+    }
+
+    @Test
+    void typedParamsAreConvertedAtMatchTime() {
+        Router router = new Router();
+        TypedRoute.Path1<Long> user = TypedRoute.path("/items/:id", Long.class);
+        router.addRoute(user.route("GET", req -> "item"));
+        router.get("/items/:slug", req -> "by slug");
+
+        var byId = router.match("GET", "/items/42").orElseThrow();
+        assertEquals(42L, byId.values().get("id"));
+        // Not a Long: the next route gets it
+        assertEquals("/items/:slug", router.match("GET", "/items/abc").orElseThrow().route().getPath());
+    }
+
+    @Test
+    void unconvertibleParamWithNoAlternativeStillMatches() {
+        Router router = new Router();
+        router.addRoute(TypedRoute.path("/orders/:id", Integer.class).route("GET", req -> "order"));
+
+        var match = router.match("GET", "/orders/x").orElseThrow();
+        assertNull(match.values());
+        assertThrows(TypedRoute.RouteParamException.class,
+            () -> match.route().convertParams(match.params()));
+    }
 }
@@ -0,0 +1,76 @@
+package com.osmig.Jweb.framework.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionTest {
+
+    private static final byte[] PAGE = ("<ul>" + "<li class=\"item\">row</li>".repeat(400) + "</ul>")
+        .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void negotiatesByQualityPreferringGzip() {
+        assertEquals(Compression.Encoding.GZIP, Compression.negotiate("gzip, deflate, br"));
+        assertEquals(Compression.Encoding.DEFLATE, Compression.negotiate("gzip;q=0.5, deflate"));
+        assertEquals(Compression.Encoding.DEFLATE, Compression.negotiate("gzip;q=0, *"));
+        assertEquals(Compression.Encoding.GZIP, Compression.negotiate("*"));
+        assertEquals(Compression.Encoding.IDENTITY, Compression.negotiate("br"));
+        assertEquals(Compression.Encoding.IDENTITY, Compression.negotiate(null));
+    }
+
+    @Test
+    void compressedBodiesDecodeToTheOriginal() throws Exception {
+        byte[] gzip = Compression.compress(PAGE, 0, PAGE.length, Compression.Encoding.GZIP);
+        byte[] deflate = Compression.compress(PAGE, 0, PAGE.length, Compression.Encoding.DEFLATE);
+
+        assertTrue(gzip.length < PAGE.length / 4);
+        assertArrayEquals(PAGE, read(new GZIPInputStream(new ByteArrayInputStream(gzip))));
+        assertArrayEquals(PAGE, read(new InflaterInputStream(new ByteArrayInputStream(deflate))));
+    }
+
+    @Test
+    void streamsWithFlushesBetweenChunks() throws Exception {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (OutputStream out = Compression.open(sink, Compression.Encoding.GZIP)) {
+            for (int i = 0; i < PAGE.length; i += 1000) {
+                out.write(PAGE, i, Math.min(1000, PAGE.length - i));
+                out.flush();
+            }
+        }
+        assertArrayEquals(PAGE, read(new GZIPInputStream(new ByteArrayInputStream(sink.toByteArray()))));
+    }
+
+    @Test
+    void variantsAreMadeOnceAndSkipSmallBodies() {
+        Compression.Variants page = Compression.Variants.of(PAGE);
+        byte[] gzip = page.get(Compression.Encoding.GZIP);
+        assertSame(gzip, page.get(Compression.Encoding.GZIP));
+        assertEquals(Compression.Encoding.GZIP, page.effective(Compression.Encoding.GZIP));
+
+        Compression.Variants tiny = Compression.Variants.of("ok".getBytes(StandardCharsets.UTF_8));
+        assertEquals(Compression.Encoding.IDENTITY, tiny.effective(Compression.Encoding.GZIP));
+        assertSame(tiny.identity(), tiny.get(Compression.Encoding.GZIP));
+    }
+
+    @Test
+    void encodedVariantsHaveTheirOwnEtag() {
+        String etag = "\"abc\"";
+        assertEquals("\"abc-gzip\"", Compression.etagFor(etag, Compression.Encoding.GZIP));
+        assertEquals(etag, Compression.etagFor(etag, Compression.Encoding.IDENTITY));
+    }
+
+    private static byte[] read(InputStream in) throws Exception {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+}
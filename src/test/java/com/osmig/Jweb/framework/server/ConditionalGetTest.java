@@ -0,0 +1,74 @@
+package com.osmig.Jweb.framework.server;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConditionalGetTest {
+
+    private static MockHttpServletRequest get() {
+        return new MockHttpServletRequest("GET", "/posts/1");
+    }
+
+    @Test
+    void matchingVersionIsNotModified() {
+        String etag = ConditionalGet.versionEtag("42");
+        MockHttpServletRequest servlet = get();
+        servlet.addHeader("If-None-Match", "\"other\", " + etag);
+
+        ResponseEntity<String> response = ConditionalGet.check(new Request(servlet), Optional.of("42"), Optional.empty());
+
+        assertNotNull(response);
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals(etag, response.getHeaders().getETag());
+    }
+
+    @Test
+    void changedVersionRendersAndQueuesTheNewEtag() {
+        MockHttpServletRequest servlet = get();
+        servlet.addHeader("If-None-Match", ConditionalGet.versionEtag("41"));
+        Request request = new Request(servlet);
+
+        assertNull(ConditionalGet.check(request, Optional.of("42"), Optional.empty()));
+        assertEquals(ConditionalGet.versionEtag("42"), request.responseHeaders().get("ETag"));
+    }
+
+    @Test
+    void lastModifiedComparesToTheSecond() {
+        Instant modified = Instant.parse("2026-03-01T10:15:30.750Z");
+        MockHttpServletRequest servlet = get();
+        servlet.addHeader("If-Modified-Since", "Sun, 01 Mar 2026 10:15:30 GMT");
+        Request request = new Request(servlet);
+
+        assertNotNull(ConditionalGet.check(request, Optional.empty(), Optional.of(modified)));
+        assertEquals("Sun, 01 Mar 2026 10:15:30 GMT", request.responseHeaders().get("Last-Modified"));
+
+        MockHttpServletRequest older = get();
+        older.addHeader("If-Modified-Since", "Sun, 01 Mar 2026 10:15:29 GMT");
+        assertNull(ConditionalGet.check(new Request(older), Optional.empty(), Optional.of(modified)));
+    }
+
+    @Test
+    void onlyGetAndHeadAreConditional() {
+        MockHttpServletRequest post = new MockHttpServletRequest("POST", "/posts/1");
+        post.addHeader("If-None-Match", "*");
+        assertNull(ConditionalGet.check(new Request(post), Optional.of("42"), Optional.empty()));
+    }
+
+    @Test
+    void strongEtagHashesTheBytes() {
+        byte[] page = "<p>hello</p>".getBytes();
+        String etag = ConditionalGet.strongEtag(page, 0, page.length);
+
+        assertEquals(etag, ConditionalGet.strongEtag(page.clone(), 0, page.length));
+        assertNotEquals(etag, ConditionalGet.strongEtag(page, 0, page.length - 1));
+        assertTrue(ConditionalGet.matches("W/" + etag, etag));
+        assertFalse(ConditionalGet.matches(null, etag));
+    }
+}
@@ -0,0 +1,77 @@
+package com.osmig.Jweb.framework.server;
+
+import com.osmig.Jweb.framework.js.JsMinifier;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncodedAssetTest {
+
+    private static final String SCRIPT = """
+        (function(){
+            // registry of handlers
+            var handlers = {};
+            var url = 'ws://' + location.host;   // keeps its quotes
+        """ + "    handlers.x = function(){ return 1; };\n".repeat(100) + "})();\n";
+
+    private static EncodedAsset asset() {
+        return EncodedAsset.of(SCRIPT, JsMinifier.minify(SCRIPT), MediaType.TEXT_PLAIN, CacheControl.noCache());
+    }
+
+    @Test
+    void minifiesWithoutTouchingQuotedLines() {
+        String minified = JsMinifier.minify(SCRIPT);
+        assertFalse(minified.contains("registry of handlers"));
+        assertTrue(minified.contains("var url = 'ws://' + location.host;   // keeps its quotes"));
+        assertFalse(minified.contains("\n    "));
+        assertEquals("var re = a / b // half", JsMinifier.minify("  var re = a / b // half"));
+    }
+
+    @Test
+    void versionIsAContentHash() {
+        EncodedAsset asset = asset();
+        assertEquals(16, asset.version().length());
+        assertEquals(asset.version(), asset().version());
+        assertNotEquals(asset.version(),
+            EncodedAsset.of("x", "x", MediaType.TEXT_PLAIN, CacheControl.noCache()).version());
+    }
+
+    @Test
+    void responsesArePrebuiltPerEncoding() throws Exception {
+        EncodedAsset asset = asset();
+        ResponseEntity<byte[]> gzip = asset.respond("gzip, deflate", null);
+
+        assertSame(gzip, asset.respond("deflate;q=0.5, gzip", null));
+        assertEquals("gzip", gzip.getHeaders().getFirst("Content-Encoding"));
+        assertEquals(asset.etag(Compression.Encoding.GZIP), gzip.getHeaders().getETag());
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip.getBody()))) {
+            assertArrayEquals(asset.bytes(), in.readAllBytes());
+        }
+
+        ResponseEntity<byte[]> plain = asset.respond(null, null);
+        assertNull(plain.getHeaders().getFirst("Content-Encoding"));
+        assertEquals(JsMinifier.minify(SCRIPT), new String(plain.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void currentEtagIsNotModified() {
+        EncodedAsset asset = asset();
+        String etag = asset.etag(Compression.Encoding.GZIP);
+
+        ResponseEntity<byte[]> response = asset.respond("gzip", "\"old\", " + etag);
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        assertEquals(etag, response.getHeaders().getETag());
+
+        // The identity variant has its own validator
+        assertEquals(HttpStatus.OK, asset.respond(null, etag).getStatusCode());
+    }
+}
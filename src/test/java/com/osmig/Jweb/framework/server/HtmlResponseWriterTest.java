@@ -0,0 +1,51 @@
+package com.osmig.Jweb.framework.server;
+
+import com.osmig.Jweb.framework.vdom.HtmlSink;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HtmlResponseWriterTest {
+
+    // Larger than the biggest write buffer, so it can't be sent in one piece
+    private static final String PAGE = "<ul>" + "<li>row é</li>".repeat(10_000) + "</ul>";
+    private static final byte[] BYTES = PAGE.getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void plainGetEncodesALargePageOnce() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HtmlResponseWriter writer = new HtmlResponseWriter(response, null);
+        writer.validate(null, null);
+
+        writer.writeAndClose(new HtmlSink().append(PAGE));
+
+        assertArrayEquals(BYTES, response.getContentAsByteArray());
+        assertEquals(BYTES.length, writer.encodedBytes());
+        assertNull(response.getHeader("ETag"));
+    }
+
+    @Test
+    void conditionalGetIsHashedBeforeSending() throws Exception {
+        String etag = ConditionalGet.strongEtag(BYTES, 0, BYTES.length);
+
+        MockHttpServletResponse current = new MockHttpServletResponse();
+        HtmlResponseWriter writer = new HtmlResponseWriter(current, null);
+        writer.validate(etag, null);
+        writer.writeAndClose(new HtmlSink().append(PAGE));
+
+        assertEquals(304, current.getStatus());
+        assertEquals(0, current.getContentAsByteArray().length);
+        assertEquals(BYTES.length, writer.encodedBytes());
+
+        MockHttpServletResponse changed = new MockHttpServletResponse();
+        writer = new HtmlResponseWriter(changed, null);
+        writer.validate("\"other\"", null);
+        writer.writeAndClose(new HtmlSink().append(PAGE));
+
+        assertEquals(etag, changed.getHeader("ETag"));
+        assertArrayEquals(BYTES, changed.getContentAsByteArray());
+    }
+}
@@ -0,0 +1,40 @@
+package com.osmig.Jweb.framework.server;
+
+import com.osmig.Jweb.framework.styles.CriticalCss;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JWebAssetsControllerTest {
+
+    private final JWebAssetsController controller = new JWebAssetsController();
+
+    @Test
+    void registeredStylesheetIsServedBeforeAnyPageRendersIt() {
+        String css = ".registered{color:red}";
+        String version = CriticalCss.register(css);
+
+        ResponseEntity<byte[]> response = controller.stylesheet(version, null, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(css, new String(response.getBody(), StandardCharsets.UTF_8));
+        assertTrue(response.getHeaders().getCacheControl().contains("immutable"));
+    }
+
+    @Test
+    void unknownVersionGetsTheRegisteredSheetUncached() {
+        String css = ".current{color:blue}";
+        CriticalCss.register(css);
+
+        // e.g. a page rendered by an older deployment
+        ResponseEntity<byte[]> response = controller.stylesheet("0123456789abcdef", null, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(css, new String(response.getBody(), StandardCharsets.UTF_8));
+        assertEquals("no-store", response.getHeaders().getCacheControl());
+    }
+}
@@ -17,6 +17,8 @@ class StateLoopTest {
         }
         StateManager.clearContext();
         EventRegistry.clearAll();
+        StateManager.setMaxContexts(10_000);
+        StateManager.setMaxBytes(64L * 1024 * 1024);
     }
 
     @Test
@@ -90,4 +92,104 @@ class StateLoopTest {
         String patched = context.getComponent("counter").render();
         assertTrue(patched.contains("Count: 2"));
     }
+
+    @Test
+    void onlyComponentsReadingChangedStateReRender() {
+        StateManager.StateContext context = StateManager.createContext();
+        State<Integer> count = StateHooks.useState(1);
+        State<String> name = StateHooks.useState("a");
+
+        StateHooks.useComponent("count", () ->
+            () -> new com.osmig.Jweb.framework.vdom.VText("Count: " + count.get())).toVNode();
+        StateHooks.useComponent("name", () ->
+            () -> new com.osmig.Jweb.framework.vdom.VText("Name: " + name.get())).toVNode();
+
+        count.set(2);
+        assertEquals(java.util.Set.of("count"),
+            context.getComponentsAffectedBy(context.getChangedStates()).keySet());
+    }
+
+    @Test
+    void contextIsOnlyRegisteredOnceUsed() {
+        int before = StateManager.contextCount();
+        StateManager.StateContext context = StateManager.createContext();
+        assertFalse(context.isActive());
+        assertEquals(before, StateManager.contextCount());
+
+        StateHooks.useState(0);
+        assertTrue(context.isActive());
+        assertEquals(before + 1, StateManager.contextCount());
+    }
+
+    @Test
+    void unusedContextIsReleasedWhenTheRequestFinishes() {
+        StateManager.StateContext context = StateManager.createContext();
+        String id = context.getSessionId();   // asked for, but nothing registered under it
+        StateManager.finishRequest();
+
+        assertNull(StateManager.getContext());
+        assertNull(StateManager.getContextById(id));
+        assertFalse(context.isActive());
+    }
+
+    @Test
+    void usedContextOutlivesTheRequest() {
+        StateManager.StateContext context = StateManager.createContext();
+        EventRegistry.register("click", e -> {});
+        StateManager.finishRequest();
+
+        assertSame(context, StateManager.getContextById(context.getSessionId()));
+        context.clearContext();
+    }
+
+    @Test
+    void registryEvictsLeastRecentlyUsed() {
+        StateManager.setMaxContexts(2);
+        StateManager.StateContext a = stateful();
+        StateManager.StateContext b = stateful();
+        StateManager.getContextById(a.getSessionId());   // a is now more recent than b
+        StateManager.StateContext c = stateful();
+
+        assertSame(a, StateManager.getContextById(a.getSessionId()));
+        assertNull(StateManager.getContextById(b.getSessionId()));
+        assertSame(c, StateManager.getContextById(c.getSessionId()));
+        a.clearContext();
+        c.clearContext();
+    }
+
+    @Test
+    void contextsWithAnOpenSocketAreNotEvicted() {
+        StateManager.setMaxContexts(1);
+        StateManager.StateContext live = stateful();
+        StateManager.connected(live.getSessionId());
+        StateManager.StateContext idle = stateful();
+        StateManager.StateContext next = stateful();
+
+        // The least recently used, but its page would get "Unknown context" errors
+        assertSame(live, StateManager.getContextById(live.getSessionId()));
+        assertNull(StateManager.getContextById(idle.getSessionId()));
+        assertSame(next, StateManager.getContextById(next.getSessionId()));
+        live.clearContext();
+        next.clearContext();
+    }
+
+    @Test
+    void memoryEstimateGrowsWithStateAndBoundsTheRegistry() {
+        StateManager.StateContext a = stateful();
+        assertEquals(StateManager.CONTEXT_BYTES + StateManager.STATE_BYTES, a.estimatedBytes());
+
+        StateManager.setMaxBytes(StateManager.registryBytes());
+        StateManager.StateContext b = stateful();
+
+        assertNull(StateManager.getContextById(a.getSessionId()));
+        assertSame(b, StateManager.getContextById(b.getSessionId()));
+        b.clearContext();
+    }
+
+    private static StateManager.StateContext stateful() {
+        StateManager.StateContext context = StateManager.createContext();
+        StateHooks.useState(0);
+        StateManager.finishRequest();
+        return context;
+    }
 }
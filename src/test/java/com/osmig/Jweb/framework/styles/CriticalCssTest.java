@@ -0,0 +1,98 @@
+package com.osmig.Jweb.framework.styles;
+
+import com.osmig.Jweb.framework.vdom.DocumentSlots;
+import com.osmig.Jweb.framework.vdom.HtmlSink;
+import com.osmig.Jweb.framework.vdom.VElement;
+import com.osmig.Jweb.framework.vdom.VFragment;
+import com.osmig.Jweb.framework.vdom.VNode;
+import com.osmig.Jweb.framework.vdom.VRaw;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CriticalCssTest {
+
+    private static final String CSS = """
+        *{box-sizing:border-box}
+        body{margin:0}
+        .card{padding:1rem}
+        .card .title, .unused{font-weight:bold}
+        #hero > h1:hover{color:red}
+        .modal{position:fixed}
+        @media (max-width:600px){.card{padding:0}.modal{inset:0}}
+        @media print{.modal{display:none}}
+        @keyframes spin{from{transform:rotate(0)}to{transform:rotate(360deg)}}
+        a[href^="http"]::after{content:"{ext}"}
+        """;
+
+    @AfterEach
+    void cleanup() {
+        PageStyles.clear();
+    }
+
+    private static VNode page() {
+        return VElement.of("body", List.of(
+            VElement.of("div", Map.of("class", "card featured"), List.of(
+                VElement.of("span", Map.of("class", "title"), List.of()))),
+            VElement.of("section", Map.of("id", "hero"), List.of(VElement.of("h1"))),
+            new VRaw("<a href=\"https://x.dev\" class=\"ext\">x</a>")));
+    }
+
+    @Test
+    void inlinesOnlyRulesThePageCanMatch() {
+        CriticalCss.Sheet sheet = CriticalCss.sheet(CSS);
+        String critical = sheet.critical(CriticalCss.usage(page()));
+
+        assertTrue(critical.contains("*{box-sizing:border-box}"));
+        assertTrue(critical.contains("body{margin:0}"));
+        assertTrue(critical.contains(".card .title, .unused{font-weight:bold}"));
+        assertTrue(critical.contains("#hero > h1:hover{color:red}"));
+        assertTrue(critical.contains("@media (max-width:600px){.card{padding:0}}"));
+        assertTrue(critical.contains("@keyframes spin{"));
+        assertTrue(critical.contains("a[href^=\"http\"]::after{content:\"{ext}\"}"));
+        assertFalse(critical.contains(".modal"));
+        assertFalse(critical.contains("@media print"));
+    }
+
+    @Test
+    void selectorsNeedEveryClassIdAndTag() {
+        CriticalCss.Usage usage = CriticalCss.usage(page());
+        assertTrue(CriticalCss.selectors("div.card.featured span").get(0).canMatch(usage));
+        assertFalse(CriticalCss.selectors("div.card.missing").get(0).canMatch(usage));
+        assertTrue(CriticalCss.selectors(":root, .x:not(.y)").get(0).canMatch(usage));
+        assertEquals(2, CriticalCss.selectors(":is(.a, .b), .c").size());
+    }
+
+    @Test
+    void pageGetsCriticalStyleAndFullSheetLink() {
+        PageStyles.open();
+        VNode head = CriticalCss.style(CSS).toVNode();
+        assertInstanceOf(VFragment.class, head);
+
+        DocumentSlots slots = new DocumentSlots();
+        VNode tree = VElement.of("html", List.of(VElement.of("head"), page()));
+        PageStyles.closeCurrent(tree, slots);
+        HtmlSink sink = new HtmlSink().withSlots(slots);
+        tree.writeTo(sink);
+        slots.finish(sink);
+        String html = sink.toString();
+
+        String version = CriticalCss.sheet(CSS).version();
+        String inHead = html.substring(0, html.indexOf("</head>"));
+        assertTrue(inHead.contains("<style>*{box-sizing:border-box}"));
+        assertFalse(inHead.contains(".modal"));
+        int link = inHead.indexOf("<link rel=\"preload\" href=\"/jweb/css/" + version + ".css\" as=\"style\"");
+        assertTrue(link > inHead.indexOf("<style>*{box-sizing:border-box}"));
+        assertTrue(inHead.contains("<noscript><link rel=\"stylesheet\" href=\"/jweb/css/" + version + ".css\"></noscript>"));
+        assertEquals(CSS, CriticalCss.stylesheet(version));
+    }
+
+    @Test
+    void withoutAPageTheFullSheetIsInlined() {
+        assertEquals("<style>" + CSS + "</style>", CriticalCss.style(CSS).toVNode().toHtml());
+    }
+}
@@ -0,0 +1,44 @@
+package com.osmig.Jweb.framework.styles;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrozenStyleTest {
+
+    @Test
+    void cssIsComputedOnceAndShared() {
+        FrozenStyle card = Styles.style().prop("padding:1rem").prop("color:red").freeze();
+
+        assertEquals("padding: 1rem; color: red;", card.build());
+        assertSame(card.build(), card.css());
+    }
+
+    @Test
+    void structurallyEqualStylesAreInterned() {
+        FrozenStyle a = Styles.constant(Styles.style().prop("margin:0").prop("display:flex"));
+        FrozenStyle b = Styles.constant(Styles.style().prop("margin:0").prop("display:flex"));
+        FrozenStyle reordered = Styles.constant(Styles.style().prop("display:flex").prop("margin:0"));
+
+        assertSame(a, b);
+        assertSame(a, a.freeze());
+        assertNotSame(a, reordered);   // order matters for shorthands vs longhands
+    }
+
+    @Test
+    void frozenStylesRejectChanges() {
+        FrozenStyle frozen = Styles.style().prop("gap:4px").freeze();
+        assertThrows(UnsupportedOperationException.class, () -> frozen.prop("gap:8px"));
+        assertEquals("gap: 4px;", frozen.build());
+    }
+
+    @Test
+    void freezingLeavesTheBuilderMutable() {
+        Style<?> builder = Styles.style().prop("top:0");
+        FrozenStyle frozen = builder.freeze();
+        builder.prop("left:0");
+
+        assertEquals("top: 0;", frozen.build());
+        assertEquals("top: 0; left: 0;", builder.build());
+    }
+}
@@ -0,0 +1,66 @@
+package com.osmig.Jweb.framework.styles;
+
+import com.osmig.Jweb.framework.vdom.VElement;
+import com.osmig.Jweb.framework.vdom.VFragment;
+import com.osmig.Jweb.framework.vdom.VNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageStylesTest {
+
+    @AfterEach
+    void cleanup() {
+        PageStyles.clear();
+    }
+
+    private static StyledElement card(String hoverColor) {
+        return new StyledElement(VElement.of("div"))
+            .style(Styles.style().prop("padding:1rem"))
+            .hover(Styles.style().prop("background:" + hoverColor));
+    }
+
+    @Test
+    void identicalStylesShareOneRuleInThePageSheet() {
+        PageStyles.open();
+        List<VNode> cards = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            cards.add(card("#f5f5f5").toVNode());
+        }
+        cards.add(card("#eee").toVNode());
+
+        String sheet = PageStyles.closeCurrent();
+        String html = VElement.of("ul", cards).toHtml();
+        String cls = ((VElement) cards.get(0)).getAttributes().get("class");
+
+        assertTrue(cls.startsWith("jweb-"));
+        assertEquals(cls, ((VElement) cards.get(499)).getAttributes().get("class"));
+        assertFalse(html.contains("<style>"));
+        assertTrue(sheet.startsWith("<style>." + cls + "{padding: 1rem;}." + cls + ":hover{background: #f5f5f5;}"));
+        assertEquals(1, sheet.split("<style>", -1).length - 1);
+        assertEquals(2, PageStyles.current().size());
+    }
+
+    @Test
+    void rulesAfterTheSheetClosesAreInlinedUnlessAlreadyInIt() {
+        PageStyles.open();
+        card("#f5f5f5").toVNode();
+        PageStyles.closeCurrent();
+
+        assertInstanceOf(VElement.class, card("#f5f5f5").toVNode());
+        VNode late = card("#ddd").toVNode();
+        assertInstanceOf(VFragment.class, late);
+        assertTrue(late.toHtml().startsWith("<style>.jweb-"));
+    }
+
+    @Test
+    void withoutASheetRulesAreInlined() {
+        VNode node = card("#f5f5f5").toVNode();
+        assertInstanceOf(VFragment.class, node);
+        assertTrue(node.toHtml().contains(":hover{background: #f5f5f5;}"));
+    }
+}
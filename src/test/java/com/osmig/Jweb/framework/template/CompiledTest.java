@@ -0,0 +1,78 @@
+package com.osmig.Jweb.framework.template;
+
+import com.osmig.Jweb.framework.core.Element;
+import com.osmig.Jweb.framework.styles.PageStyles;
+import com.osmig.Jweb.framework.styles.StyledElement;
+import com.osmig.Jweb.framework.styles.Styles;
+import com.osmig.Jweb.framework.vdom.VElement;
+import com.osmig.Jweb.framework.vdom.VRaw;
+import com.osmig.Jweb.framework.vdom.VText;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledTest {
+
+    @Test
+    void shapeIsBuiltOnceAndHolesFillPerRender() {
+        AtomicInteger builds = new AtomicInteger();
+        Compiled<String> view = Compiled.of(() -> {
+            builds.incrementAndGet();
+            return () -> VElement.of("main", List.of(
+                VElement.of("h1", List.of(new VText("Shop"))),
+                Compiled.<String>hole(name -> () -> new VText("Hello " + name)).toVNode()));
+        });
+
+        assertEquals("<main><h1>Shop</h1>Hello a &amp; b</main>", view.bind("a & b").toHtml());
+        assertEquals("<main><h1>Shop</h1>Hello c</main>", view.bind("c").toHtml());
+        assertEquals(1, builds.get());
+        assertEquals(1, view.holeCount());
+    }
+
+    @Test
+    void markupLookingLikeAHoleStaysStatic() {
+        Compiled<String> view = Compiled.of(() -> () -> VElement.of("p", List.of(
+            new VText("a\u00000\u0000b"),
+            new VRaw("\u00001\u0000"),
+            Compiled.<String>hole(s -> () -> new VText(s)).toVNode(),
+            Compiled.<String>hole(s -> () -> new VText(s.toUpperCase())).toVNode())));
+
+        assertEquals("<p>a\u00000\u0000b\u00001\u0000xX</p>", view.bind("x").toHtml());
+        assertEquals(2, view.holeCount());
+    }
+
+    @Test
+    void holeRenderedToASeparateStringFails() {
+        Compiled<String> view = Compiled.of(() -> () ->
+            new VRaw(VElement.of("div", List.of(Compiled.<String>hole(s -> () -> new VText(s)).toVNode())).toHtml()));
+        assertThrows(IllegalStateException.class, () -> view.bind("x"));
+    }
+
+    @Test
+    void holeOutsideCompiledShapeFails() {
+        Element hole = Compiled.hole(x -> () -> new VText("x"));
+        assertThrows(IllegalStateException.class, hole::toVNode);
+    }
+
+    @Test
+    void stylesOfTheStaticMarkupReachEveryPage() {
+        Compiled<String> view = Compiled.of(() -> () -> VElement.of("main", List.of(
+            new StyledElement(VElement.of("nav")).hover(Styles.style().prop("color:red")).toVNode(),
+            Compiled.<String>hole(s -> () -> new VText(s)).toVNode())));
+        try {
+            PageStyles.open();
+            view.bind("a").toHtml();
+            String firstSheet = PageStyles.closeCurrent();
+            assertTrue(firstSheet.contains(":hover{color: red;}"));
+
+            PageStyles.open();
+            view.bind("b").toHtml();
+            assertEquals(firstSheet, PageStyles.closeCurrent());
+        } finally {
+            PageStyles.clear();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.osmig.Jweb.framework.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private final Map<String, Long> deadlines = new HashMap<>();
+    private final TimingWheel<String> wheel = new TimingWheel<>(1000, 64, deadlines::get);
+    private final long start = System.currentTimeMillis();
+
+    private void add(String key, long deadline) {
+        deadlines.put(key, deadline);
+        wheel.schedule(key);
+    }
+
+    @Test
+    void expiresOnlyWhatIsDue() {
+        add("soon", start + 2_000);
+        add("later", start + 30_000);
+
+        assertTrue(wheel.advance(start + 1_000, 100).isEmpty());
+        assertEquals(List.of("soon"), wheel.advance(start + 3_000, 100));
+        assertEquals(1, wheel.size());
+        assertEquals(List.of("later"), wheel.advance(start + 31_000, 100));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void extendedDeadlinesAreRescheduledNotExpired() {
+        add("touched", start + 2_000);
+        deadlines.put("touched", start + 10_000);   // a touch: no call into the wheel
+
+        assertTrue(wheel.advance(start + 3_000, 100).isEmpty());
+        assertEquals(1, wheel.size());
+        assertEquals(List.of("touched"), wheel.advance(start + 11_000, 100));
+    }
+
+    @Test
+    void deadlinesBeyondOneRotationWaitForTheirRound() {
+        add("far", start + 100_000);   // the wheel spans 64 seconds
+
+        assertTrue(wheel.advance(start + 70_000, 100).isEmpty());
+        assertEquals(List.of("far"), wheel.advance(start + 101_000, 100));
+    }
+
+    @Test
+    void burstsAreSpreadOverCalls() {
+        for (int i = 0; i < 5; i++) {
+            add("k" + i, start + 1_000);
+        }
+
+        assertEquals(2, wheel.advance(start + 2_000, 2).size());
+        assertEquals(2, wheel.advance(start + 2_000, 2).size());
+        assertEquals(1, wheel.advance(start + 2_000, 2).size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelledEntriesNeverExpire() {
+        add("gone", start + 1_000);
+        wheel.cancel("gone");
+
+        assertTrue(wheel.advance(start + 5_000, 100).isEmpty());
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,67 @@
+package com.osmig.Jweb.framework.vdom;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentSlotsTest {
+
+    @Test
+    void fillsSlotsDuringTheWalk() {
+        VNode page = VElement.of("html", List.of(
+            VElement.of("head", List.of(VElement.of("title", List.of(new VText("Default"))))),
+            VElement.of("body", List.of(new VText("content")))));
+        DocumentSlots slots = new DocumentSlots()
+            .title("A & B")
+            .head("<meta name=\"description\" content=\"d\">")
+            .bodyEnd("<script>page()</script>")
+            .scripts("<script src=\"/runtime.js\"></script>");
+
+        HtmlSink sink = new HtmlSink().withSlots(slots);
+        page.writeTo(sink);
+        slots.finish(sink);
+
+        assertEquals("<html><head><title>A &amp; B</title><meta name=\"description\" content=\"d\"></head>"
+            + "<body>content<script>page()</script><script src=\"/runtime.js\"></script></body></html>",
+            sink.toString());
+    }
+
+    @Test
+    void addsTitleWhenTheHeadHasNone() {
+        VNode page = VElement.of("html", List.of(VElement.of("head"), VElement.of("body")));
+        DocumentSlots slots = new DocumentSlots().title("Home");
+
+        HtmlSink sink = new HtmlSink().withSlots(slots);
+        page.writeTo(sink);
+        slots.finish(sink);
+
+        assertEquals("<html><head><title>Home</title></head><body></body></html>", sink.toString());
+    }
+
+    @Test
+    void placesSlotsInRawDocumentsAfterTheWalk() {
+        VNode page = new VRaw("<html><head><title>x</title></head><body>raw</body></html>");
+        DocumentSlots slots = new DocumentSlots().title("T").head("<link>").scripts("<script></script>");
+
+        HtmlSink sink = new HtmlSink().withSlots(slots);
+        page.writeTo(sink);
+        slots.finish(sink);
+
+        assertEquals("<html><head><title>T</title><link></head><body>raw<script></script></body></html>",
+            sink.toString());
+    }
+
+    @Test
+    void fragmentsGetNoFrameworkScripts() {
+        VNode fragment = VElement.of("div", List.of(new VText("swap")));
+        DocumentSlots slots = new DocumentSlots().bodyEnd("<script>page()</script>").scripts("<script></script>");
+
+        HtmlSink sink = new HtmlSink().withSlots(slots);
+        fragment.writeTo(sink);
+        slots.finish(sink);
+
+        assertEquals("<div>swap</div><script>page()</script>", sink.toString());
+    }
+}
@@ -0,0 +1,59 @@
+package com.osmig.Jweb.framework.vdom;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HtmlSinkTest {
+
+    @Test
+    void writesNestedTreeInOnePass() {
+        Map<String, String> attrs = new LinkedHashMap<>();
+        attrs.put("id", "main");
+        attrs.put("hidden", null);
+        VNode tree = VElement.of("div", attrs, List.of(
+            VElement.of("p", List.of(new VText("a < b & \"c\""))),
+            new VFragment(new VRaw("<b>raw</b>"), VElement.of("br"))
+        ));
+
+        HtmlSink sink = new HtmlSink();
+        tree.writeTo(sink);
+
+        assertEquals("<div id=\"main\" hidden><p>a &lt; b &amp; &quot;c&quot;</p><b>raw</b><br></div>",
+            sink.toString());
+        assertEquals(sink.toString(), tree.toHtml());
+    }
+
+    @Test
+    void escapesAttributeValues() {
+        VNode node = VElement.of("a", Map.of("title", "it's <x>"), List.of());
+        assertEquals("<a title=\"it&#x27;s &lt;x&gt;\"></a>", node.toHtml());
+    }
+
+    @Test
+    void reusableBufferIsClearedBetweenRenders() {
+        assertEquals("first", HtmlSink.render(new VText("first")));
+        assertEquals("second", HtmlSink.render(new VText("second")));
+    }
+
+    @Test
+    void drainsInChunksWithoutSplittingSurrogatePairs() throws Exception {
+        HtmlSink sink = new HtmlSink();
+        sink.append("ab\uD83D\uDE00cd");
+
+        StringBuilder received = new StringBuilder();
+        List<Integer> sizes = new java.util.ArrayList<>();
+        sink.drainTo((chars, length) -> {
+            received.append(chars, 0, length);
+            sizes.add(length);
+        }, 3);
+
+        assertEquals("ab\uD83D\uDE00cd", received.toString());
+        assertEquals(List.of(2, 3, 1), sizes);
+        assertEquals(0, sink.length());
+    }
+}
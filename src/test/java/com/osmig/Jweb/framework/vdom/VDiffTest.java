@@ -0,0 +1,115 @@
+package com.osmig.Jweb.framework.vdom;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VDiffTest {
+
+    @Test
+    void identicalTreesProduceNoOps() {
+        VNode tree = list("a", "b");
+        assertTrue(VDiff.diff(tree, list("a", "b")).isEmpty());
+    }
+
+    @Test
+    void changedTextIsASingleTextOp() {
+        VNode before = VElement.of("div", Map.of("id", "c"), List.of(
+            VElement.of("span", List.of(new VText("Count: "), new VText("1")))));
+        VNode after = VElement.of("div", Map.of("id", "c"), List.of(
+            VElement.of("span", List.of(new VText("Count: "), new VText("2")))));
+
+        List<VPatch> ops = VDiff.diff(before, after);
+
+        assertEquals(1, ops.size());
+        assertEquals("text", ops.get(0).getOp());
+        assertArrayEquals(new int[]{0, 0}, ops.get(0).getPath());
+        assertArrayEquals(new String[]{"span", "#text"}, ops.get(0).getTags());
+        assertEquals("Count: 2", ops.get(0).getValue());
+    }
+
+    @Test
+    void rowsTheParserMovesIntoATbodyAreReplacedAsAWhole() {
+        VNode before = VElement.of("table", Map.of("id", "t"), List.of(row("1")));
+        VNode after = VElement.of("table", Map.of("id", "t"), List.of(row("2")));
+
+        List<VPatch> ops = VDiff.diff(before, after);
+
+        // The browser's DOM is table > tbody > tr, so [0, 0, 0] would be the wrong node
+        assertEquals(1, ops.size());
+        assertEquals("html", ops.get(0).getOp());
+        assertArrayEquals(new int[0], ops.get(0).getPath());
+        assertEquals("<tr><td>2</td></tr>", ops.get(0).getHtml());
+    }
+
+    @Test
+    void rowsInAnExplicitTbodyAreDiffed() {
+        VNode before = VElement.of("table", List.of(VElement.of("tbody", List.of(row("1")))));
+        VNode after = VElement.of("table", List.of(VElement.of("tbody", List.of(row("2")))));
+
+        List<VPatch> ops = VDiff.diff(before, after);
+
+        assertEquals(1, ops.size());
+        assertEquals("text", ops.get(0).getOp());
+        assertArrayEquals(new String[]{"tbody", "tr", "td", "#text"}, ops.get(0).getTags());
+    }
+
+    @Test
+    void keyedChildrenAreMovedNotReRendered() {
+        List<VPatch> ops = VDiff.diff(list("a", "b", "c"), list("c", "a", "b"));
+
+        assertEquals(1, ops.size());
+        assertEquals("move", ops.get(0).getOp());
+        assertEquals(2, ops.get(0).getFrom());
+        assertEquals(0, ops.get(0).getIndex());
+    }
+
+    @Test
+    void keyedRemovalAndInsertion() {
+        List<VPatch> ops = VDiff.diff(list("a", "b", "c"), list("a", "c", "d"));
+
+        assertEquals(List.of("remove", "insert"), ops.stream().map(VPatch::getOp).toList());
+        assertEquals(1, ops.get(0).getIndex());
+        assertEquals(2, ops.get(1).getIndex());
+        assertEquals("<li data-key=\"d\">d</li>", ops.get(1).getHtml());
+    }
+
+    @Test
+    void attributeChangesAndRemovals() {
+        VNode before = VElement.of("p", Map.of("class", "old", "title", "t"), List.of());
+        VNode after = VElement.of("p", Map.of("class", "new"), List.of());
+
+        List<VPatch> ops = VDiff.diff(before, after);
+
+        assertEquals(List.of("removeAttr", "attr"), ops.stream().map(VPatch::getOp).toList());
+        assertEquals("title", ops.get(0).getName());
+        assertEquals("new", ops.get(1).getValue());
+    }
+
+    @Test
+    void rawChildrenFallBackToInnerHtml() {
+        VNode before = VElement.of("div", List.of(new VRaw("<b>1</b>")));
+        VNode after = VElement.of("div", List.of(new VRaw("<b>2</b>")));
+
+        List<VPatch> ops = VDiff.diff(before, after);
+
+        assertEquals(1, ops.size());
+        assertEquals("html", ops.get(0).getOp());
+        assertEquals("<b>2</b>", ops.get(0).getHtml());
+    }
+
+    private static VNode row(String cell) {
+        return VElement.of("tr", List.of(VElement.of("td", List.of(new VText(cell)))));
+    }
+
+    private static VNode list(String... keys) {
+        List<VNode> items = new java.util.ArrayList<>();
+        for (String key : keys) {
+            items.add(VElement.of("li", Map.of("data-key", key), List.of(new VText(key))));
+        }
+        return VElement.of("ul", Map.of("id", "list"), items);
+    }
+}
@@ -0,0 +1,78 @@
+package com.osmig.Jweb.framework.vdom;
+
+import com.osmig.Jweb.framework.elements.El;
+import com.osmig.Jweb.framework.elements.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * What building a node allocates, checked on the real classes: a
+ * {@link VElement} holds arrays rather than collections, takes the
+ * {@link Tag} builder's arrays without copying, and shares the empty
+ * arrays and interned tag names between nodes.
+ */
+class VElementAllocationTest {
+
+    @Test
+    void elementHoldsArraysNotCollections() {
+        int fields = 0;
+        for (Field field : VElement.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            fields++;
+            Class<?> type = field.getType();
+            assertFalse(Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type),
+                field.getName() + " is a " + type.getSimpleName());
+        }
+        // Tag name, attribute names, values and count, children and count
+        assertEquals(6, fields);
+    }
+
+    @Test
+    void tagHandsItsArraysToTheNode() throws Exception {
+        Tag tag = El.div(El.class_("card"), El.id("n"), "text", El.span("child"));
+
+        VElement node = (VElement) tag.toVNode();
+
+        assertSame(read(Tag.class, tag, "attrNames"), read(VElement.class, node, "attrNames"));
+        assertSame(read(Tag.class, tag, "attrValues"), read(VElement.class, node, "attrValues"));
+        assertSame(read(Tag.class, tag, "children"), read(VElement.class, node, "children"));
+    }
+
+    @Test
+    void changingTheTagAfterwardsLeavesTheNodeAlone() {
+        Tag tag = El.div(El.class_("card"), "text");
+        VElement node = (VElement) tag.toVNode();
+
+        tag.attr("title", "t");
+
+        assertEquals(1, node.attributeCount());
+        assertFalse(node.hasAttribute("title"));
+    }
+
+    @Test
+    void emptyElementsShareTheirEmptyArraysAndTagName() throws Exception {
+        VElement first = VElement.of("BR");
+        VElement second = VElement.of("br", Map.of(), List.of());
+
+        assertSame(read(VElement.class, first, "attrNames"), read(VElement.class, second, "attrNames"));
+        assertSame(read(VElement.class, first, "children"), read(VElement.class, second, "children"));
+        assertSame(read(VElement.class, first, "tag"), read(VElement.class, second, "tag"));
+        assertTrue(first.getChildren().isEmpty());
+        assertTrue(first.getAttributes().isEmpty());
+    }
+
+    private static Object read(Class<?> type, Object target, String name) throws Exception {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(target);
+    }
+}
@@ -0,0 +1,151 @@
+package com.osmig.Jweb.framework.websocket;
+
+import com.osmig.Jweb.framework.util.Json;
+import com.osmig.Jweb.framework.websocket.WebSocketMessage.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundQueueTest {
+
+    // Holds the sender thread on its first message, like a stalled client
+    private final CountDownLatch stalled = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private volatile boolean disconnected;
+
+    private final OutboundQueue queue = new OutboundQueue("test", false, new OutboundQueue.Transport() {
+        @Override
+        public void send(byte[] payload, boolean binary) {
+            stalled.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sent.add(new String(payload, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() {
+            disconnected = true;
+        }
+    });
+
+    @AfterEach
+    void cleanup() {
+        release.countDown();
+        queue.close();
+        OutboundQueue.setMaxMessages(1000);
+        OutboundQueue.setMaxBytes(1024 * 1024);
+        OutboundQueue.setOverflowPolicy(OutboundQueue.OverflowPolicy.COALESCE);
+    }
+
+    @Test
+    void messagesAreSentInOrderWithoutBlockingTheCaller() throws Exception {
+        queue.offer(new PongResponse());
+        assertTrue(stalled.await(2, TimeUnit.SECONDS));
+        // The sender is stuck; offers still return immediately
+        queue.offer(new ErrorResponse("a"));
+        queue.offer(new ErrorResponse("b"));
+        assertEquals(2, queue.size());
+
+        release.countDown();
+        awaitSent(3);
+        assertTrue(sent.get(1).contains("\"a\"") && sent.get(2).contains("\"b\""));
+        assertEquals(0, queue.bytes());
+    }
+
+    @Test
+    void dropOldestKeepsTheNewestMessages() throws Exception {
+        OutboundQueue.setMaxMessages(2);
+        OutboundQueue.setOverflowPolicy(OutboundQueue.OverflowPolicy.DROP_OLDEST);
+        stallSender();
+
+        for (String name : List.of("a", "b", "c", "d")) {
+            assertTrue(queue.offer(new ErrorResponse(name)));
+        }
+        assertEquals(2, queue.size());
+
+        release.countDown();
+        awaitSent(3);
+        assertTrue(sent.get(1).contains("\"c\"") && sent.get(2).contains("\"d\""));
+    }
+
+    @Test
+    void patchesAreNeverDroppedAndDisconnectInstead() throws Exception {
+        OutboundQueue.setMaxMessages(2);
+        OutboundQueue.setOverflowPolicy(OutboundQueue.OverflowPolicy.DROP_OLDEST);
+        stallSender();
+
+        assertTrue(queue.offer(new DomUpdateResponse(List.of(new DomPatch("c", "<p>1</p>")))));
+        assertTrue(queue.offer(new EventHandledResponse("h1", false)));
+        assertTrue(queue.offer(new DomUpdateResponse(List.of(new DomPatch("c", "<p>2</p>")))));
+        assertEquals(2, queue.size());   // the acknowledgement made room
+        assertFalse(disconnected);
+
+        assertFalse(queue.offer(new DomUpdateResponse(List.of(new DomPatch("c", "<p>3</p>")))));
+        assertTrue(disconnected);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void coalesceMergesStateUpdatesByIdAndKeepsOtherMessages() throws Exception {
+        OutboundQueue.setMaxMessages(3);
+        stallSender();
+
+        queue.offer(new StateUpdateResponse(List.of(new StateData("x", 1), new StateData("y", 1))));
+        queue.offer(new DomUpdateResponse(List.of(new DomPatch("c", "<p>1</p>"))));
+        queue.offer(new StateUpdateResponse(List.of(new StateData("x", 2))));
+        queue.offer(new StateUpdateResponse(List.of(new StateData("x", 3))));
+        assertEquals(2, queue.size());
+
+        release.countDown();
+        awaitSent(3);
+        assertEquals("domUpdate", Json.parseTree(sent.get(1)).get("type").asText());
+        var merged = Json.parseTree(sent.get(2)).get("states");
+        assertEquals(2, merged.size());
+        assertEquals("y", merged.get(0).get("id").asText());
+        assertEquals(3, merged.get(1).get("value").asInt());
+    }
+
+    @Test
+    void byteLimitAppliesAndDisconnectPolicyClosesTheSession() throws Exception {
+        OutboundQueue.setMaxBytes(64);
+        OutboundQueue.setOverflowPolicy(OutboundQueue.OverflowPolicy.DISCONNECT);
+        stallSender();
+
+        assertTrue(queue.offer(new ErrorResponse("x".repeat(100))));   // alone it's still sent
+        assertFalse(queue.offer(new ErrorResponse("overflow")));
+        assertTrue(disconnected);
+        assertEquals(0, queue.size());
+        assertFalse(queue.offer(new PongResponse()));
+    }
+
+    @Test
+    void policiesAreNamedInConfig() {
+        assertSame(OutboundQueue.OverflowPolicy.DROP_OLDEST, OutboundQueue.OverflowPolicy.named("drop-oldest"));
+        assertSame(OutboundQueue.OverflowPolicy.COALESCE, OutboundQueue.OverflowPolicy.named(" Coalesce"));
+        assertThrows(IllegalArgumentException.class, () -> OutboundQueue.OverflowPolicy.named("block"));
+    }
+
+    private void stallSender() throws InterruptedException {
+        queue.offer(new PongResponse());
+        assertTrue(stalled.await(2, TimeUnit.SECONDS));
+    }
+
+    private void awaitSent(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (sent.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, sent.size());
+    }
+}
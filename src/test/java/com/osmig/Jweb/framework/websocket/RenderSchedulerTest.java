@@ -0,0 +1,116 @@
+package com.osmig.Jweb.framework.websocket;
+
+import com.osmig.Jweb.framework.events.DomEvent;
+import com.osmig.Jweb.framework.events.EventHandler;
+import com.osmig.Jweb.framework.events.EventRegistry;
+import com.osmig.Jweb.framework.state.State;
+import com.osmig.Jweb.framework.state.StateHooks;
+import com.osmig.Jweb.framework.state.StateManager;
+import com.osmig.Jweb.framework.websocket.WebSocketMessage.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenderSchedulerTest {
+
+    private final List<Object> sent = new CopyOnWriteArrayList<>();
+    private final RenderScheduler frames = new RenderScheduler("test", sent::add);
+
+    @AfterEach
+    void cleanup() {
+        frames.close();
+        StateManager.StateContext context = StateManager.getContext();
+        if (context != null) {
+            context.clearContext();
+        }
+        StateManager.clearContext();
+        EventRegistry.clearAll();
+        RenderScheduler.setFrameMillis(16);
+    }
+
+    @Test
+    void burstOfEventsIsMergedIntoFrames() throws Exception {
+        RenderScheduler.setFrameMillis(200);
+        StateManager.StateContext context = StateManager.createContext();
+        State<Integer> count = StateHooks.useState(0);
+        EventHandler increment = EventRegistry.register("input", e -> count.update(n -> n + 1));
+        String contextId = context.getSessionId();
+        StateManager.clearContext();
+
+        for (int i = 0; i < 5; i++) {
+            frames.event(contextId, context, increment.getId(), DomEvent.builder().type("input").build());
+        }
+        awaitAcks(5);
+
+        // At most the immediate first frame and one merged frame
+        List<FrameResponse> sentFrames = sent.stream()
+                .filter(FrameResponse.class::isInstance).map(FrameResponse.class::cast).toList();
+        assertTrue(sentFrames.size() <= 2, "frames: " + sentFrames.size());
+        FrameResponse last = sentFrames.get(sentFrames.size() - 1);
+        assertEquals(1, last.getStates().size());
+        assertEquals(5, last.getStates().get(0).getValue());
+        assertTrue(context.getChangedStates().isEmpty());
+    }
+
+    @Test
+    void setStateAndEventShareAFrame() throws Exception {
+        RenderScheduler.setFrameMillis(200);
+        StateManager.StateContext context = StateManager.createContext();
+        State<String> text = StateHooks.useState("");
+        State<Integer> submits = StateHooks.useState(0);
+        EventHandler submit = EventRegistry.register("submit", e -> submits.update(n -> n + 1));
+        StateManager.clearContext();
+
+        // Keep the scheduler inside a frame so both land in the next one
+        frames.setState(context, context.getState(text.getId()), "warm-up");
+        awaitFrames(1);
+        frames.setState(context, context.getState(text.getId()), "hello");
+        frames.event(context.getSessionId(), context, submit.getId(), DomEvent.builder().type("submit").build());
+        awaitFrames(2);
+
+        FrameResponse frame = (FrameResponse) sent.get(1);
+        assertEquals(2, frame.getStates().size());
+        assertEquals(1, frame.getHandled().size());
+        assertEquals(submit.getId(), frame.getHandled().get(0).getHandler());
+    }
+
+    @Test
+    void unknownHandlerIsReportedWithoutAFrame() throws Exception {
+        frames.event(null, null, "h_missing", DomEvent.builder().type("click").build());
+        long deadline = System.currentTimeMillis() + 2000;
+        while (sent.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(50);
+
+        assertEquals(1, sent.size());
+        assertInstanceOf(ErrorResponse.class, sent.get(0));
+    }
+
+    private void awaitAcks(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (acks() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, acks());
+    }
+
+    private int acks() {
+        return sent.stream()
+                .filter(FrameResponse.class::isInstance)
+                .mapToInt(m -> ((FrameResponse) m).getHandled() == null ? 0 : ((FrameResponse) m).getHandled().size())
+                .sum();
+    }
+
+    private void awaitFrames(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (sent.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, sent.size());
+    }
+}
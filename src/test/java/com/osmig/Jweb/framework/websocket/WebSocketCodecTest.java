@@ -0,0 +1,63 @@
+package com.osmig.Jweb.framework.websocket;
+
+import com.osmig.Jweb.framework.util.Json;
+import com.osmig.Jweb.framework.websocket.WebSocketMessage.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebSocketCodecTest {
+
+    @Test
+    void messagesDecodeToTheirClassInOnePass() {
+        Base event = WebSocketCodec.decode(
+                "{\"type\":\"event\",\"handler\":\"h_1\",\"value\":\"a\",\"formData\":{\"q\":\"x\"},\"extra\":1}");
+        EventMessage message = assertInstanceOf(EventMessage.class, event);
+        assertEquals("event", message.getType());
+        assertEquals("h_1", message.getHandler());
+        assertEquals(Map.of("q", "x"), message.getFormData());
+
+        assertInstanceOf(SetStateMessage.class, WebSocketCodec.decode("{\"type\":\"setState\",\"stateId\":\"s\",\"value\":3}"));
+        assertInstanceOf(InitMessage.class, WebSocketCodec.decode("{\"contextId\":\"c\",\"type\":\"init\"}"));
+        assertInstanceOf(ResyncMessage.class,
+                WebSocketCodec.decode("{\"type\":\"resync\",\"id\":\"list\"}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void typesWithoutPayloadDecodeAsBase() {
+        assertEquals("ping", WebSocketCodec.decode("{\"type\":\"ping\"}").getType());
+        assertEquals("bogus", WebSocketCodec.decode("{\"type\":\"bogus\",\"handler\":1}").getType());
+        assertNull(WebSocketCodec.decode("{}").getType());
+        assertThrows(Json.JsonException.class, () -> WebSocketCodec.decode("{not json"));
+    }
+
+    @Test
+    void frameSplitsIntoV1MessagesInApplyOrder() {
+        FrameResponse frame = new FrameResponse(
+                List.of(new StateData("s1", 2)),
+                List.of(new DomPatch("c1", "<p>2</p>")),
+                List.of(new HandledEvent("h_1", false), new HandledEvent("h_2", true)));
+
+        List<Base> messages = WebSocketCodec.legacy(frame);
+        assertEquals(List.of("stateUpdate", "domUpdate", "eventHandled", "eventHandled"),
+                messages.stream().map(Base::getType).toList());
+        assertTrue(((EventHandledResponse) messages.get(3)).isPreventDefault());
+
+        assertEquals(1, WebSocketCodec.legacy(new FrameResponse(null, null, List.of(new HandledEvent("h", false)))).size());
+    }
+
+    @Test
+    void encodedFrameIsTheJsonOfTheMessage() {
+        FrameResponse frame = new FrameResponse(List.of(new StateData("s1", "é")), null, null);
+        byte[] utf8 = WebSocketCodec.encode(frame);
+
+        assertEquals(Json.stringify(frame), new String(utf8, StandardCharsets.UTF_8));
+        assertFalse(new String(utf8, StandardCharsets.UTF_8).contains("updates"));
+        assertTrue(WebSocketCodec.isV2("jweb.v2"));
+        assertFalse(WebSocketCodec.isV2(null));
+    }
+}